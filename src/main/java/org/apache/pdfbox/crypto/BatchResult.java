@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto;
+
+import java.io.File;
+
+/**
+ * The aggregated result of a batch signing. The results of the single documents are handed to the sink of the
+ * {@link BatchSigner}, only the counters are kept here.
+ */
+public class BatchResult
+{
+  private final long start = System.nanoTime();
+
+  private long end;
+
+  private long documents;
+
+  private long failures;
+
+  private long bytes;
+
+  BatchResult()
+  {}
+
+  synchronized void add(DocumentResult document)
+  {
+    documents++;
+    if (document.isSuccess())
+    {
+      bytes += document.getSize();
+    }
+    else
+    {
+      failures++;
+    }
+  }
+
+  synchronized void finish()
+  {
+    end = System.nanoTime();
+  }
+
+  public synchronized long getDocumentCount()
+  {
+    return documents;
+  }
+
+  public synchronized long getFailureCount()
+  {
+    return failures;
+  }
+
+  /**
+   * @return the size of all successfully signed documents in bytes
+   */
+  public synchronized long getSignedBytes()
+  {
+    return bytes;
+  }
+
+  /**
+   * @return the wall clock time of the batch in milliseconds
+   */
+  public synchronized long getElapsedMillis()
+  {
+    return ((end == 0 ? System.nanoTime() : end) - start) / 1000000;
+  }
+
+  /**
+   * @return the successfully signed documents per second
+   */
+  public synchronized double getDocumentsPerSecond()
+  {
+    return (documents - failures) * 1000.0 / Math.max(1, getElapsedMillis());
+  }
+
+  /**
+   * @return the successfully signed megabytes per second
+   */
+  public synchronized double getMegabytesPerSecond()
+  {
+    return bytes / 1024.0 / 1024.0 * 1000.0 / Math.max(1, getElapsedMillis());
+  }
+
+  @Override
+  public synchronized String toString()
+  {
+    return String.format("%d documents, %d failed, %d ms, %.1f documents/s, %.2f MB/s", documents, failures,
+        getElapsedMillis(), getDocumentsPerSecond(), getMegabytesPerSecond());
+  }
+
+  /**
+   * The result of a single document of the batch.
+   */
+  public static class DocumentResult
+  {
+    private final File input;
+
+    private final File output;
+
+    private final long size;
+
+    private final Exception error;
+
+    private final long nanos;
+
+    DocumentResult(File input, File output, long size, Exception error, long nanos)
+    {
+      this.input = input;
+      this.output = output;
+      this.size = size;
+      this.error = error;
+      this.nanos = nanos;
+    }
+
+    public File getInput()
+    {
+      return input;
+    }
+
+    public File getOutput()
+    {
+      return output;
+    }
+
+    /**
+     * @return the size of the unsigned document in bytes
+     */
+    public long getSize()
+    {
+      return size;
+    }
+
+    public boolean isSuccess()
+    {
+      return error == null;
+    }
+
+    /**
+     * @return the reason the document couldn't be signed or null, if it was signed
+     */
+    public Exception getError()
+    {
+      return error;
+    }
+
+    /**
+     * @return the time it took to sign the document in milliseconds
+     */
+    public long getMillis()
+    {
+      return nanos / 1000000;
+    }
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.closeStream;
+import static org.apache.pdfbox.crypto.core.CoreHelper.getParallelism;
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.pdfbox.crypto.BatchResult.DocumentResult;
+import org.apache.pdfbox.crypto.bc.SigningProfile;
+import org.apache.pdfbox.crypto.core.CMSSigner;
+import org.apache.pdfbox.crypto.core.CryptoPool;
+import org.apache.pdfbox.crypto.core.KeyProvider;
+import org.apache.pdfbox.crypto.core.SignatureProvider;
+import org.apache.pdfbox.exceptions.SignatureException;
+
+/**
+ * <p>
+ * Signs many documents with the same key. The signer is created once by the crypto engine and shared by all
+ * documents, the documents are signed in parallel on an executor.
+ * </p>
+ * <p>
+ * The documents are taken from an iterator as they are needed, only a limited number of documents is submitted to the
+ * executor at the same time. So a batch can be fed lazily, e.g. from a directory listing or a database cursor. The
+ * result of each document is handed to a sink as soon as it is available.
+ * </p>
+ */
+public class BatchSigner
+{
+  /**
+   * Receives the result of every signed document. The sink is called by one thread at a time.
+   */
+  public interface Sink
+  {
+    void accept(DocumentResult result);
+  }
+
+  private final KeyProvider keyProvider;
+
+  private final SignatureProvider signatureProvider;
+
+  private final SigningProfile profile;
+
+  private String signerName;
+
+  private String signerLocation;
+
+  private String signerReason;
+
+  private boolean digestWhileWriting;
+
+  private ExecutorService executor;
+
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  private BatchSigner(KeyProvider keyProvider, SignatureProvider signatureProvider, SigningProfile profile)
+  {
+    this.keyProvider = keyProvider;
+    this.signatureProvider = signatureProvider;
+    this.profile = profile;
+  }
+
+  /**
+   * Creates a batch signer for the providers. The signer is created from them for each batch.
+   */
+  public static BatchSigner getInstance(KeyProvider keyProvider, SignatureProvider signatureProvider)
+  {
+    return new BatchSigner(requireNonNull(keyProvider), requireNonNull(signatureProvider), null);
+  }
+
+  /**
+   * Creates a batch signer for a compiled profile. A profile can only be used with the BC14x engine.
+   */
+  public static BatchSigner getInstance(SigningProfile profile)
+  {
+    return new BatchSigner(null, null, requireNonNull(profile));
+  }
+
+  public BatchSigner setSignerName(String name)
+  {
+    this.signerName = name;
+    return this;
+  }
+
+  public BatchSigner setSignerLocation(String location)
+  {
+    this.signerLocation = location;
+    return this;
+  }
+
+  public BatchSigner setSignerReason(String reason)
+  {
+    this.signerReason = reason;
+    return this;
+  }
+
+  /**
+   * @see SignatureBuilder#setDigestWhileWriting(boolean)
+   */
+  public BatchSigner setDigestWhileWriting(boolean digestWhileWriting)
+  {
+    this.digestWhileWriting = digestWhileWriting;
+    return this;
+  }
+
+  /**
+   * @param executor the executor the documents are signed on. It will not be shut down by the batch signer. If no
+   *          executor is set, a thread pool is created for each batch.
+   */
+  public BatchSigner setExecutor(ExecutorService executor)
+  {
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * @param threads the number of threads of the pool, that is created if no executor is set. Defaults to the number of
+   *          processors. On an executor with a bounded pool the size of the pool is used instead.
+   */
+  public BatchSigner setThreads(int threads)
+  {
+    if (threads < 1)
+    {
+      throw new IllegalArgumentException("At least one thread is needed");
+    }
+    this.threads = threads;
+    return this;
+  }
+
+  /**
+   * Sign all documents of the map.
+   * 
+   * @param documents the documents to sign mapped to the files the signed documents are written to
+   * @param sink receives the result of every document
+   * @return the aggregated result of the batch
+   * @throws InterruptedException if the thread is interrupted while waiting for the documents
+   * @throws SignatureException if the signer can't be created
+   */
+  public BatchResult sign(Map<File, File> documents, Sink sink) throws InterruptedException, SignatureException
+  {
+    return sign(documents.entrySet().iterator(), sink);
+  }
+
+  /**
+   * Sign the documents of the iterator. A failing document doesn't stop the batch, its error is part of the result.
+   * 
+   * @param documents pairs of the document to sign and the file the signed document is written to
+   * @param sink receives the result of every document
+   * @return the aggregated result of the batch
+   * @throws InterruptedException if the thread is interrupted while waiting for the documents
+   * @throws SignatureException if the signer can't be created
+   */
+  public BatchResult sign(Iterator<? extends Map.Entry<File, File>> documents, final Sink sink)
+      throws InterruptedException, SignatureException
+  {
+    requireNonNull(sink);
+    final CMSSigner signer = profile != null ? PDCrypto.createSigner(profile) : PDCrypto.getCurrentCryptoEngine()
+        .createSigner(keyProvider, signatureProvider);
+    final BatchResult result = new BatchResult();
+
+    ExecutorService service = executor != null ? executor : Executors.newFixedThreadPool(threads);
+    // keep the executor busy without queuing the whole batch
+    final int maxPending = getParallelism(service, threads) * 4;
+    final Semaphore pending = new Semaphore(maxPending);
+    // the threads, that signed documents of the batch, they keep the pooled engines of the key
+    final Set<Thread> workers = Collections.synchronizedSet(new HashSet<Thread>());
+    try
+    {
+      while (documents.hasNext())
+      {
+        final Map.Entry<File, File> document = documents.next();
+        pending.acquire();
+        try
+        {
+          service.execute(new Runnable()
+          {
+            public void run()
+            {
+              try
+              {
+                DocumentResult signed = sign(document.getKey(), document.getValue(), signer);
+                result.add(signed);
+                synchronized (sink)
+                {
+                  sink.accept(signed);
+                }
+              }
+              finally
+              {
+                workers.add(Thread.currentThread());
+                pending.release();
+              }
+            }
+          });
+        }
+        catch (RejectedExecutionException e)
+        {
+          pending.release();
+          throw e;
+        }
+      }
+
+      // wait for the last documents
+      pending.acquire(maxPending);
+      pending.release(maxPending);
+    }
+    finally
+    {
+      if (executor == null)
+      {
+        service.shutdown();
+      }
+      else
+      {
+        // the threads of a shared executor outlive the batch, they must not keep the key
+        CryptoPool.clear(workers);
+      }
+    }
+    result.finish();
+    return result;
+  }
+
+  private DocumentResult sign(File input, File output, CMSSigner signer)
+  {
+    long start = System.nanoTime();
+    PDCrypto crypto = PDCrypto.load(input);
+    try
+    {
+      crypto.createSignatureBuilder().setSigner(signer).setSigernName(signerName)
+          .setSigernLocation(signerLocation).setSigernReason(signerReason).setDigestWhileWriting(digestWhileWriting)
+          .sign(output);
+      return new DocumentResult(input, output, input.length(), null, System.nanoTime() - start);
+    }
+    catch (Exception e)
+    {
+      // every failure belongs to the document, the batch goes on
+      return new DocumentResult(input, output, input.length(), e, System.nanoTime() - start);
+    }
+    finally
+    {
+      closeStream(crypto);
+    }
+  }
+}
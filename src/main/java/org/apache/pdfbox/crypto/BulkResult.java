@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto;
+
+import org.apache.pdfbox.crypto.bc.VerificationResult;
+
+/**
+ * The aggregated result of a bulk verification. The results of the single files are handed to the sink of the
+ * {@link BulkVerifier}, only the counters are kept here.
+ */
+public class BulkResult
+{
+  private final long start = System.nanoTime();
+
+  private long end;
+
+  private long files;
+
+  private long invalid;
+
+  private long failures;
+
+  private long bytes;
+
+  BulkResult()
+  {}
+
+  synchronized void add(FileResult file)
+  {
+    files++;
+    bytes += Math.max(0, file.getSize());
+    if (file.getError() != null)
+    {
+      failures++;
+    }
+    else if (!file.isValid())
+    {
+      invalid++;
+    }
+  }
+
+  synchronized void finish()
+  {
+    end = System.nanoTime();
+  }
+
+  public synchronized long getFileCount()
+  {
+    return files;
+  }
+
+  /**
+   * @return the number of files that were verified, but are unsigned or have an invalid signature
+   */
+  public synchronized long getInvalidCount()
+  {
+    return invalid;
+  }
+
+  /**
+   * @return the number of files that couldn't be verified at all
+   */
+  public synchronized long getFailureCount()
+  {
+    return failures;
+  }
+
+  public synchronized long getBytes()
+  {
+    return bytes;
+  }
+
+  /**
+   * @return the wall clock time of the verification in milliseconds
+   */
+  public synchronized long getElapsedMillis()
+  {
+    return ((end == 0 ? System.nanoTime() : end) - start) / 1000000;
+  }
+
+  public synchronized double getFilesPerSecond()
+  {
+    return files * 1000.0 / Math.max(1, getElapsedMillis());
+  }
+
+  public synchronized double getMegabytesPerSecond()
+  {
+    return bytes / 1024.0 / 1024.0 * 1000.0 / Math.max(1, getElapsedMillis());
+  }
+
+  @Override
+  public synchronized String toString()
+  {
+    return String.format("%d files, %d invalid, %d failed, %d ms, %.1f files/s, %.2f MB/s", files, invalid, failures,
+        getElapsedMillis(), getFilesPerSecond(), getMegabytesPerSecond());
+  }
+
+  /**
+   * The result of a single file of the bulk verification.
+   */
+  public static class FileResult
+  {
+    private final String name;
+
+    private final long size;
+
+    private final VerificationResult result;
+
+    private final Exception error;
+
+    private final long nanos;
+
+    FileResult(String name, long size, VerificationResult result, Exception error, long nanos)
+    {
+      this.name = name;
+      this.size = size;
+      this.result = result;
+      this.error = error;
+      this.nanos = nanos;
+    }
+
+    /**
+     * @return the path of the file, relative to the verified directory or archive
+     */
+    public String getName()
+    {
+      return name;
+    }
+
+    /**
+     * @return the size of the file in bytes or -1, if it is unknown
+     */
+    public long getSize()
+    {
+      return size;
+    }
+
+    /**
+     * @return the verification result or null, if the file couldn't be verified
+     */
+    public VerificationResult getResult()
+    {
+      return result;
+    }
+
+    /**
+     * @return true, if the file is signed and all signatures are valid
+     */
+    public boolean isValid()
+    {
+      return result != null && result.isValid();
+    }
+
+    /**
+     * @return the reason the file couldn't be verified or null, if it was verified
+     */
+    public Exception getError()
+    {
+      return error;
+    }
+
+    /**
+     * @return the time it took to verify the file in milliseconds
+     */
+    public long getMillis()
+    {
+      return nanos / 1000000;
+    }
+  }
+}
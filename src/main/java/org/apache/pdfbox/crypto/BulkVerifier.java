@@ -0,0 +1,453 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.closeStream;
+import static org.apache.pdfbox.crypto.core.CoreHelper.getParallelism;
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.pdfbox.crypto.BulkResult.FileResult;
+import org.apache.pdfbox.crypto.bc.VerificationCache;
+import org.apache.pdfbox.crypto.bc.VerificationResult;
+import org.apache.pdfbox.crypto.exceptions.TriageException;
+import org.apache.pdfbox.crypto.io.StructuralTriage;
+
+/**
+ * <p>
+ * Verifies all pdf documents of a directory tree or a ZIP archive. The documents are verified in parallel on a thread
+ * pool, the result of each document is handed to a sink as soon as it is available.
+ * </p>
+ * <p>
+ * The number of documents and the number of bytes in flight are limited, so the directory or archive is walked only as
+ * fast as the documents are verified, and a few large documents can't exhaust the heap. A document that is larger than
+ * the limit is verified alone.
+ * </p>
+ */
+public class BulkVerifier
+{
+  /**
+   * Receives the result of every verified document. The sink is called by one thread at a time.
+   */
+  public interface Sink
+  {
+    void accept(FileResult result);
+  }
+
+  /** Default number of bytes, that may be in flight at the same time */
+  public static final long DEFAULT_MAX_BYTES_IN_FLIGHT = 256 * 1024 * 1024;
+
+  /** Size assumed for archive entries of unknown size */
+  private static final long UNKNOWN_SIZE = 1024 * 1024;
+
+  private ExecutorService executor;
+
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  private long maxBytesInFlight = DEFAULT_MAX_BYTES_IN_FLIGHT;
+
+  private VerificationCache cache;
+
+  private boolean triage;
+
+  private BulkVerifier()
+  {}
+
+  public static BulkVerifier getInstance()
+  {
+    return new BulkVerifier();
+  }
+
+  /**
+   * @param executor the executor the documents are verified on. It will not be shut down by the bulk verifier. If no
+   *          executor is set, a thread pool is created for each run.
+   */
+  public BulkVerifier setExecutor(ExecutorService executor)
+  {
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * @param threads the number of threads of the pool, that is created if no executor is set. Defaults to the number of
+   *          processors. On an executor with a bounded pool the size of the pool is used instead.
+   */
+  public BulkVerifier setThreads(int threads)
+  {
+    if (threads < 1)
+    {
+      throw new IllegalArgumentException("At least one thread is needed");
+    }
+    this.threads = threads;
+    return this;
+  }
+
+  /**
+   * @param maxBytesInFlight the maximum size of all documents, that are verified or waiting for verification at the
+   *          same time
+   */
+  public BulkVerifier setMaxBytesInFlight(long maxBytesInFlight)
+  {
+    if (maxBytesInFlight < 1024)
+    {
+      throw new IllegalArgumentException("At least one kilobyte has to be in flight");
+    }
+    this.maxBytesInFlight = maxBytesInFlight;
+    return this;
+  }
+
+  /**
+   * @param triage true, to reject documents that fail the structural triage before they are parsed, see
+   *          {@link StructuralTriage}. Their result holds a {@link TriageException}.
+   */
+  public BulkVerifier setTriage(boolean triage)
+  {
+    this.triage = triage;
+    return this;
+  }
+
+  /**
+   * @param cache the cache of verified signatures, that is shared by all documents. It will not be closed.
+   */
+  public BulkVerifier setCache(VerificationCache cache)
+  {
+    this.cache = cache;
+    return this;
+  }
+
+  /**
+   * Verify all pdf documents below a directory, all pdf documents of a ZIP archive or a single pdf document.
+   * 
+   * @param file a directory, a ZIP archive or a pdf document
+   * @param sink receives the result of every document
+   * @return the aggregated result
+   * @throws IOException if the directory or the archive can't be read
+   */
+  public BulkResult verify(File file, Sink sink) throws IOException
+  {
+    requireNonNull(file);
+    requireNonNull(sink);
+    if (!file.exists())
+    {
+      throw new IllegalArgumentException("File for verification does not exist");
+    }
+
+    Run run = new Run(sink);
+    try
+    {
+      if (file.isDirectory())
+      {
+        walk(file, "", run);
+      }
+      else if (file.getName().toLowerCase(Locale.ENGLISH).endsWith(".zip"))
+      {
+        walk(new ZipFile(file), run);
+      }
+      else
+      {
+        run.submit(file.getName(), file.length(), new FileDocument(file));
+      }
+      run.await();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while verifying " + file);
+    }
+    finally
+    {
+      run.shutdown();
+    }
+    run.result.finish();
+    return run.result;
+  }
+
+  private void walk(File directory, String path, Run run) throws InterruptedException
+  {
+    try
+    {
+      // a symbolic link to a parent directory would be walked forever
+      if (!run.visited.add(directory.getCanonicalFile()))
+      {
+        return;
+      }
+    }
+    catch (IOException e)
+    {
+      run.complete(new FileResult(path, -1, null, e, 0));
+      return;
+    }
+    File[] children = directory.listFiles(PDF_OR_DIRECTORY);
+    if (children == null)
+    {
+      run.complete(new FileResult(path, -1, null, new IOException("Directory can't be read: " + directory), 0));
+      return;
+    }
+    // a stable order makes runs comparable
+    Arrays.sort(children);
+    for (File child : children)
+    {
+      String name = path + child.getName();
+      if (child.isDirectory())
+      {
+        walk(child, name + "/", run);
+      }
+      else
+      {
+        run.submit(name, child.length(), new FileDocument(child));
+      }
+    }
+  }
+
+  private void walk(final ZipFile zip, Run run) throws InterruptedException, IOException
+  {
+    try
+    {
+      for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();)
+      {
+        final ZipEntry entry = entries.nextElement();
+        if (!entry.isDirectory() && isPdf(entry.getName()))
+        {
+          run.submit(entry.getName(), entry.getSize(), new Document()
+          {
+            public PDCrypto load() throws IOException
+            {
+              // the zip file serializes the access to its entries
+              return PDCrypto.load(zip.getInputStream(entry));
+            }
+          });
+        }
+      }
+      // the entries are read by the workers, the archive is closed when all are done
+      run.await();
+    }
+    finally
+    {
+      zip.close();
+    }
+  }
+
+  private static boolean isPdf(String name)
+  {
+    return name.toLowerCase(Locale.ENGLISH).endsWith(".pdf");
+  }
+
+  private static final FileFilter PDF_OR_DIRECTORY = new FileFilter()
+  {
+    public boolean accept(File file)
+    {
+      return file.isDirectory() || isPdf(file.getName());
+    }
+  };
+
+  /**
+   * A document of the directory or the archive, that is loaded by the worker.
+   */
+  private interface Document
+  {
+    PDCrypto load() throws IOException;
+  }
+
+  private static class FileDocument implements Document
+  {
+    private final File file;
+
+    FileDocument(File file)
+    {
+      this.file = file;
+    }
+
+    public PDCrypto load()
+    {
+      // the mappings of many documents would pile up until they are garbage collected
+      return PDCrypto.load(file, false);
+    }
+  }
+
+  /**
+   * The state of a single run: the pool, the limits and the aggregated result.
+   */
+  private class Run
+  {
+    private final Sink sink;
+
+    private final BulkResult result = new BulkResult();
+
+    /** the canonical directories, that were walked */
+    private final Set<File> visited = new HashSet<File>();
+
+    private final ExecutorService service = executor != null ? executor : Executors.newFixedThreadPool(threads);
+
+    /** documents in flight, the walker doesn't run far ahead of the workers */
+    private final int maxDocuments = getParallelism(service, threads) * 4;
+
+    private final Semaphore documents = new Semaphore(maxDocuments);
+
+    /** bytes in flight in kilobytes, so large limits fit into the permits */
+    private final int maxKilobytes = (int) Math.min(Integer.MAX_VALUE, maxBytesInFlight / 1024);
+
+    private final Semaphore kilobytes = new Semaphore(maxKilobytes);
+
+    Run(Sink sink)
+    {
+      this.sink = sink;
+    }
+
+    void submit(final String name, final long size, final Document document) throws InterruptedException
+    {
+      final int permits = (int) Math.max(1, Math.min(maxKilobytes, (size < 0 ? UNKNOWN_SIZE : size) / 1024));
+      documents.acquire();
+      kilobytes.acquire(permits);
+      try
+      {
+        service.execute(new Runnable()
+        {
+          public void run()
+          {
+            try
+            {
+              complete(verify(name, size, document));
+            }
+            finally
+            {
+              kilobytes.release(permits);
+              documents.release();
+            }
+          }
+        });
+      }
+      catch (RejectedExecutionException e)
+      {
+        kilobytes.release(permits);
+        documents.release();
+        throw e;
+      }
+    }
+
+    void complete(FileResult file)
+    {
+      result.add(file);
+      synchronized (sink)
+      {
+        sink.accept(file);
+      }
+    }
+
+    /**
+     * Waits until all submitted documents are verified.
+     */
+    void await() throws InterruptedException
+    {
+      documents.acquire(maxDocuments);
+      documents.release(maxDocuments);
+    }
+
+    void shutdown()
+    {
+      if (executor == null)
+      {
+        service.shutdown();
+      }
+    }
+  }
+
+  private FileResult verify(String name, long size, Document document)
+  {
+    long start = System.nanoTime();
+    PDCrypto crypto = null;
+    try
+    {
+      crypto = document.load();
+      VerificationBuilder builder = crypto.createVerificationBuilder();
+      if (triage)
+      {
+        StructuralTriage.Result triageResult = builder.triage();
+        if (!triageResult.isAccepted())
+        {
+          throw new TriageException(triageResult);
+        }
+      }
+      // the document is verified by the worker alone, the pool is busy with other documents
+      VerificationResult result = builder.setExecutor(SAME_THREAD).setCache(cache).verify();
+      return new FileResult(name, size, result, null, System.nanoTime() - start);
+    }
+    catch (Exception e)
+    {
+      // every failure belongs to the document, the run goes on
+      return new FileResult(name, size, null, e, System.nanoTime() - start);
+    }
+    finally
+    {
+      closeStream(crypto);
+    }
+  }
+
+  /**
+   * Runs the tasks in the calling thread.
+   */
+  private static final ExecutorService SAME_THREAD = new AbstractExecutorService()
+  {
+    public void execute(Runnable command)
+    {
+      command.run();
+    }
+
+    public void shutdown()
+    {
+      // shared, never shut down
+    }
+
+    public List<Runnable> shutdownNow()
+    {
+      return Collections.emptyList();
+    }
+
+    public boolean isShutdown()
+    {
+      return false;
+    }
+
+    public boolean isTerminated()
+    {
+      return false;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+    {
+      return false;
+    }
+  };
+}
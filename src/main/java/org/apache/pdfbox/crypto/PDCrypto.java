@@ -16,33 +16,67 @@
  */
 package org.apache.pdfbox.crypto;
 
-import static org.apache.pdfbox.crypto.core.CoreHelper.copy;
+import static org.apache.pdfbox.crypto.core.CoreHelper.closeStream;
 import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.Provider;
+import java.security.Security;
 
+import org.apache.pdfbox.crypto.bc.BC14x_CryptoEngine;
+import org.apache.pdfbox.crypto.bc.BC15x_CryptoEngine;
+import org.apache.pdfbox.crypto.bc.SigningProfile;
+import org.apache.pdfbox.crypto.core.BufferPool;
+import org.apache.pdfbox.crypto.core.CMSSigner;
 import org.apache.pdfbox.crypto.core.CryptoEngine;
+import org.apache.pdfbox.crypto.io.BaseRevisionWriter;
+import org.apache.pdfbox.crypto.io.DocumentSource;
+import org.apache.pdfbox.crypto.io.FileSource;
+import org.apache.pdfbox.crypto.io.SpoolBuffer;
+import org.apache.pdfbox.crypto.jca.JcaCryptoEngine;
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.exceptions.SignatureException;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
 /**
  * Crypto engine for pdf signature creation and verification. It builds up on several builders that prepare the
  * pdf document and sign it.
  * 
+ * Documents loaded from a stream are buffered in memory up to the configured memory threshold and verified documents
+ * are mapped into memory, so close the PDCrypto after usage to release the buffer and the mapping.
+ * 
  * @author Thomas Chojecki
  */
-public class PDCrypto
+public class PDCrypto implements Closeable
 {
+  /** Default number of bytes a document loaded from a stream may occupy in memory before it is spooled to disk. */
+  public static final long DEFAULT_MEMORY_THRESHOLD = 8 * 1024 * 1024;
+
   protected File pdfFile;
 
+  protected DocumentSource source;
+
   protected PDDocument doc;
 
+  /** true, if the document was handed in by the caller and is not parsed from the source */
+  protected boolean documentProvided;
+
+  /** true, if the provided document was changed by signing it and no longer matches the source */
+  protected boolean documentSigned;
+
   protected static File tempFolder = new File(System.getProperty("java.io.tmpdir"));
 
+  protected static long memoryThreshold = DEFAULT_MEMORY_THRESHOLD;
+
+  protected static boolean directMemory = false;
+
   protected static CryptoEngine cryptoEngine;
 
+  private static CryptoEngine defaultEngine;
+
   private PDCrypto()
   {}
 
@@ -51,30 +85,98 @@ public class PDCrypto
    */
 
   public static PDCrypto load(File pdf)
+  {
+    return load(pdf, true);
+  }
+
+  /**
+   * @param pdf the file of the document
+   * @param mapped if false, the file is read instead of mapped into memory, e.g. for the many short lived documents of
+   *          a bulk verification, whose mappings would only be released by the garbage collector
+   * @return a PDCrypto for the file
+   */
+  static PDCrypto load(File pdf, boolean mapped)
   {
     requireNonNull(pdf);
 
     PDCrypto pdCrypto = new PDCrypto();
     pdCrypto.pdfFile = pdf;
+    pdCrypto.source = new FileSource(pdf, mapped);
 
     return pdCrypto;
   }
 
+  /**
+   * Load the document from a stream. The document is kept in memory up to the memory threshold and spooled to a
+   * temporary file beyond that. The stream will be closed.
+   * 
+   * @param pdf the stream that contains the pdf document
+   * @return a PDCrypto for the buffered document
+   * @throws IOException if the stream can't be read
+   */
   public static PDCrypto load(InputStream pdf) throws IOException
   {
     requireNonNull(pdf);
+    SpoolBuffer buffer = new SpoolBuffer(memoryThreshold, tempFolder, directMemory);
+    try
+    {
+      buffer.readFrom(pdf);
+    }
+    catch (IOException e)
+    {
+      buffer.close();
+      throw e;
+    }
+    finally
+    {
+      closeStream(pdf);
+    }
+
     PDCrypto pdCrypto = new PDCrypto();
-    pdCrypto.pdfFile = File.createTempFile("PDF", ".pdf");
-    copy(pdf, new FileOutputStream(pdCrypto.pdfFile));
-    pdCrypto.doc = PDDocument.load(pdCrypto.pdfFile);
+    pdCrypto.source = buffer;
 
     return pdCrypto;
   }
 
-  public static PDCrypto load(PDDocument pdf)
+  /**
+   * Load a document that is already in memory. The document is serialized once into the memory buffer, so it can be
+   * signed by an incremental update without saving it to disk or parsing it again. The document still belongs to the
+   * caller and will not be closed by the PDCrypto.
+   * <p>
+   * The document is changed in place: loading replaces its cross reference by the one of the serialized revision, and
+   * signing adds the signature field to it. So the PDCrypto can sign the document only once, the signed document has
+   * to be loaded from the signed bytes to sign it again. The document itself stays usable after signing.
+   * </p>
+   * 
+   * @param pdf the document that should be signed or verified
+   * @return a PDCrypto for the document
+   * @throws IOException if the document can't be serialized
+   */
+  public static PDCrypto load(PDDocument pdf) throws IOException
   {
     requireNonNull(pdf);
-    throw new UnsupportedOperationException("Not yet implemented.");
+    SpoolBuffer buffer = new SpoolBuffer(memoryThreshold, tempFolder, directMemory);
+    try
+    {
+      BaseRevisionWriter.write(pdf, buffer.getOutputStream());
+    }
+    catch (COSVisitorException e)
+    {
+      buffer.close();
+      throw new IOException(e);
+    }
+    catch (IOException e)
+    {
+      buffer.close();
+      throw e;
+    }
+
+    PDCrypto pdCrypto = new PDCrypto();
+    pdCrypto.source = buffer;
+    pdCrypto.doc = pdf;
+    pdCrypto.documentProvided = true;
+
+    return pdCrypto;
   }
 
   /*
@@ -100,17 +202,146 @@ public class PDCrypto
     tempFolder = tf;
   }
 
+  /**
+   * @param ce the engine that creates and verifies the signatures of all documents, null for the default engine
+   */
   public static void setCryptoEngine(CryptoEngine ce)
   {
     cryptoEngine = ce;
   }
 
+  /**
+   * @return the engine set by {@link #setCryptoEngine(CryptoEngine)} or the default engine for the BouncyCastle version
+   *         on the class path. The default engine is only loaded if no other engine is set.
+   */
+  static synchronized CryptoEngine getCurrentCryptoEngine()
+  {
+    if (cryptoEngine != null)
+    {
+      return cryptoEngine;
+    }
+    if (defaultEngine == null)
+    {
+      defaultEngine = createDefaultEngine();
+    }
+    return defaultEngine;
+  }
+
+  /**
+   * Creates the signer for a compiled profile with the current engine.
+   * 
+   * @throws SignatureException if the current engine isn't the BouncyCastle 1.4x engine, that compiles the profiles
+   */
+  static CMSSigner createSigner(SigningProfile profile) throws SignatureException
+  {
+    CryptoEngine engine = getCurrentCryptoEngine();
+    if (!(engine instanceof BC14x_CryptoEngine))
+    {
+      throw new SignatureException(SignatureException.UNSUPPORTED_OPERATION, "A signing profile can't be used with the "
+          + engine.getName() + " engine, use a signer created by the engine instead");
+    }
+    return ((BC14x_CryptoEngine) engine).createSigner(profile);
+  }
+
+  /**
+   * BouncyCastle up to 1.46 is used by the 1.4x engine, later versions by the 1.5x engine. A BouncyCastle provider on
+   * the class path, that isn't registered yet, gets registered, because both engines look it up by its name. Without
+   * BouncyCastle the signatures are created and verified by the providers of the java runtime.
+   */
+  private static CryptoEngine createDefaultEngine()
+  {
+    Provider provider = Security.getProvider("BC");
+    if (provider == null)
+    {
+      try
+      {
+        provider = (Provider) Class.forName("org.bouncycastle.jce.provider.BouncyCastleProvider").newInstance();
+      }
+      catch (ClassNotFoundException e)
+      {
+        return new JcaCryptoEngine();
+      }
+      catch (InstantiationException e)
+      {
+        return new JcaCryptoEngine();
+      }
+      catch (IllegalAccessException e)
+      {
+        return new JcaCryptoEngine();
+      }
+      Security.addProvider(provider);
+    }
+    return createEngine(provider);
+  }
+
+  /**
+   * @param provider the registered BouncyCastle provider
+   * @return the engine for the version of the provider
+   */
+  public static CryptoEngine createEngine(Provider provider)
+  {
+    if (provider.getVersion() <= BC15x_CryptoEngine.BC14x_LAST_VERSION)
+    {
+      return new BC14x_CryptoEngine();
+    }
+    return new BC15x_CryptoEngine();
+  }
+
+  /**
+   * @param threshold is the maximum size in bytes a document loaded from a stream may occupy in memory before it is
+   *          spooled into the temp folder
+   */
+  public static void setMemoryThreshold(long threshold)
+  {
+    memoryThreshold = threshold;
+  }
+
+  /**
+   * @param direct if true, documents loaded from a stream are buffered off-heap
+   */
+  public static void setDirectMemory(boolean direct)
+  {
+    directMemory = direct;
+  }
+
+  /**
+   * @param size the size in bytes of the pooled buffers, that are used to copy and digest streams
+   * @see BufferPool#setBufferSize(int)
+   */
+  public static void setBufferSize(int size)
+  {
+    BufferPool.setBufferSize(size);
+  }
+
+  /**
+   * Release the parsed document, the mapping of the document file and the buffer of a document that was not loaded
+   * from a file.
+   */
+  public void close() throws IOException
+  {
+    try
+    {
+      if (doc != null && !documentProvided)
+      {
+        doc.close();
+      }
+    }
+    finally
+    {
+      doc = null;
+      closeStream(source);
+    }
+  }
+
   /*
    * Getter / Setter
    */
+  /**
+   * @return the engine, that creates and verifies the signatures of the document
+   */
   public CryptoEngine getCryptoEngine()
   {
-    return cryptoEngine;
+    return getCurrentCryptoEngine();
   }
 
   public File getPdfFile()
@@ -118,8 +349,29 @@ public class PDCrypto
     return pdfFile;
   }
 
-  public PDDocument getDoc()
+  public DocumentSource getSource()
+  {
+    return source;
+  }
+
+  /**
+   * @return the parsed document. It will be parsed on first access.
+   * @throws IOException if the document can't be parsed
+   */
+  public PDDocument getDoc() throws IOException
   {
+    if (doc == null)
+    {
+      InputStream in = source.createInputStream();
+      try
+      {
+        doc = PDDocument.load(in);
+      }
+      finally
+      {
+        closeStream(in);
+      }
+    }
     return doc;
   }
 
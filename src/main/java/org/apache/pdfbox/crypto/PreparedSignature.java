@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.closeStream;
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.apache.pdfbox.crypto.core.CMSSigner;
+import org.apache.pdfbox.exceptions.SignatureException;
+
+/**
+ * <p>
+ * A signature that was prepared by {@link SignatureBuilder#prepare(File)}. The prepared document is complete except for
+ * the Contents of the signature, which are reserved but empty. No document resources are held, so the signature value
+ * can be computed at any time later, e.g. by a remote signing service.
+ * </p>
+ * <p>
+ * The signature value is computed over the signed attributes. Either {@link #getSignedAttributes()} is signed, or its
+ * digest {@link #getSignedAttributesDigest()} if the signing service expects a hash. The cms signature is then created
+ * by {@link #createSignature(byte[])} and written into the prepared document by {@link #inject(File, byte[])}.
+ * </p>
+ */
+public class PreparedSignature
+{
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+  private final CMSSigner signatureInterface;
+
+  private byte[] contentDigest;
+
+  private byte[] signedAttributes;
+
+  private long contentsOffset;
+
+  private int contentsLength;
+
+  PreparedSignature(CMSSigner signatureInterface)
+  {
+    this.signatureInterface = signatureInterface;
+  }
+
+  CMSSigner getSignatureInterface()
+  {
+    return signatureInterface;
+  }
+
+  void setContentDigest(byte[] contentDigest) throws SignatureException
+  {
+    this.contentDigest = contentDigest;
+    this.signedAttributes = signatureInterface.getSignedAttributes(contentDigest);
+  }
+
+  void setByteRange(long[] byteRange)
+  {
+    // the gap of the byte range is the hex string including the angle brackets
+    this.contentsOffset = byteRange[1] + 1;
+    this.contentsLength = (int) (byteRange[2] - byteRange[1] - 2);
+  }
+
+  /**
+   * @return the digest of the signed content, that is the document without the Contents of the signature
+   */
+  public byte[] getContentDigest()
+  {
+    return contentDigest.clone();
+  }
+
+  /**
+   * @return the DER encoded signed attributes, the signature value is computed over
+   */
+  public byte[] getSignedAttributes()
+  {
+    return signedAttributes.clone();
+  }
+
+  /**
+   * @return the digest of the signed attributes, computed with the digest algorithm of the signature provider
+   */
+  public byte[] getSignedAttributesDigest() throws SignatureException
+  {
+    return signatureInterface.createMessageDigest().digest(signedAttributes);
+  }
+
+  /**
+   * @return the position of the Contents of the signature in the prepared document
+   */
+  public long getContentsOffset()
+  {
+    return contentsOffset;
+  }
+
+  /**
+   * @return the maximum length of the cms signature in bytes
+   */
+  public int getMaxSignatureLength()
+  {
+    return contentsLength / 2;
+  }
+
+  /**
+   * Creates the cms signature from the signature value over the signed attributes.
+   * 
+   * @param signatureValue the signature value, e.g. the PKCS#1 signature of the signed attributes
+   * @return the encoded cms signature
+   */
+  public byte[] createSignature(byte[] signatureValue) throws SignatureException, IOException
+  {
+    requireNonNull(signatureValue);
+    return signatureInterface.createSignature(signedAttributes, signatureValue);
+  }
+
+  /**
+   * Writes the cms signature into the Contents of the prepared document. Nothing else of the document is touched.
+   * 
+   * @param document the prepared document
+   * @param signature the encoded cms signature
+   * @throws IOException if the signature doesn't fit or the Contents were already written
+   */
+  public void inject(File document, byte[] signature) throws IOException
+  {
+    requireNonNull(document);
+    requireNonNull(signature);
+    if (signature.length > getMaxSignatureLength())
+    {
+      throw new IOException("Can't write signature, not enough space");
+    }
+
+    RandomAccessFile file = new RandomAccessFile(document, "rw");
+    try
+    {
+      byte[] contents = new byte[contentsLength];
+      file.seek(contentsOffset);
+      file.readFully(contents);
+      for (byte b : contents)
+      {
+        if (b != '0')
+        {
+          throw new IOException("Contents of the prepared signature are not empty");
+        }
+      }
+
+      for (int i = 0; i < signature.length; i++)
+      {
+        contents[2 * i] = (byte) HEX[(signature[i] >> 4) & 0xF];
+        contents[2 * i + 1] = (byte) HEX[signature[i] & 0xF];
+      }
+      file.seek(contentsOffset);
+      file.write(contents, 0, 2 * signature.length);
+    }
+    finally
+    {
+      closeStream(file);
+    }
+  }
+}
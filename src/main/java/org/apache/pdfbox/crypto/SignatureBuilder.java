@@ -16,15 +16,25 @@
  */
 package org.apache.pdfbox.crypto;
 
+import static org.apache.pdfbox.crypto.core.CoreHelper.closeStream;
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
 import java.util.Calendar;
 
-import org.apache.pdfbox.crypto.bc.BC14x_SignatureInterface;
+import org.apache.pdfbox.crypto.bc.SigningProfile;
+import org.apache.pdfbox.crypto.core.CMSSigner;
 import org.apache.pdfbox.crypto.core.KeyProvider;
 import org.apache.pdfbox.crypto.core.SignatureProvider;
+import org.apache.pdfbox.crypto.io.DigestingInputStream;
+import org.apache.pdfbox.crypto.io.RevisionOutputStream;
 import org.apache.pdfbox.exceptions.COSVisitorException;
 import org.apache.pdfbox.exceptions.SignatureException;
 import org.apache.pdfbox.io.RandomAccessFile;
@@ -52,6 +62,12 @@ public class SignatureBuilder
 
   private Calendar cal;
 
+  private boolean digestWhileWriting;
+
+  private CMSSigner signer;
+
+  private SigningProfile profile;
+
   SignatureBuilder(PDCrypto crypto)
   {
     this.crypto = crypto;
@@ -99,71 +115,323 @@ public class SignatureBuilder
     return this;
   }
 
+  /**
+   * If enabled, the signed content is digested while it passes by instead of being read again for the cms signature.
+   * The original document is digested while it is parsed and the new revision while it is written, the cms signature is
+   * built from the precomputed digest.
+   * 
+   * @param digestWhileWriting true, to digest the signed content while the document is parsed and written
+   */
+  public SignatureBuilder setDigestWhileWriting(boolean digestWhileWriting)
+  {
+    this.digestWhileWriting = digestWhileWriting;
+    return this;
+  }
+
+  /**
+   * Sign with a compiled profile instead of a key provider and a signature provider. The profile can be shared by
+   * several builders and threads, nothing of it is computed again for this signature.
+   * 
+   * A profile can only be used with the BC14x engine, signing fails for other engines.
+   * 
+   * @param profile the compiled profile, it takes precedence over the key provider and the signature provider
+   */
+  public SignatureBuilder setSigningProfile(SigningProfile profile)
+  {
+    this.profile = profile;
+    this.signer = null;
+    return this;
+  }
+
+  /**
+   * Sign with a signer, that was created by a crypto engine, instead of a key provider and a signature provider. Like a
+   * profile, the signer can be shared by several builders and threads.
+   * 
+   * @param signer the signer, it takes precedence over the key provider and the signature provider
+   */
+  public SignatureBuilder setSigner(CMSSigner signer)
+  {
+    this.signer = signer;
+    this.profile = null;
+    return this;
+  }
+
+  /**
+   * Sign the document and write the signed document into the given file. The original document is transferred into the
+   * file by the file system and only the new revision is written behind it. If the file is the document that should be
+   * signed, the revision is appended to it without copying anything, see {@link #signInPlace()}.
+   * 
+   * @param outputDocument the file the signed document is written to
+   */
   public void sign(File outputDocument) throws IllegalArgumentException, COSVisitorException, IOException, SignatureException
   {
-    SignatureInterface sigInterface = new BC14x_SignatureInterface(keyProvider, signatureProvider);
+    requireNonNull(outputDocument);
+    checkDocument();
+    write(outputDocument, createRevision(createSigner(), null));
+  }
+
+  /**
+   * First phase of a deferred signature. The document is written into the given file with a signature, whose Contents
+   * are reserved but left empty. The returned signature holds the digest that has to be signed and injects the cms
+   * signature into the file later. No document resources are kept open between both phases, so the signature value can
+   * be computed by a slow remote service, see {@link PreparedSignature}.
+   * 
+   * @param outputDocument the file the prepared document is written to
+   * @return the prepared signature, that is completed with {@link PreparedSignature#inject(File, byte[])}
+   */
+  public PreparedSignature prepare(File outputDocument) throws IllegalArgumentException, COSVisitorException,
+      IOException, SignatureException
+  {
+    requireNonNull(outputDocument);
+    checkDocument();
+    PreparedSignature prepared = new PreparedSignature(createSigner());
+    write(outputDocument, createRevision(prepared.getSignatureInterface(), prepared));
+    return prepared;
+  }
 
-    byte[] buffer = new byte[8 * 1024];
-    if (!crypto.pdfFile.exists())
+  private void checkDocument()
+  {
+    if (crypto.pdfFile != null && !crypto.pdfFile.exists())
     {
       throw new IllegalArgumentException("Document for signing does not exist");
     }
+  }
 
-    // creating output document and prepare the IO streams.
-    FileInputStream fis = new FileInputStream(crypto.pdfFile);
-    FileOutputStream fos = new FileOutputStream(outputDocument);
+  /**
+   * Writes the original document followed by the revision into the file. The original document is transferred by the
+   * file system, if the file is the original document, the revision is only appended.
+   */
+  private void write(File outputDocument, RevisionOutputStream revision) throws IOException
+  {
+    boolean inPlace = crypto.pdfFile != null && crypto.pdfFile.getCanonicalFile().equals(outputDocument.getCanonicalFile());
 
-    int c;
-    while ((c = fis.read(buffer)) != -1)
+    // the revision is complete, now only append it to the original document
+    FileOutputStream output = new FileOutputStream(outputDocument, inPlace);
+    try
     {
-      fos.write(buffer, 0, c);
+      FileChannel channel = output.getChannel();
+      if (inPlace)
+      {
+        if (channel.size() != revision.getOffset())
+        {
+          throw new IOException("Document was modified while signing");
+        }
+      }
+      else
+      {
+        crypto.source.transferTo(channel);
+      }
+      revision.writeTo(channel);
     }
-    fis.close();
-    fis = new FileInputStream(outputDocument);
-
-    File scratchFile = File.createTempFile("pdfbox_scratch", ".bin", crypto.tempFolder);
-    RandomAccessFile randomAccessFile = new RandomAccessFile(scratchFile, "rw");
+    finally
+    {
+      closeStream(output);
+    }
+  }
 
-    try
+  /**
+   * Sign the document by appending the new revision to the file it was loaded from. Nothing of the original document is
+   * copied or rewritten.
+   */
+  public void signInPlace() throws IllegalArgumentException, COSVisitorException, IOException, SignatureException
+  {
+    if (crypto.pdfFile == null)
     {
-      // load document
-      PDDocument doc = PDDocument.load(crypto.pdfFile, randomAccessFile);
+      throw new IllegalStateException("Only documents loaded from a file can be signed in place");
+    }
+    sign(crypto.pdfFile);
+  }
+
+  /**
+   * Sign the document and write the signed document to the given stream. The incremental revision is built in memory
+   * and streamed behind the original document, so no temporary file is needed. A document loaded with
+   * {@link PDCrypto#load(PDDocument)} is signed as it is, without parsing it again. The stream will not be closed.
+   * 
+   * @param output the stream the signed document is written to
+   */
+  public void sign(OutputStream output) throws IllegalArgumentException, COSVisitorException, IOException, SignatureException
+  {
+    requireNonNull(output);
+    RevisionOutputStream revision = createRevision(createSigner(), null);
 
-      // create signature dictionary
-      PDSignature signature = new PDSignature();
-      signature.setFilter(signatureProvider.getFilter());
-      signature.setSubFilter(signatureProvider.getSubfilter());
-      signature.setName(signerName);
-      signature.setLocation(signerLocation);
-      signature.setReason(signerReason);
+    crypto.source.writeTo(output);
+    revision.writeTo(output);
+    output.flush();
+  }
 
-      // the signing date, needed for valid signature
-      signature.setSignDate(cal == null ? Calendar.getInstance() : cal);
+  private CMSSigner createSigner() throws SignatureException
+  {
+    if (signer != null)
+    {
+      return signer;
+    }
+    if (profile != null)
+    {
+      return PDCrypto.createSigner(profile);
+    }
+    return crypto.getCryptoEngine().createSigner(keyProvider, signatureProvider);
+  }
 
-      // register signature dictionary and sign interface
-      if (options == null)
+  /**
+   * Create the signed incremental revision for the document in memory. If a prepared signature is given, the Contents
+   * of the signature are left empty and the prepared signature receives the digest to sign.
+   */
+  private RevisionOutputStream createRevision(CMSSigner sigInterface, PreparedSignature prepared)
+      throws IOException, SignatureException, COSVisitorException
+  {
+    MessageDigest digest = digestWhileWriting ? sigInterface.createMessageDigest() : null;
+
+    if (crypto.documentProvided)
+    {
+      if (crypto.documentSigned)
       {
-        doc.addSignature(signature, sigInterface);
+        throw new IllegalStateException("A document loaded from a PDDocument can only be signed once, load the signed "
+            + "document to sign it again");
       }
-      else
+      // the signature field is added to the document of the caller, even if the signing fails
+      crypto.documentSigned = true;
+      if (digest != null)
       {
-        doc.addSignature(signature, sigInterface, options);
+        // the document isn't parsed, so the in memory copy is digested
+        digestDocument(null, digest);
       }
+      return createRevision(crypto.doc, sigInterface, digest, prepared);
+    }
 
-      // write incremental (only for signing purpose)
-      doc.saveIncremental(fis, fos);
+    File scratchFile = File.createTempFile("pdfbox_scratch", ".bin", PDCrypto.tempFolder);
+    RandomAccessFile randomAccessFile = new RandomAccessFile(scratchFile, "rw");
+    PDDocument doc = null;
+    try
+    {
+      doc = digestDocument(randomAccessFile, digest);
+      return createRevision(doc, sigInterface, digest, prepared);
     }
     finally
     {
-      if (randomAccessFile != null)
+      if (doc != null)
       {
-        randomAccessFile.close();
+        doc.close();
       }
-      if (scratchFile != null && scratchFile.exists() && !scratchFile.delete())
+      randomAccessFile.close();
+      if (scratchFile.exists() && !scratchFile.delete())
       {
         scratchFile.deleteOnExit();
       }
     }
   }
 
+  private RevisionOutputStream createRevision(PDDocument doc, final CMSSigner sigInterface,
+      final MessageDigest digest, final PreparedSignature prepared) throws IOException, SignatureException,
+      COSVisitorException
+  {
+    final RevisionOutputStream revision = new RevisionOutputStream(crypto.source.length());
+    if (digest == null && prepared == null)
+    {
+      addSignature(doc, sigInterface, sigInterface);
+    }
+    else
+    {
+      addSignature(doc, sigInterface, new SignatureInterface()
+      {
+        public byte[] sign(InputStream content) throws SignatureException, IOException
+        {
+          byte[] contentDigest;
+          if (digest != null)
+          {
+            // the original document is already digested, only the revision is missing
+            revision.updateDigest(digest);
+            contentDigest = digest.digest();
+          }
+          else
+          {
+            MessageDigest contentDigester = sigInterface.createMessageDigest();
+            new DigestingInputStream(content, contentDigester).finish();
+            contentDigest = contentDigester.digest();
+          }
+
+          if (prepared == null)
+          {
+            return sigInterface.sign(contentDigest);
+          }
+          // the signature value is computed later, the Contents stay empty
+          prepared.setContentDigest(contentDigest);
+          return new byte[0];
+        }
+      });
+    }
+
+    // the signed content is the original document followed by the revision, as far as it is written
+    InputStream signedContent = new SequenceInputStream(crypto.source.createInputStream(), revision.createInputStream());
+    try
+    {
+      doc.saveIncremental(signedContent, revision);
+    }
+    finally
+    {
+      closeStream(signedContent);
+    }
+    if (prepared != null)
+    {
+      prepared.setByteRange(revision.getByteRange());
+    }
+    return revision;
+  }
+
+  /**
+   * Parse the document into the scratch file and update the digest with the original document while it is read. If
+   * no scratch file is given, the document is only digested.
+   */
+  private PDDocument digestDocument(RandomAccessFile scratch, MessageDigest digest) throws IOException
+  {
+    InputStream in = crypto.source.createInputStream();
+    try
+    {
+      if (digest == null)
+      {
+        return PDDocument.load(in, scratch);
+      }
+
+      DigestingInputStream digestingIn = new DigestingInputStream(in, digest);
+      PDDocument doc = scratch == null ? null : PDDocument.load(digestingIn, scratch);
+      if (digestingIn.finish() != crypto.source.length())
+      {
+        if (doc != null)
+        {
+          doc.close();
+        }
+        throw new IOException("Document was modified while signing");
+      }
+      return doc;
+    }
+    finally
+    {
+      closeStream(in);
+    }
+  }
+
+  private void addSignature(PDDocument doc, CMSSigner signer, SignatureInterface sigInterface) throws IOException,
+      SignatureException
+  {
+    // create signature dictionary
+    PDSignature signature = new PDSignature();
+    signature.setFilter(signer.getFilter());
+    signature.setSubFilter(signer.getSubfilter());
+    signature.setName(signerName);
+    signature.setLocation(signerLocation);
+    signature.setReason(signerReason);
+
+    // the signing date, needed for valid signature
+    signature.setSignDate(cal == null ? Calendar.getInstance() : cal);
+
+    // register signature dictionary and sign interface
+    if (options == null)
+    {
+      doc.addSignature(signature, sigInterface);
+    }
+    else
+    {
+      doc.addSignature(signature, sigInterface, options);
+    }
+  }
+
 }
@@ -16,8 +16,16 @@
  */
 package org.apache.pdfbox.crypto;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.pdfbox.crypto.bc.VerificationCache;
 import org.apache.pdfbox.crypto.bc.VerificationResult;
 import org.apache.pdfbox.crypto.exceptions.ReportInitializationException;
+import org.apache.pdfbox.crypto.io.StructuralTriage;
+import org.apache.pdfbox.crypto.vr.ReportFormat;
+import org.apache.pdfbox.crypto.vr.ReportFormatRegistry;
 import org.apache.pdfbox.crypto.vr.VerificationReport;
 import org.apache.pdfbox.crypto.vr.VerificationReportFactory;
 
@@ -46,10 +54,109 @@ public class VerificationBuilder
 
   }
 
-  public VerificationResult verify() {
-    return null;
+  /**
+   * @param executor the executor the signatures of the document are verified on. It will not be shut down. If no
+   *          executor is set, a thread pool is created for documents with several signatures.
+   */
+  public VerificationBuilder setExecutor(ExecutorService executor)
+  {
+    reportBuilder.setExecutor(executor);
+    return this;
   }
-  
+
+  /**
+   * @param cache the cache of verified signatures. Signatures found in the cache aren't verified again, only their
+   *          signer certificate is checked. It will not be closed.
+   */
+  public VerificationBuilder setCache(VerificationCache cache)
+  {
+    reportBuilder.setCache(cache);
+    return this;
+  }
+
+  /**
+   * Verifies all signatures of the document. Each signature is checked for a matching digest, a valid signature value
+   * and a valid signer certificate. Reports created by this builder use the same result.
+   * 
+   * @return the result for every signature of the document
+   * @throws IOException if the signatures can't be read from the document
+   */
+  public VerificationResult verify() throws IOException
+  {
+    return reportBuilder.getVerificationResult();
+  }
+
+  /**
+   * Verifies the signatures, that were appended to the document since an earlier verification. The results of the
+   * earlier signatures are reused, if the document is unchanged up to the end of their ByteRange. This is checked by a
+   * hash over the document, that is computed while the new signatures are digested. Reports created by this builder use
+   * the latest result. Another previous result verifies the document again, the same one returns the same result.
+   * 
+   * @param previous the result of an earlier verification of the document
+   * @return the result for every signature of the document
+   * @throws IOException if the signatures can't be read from the document
+   */
+  public VerificationResult verify(VerificationResult previous) throws IOException
+  {
+    return reportBuilder.getVerificationResult(previous);
+  }
+
+  /**
+   * Checks the byte structure of the signatures without parsing the document and without any cryptography. A document
+   * that fails can't be valid, a document that passes still has to be verified.
+   * 
+   * @return the result, that names the reason if the document is rejected
+   * @throws IOException if the document can't be read
+   */
+  public StructuralTriage.Result triage() throws IOException
+  {
+    return StructuralTriage.check(crypo.getSource());
+  }
+
+  /**
+   * Verifies the document and streams the simple report to the given stream, without building a JAXB document. The
+   * stream will not be closed.
+   * 
+   * @param out the stream the report is written to
+   * @throws IOException if the document can't be verified or the report can't be written
+   */
+  public void writeReport(OutputStream out) throws IOException
+  {
+    writeReport("xml", out);
+  }
+
+  /**
+   * Verifies the document and streams the report in the given format to the given stream. The stream will not be
+   * closed.
+   * 
+   * @param format the name of a format of the {@link ReportFormatRegistry}, like "xml", "json" or "ndjson"
+   * @param out the stream the report is written to
+   * @throws IllegalArgumentException if no format of that name is registered
+   * @throws IOException if the document can't be verified or the report can't be written
+   */
+  public void writeReport(String format, OutputStream out) throws IOException
+  {
+    ReportFormat reportFormat = ReportFormatRegistry.get(format);
+    if (reportFormat == null)
+    {
+      throw new IllegalArgumentException("Unknown report format " + format);
+    }
+    writeReport(reportFormat, out);
+  }
+
+  /**
+   * Verifies the document and streams the report in the given format, e.g. a writer configured with a certificate
+   * table. The stream will not be closed.
+   * 
+   * @param format the format of the report
+   * @param out the stream the report is written to
+   * @throws IOException if the document can't be verified or the report can't be written
+   */
+  public void writeReport(ReportFormat format, OutputStream out) throws IOException
+  {
+    format.write(reportBuilder, out);
+  }
+
   public VerificationReport createVerificationReport() throws ReportInitializationException
   {
     return VerificationReportFactory.createReportForClass(reportClass, reportBuilder);
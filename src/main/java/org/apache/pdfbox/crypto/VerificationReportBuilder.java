@@ -16,14 +16,33 @@
  */
 package org.apache.pdfbox.crypto;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
 
-import org.apache.pdfbox.pdfwriter.COSFilterInputStream;
-import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.crypto.bc.BC14x_VerificationInterface;
+import org.apache.pdfbox.crypto.bc.VerificationCache;
+import org.apache.pdfbox.crypto.bc.VerificationResult;
+import org.apache.pdfbox.crypto.core.Algorithms;
+import org.apache.pdfbox.crypto.core.CryptoEngine;
+import org.apache.pdfbox.crypto.io.ByteBufferInputStream;
+import org.apache.pdfbox.crypto.io.ByteRangeDigester;
+import org.apache.pdfbox.crypto.io.DocumentSource;
+import org.apache.pdfbox.crypto.io.SignatureLocator;
+import org.apache.pdfbox.exceptions.SignatureException;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
 
 /**
@@ -32,14 +51,34 @@ import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
 public class VerificationReportBuilder
 {
 
+  private final static Log LOG = LogFactory.getLog(VerificationReportBuilder.class);
+
+  /** the digest algorithm of the prefix hashes */
+  private static final String PREFIX_DIGEST = "SHA-256";
+
   private final PDCrypto crypto;
 
-  private final PDDocument doc;
+  private List<PDSignature> signatures;
+
+  private Map<PDSignature, Map<String, byte[]>> contentDigests;
+
+  private Map<PDSignature, byte[]> prefixHashes;
+
+  private ExecutorService executor;
+
+  private VerificationCache cache;
+
+  private VerificationResult verificationResult;
+
+  /** the previous result, the verification result was verified with */
+  private VerificationResult verificationBaseline;
+
+  /** guards the verification result, the verifying threads need the builder itself */
+  private final Object verificationLock = new Object();
 
   protected VerificationReportBuilder(PDCrypto crypto)
   {
     this.crypto = crypto;
-    doc = crypto.doc;
   }
 
   public static VerificationReportBuilder getInstance(PDCrypto crypto)
@@ -49,29 +88,310 @@ public class VerificationReportBuilder
 
   public String getFilename()
   {
-    return crypto.pdfFile.getName();
+    return crypto.source.getName();
   }
 
   public long getFileSize()
   {
-    return crypto.pdfFile.length();
+    return crypto.source.length();
+  }
+
+  /**
+   * @return the signatures of the document. The list is read once, so the same signature objects are returned on every
+   *         call. The signatures are located through the cross reference without parsing the whole document, if that
+   *         fails the document is parsed.
+   */
+  public synchronized List<PDSignature> getSignatures() throws IOException
+  {
+    if (signatures == null)
+    {
+      if (crypto.documentProvided)
+      {
+        signatures = crypto.getDoc().getSignatureDictionaries();
+      }
+      else
+      {
+        try
+        {
+          signatures = SignatureLocator.locate(crypto.source);
+        }
+        catch (IOException e)
+        {
+          LOG.debug("Signatures can't be located, parsing the document", e);
+          signatures = crypto.getDoc().getSignatureDictionaries();
+        }
+      }
+    }
+    return signatures;
+  }
+
+  void setExecutor(ExecutorService executor)
+  {
+    this.executor = executor;
+  }
+
+  void setCache(VerificationCache cache)
+  {
+    this.cache = cache;
+  }
+
+  /**
+   * @return the verification result of all signatures. The signatures are verified once, reports share the result.
+   */
+  public VerificationResult getVerificationResult() throws IOException
+  {
+    return getVerificationResult(null);
+  }
+
+  /**
+   * Verifies the signatures incrementally. The results of the previous verification are reused for the signatures,
+   * whose signed prefix of the document is unchanged, only the other signatures are verified.
+   * 
+   * <p>
+   * The result is kept for the reports. It is returned again for the same previous result and for null, which asks for
+   * any complete result. Another previous result verifies the signatures again on top of it.
+   * </p>
+   * 
+   * @param previous the result of an earlier verification of the same document or null, to verify all signatures
+   * @return the verification result of all signatures
+   */
+  public VerificationResult getVerificationResult(VerificationResult previous) throws IOException
+  {
+    synchronized (verificationLock)
+    {
+      if (verificationResult == null || previous != null && previous != verificationBaseline)
+      {
+        verificationResult = new BC14x_VerificationInterface(this, cache).verify(executor, previous);
+        verificationBaseline = previous;
+      }
+      return verificationResult;
+    }
+  }
+
+  /**
+   * @return the engine the signatures are verified with
+   */
+  public CryptoEngine getCryptoEngine()
+  {
+    return crypto.getCryptoEngine();
   }
 
-  public List<PDSignature> getSignatures() throws IOException
+  public DocumentSource getSource()
   {
-    return doc.getSignatureDictionaries();
+    return crypto.source;
   }
 
+  /**
+   * @return a stream over the signed content. It is served from the mapped document and holds no file descriptor.
+   */
   public InputStream getContentForSignature(PDSignature signature) throws IOException
   {
-    BufferedInputStream is = new BufferedInputStream(new FileInputStream(crypto.pdfFile));
-    return new COSFilterInputStream(is, signature.getByteRange());
+    int[] byteRange = getByteRange(signature);
+    Vector<InputStream> ranges = new Vector<InputStream>();
+    for (int i = 0; i + 1 < byteRange.length; i += 2)
+    {
+      ranges.add(new ByteBufferInputStream(crypto.source.map(byteRange[i], byteRange[i + 1])));
+    }
+    return new SequenceInputStream(ranges.elements());
   }
 
+  /**
+   * Updates the digest with the signed content. The ranges of the document are handed to the digest directly as mapped
+   * buffers.
+   * 
+   * @param signature the signature whose ByteRange is digested
+   * @param digest the digest that will be updated
+   * @throws IOException if the document can't be read
+   */
+  public void digestContent(PDSignature signature, MessageDigest digest) throws IOException
+  {
+    int[] byteRange = getByteRange(signature);
+    for (int i = 0; i + 1 < byteRange.length; i += 2)
+    {
+      digest.update(crypto.source.map(byteRange[i], byteRange[i + 1]));
+    }
+  }
+
+  /**
+   * Returns the digests of the signed content for every digest algorithm the signers of the signature use. On first
+   * access the content of all signatures is digested in a single pass over the document.
+   * 
+   * @param signature one of the signatures returned by {@link #getSignatures()}
+   * @return the digests by object identifier of the digest algorithm, empty if the signature can't be digested in one
+   *         pass or its contents can't be parsed
+   * @throws IOException if the document can't be read
+   */
+  public synchronized Map<String, byte[]> getContentDigests(PDSignature signature) throws IOException
+  {
+    digestSignatures(Collections.<PDSignature> emptySet());
+    Map<String, byte[]> digests = contentDigests.get(signature);
+    return digests == null ? Collections.<String, byte[]> emptyMap() : digests;
+  }
+
+  /**
+   * Returns the SHA-256 hash over the document from its start to the end of the ByteRange of the signature. It covers
+   * everything the signature signs, including its Contents, so an unchanged hash proves that the signature is
+   * unchanged. It is computed in the same pass as the content digests.
+   * 
+   * @param signature one of the signatures returned by {@link #getSignatures()}
+   * @return the hash or null, if the ByteRange doesn't start at the beginning of the document
+   * @throws IOException if the document can't be read
+   */
+  public synchronized byte[] getPrefixHash(PDSignature signature) throws IOException
+  {
+    digestSignatures(Collections.<PDSignature> emptySet());
+    return prefixHashes.get(signature);
+  }
+
+  /**
+   * Digests the signed content and the prefix of all signatures in a single pass over the document, unless that was
+   * done before. Only the prefix hash is computed for the given signatures, their content is digested on request.
+   * 
+   * @param prefixOnly the signatures, that will probably not be verified
+   * @throws IOException if the document can't be read
+   */
+  public synchronized void digestSignatures(Set<PDSignature> prefixOnly) throws IOException
+  {
+    if (contentDigests == null)
+    {
+      digestContents(getSignatures(), prefixOnly);
+    }
+  }
+
+  private void digestContents(List<PDSignature> signatures, Set<PDSignature> prefixOnly) throws IOException
+  {
+    ByteRangeDigester<DigestKey> digester = new ByteRangeDigester<DigestKey>();
+    CryptoEngine engine = getCryptoEngine();
+    for (PDSignature signature : signatures)
+    {
+      int[] byteRange = signature.getByteRange();
+      if (!isValidByteRange(byteRange))
+      {
+        // reported as error of this signature by the verification
+        continue;
+      }
+      try
+      {
+        if (byteRange[0] == 0)
+        {
+          digester.add(new DigestKey(signature, null), new int[] { 0, byteRange[2] + byteRange[3] },
+              engine.createMessageDigest(Algorithms.getDigestOID(PREFIX_DIGEST)));
+        }
+        if (prefixOnly.contains(signature))
+        {
+          continue;
+        }
+        for (String digestAlgorithm : engine.getDigestAlgorithms(getCMSSignature(signature)))
+        {
+          digester.add(new DigestKey(signature, digestAlgorithm), byteRange, engine.createMessageDigest(digestAlgorithm));
+        }
+      }
+      catch (SignatureException e)
+      {
+        // broken signature or unknown digest, it will be reported by the verification
+      }
+    }
+
+    Map<PDSignature, Map<String, byte[]>> result = new HashMap<PDSignature, Map<String, byte[]>>();
+    Map<PDSignature, byte[]> prefixes = new HashMap<PDSignature, byte[]>();
+    for (Map.Entry<DigestKey, byte[]> digest : digester.digest(crypto.source).entrySet())
+    {
+      PDSignature signature = digest.getKey().signature;
+      if (digest.getKey().digestAlgorithm == null)
+      {
+        prefixes.put(signature, digest.getValue());
+        continue;
+      }
+      Map<String, byte[]> digests = result.get(signature);
+      if (digests == null)
+      {
+        digests = new HashMap<String, byte[]>();
+        result.put(signature, digests);
+      }
+      digests.put(digest.getKey().digestAlgorithm, digest.getValue());
+    }
+    contentDigests = result;
+    prefixHashes = prefixes;
+  }
+
+  /**
+   * @return the signature contents, read from the gap between the first and second part of the ByteRange
+   */
   public byte[] getCMSSignature(PDSignature signature) throws IOException
   {
-    BufferedInputStream is = new BufferedInputStream(new FileInputStream(crypto.pdfFile));
-    return signature.getContents(is);
+    int[] byteRange = getByteRange(signature);
+    int gap = byteRange[0] + byteRange[1];
+    ByteBuffer contents = crypto.source.map(gap, byteRange[2] - gap);
+
+    ByteArrayOutputStream cms = new ByteArrayOutputStream(contents.remaining() / 2);
+    int high = -1;
+    while (contents.hasRemaining())
+    {
+      int digit = Character.digit(contents.get(), 16);
+      if (digit == -1)
+      {
+        // delimiters and whitespace
+        continue;
+      }
+      if (high == -1)
+      {
+        high = digit;
+      }
+      else
+      {
+        cms.write(high << 4 | digit);
+        high = -1;
+      }
+    }
+    return cms.toByteArray();
   }
 
+  /**
+   * @return the ByteRange of the signature
+   * @throws IOException if the ByteRange doesn't consist of two ascending ranges within the document
+   */
+  private int[] getByteRange(PDSignature signature) throws IOException
+  {
+    int[] byteRange = signature.getByteRange();
+    if (!isValidByteRange(byteRange))
+    {
+      throw new IOException("Invalid ByteRange " + Arrays.toString(byteRange));
+    }
+    return byteRange;
+  }
+
+  private boolean isValidByteRange(int[] byteRange)
+  {
+    if (byteRange.length != 4)
+    {
+      return false;
+    }
+    long previous = 0;
+    for (int i = 0; i < byteRange.length; i += 2)
+    {
+      if (byteRange[i] < previous || byteRange[i + 1] < 0)
+      {
+        return false;
+      }
+      previous = (long) byteRange[i] + byteRange[i + 1];
+    }
+    return previous <= crypto.source.length();
+  }
+
+  /**
+   * Identifies a digest of a signature, either of its ByteRange or of the prefix of the document it signs.
+   */
+  private static final class DigestKey
+  {
+    private final PDSignature signature;
+
+    /** the digest algorithm of the ByteRange or null, for the prefix hash */
+    private final String digestAlgorithm;
+
+    private DigestKey(PDSignature signature, String digestAlgorithm)
+    {
+      this.signature = signature;
+      this.digestAlgorithm = digestAlgorithm;
+    }
+  }
 }
@@ -29,8 +29,10 @@ import java.security.cert.X509Certificate;
 import java.util.Hashtable;
 import java.util.Map;
 
+import org.apache.pdfbox.crypto.core.CryptoPool;
 import org.apache.pdfbox.crypto.core.SignatureProvider;
 import org.bouncycastle.asn1.DERObjectIdentifier;
+import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.DERSet;
 import org.bouncycastle.asn1.cms.Attribute;
 import org.bouncycastle.asn1.cms.AttributeTable;
@@ -69,8 +71,20 @@ public class AttributeContainer
     this.signatureProvider = signatureProvider;
   }
 
-  @SuppressWarnings({ "rawtypes", "unchecked" })
   public CMSAttributeTableGenerator getSignedAttributes()
+  {
+    return getSignedAttributes(null);
+  }
+
+  /**
+   * Creates the signed attributes for a content digest that was computed outside of the cms generator. The message
+   * digest attribute will contain the given digest instead of the digest over the content handed to the generator.
+   * 
+   * @param contentDigest the digest of the signed content or null, if the generator should digest the content
+   * @return the generator for the signed attributes
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public CMSAttributeTableGenerator getSignedAttributes(final byte[] contentDigest)
   {
     return new DefaultSignedAttributeTableGenerator()
     {
@@ -86,6 +100,12 @@ public class AttributeContainer
 
         // add all our attributes to the hashtable
         tmp.putAll(signedAttributes);
+
+        if (contentDigest != null)
+        {
+          tmp.put(CMSAttributes.messageDigest, new Attribute(CMSAttributes.messageDigest, new DERSet(new DEROctetString(
+              contentDigest))));
+        }
         return tmp;
       }
     };
@@ -157,7 +177,7 @@ public class AttributeContainer
 
     try
     {
-      MessageDigest md = MessageDigest.getInstance("SHA-256", signatureProvider.getCrypoProvider());
+      MessageDigest md = CryptoPool.getMessageDigest("SHA-256", signatureProvider.getCrypoProvider());
 
       ESSCertIDv2[] essCertIds = new ESSCertIDv2[x509cert.length];
       for (int i = 0; i < x509cert.length; i++)
@@ -167,7 +187,6 @@ public class AttributeContainer
           X509Certificate x509Certificate = (X509Certificate) x509cert[i];
           byte[] cert = x509Certificate.getEncoded();
           byte[] digest = md.digest(cert);
-          md.reset();
 
           essCertIds[i] = new ESSCertIDv2(getAlgorithmIdentifierForOID(NISTObjectIdentifiers.id_sha256), digest);
         }
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.bc;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.cert.CertStoreException;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.pdfbox.crypto.core.CMSSignature;
+import org.apache.pdfbox.crypto.core.CMSSigner;
+import org.apache.pdfbox.crypto.core.CryptoEngine;
+import org.apache.pdfbox.crypto.core.KeyProvider;
+import org.apache.pdfbox.crypto.core.SignatureProvider;
+import org.apache.pdfbox.exceptions.SignatureException;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * The BouncyCastle 1.4x crypto engine, it is the default engine. The signatures are created from a
+ * {@link SigningProfile} and verified by the {@link SignatureHelper}, the "BC" provider has to be registered.
+ */
+public class BC14x_CryptoEngine implements CryptoEngine
+{
+  public String getName()
+  {
+    return "BC14x";
+  }
+
+  public MessageDigest createMessageDigest(String digestAlgorithm) throws SignatureException
+  {
+    try
+    {
+      return CryptoHelper.createMessageDigest(digestAlgorithm, BouncyCastleProvider.PROVIDER_NAME);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, e);
+    }
+    catch (NoSuchProviderException e)
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, e);
+    }
+  }
+
+  public CMSSigner createSigner(KeyProvider keyProvider, SignatureProvider signatureProvider) throws SignatureException
+  {
+    if ("Ed25519".equals(keyProvider.getKeyAlgorithm()))
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM,
+          "Ed25519 is not supported by BouncyCastle 1.4x, use the JCA or BC15x engine");
+    }
+    return new BC14x_SignatureInterface(SigningProfile.compile(keyProvider, signatureProvider));
+  }
+
+  /**
+   * A profile holds BouncyCastle 1.4x structures, so only this engine signs with it.
+   * 
+   * @param profile the compiled profile
+   * @return the signer for the profile
+   */
+  public CMSSigner createSigner(SigningProfile profile)
+  {
+    return new BC14x_SignatureInterface(profile);
+  }
+
+  public Set<String> getDigestAlgorithms(byte[] signature) throws SignatureException
+  {
+    try
+    {
+      return CryptoHelper.getDigestAlgorithms(signature);
+    }
+    catch (CMSException e)
+    {
+      throw new SignatureException(e);
+    }
+  }
+
+  public CMSSignature verify(byte[] signature, Map<String, byte[]> contentDigests) throws SignatureException
+  {
+    try
+    {
+      return new SignatureHelper(signature, contentDigests);
+    }
+    catch (CMSException e)
+    {
+      throw new SignatureException(e);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, e);
+    }
+    catch (NoSuchProviderException e)
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, e);
+    }
+    catch (CertStoreException e)
+    {
+      throw new SignatureException(e);
+    }
+  }
+}
@@ -16,40 +16,54 @@
  */
 package org.apache.pdfbox.crypto.bc;
 
+import static org.apache.pdfbox.crypto.core.CoreHelper.digest;
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
-import java.security.cert.CertStore;
 import java.security.cert.CertStoreException;
-import java.security.cert.Certificate;
-import java.security.cert.CollectionCertStoreParameters;
-import java.security.cert.X509Certificate;
-import java.util.Arrays;
-import java.util.List;
 
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.crypto.core.CMSSigner;
+import org.apache.pdfbox.crypto.core.CryptoPool;
 import org.apache.pdfbox.crypto.core.KeyProvider;
 import org.apache.pdfbox.crypto.core.SignatureProvider;
 import org.apache.pdfbox.exceptions.SignatureException;
-import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureInterface;
+import org.bouncycastle.asn1.ASN1Object;
+import org.bouncycastle.asn1.ASN1Set;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+import org.bouncycastle.asn1.cms.ContentInfo;
+import org.bouncycastle.asn1.cms.SignedData;
+import org.bouncycastle.asn1.cms.SignerInfo;
+import org.bouncycastle.cms.CMSAttributeTableGenerator;
 import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSProcessable;
+import org.bouncycastle.cms.CMSProcessableByteArray;
 import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.cms.CMSSignedDataGenerator;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 /**
  * A BouncyCastle 1.4x implementation of the SignatureInterface. It is guaranteed compatible up to BouncyCastle 1.46.
- * Higher versions will get an own implementation.
+ * Higher versions are supported by the {@link BC15x_CryptoEngine}.
  * 
  * @author Thomas Chojecki
  */
-public class BC14x_SignatureInterface implements SignatureInterface
+public class BC14x_SignatureInterface implements CMSSigner
 {
   private final KeyProvider keyProvider;
 
   private final SignatureProvider signatureProvider;
 
+  private SigningProfile profile;
+
   protected static String cryptoProvider = BouncyCastleProvider.PROVIDER_NAME;
 
   public BC14x_SignatureInterface(KeyProvider keyProvider, SignatureProvider signatureProvider)
@@ -58,30 +72,159 @@ public class BC14x_SignatureInterface implements SignatureInterface
     this.signatureProvider = signatureProvider;
   }
 
+  /**
+   * Creates a signature interface for a compiled profile. Nothing is computed again for the signatures.
+   */
+  public BC14x_SignatureInterface(SigningProfile profile)
+  {
+    this.keyProvider = null;
+    this.signatureProvider = null;
+    this.profile = requireNonNull(profile);
+  }
+
+  /**
+   * @return the profile of this interface, compiled from the providers with the first use
+   */
+  public synchronized SigningProfile getProfile() throws SignatureException
+  {
+    if (profile == null)
+    {
+      profile = SigningProfile.compile(keyProvider, signatureProvider);
+    }
+    return profile;
+  }
+
   public byte[] sign(InputStream content) throws SignatureException, IOException
   {
-    CMSProcessableInputStream input = new CMSProcessableInputStream(content);
-    CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
-    List<Certificate> certChainAsList = Arrays.asList(keyProvider.getCertificateChain());
+    SigningProfile profile = getProfile();
+    if (canSign(profile))
+    {
+      MessageDigest md = profile.createMessageDigest();
+      digest(content, md);
+      return sign(md.digest());
+    }
+    return generate(new CMSProcessableInputStream(content), profile.getSignedAttributes(null));
+  }
+
+  /**
+   * Creates the cms signature for content that was already digested, e.g. while it was written. The content is not
+   * read again, the digest is placed into the message digest attribute and only the signed attributes are signed.
+   * 
+   * @param contentDigest the digest of the signed content, computed with the digest algorithm of the signature provider
+   * @return the encoded cms signature
+   */
+  public byte[] sign(byte[] contentDigest) throws SignatureException, IOException
+  {
+    SigningProfile profile = getProfile();
+    if (canSign(profile))
+    {
+      byte[] signedAttributes = profile.getEncodedSignedAttributes(contentDigest);
+      try
+      {
+        return createSignature(signedAttributes, CryptoPool.sign(profile.getSignatureAlgorithm(), profile
+            .getKeyCryptoProvider(), profile.getPrivateKey(), signedAttributes));
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+        throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, e);
+      }
+      catch (NoSuchProviderException e)
+      {
+        throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, e);
+      }
+      catch (InvalidKeyException e)
+      {
+        throw new SignatureException(e);
+      }
+      catch (java.security.SignatureException e)
+      {
+        throw new SignatureException(e);
+      }
+    }
+    return generate(new CMSProcessableByteArray(new byte[0]), profile.getSignedAttributes(contentDigest));
+  }
+
+  /**
+   * The signed attributes of a profile with a known signature algorithm are signed with the pooled signature engine of
+   * the {@link CryptoPool}, the cms generator would look up its engines for every signature. Other keys are left to
+   * the generator.
+   */
+  private static boolean canSign(SigningProfile profile)
+  {
+    return profile.getSignatureAlgorithm() != null && profile.getPrivateKey() != null;
+  }
 
-    CertStore certStore = null;
+  /**
+   * Creates the signed attributes for a content digest in their DER encoding. This is what the signature value is
+   * computed over, so a key that is not accessible to this interface can sign them, see
+   * {@link #createSignature(byte[], byte[])}.
+   * 
+   * @param contentDigest the digest of the signed content, computed with the digest algorithm of the signature provider
+   * @return the DER encoded set of signed attributes
+   */
+  public byte[] getSignedAttributes(byte[] contentDigest) throws SignatureException
+  {
+    return getProfile().getEncodedSignedAttributes(contentDigest);
+  }
+
+  /**
+   * Assembles the cms signature from signed attributes and a signature value that was computed over them outside of
+   * this interface, e.g. by a remote signing service. The private key of the key provider is not used.
+   * 
+   * @param signedAttributes the signed attributes created by {@link #getSignedAttributes(byte[])}
+   * @param signatureValue the signature value over the signed attributes
+   * @return the encoded cms signature
+   */
+  public byte[] createSignature(byte[] signedAttributes, byte[] signatureValue) throws SignatureException, IOException
+  {
+    SigningProfile profile = getProfile();
+    AttributeTable unsigned = profile.getUnsignedAttributeTable();
+
+    SignerInfo signerInfo = new SignerInfo(profile.getSignerIdentifier(), profile.getDigestAlgorithmIdentifier(),
+        (ASN1Set) ASN1Object.fromByteArray(signedAttributes), profile.getEncryptionAlgorithmIdentifier(),
+        new DEROctetString(signatureValue), unsigned == null ? null : new DERSet(unsigned.toASN1EncodableVector()));
+
+    SignedData signedData = new SignedData(new DERSet(profile.getDigestAlgorithmIdentifier()), new ContentInfo(
+        CMSObjectIdentifiers.data, null), profile.getEncodedCertificates(), null, new DERSet(signerInfo));
+    return new ContentInfo(CMSObjectIdentifiers.signedData, signedData).getDEREncoded();
+  }
+
+  /**
+   * @return a new message digest for the digest algorithm of the signature provider, used to digest the signed content
+   *         for {@link #sign(byte[])}
+   */
+  public MessageDigest createMessageDigest() throws SignatureException
+  {
+    return getProfile().createMessageDigest();
+  }
+
+  public COSName getFilter() throws SignatureException
+  {
+    return getProfile().getFilter();
+  }
+
+  public COSName getSubfilter() throws SignatureException
+  {
+    return getProfile().getSubfilter();
+  }
+
+  private byte[] generate(CMSProcessable input, CMSAttributeTableGenerator signedAttributes) throws SignatureException,
+      IOException
+  {
+    SigningProfile profile = getProfile();
+    CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
     try
     {
-      certStore = CertStore.getInstance("Collection", new CollectionCertStoreParameters(certChainAsList), cryptoProvider);
-      gen.addSigner(keyProvider.getPrivKey(), 
-          (X509Certificate) keyProvider.getCertificateChain()[0], 
-          signatureProvider.getDigestAlgorithm(),
-          signatureProvider.getAttributeContainer().getSignedAttributes(), 
-          signatureProvider.getAttributeContainer().getUnsignedAttributes());
-      gen.addCertificatesAndCRLs(certStore);
+      gen.addSigner(profile.getPrivateKey(), 
+          profile.getSignerCertificate(), 
+          profile.getDigestAlgorithm(),
+          signedAttributes, 
+          profile.getUnsignedAttributes());
+      gen.addCertificatesAndCRLs(profile.getCertStore());
       
-      CMSSignedData signedData = gen.generate(input, false, keyProvider.getKeyCrypoProvider());
+      CMSSignedData signedData = gen.generate(input, false, profile.getKeyCryptoProvider());
       return signedData.getEncoded();
     }
-    catch (InvalidAlgorithmParameterException e)
-    {
-      throw new SignatureException(e);
-    }
     catch (NoSuchAlgorithmException e)
     {
       throw new SignatureException(e);
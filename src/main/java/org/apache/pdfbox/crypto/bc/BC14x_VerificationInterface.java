@@ -16,26 +16,271 @@
  */
 package org.apache.pdfbox.crypto.bc;
 
-import org.apache.pdfbox.crypto.PDCrypto;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.pdfbox.crypto.VerificationReportBuilder;
+import org.apache.pdfbox.crypto.bc.VerificationResult.SignatureResult;
+import org.apache.pdfbox.crypto.core.CryptoEngine;
+import org.apache.pdfbox.exceptions.SignatureException;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
 
 /**
- * A BouncyCastle 1.4x implementation of the SignatureInterface. It is guaranteed compatible up to BouncyCastle 1.46.
- * Higher versions will get an own implementation.
+ * The verification of the signatures of a document. The signers are verified by the crypto engine of the document,
+ * that is the BouncyCastle 1.4x engine unless another engine is set, see
+ * {@link org.apache.pdfbox.crypto.PDCrypto#setCryptoEngine(CryptoEngine)}.
  * 
  * @author Thomas Chojecki
  */
 public class BC14x_VerificationInterface
 {
-  protected static String cryptoProvider = BouncyCastleProvider.PROVIDER_NAME;
+  protected static String cryptoProvider = "BC"; // BouncyCastleProvider.PROVIDER_NAME, not loaded for other engines
+
+  private final VerificationReportBuilder builder;
+
+  private final VerificationCache cache;
+
+  private final CryptoEngine engine;
+
+  public BC14x_VerificationInterface(VerificationReportBuilder builder)
+  {
+    this(builder, null);
+  }
+
+  /**
+   * @param cache the cache of verified signatures or null, if every signature should be verified
+   */
+  public BC14x_VerificationInterface(VerificationReportBuilder builder, VerificationCache cache)
+  {
+    this.builder = builder;
+    this.cache = cache;
+    this.engine = builder.getCryptoEngine();
+  }
+
+  /**
+   * Verifies all signatures of the document. The signed content of all signatures is digested in one pass first, then
+   * the signatures are checked independently of each other on the executor.
+   * 
+   * @param executor the executor the signatures are checked on. If null, a thread pool is created for documents with
+   *          several signatures.
+   * @return the result for every signature
+   * @throws IOException if the signatures can't be read from the document
+   */
+  public VerificationResult verify(ExecutorService executor) throws IOException
+  {
+    return verify(executor, null);
+  }
+
+  /**
+   * Verifies the signatures, that were added since the previous verification. A previous result is reused, if the
+   * signature has the same ByteRange and the document up to the end of the ByteRange has the same hash. The hashes are
+   * computed in the pass that digests the new signatures, so the unchanged revisions are neither parsed nor verified.
+   * 
+   * @param executor the executor the signatures are checked on. If null, a thread pool is created for documents with
+   *          several signatures to verify.
+   * @param previous the result of an earlier verification of the document or null, to verify all signatures
+   * @return the result for every signature
+   * @throws IOException if the signatures can't be read from the document
+   */
+  public VerificationResult verify(ExecutorService executor, VerificationResult previous) throws IOException
+  {
+    final List<PDSignature> signatures = builder.getSignatures();
+    SignatureResult[] results = new SignatureResult[signatures.size()];
+
+    // the content of signatures that might be reused isn't digested, only their prefix
+    Map<PDSignature, SignatureResult> candidates = findCandidates(signatures, previous);
+    builder.digestSignatures(candidates.keySet());
+
+    List<Integer> pending = new ArrayList<Integer>(signatures.size());
+    for (int i = 0; i < results.length; i++)
+    {
+      SignatureResult candidate = candidates.get(signatures.get(i));
+      byte[] prefixHash = candidate == null ? null : candidate.getPrefixHash();
+      if (prefixHash != null && Arrays.equals(prefixHash, builder.getPrefixHash(signatures.get(i))))
+      {
+        results[i] = candidate.reuse(signatures.get(i));
+      }
+      else
+      {
+        pending.add(i);
+      }
+    }
 
-  private PDCrypto crypto;
-  
-  
-  public BC14x_VerificationInterface(PDCrypto crypto)
+    if (pending.size() == 1)
+    {
+      results[pending.get(0)] = verify(signatures.get(pending.get(0)));
+    }
+    else if (pending.size() > 1)
+    {
+      verify(signatures, pending, results, executor);
+    }
+    return new VerificationResult(Arrays.asList(results));
+  }
+
+  private void verify(List<PDSignature> signatures, List<Integer> pending, SignatureResult[] results,
+      ExecutorService executor) throws IOException
+  {
+    ExecutorService service = executor != null ? executor : Executors.newFixedThreadPool(Math.min(pending.size(),
+        Runtime.getRuntime().availableProcessors()));
+    try
+    {
+      List<Future<SignatureResult>> futures = new ArrayList<Future<SignatureResult>>(pending.size());
+      for (int i : pending)
+      {
+        final PDSignature signature = signatures.get(i);
+        futures.add(service.submit(new Callable<SignatureResult>()
+        {
+          public SignatureResult call()
+          {
+            return verify(signature);
+          }
+        }));
+      }
+      for (int i = 0; i < futures.size(); i++)
+      {
+        int index = pending.get(i);
+        try
+        {
+          results[index] = futures.get(i).get();
+        }
+        catch (ExecutionException e)
+        {
+          results[index] = new SignatureResult(signatures.get(index), e.getCause() instanceof Exception ? (Exception) e
+              .getCause() : e);
+        }
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while verifying the signatures");
+    }
+    finally
+    {
+      if (executor == null)
+      {
+        service.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Pairs the signatures with the previous results of the same ByteRange.
+   */
+  private static Map<PDSignature, SignatureResult> findCandidates(List<PDSignature> signatures,
+      VerificationResult previous)
   {
-    this.crypto = crypto;
+    Map<PDSignature, SignatureResult> candidates = new HashMap<PDSignature, SignatureResult>();
+    if (previous == null)
+    {
+      return candidates;
+    }
+    for (PDSignature signature : signatures)
+    {
+      int[] byteRange = signature.getByteRange();
+      for (SignatureResult result : previous.getSignatures())
+      {
+        if (Arrays.equals(byteRange, result.getByteRange()))
+        {
+          candidates.put(signature, result);
+          break;
+        }
+      }
+    }
+    return candidates;
   }
 
-  
+  /**
+   * Verifies a single signature against the digest of its signed content. If a cache is set, a signature that was
+   * verified before only gets its signer certificate checked again.
+   * 
+   * @param signature the signature of the document
+   * @return the result, that holds the error if the signature couldn't be verified
+   */
+  public SignatureResult verify(PDSignature signature)
+  {
+    try
+    {
+      return verifyCached(signature).withPrefix(signature.getByteRange(), builder.getPrefixHash(signature));
+    }
+    catch (IOException e)
+    {
+      return new SignatureResult(signature, e);
+    }
+    catch (RuntimeException e)
+    {
+      // a malformed cms signature, e.g. without signer or certificate, only fails this signature
+      return new SignatureResult(signature, e);
+    }
+  }
+
+  private SignatureResult verifyCached(PDSignature signature) throws IOException
+  {
+    if (cache == null)
+    {
+      return verifySignature(signature);
+    }
+
+    byte[] key = VerificationCache.createKey(builder.getContentDigests(signature), builder.getCMSSignature(signature));
+    if (key == null)
+    {
+      return verifySignature(signature);
+    }
+    SignatureResult result = cache.get(key, signature);
+    if (result == null)
+    {
+      result = verifySignature(signature);
+      cache.put(key, result);
+    }
+    return result;
+  }
+
+  private SignatureResult verifySignature(PDSignature signature)
+  {
+    try
+    {
+      byte[] cms = builder.getCMSSignature(signature);
+      return new SignatureResult(signature, engine.verify(cms, getContentDigests(signature, cms)));
+    }
+    catch (SignatureException e)
+    {
+      return new SignatureResult(signature, e);
+    }
+    catch (IOException e)
+    {
+      return new SignatureResult(signature, e);
+    }
+  }
+
+  /**
+   * The builder digests all signatures in one pass, the content of a signature it didn't digest is digested here.
+   */
+  private Map<String, byte[]> getContentDigests(PDSignature signature, byte[] cms) throws IOException,
+      SignatureException
+  {
+    Map<String, byte[]> digests = builder.getContentDigests(signature);
+    if (!digests.isEmpty())
+    {
+      return digests;
+    }
+    digests = new HashMap<String, byte[]>();
+    for (String digestAlgorithm : engine.getDigestAlgorithms(cms))
+    {
+      MessageDigest digest = engine.createMessageDigest(digestAlgorithm);
+      builder.digestContent(signature, digest);
+      digests.put(digestAlgorithm, digest.digest());
+    }
+    return digests;
+  }
 }
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.bc;
+
+import org.apache.pdfbox.crypto.jca.JcaCryptoEngine;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * <p>
+ * The crypto engine for BouncyCastle 1.47 and later. These versions dropped the cms generator API of the
+ * {@link BC14x_CryptoEngine}, so the engine only relies on the provider interface, which is the same for all versions.
+ * The cms structures are encoded with precomputed signed attributes like the {@link JcaCryptoEngine} does, every digest
+ * and signature is computed by the "BC" provider, which has to be registered.
+ * </p>
+ * <p>
+ * The engine is selected by {@link org.apache.pdfbox.crypto.PDCrypto} if such a BouncyCastle version is on the class
+ * path. Attributes of an attribute container are not supported.
+ * </p>
+ */
+public class BC15x_CryptoEngine extends JcaCryptoEngine
+{
+  /** the last version, that still provides the API of the {@link BC14x_CryptoEngine} */
+  public static final double BC14x_LAST_VERSION = 1.46;
+
+  public BC15x_CryptoEngine()
+  {
+    super(BouncyCastleProvider.PROVIDER_NAME);
+  }
+
+  @Override
+  public String getName()
+  {
+    return "BC15x";
+  }
+}
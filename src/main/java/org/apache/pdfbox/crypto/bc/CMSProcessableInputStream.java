@@ -17,6 +17,7 @@
 package org.apache.pdfbox.crypto.bc;
 
 import static org.apache.pdfbox.crypto.core.CoreHelper.closeStream;
+import static org.apache.pdfbox.crypto.core.CoreHelper.transfer;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -49,14 +50,9 @@ public class CMSProcessableInputStream implements CMSProcessable
   public void write(OutputStream out) throws IOException, CMSException
   {
     // read the content only one time
-    byte[] buffer = new byte[8 * 1024];
-    int read;
     try
     {
-      while ((read = in.read(buffer)) != -1)
-      {
-        out.write(buffer, 0, read);
-      }
+      transfer(in, out);
     }
     finally
     {
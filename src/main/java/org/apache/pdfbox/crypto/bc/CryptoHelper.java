@@ -17,23 +17,50 @@
 package org.apache.pdfbox.crypto.bc;
 
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
+import org.apache.pdfbox.crypto.core.Algorithms;
 import org.apache.pdfbox.pdfwriter.COSFilterInputStream;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
 import org.bouncycastle.asn1.DERObjectIdentifier;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cms.CMSException;
 import org.bouncycastle.cms.CMSProcessable;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
 
 /**
  * @author Thomas Chojecki
  */
 public class CryptoHelper
 {
-  public final static HashMap<DERObjectIdentifier, AlgorithmIdentifier> algorithms = new HashMap<DERObjectIdentifier, AlgorithmIdentifier>();
+  /**
+   * The AlgorithmIdentifiers of all supported digest and signature algorithms, see {@link Algorithms}. The registry is
+   * built when the class is loaded and never changed, so it can be read by any number of threads without locking.
+   */
+  public final static Map<DERObjectIdentifier, AlgorithmIdentifier> algorithms;
+
+  static
+  {
+    Map<DERObjectIdentifier, AlgorithmIdentifier> identifiers = new HashMap<DERObjectIdentifier, AlgorithmIdentifier>();
+    for (String oid : Algorithms.getOIDs())
+    {
+      DERObjectIdentifier identifier = new DERObjectIdentifier(oid);
+      identifiers.put(identifier, new AlgorithmIdentifier(identifier));
+    }
+    algorithms = Collections.unmodifiableMap(identifiers);
+  }
 
   /**
-   * Caches the AlgorithmIdentifier for ObjectIdentifier
+   * Returns the AlgorithmIdentifier for an ObjectIdentifier. Supported algorithms are served from the registry,
+   * identifiers for other algorithms are created but not cached.
    * 
    * @param oid is the requesting ObjectIdentifier
    * @return an AlgorithmIdentfier for an ObjectIndentifier
@@ -41,12 +68,55 @@ public class CryptoHelper
   public static AlgorithmIdentifier getAlgorithmIdentifierForOID(DERObjectIdentifier oid)
   {
     AlgorithmIdentifier algorithmIdentifier = algorithms.get(oid);
-    if (algorithmIdentifier == null)
+    return algorithmIdentifier != null ? algorithmIdentifier : new AlgorithmIdentifier(oid);
+  }
+
+  /**
+   * @see Algorithms#getDigestOID(String)
+   */
+  public static String getDigestOID(String digestAlgorithm)
+  {
+    return Algorithms.getDigestOID(digestAlgorithm);
+  }
+
+  /**
+   * @see Algorithms#getSignatureOID(String)
+   */
+  public static String getSignatureOID(String signatureAlgorithm)
+  {
+    return Algorithms.getSignatureOID(signatureAlgorithm);
+  }
+
+  /**
+   * @see Algorithms#getAlgorithmName(String)
+   */
+  public static String getAlgorithmName(String oid)
+  {
+    return Algorithms.getAlgorithmName(oid);
+  }
+
+  /**
+   * @see Algorithms#createMessageDigest(String, String)
+   */
+  public static MessageDigest createMessageDigest(String oid, String provider) throws NoSuchAlgorithmException,
+      NoSuchProviderException
+  {
+    return Algorithms.createMessageDigest(oid, provider);
+  }
+
+  /**
+   * @param signature the encoded cms signature
+   * @return the object identifiers of the digest algorithms, that are used by the signers
+   * @throws CMSException if the signature can't be parsed
+   */
+  public static Set<String> getDigestAlgorithms(byte[] signature) throws CMSException
+  {
+    Set<String> digestAlgorithms = new HashSet<String>();
+    for (Object signer : new CMSSignedData(signature).getSignerInfos().getSigners())
     {
-      algorithmIdentifier = new AlgorithmIdentifier(oid);
-      algorithms.put(oid, algorithmIdentifier);
+      digestAlgorithms.add(((SignerInformation) signer).getDigestAlgOID());
     }
-    return algorithmIdentifier;
+    return digestAlgorithms;
   }
 
   public static CMSProcessable getContent(PDSignature signature, InputStream input)
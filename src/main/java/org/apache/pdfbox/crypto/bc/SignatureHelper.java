@@ -16,25 +16,46 @@
  */
 package org.apache.pdfbox.crypto.bc;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.cert.CertStore;
 import java.security.cert.CertStoreException;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
 import java.security.cert.CertificateExpiredException;
+import java.security.cert.CertificateFactory;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.crypto.VerificationReportBuilder;
+import org.apache.pdfbox.crypto.core.Algorithms;
+import org.apache.pdfbox.crypto.core.CMSSignature;
+import org.apache.pdfbox.crypto.core.CertificateHelper;
+import org.apache.pdfbox.crypto.core.CryptoPool;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.DEREncodable;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.CMSAttributes;
+import org.bouncycastle.asn1.cms.Time;
 import org.bouncycastle.cms.CMSException;
 import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.cms.SignerInformation;
@@ -42,7 +63,7 @@ import org.bouncycastle.cms.SignerInformation;
 /**
  * @author Thomas Chojecki
  */
-public class SignatureHelper
+public class SignatureHelper implements CMSSignature
 {
 
   private final static Log LOG = LogFactory.getLog(SignatureHelper.class);
@@ -54,14 +75,51 @@ public class SignatureHelper
   protected final X509Certificate signerCertificate;
   protected final ArrayList<Certificate> certificateChain;
 
+  /** the digests of the signed content by digest algorithm, null if the content is digested by the cms parser */
+  private final Map<String, byte[]> contentDigests;
+
   public SignatureHelper(PDSignature signature, InputStream in) throws CMSException, NoSuchAlgorithmException, NoSuchProviderException, CertStoreException, FileNotFoundException
   {
-    this.signature = signature;
-    
-    COSString cosString = (COSString) signature.getDictionary().getDictionaryObject(COSName.CONTENTS);
-    byte[] signatureBytes = cosString.getBytes();
+    this(signature, new CMSSignedData(new CMSProcessableInputStream(in), getSignatureBytes(signature)), null);
+  }
+
+  /**
+   * Verifies the signature against the digest over the mapped document. The signed content isn't streamed through the
+   * cms parser, the ranges are digested directly.
+   */
+  public SignatureHelper(PDSignature signature, VerificationReportBuilder builder) throws CMSException, NoSuchAlgorithmException,
+      NoSuchProviderException, CertStoreException, IOException
+  {
+    this(signature, getSignatureBytes(signature), builder);
+  }
+
+  private SignatureHelper(PDSignature signature, byte[] signatureBytes, VerificationReportBuilder builder)
+      throws CMSException, NoSuchAlgorithmException, NoSuchProviderException, CertStoreException, IOException
+  {
+    this(signature, signatureBytes, getContentDigests(signature, signatureBytes, builder));
+  }
+
+  /**
+   * Verifies the signature against the digests of the signed content, the signature dictionary isn't known.
+   */
+  SignatureHelper(byte[] signatureBytes, Map<String, byte[]> contentDigests) throws CMSException,
+      NoSuchAlgorithmException, NoSuchProviderException, CertStoreException
+  {
+    this(null, signatureBytes, contentDigests);
+  }
 
-    signedData = new CMSSignedData(new CMSProcessableInputStream(in),signatureBytes);
+  private SignatureHelper(PDSignature signature, byte[] signatureBytes, Map<String, byte[]> contentDigests)
+      throws CMSException, NoSuchAlgorithmException, NoSuchProviderException, CertStoreException
+  {
+    this(signature, new CMSSignedData(contentDigests, signatureBytes), contentDigests);
+  }
+
+  private SignatureHelper(PDSignature signature, CMSSignedData signedData, Map<String, byte[]> contentDigests)
+      throws CMSException, NoSuchAlgorithmException, NoSuchProviderException, CertStoreException
+  {
+    this.signature = signature;
+    this.signedData = signedData;
+    this.contentDigests = contentDigests;
     signer = (SignerInformation) signedData.getSignerInfos().getSigners().iterator().next();
     cs = signedData.getCertificatesAndCRLs("Collection", "BC");
     Iterator iter = cs.getCertificates(signer.getSID()).iterator();
@@ -77,9 +135,33 @@ public class SignatureHelper
     }
   }
 
+  private static byte[] getSignatureBytes(PDSignature signature)
+  {
+    COSString cosString = (COSString) signature.getDictionary().getDictionaryObject(COSName.CONTENTS);
+    return cosString.getBytes();
+  }
+
+  private static Map<String, byte[]> getContentDigests(PDSignature signature, byte[] signatureBytes,
+      VerificationReportBuilder builder) throws CMSException, NoSuchAlgorithmException, NoSuchProviderException,
+      IOException
+  {
+    // the builder digests all signatures in one pass, only algorithms it doesn't know are digested here
+    Map<String, byte[]> digests = new HashMap<String, byte[]>(builder.getContentDigests(signature));
+    for (String digestAlgorithm : CryptoHelper.getDigestAlgorithms(signatureBytes))
+    {
+      if (!digests.containsKey(digestAlgorithm))
+      {
+        MessageDigest digest = CryptoHelper.createMessageDigest(digestAlgorithm, "BC");
+        builder.digestContent(signature, digest);
+        digests.put(digestAlgorithm, digest.digest());
+      }
+    }
+    return digests;
+  }
+
   public Calendar getSigningTime()
   {
-    return signature.getSignDate();
+    return signature == null ? null : signature.getSignDate();
   }
 
   public Certificate getSignerCertificate()
@@ -92,8 +174,95 @@ public class SignatureHelper
     return certificateChain.toArray(new Certificate[0]);
   }
 
+  /**
+   * @return true, if the message digest attribute matches the digest of the signed content. Without signed attributes
+   *         the digest is part of the signature value, it is checked by {@link #isSignatureValid()}.
+   */
+  public boolean isDigestMatching()
+  {
+    AttributeTable signedAttributes = signer.getSignedAttributes();
+    if (contentDigests == null || signedAttributes == null)
+    {
+      return isSignatureValid();
+    }
+    Attribute messageDigest = signedAttributes.get(CMSAttributes.messageDigest);
+    byte[] contentDigest = contentDigests.get(signer.getDigestAlgOID());
+    if (messageDigest == null || contentDigest == null)
+    {
+      return false;
+    }
+    DEREncodable value = messageDigest.getAttrValues().getObjectAt(0);
+    return value instanceof ASN1OctetString && Arrays.equals(((ASN1OctetString) value).getOctets(), contentDigest);
+  }
+
+  /**
+   * @return true, if the signature value is valid for the public key of the signer certificate. The validity period of
+   *         the certificate isn't checked.
+   */
+  public boolean isSignatureValid()
+  {
+    if (canVerifyPooled())
+    {
+      return verifyPooled();
+    }
+    try
+    {
+      return signer.verify(signerCertificate.getPublicKey(), "BC");
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    catch (NoSuchProviderException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    catch (CMSException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    return false;
+  }
+
+  /**
+   * @return true, if the signer certificate was valid at the signing time of the cms signature. Signatures without a
+   *         signing time attribute carry their signing time in the pdf structure, for them the certificate isn't
+   *         checked.
+   */
+  public boolean isCertificateValid()
+  {
+    return isCertificateValid(signerCertificate, getCMSSigningTime());
+  }
+
+  /**
+   * @return the signing time attribute of the cms signature or null, if the signing time is only part of the pdf
+   *         structure
+   */
+  public Date getCMSSigningTime()
+  {
+    AttributeTable signedAttributes = signer.getSignedAttributes();
+    Attribute signingTime = signedAttributes == null ? null : signedAttributes.get(CMSAttributes.signingTime);
+    if (signingTime == null)
+    {
+      return null;
+    }
+    return Time.getInstance(signingTime.getAttrValues().getObjectAt(0).getDERObject()).getDate();
+  }
+
+  /**
+   * @see CertificateHelper#isValidAt(X509Certificate, Date)
+   */
+  static boolean isCertificateValid(X509Certificate certificate, Date signingTime)
+  {
+    return CertificateHelper.isValidAt(certificate, signingTime);
+  }
+
   public boolean isMathematicalyValid()
   {
+    if (canVerifyPooled())
+    {
+      return isCertificateValid() && verifyPooled();
+    }
     try
     {
       return signer.verify(signerCertificate, "BC");
@@ -121,6 +290,73 @@ public class SignatureHelper
     return false;
   }
 
+  /**
+   * The signed attributes of a known signature algorithm are verified with the pooled signature engine of the
+   * {@link CryptoPool}, BouncyCastle would look up its engines for every signature. Ed25519 is always verified this way,
+   * BouncyCastle 1.4x doesn't know EdDSA.
+   */
+  private boolean canVerifyPooled()
+  {
+    return Algorithms.ED25519.equals(signer.getEncryptionAlgOID())
+        || (signer.getSignedAttributes() != null && contentDigests != null && getSignatureAlgorithm() != null);
+  }
+
+  private String getSignatureAlgorithm()
+  {
+    return Algorithms.getCMSSignatureAlgorithm(signer.getDigestAlgOID(), signer.getEncryptionAlgOID());
+  }
+
+  /**
+   * Verifies the signature over the signed attributes and the message digest attribute. An Ed25519 key is verified by
+   * the first provider that supports it, with the signer certificate parsed by the java runtime.
+   */
+  private boolean verifyPooled()
+  {
+    // without signed attributes the content itself is signed, it isn't available here
+    if (signer.getSignedAttributes() == null || contentDigests == null)
+    {
+      return false;
+    }
+    try
+    {
+      String signatureAlgorithm = getSignatureAlgorithm();
+      if (Algorithms.ED25519.equals(signer.getEncryptionAlgOID()))
+      {
+        Certificate certificate = CertificateFactory.getInstance("X.509").generateCertificate(
+            new ByteArrayInputStream(signerCertificate.getEncoded()));
+        return CryptoPool.verify(signatureAlgorithm, null, certificate.getPublicKey(),
+            signer.getEncodedSignedAttributes(), signer.getSignature()) && isDigestMatching();
+      }
+      return CryptoPool.verify(signatureAlgorithm, "BC", signerCertificate.getPublicKey(),
+          signer.getEncodedSignedAttributes(), signer.getSignature()) && isDigestMatching();
+    }
+    catch (CertificateException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    catch (NoSuchProviderException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    catch (InvalidKeyException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    catch (java.security.SignatureException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    catch (IOException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    return false;
+  }
+
   @Override
   public String toString()
   {
@@ -0,0 +1,389 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.bc;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+
+import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PrivateKey;
+import java.security.cert.CertStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.crypto.core.Algorithms;
+import org.apache.pdfbox.crypto.core.KeyProvider;
+import org.apache.pdfbox.crypto.core.SignatureProvider;
+import org.apache.pdfbox.exceptions.SignatureException;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Object;
+import org.bouncycastle.asn1.ASN1Set;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DERObjectIdentifier;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.CMSAttributes;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+import org.bouncycastle.asn1.cms.IssuerAndSerialNumber;
+import org.bouncycastle.asn1.cms.SignerIdentifier;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.TBSCertificateStructure;
+import org.bouncycastle.cms.CMSAttributeTableGenerationException;
+import org.bouncycastle.cms.CMSAttributeTableGenerator;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * <p>
+ * The state of a KeyProvider and a SignatureProvider, that is the same for every signature, compiled once. The
+ * certificate store, the encoded certificate chain, the algorithm identifiers and the static signed attributes are
+ * computed when the profile is compiled and shared by all signatures created with it.
+ * </p>
+ * <p>
+ * A profile is immutable and can be used by several threads at the same time. Later changes to the providers don't
+ * affect a compiled profile.
+ * </p>
+ */
+public final class SigningProfile
+{
+  private final PrivateKey privateKey;
+
+  private final String keyCryptoProvider;
+
+  private final String cryptoProvider;
+
+  private final Certificate[] certificateChain;
+
+  private final X509Certificate signerCertificate;
+
+  private final CertStore certStore;
+
+  private final ASN1Set encodedCertificates;
+
+  private final SignerIdentifier signerIdentifier;
+
+  private final String digestOID;
+
+  private final AlgorithmIdentifier digestAlgorithm;
+
+  /** null, if the cms signature can only be created by the cms generator */
+  private final AlgorithmIdentifier encryptionAlgorithm;
+
+  /** the JCA name of the signature algorithm, null if the cms signature can only be created by the cms generator */
+  private final String signatureAlgorithm;
+
+  private final Hashtable<DERObjectIdentifier, Attribute> signedAttributes;
+
+  private final AttributeTable unsignedAttributes;
+
+  private final COSName filter;
+
+  private final COSName subfilter;
+
+  private SigningProfile(KeyProvider keyProvider, SignatureProvider signatureProvider) throws SignatureException
+  {
+    privateKey = keyProvider.getPrivKey();
+    keyCryptoProvider = keyProvider.getKeyCrypoProvider();
+    cryptoProvider = signatureProvider.getCrypoProvider();
+    certificateChain = keyProvider.getCertificateChain().clone();
+    signerCertificate = (X509Certificate) certificateChain[0];
+    digestOID = signatureProvider.getDigestAlgorithm();
+    filter = signatureProvider.getFilter();
+    subfilter = signatureProvider.getSubfilter();
+
+    // a container, that was never accessed, holds the default attributes only
+    AttributeContainer attributeContainer = signatureProvider.hasAttributeContainer() ? signatureProvider
+        .getAttributeContainer() : signatureProvider.createAttributeContainer();
+    signedAttributes = createStaticAttributes(attributeContainer);
+    CMSAttributeTableGenerator unsigned = attributeContainer.getUnsignedAttributes();
+    try
+    {
+      unsignedAttributes = unsigned == null ? null : unsigned.getAttributes(Collections.EMPTY_MAP);
+
+      certStore = CertStore.getInstance("Collection", new CollectionCertStoreParameters(Arrays.asList(certificateChain)),
+          BouncyCastleProvider.PROVIDER_NAME);
+
+      ASN1EncodableVector certificates = new ASN1EncodableVector();
+      for (Certificate certificate : certificateChain)
+      {
+        certificates.add(ASN1Object.fromByteArray(certificate.getEncoded()));
+      }
+      encodedCertificates = new DERSet(certificates);
+
+      TBSCertificateStructure tbs = TBSCertificateStructure.getInstance(ASN1Object.fromByteArray(signerCertificate
+          .getTBSCertificate()));
+      signerIdentifier = new SignerIdentifier(new IssuerAndSerialNumber(tbs.getIssuer(), tbs.getSerialNumber()));
+    }
+    catch (CMSAttributeTableGenerationException e)
+    {
+      throw new SignatureException(e);
+    }
+    catch (InvalidAlgorithmParameterException e)
+    {
+      throw new SignatureException(e);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new SignatureException(e);
+    }
+    catch (NoSuchProviderException e)
+    {
+      throw new SignatureException(e);
+    }
+    catch (CertificateEncodingException e)
+    {
+      throw new SignatureException(e);
+    }
+    catch (IOException e)
+    {
+      throw new SignatureException(e);
+    }
+
+    digestAlgorithm = new AlgorithmIdentifier(new DERObjectIdentifier(digestOID), new DERNull());
+    encryptionAlgorithm = getEncryptionAlgorithm(keyProvider.getKeyAlgorithm(), digestOID);
+    signatureAlgorithm = encryptionAlgorithm == null ? null : Algorithms.getSignatureAlgorithm(digestOID, keyProvider
+        .getKeyAlgorithm());
+  }
+
+  /**
+   * Compiles the profile for the current state of both providers.
+   * 
+   * @param keyProvider the key and certificate chain to sign with
+   * @param signatureProvider the algorithms and attributes of the signatures
+   * @return the compiled profile
+   * @throws SignatureException if the certificate chain or the attributes can't be encoded
+   */
+  public static SigningProfile compile(KeyProvider keyProvider, SignatureProvider signatureProvider)
+      throws SignatureException
+  {
+    requireNonNull(keyProvider);
+    requireNonNull(signatureProvider);
+    return new SigningProfile(keyProvider, signatureProvider);
+  }
+
+  /**
+   * The signed attributes of the container without the attributes, that change with every signature. The signing time
+   * is removed, it shall be set as M entry inside the pdf structure.
+   */
+  @SuppressWarnings("unchecked")
+  private static Hashtable<DERObjectIdentifier, Attribute> createStaticAttributes(AttributeContainer attributeContainer)
+  {
+    Map<String, Object> parameters = new HashMap<String, Object>();
+    parameters.put(CMSAttributeTableGenerator.DIGEST, new byte[0]);
+    Hashtable<DERObjectIdentifier, Attribute> attributes = new Hashtable<DERObjectIdentifier, Attribute>();
+    try
+    {
+      attributes.putAll(attributeContainer.getSignedAttributes().getAttributes(parameters).toHashtable());
+    }
+    catch (CMSAttributeTableGenerationException e)
+    {
+      throw new IllegalStateException(e);
+    }
+    attributes.remove(CMSAttributes.signingTime);
+    attributes.remove(CMSAttributes.contentType);
+    attributes.remove(CMSAttributes.messageDigest);
+    return attributes;
+  }
+
+  /**
+   * The signature algorithm identifier the cms generator would use for the key.
+   */
+  private static AlgorithmIdentifier getEncryptionAlgorithm(String keyAlgorithm, String digestOID)
+  {
+    if ("RSA".equals(keyAlgorithm))
+    {
+      return new AlgorithmIdentifier(PKCSObjectIdentifiers.rsaEncryption, new DERNull());
+    }
+    if ("EC".equals(keyAlgorithm))
+    {
+      String signatureOID = Algorithms.getSignatureOID(Algorithms.getSignatureAlgorithm(digestOID, keyAlgorithm));
+      if (signatureOID != null)
+      {
+        return new AlgorithmIdentifier(new DERObjectIdentifier(signatureOID));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Creates the generator for the signed attributes of a signature. Only the content type and the message digest are
+   * added to the precomputed attributes.
+   * 
+   * @param contentDigest the digest of the signed content or null, if the cms generator digests the content
+   */
+  CMSAttributeTableGenerator getSignedAttributes(final byte[] contentDigest)
+  {
+    return new CMSAttributeTableGenerator()
+    {
+      @SuppressWarnings("rawtypes")
+      public AttributeTable getAttributes(Map parameters)
+      {
+        return createSignedAttributes((DERObjectIdentifier) parameters.get(CMSAttributeTableGenerator.CONTENT_TYPE),
+            contentDigest != null ? contentDigest : (byte[]) parameters.get(CMSAttributeTableGenerator.DIGEST));
+      }
+    };
+  }
+
+  @SuppressWarnings("unchecked")
+  private AttributeTable createSignedAttributes(DERObjectIdentifier contentType, byte[] contentDigest)
+  {
+    Hashtable<DERObjectIdentifier, Attribute> attributes = (Hashtable<DERObjectIdentifier, Attribute>) signedAttributes
+        .clone();
+    if (contentType != null)
+    {
+      attributes.put(CMSAttributes.contentType, new Attribute(CMSAttributes.contentType, new DERSet(contentType)));
+    }
+    attributes.put(CMSAttributes.messageDigest, new Attribute(CMSAttributes.messageDigest, new DERSet(
+        new DEROctetString(contentDigest))));
+    return new AttributeTable(attributes);
+  }
+
+  /**
+   * @return the DER encoded signed attributes of a detached signature over the given content digest
+   */
+  byte[] getEncodedSignedAttributes(byte[] contentDigest)
+  {
+    return new DERSet(createSignedAttributes(CMSObjectIdentifiers.data, contentDigest).toASN1EncodableVector())
+        .getDEREncoded();
+  }
+
+  CMSAttributeTableGenerator getUnsignedAttributes()
+  {
+    if (unsignedAttributes == null)
+    {
+      return null;
+    }
+    return new CMSAttributeTableGenerator()
+    {
+      @SuppressWarnings("rawtypes")
+      public AttributeTable getAttributes(Map parameters)
+      {
+        return unsignedAttributes;
+      }
+    };
+  }
+
+  AttributeTable getUnsignedAttributeTable()
+  {
+    return unsignedAttributes;
+  }
+
+  /**
+   * @return a new message digest for the digest algorithm of the profile
+   */
+  public MessageDigest createMessageDigest() throws SignatureException
+  {
+    try
+    {
+      return CryptoHelper.createMessageDigest(digestOID, cryptoProvider);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new SignatureException(e);
+    }
+    catch (NoSuchProviderException e)
+    {
+      throw new SignatureException(e);
+    }
+  }
+
+  PrivateKey getPrivateKey()
+  {
+    return privateKey;
+  }
+
+  String getKeyCryptoProvider()
+  {
+    return keyCryptoProvider;
+  }
+
+  X509Certificate getSignerCertificate()
+  {
+    return signerCertificate;
+  }
+
+  CertStore getCertStore()
+  {
+    return certStore;
+  }
+
+  ASN1Set getEncodedCertificates()
+  {
+    return encodedCertificates;
+  }
+
+  SignerIdentifier getSignerIdentifier()
+  {
+    return signerIdentifier;
+  }
+
+  AlgorithmIdentifier getDigestAlgorithmIdentifier()
+  {
+    return digestAlgorithm;
+  }
+
+  AlgorithmIdentifier getEncryptionAlgorithmIdentifier() throws SignatureException
+  {
+    if (encryptionAlgorithm == null)
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, "Unsupported key "
+          + signerCertificate.getPublicKey().getAlgorithm() + " for digest " + digestOID);
+    }
+    return encryptionAlgorithm;
+  }
+
+  /**
+   * @return the JCA name of the signature algorithm or null, if the signature can only be created by the cms generator
+   */
+  String getSignatureAlgorithm()
+  {
+    return signatureAlgorithm;
+  }
+
+  public String getDigestAlgorithm()
+  {
+    return digestOID;
+  }
+
+  public Certificate[] getCertificateChain()
+  {
+    return certificateChain.clone();
+  }
+
+  public COSName getFilter()
+  {
+    return filter;
+  }
+
+  public COSName getSubfilter()
+  {
+    return subfilter;
+  }
+}
@@ -0,0 +1,424 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.bc;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.closeStream;
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.crypto.bc.VerificationResult.SignatureResult;
+import org.apache.pdfbox.crypto.core.CertificateHelper;
+import org.apache.pdfbox.crypto.core.CryptoPool;
+import org.apache.pdfbox.crypto.core.PooledInputStream;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+
+/**
+ * <p>
+ * Remembers the cryptographic outcome of verified signatures, so a signature that was verified before isn't parsed and
+ * checked again. A signature is identified by a SHA-256 hash over the digests of its signed content and its cms
+ * signature, documents that differ anywhere in the ByteRange or the Contents never share an entry.
+ * </p>
+ * <p>
+ * Only the digest and the signature value are taken from the cache. The signer certificate is checked on every hit
+ * from the cached certificates, the same way an uncached signature is checked: it has to be valid at the signing time
+ * of the cms signature. Like the cached outcome, that answer doesn't change over time. Entries are dropped after the
+ * validity horizon, and the least recently used entries are evicted if the cache is full. The cache is kept in memory
+ * and written to its file by {@link #flush()} and {@link #close()}. It can be shared by several threads.
+ * </p>
+ */
+public class VerificationCache implements Closeable
+{
+  private static final Log LOG = LogFactory.getLog(VerificationCache.class);
+
+  /** Default number of cached signatures */
+  public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+  /** Default time a cached outcome is trusted, 30 days */
+  public static final long DEFAULT_HORIZON = 30L * 24 * 60 * 60 * 1000;
+
+  private static final int MAGIC = 0x50564331; // PVC1
+
+  /** the length of a key, a SHA-256 hash */
+  private static final int KEY_LENGTH = 32;
+
+  /** the length of a certificate, that is certainly not a certificate */
+  private static final int MAX_CERTIFICATE_LENGTH = 1024 * 1024;
+
+  private static final int FLAG_DIGEST_MATCHING = 1;
+
+  private static final int FLAG_SIGNATURE_VALID = 2;
+
+  private final File file;
+
+  private final long horizon;
+
+  private final Map<ByteBuffer, Entry> entries;
+
+  private boolean modified;
+
+  private long hits;
+
+  private long misses;
+
+  private VerificationCache(File file, final int maxEntries, long horizon)
+  {
+    this.file = file;
+    this.horizon = horizon;
+    this.entries = new LinkedHashMap<ByteBuffer, Entry>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Entry> eldest)
+      {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Opens the cache stored in the given file with the default size and horizon.
+   */
+  public static VerificationCache open(File file) throws IOException
+  {
+    return open(file, DEFAULT_MAX_ENTRIES, DEFAULT_HORIZON);
+  }
+
+  /**
+   * Opens the cache stored in the given file. A missing file is created by the first flush, a damaged file is ignored.
+   * 
+   * @param file the file the cache is loaded from and written to
+   * @param maxEntries the number of signatures kept, the least recently used are evicted
+   * @param horizon the time in milliseconds a cached outcome is trusted
+   * @return the cache
+   * @throws IOException if the file can't be read
+   */
+  public static VerificationCache open(File file, int maxEntries, long horizon) throws IOException
+  {
+    requireNonNull(file);
+    if (maxEntries < 1 || horizon < 0)
+    {
+      throw new IllegalArgumentException("The cache needs a positive size and horizon");
+    }
+    VerificationCache cache = new VerificationCache(file, maxEntries, horizon);
+    if (file.exists())
+    {
+      cache.load();
+    }
+    return cache;
+  }
+
+  /**
+   * Creates the key of a signature. It is a hash over the digests of the signed content, ordered by digest algorithm,
+   * and the cms signature.
+   * 
+   * @param contentDigests the digests of the ByteRange by digest algorithm
+   * @param cms the cms signature of the Contents
+   * @return the key or null, if the signed content wasn't digested
+   */
+  static byte[] createKey(Map<String, byte[]> contentDigests, byte[] cms)
+  {
+    if (contentDigests.isEmpty())
+    {
+      return null;
+    }
+    try
+    {
+      MessageDigest digest = CryptoPool.getMessageDigest("SHA-256", null);
+      for (Map.Entry<String, byte[]> contentDigest : new TreeMap<String, byte[]>(contentDigests).entrySet())
+      {
+        digest.update(contentDigest.getKey().getBytes("US-ASCII"));
+        digest.update(contentDigest.getValue());
+      }
+      digest.update(cms);
+      return digest.digest();
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    catch (NoSuchProviderException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    catch (IOException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    return null;
+  }
+
+  /**
+   * Looks up a signature. The validity of the cached signer certificate is checked again.
+   * 
+   * @return the result or null, if the signature isn't cached or the cached outcome is beyond the horizon
+   */
+  SignatureResult get(byte[] key, PDSignature signature)
+  {
+    Entry entry;
+    synchronized (this)
+    {
+      entry = entries.get(ByteBuffer.wrap(key));
+      if (entry != null && System.currentTimeMillis() - entry.created > horizon)
+      {
+        entries.remove(ByteBuffer.wrap(key));
+        modified = true;
+        entry = null;
+      }
+      if (entry == null)
+      {
+        misses++;
+        return null;
+      }
+      hits++;
+    }
+
+    try
+    {
+      CertificateFactory factory = CertificateFactory.getInstance("X.509");
+      Certificate[] certificates = new Certificate[entry.certificates.length];
+      for (int i = 0; i < certificates.length; i++)
+      {
+        certificates[i] = factory.generateCertificate(new ByteArrayInputStream(entry.certificates[i]));
+      }
+      Certificate[] chain = new Certificate[certificates.length - 1];
+      System.arraycopy(certificates, 1, chain, 0, chain.length);
+
+      Date signingTime = entry.signingTime < 0 ? null : new Date(entry.signingTime);
+      return new SignatureResult(signature, (entry.flags & FLAG_DIGEST_MATCHING) != 0,
+          (entry.flags & FLAG_SIGNATURE_VALID) != 0, CertificateHelper.isValidAt(
+              (X509Certificate) certificates[0], signingTime), certificates[0], chain, signingTime);
+    }
+    catch (CertificateException e)
+    {
+      // the entry is unusable, the signature is verified again
+      LOG.warn(e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Stores the outcome of a verified signature. Results with an error are not cached.
+   */
+  void put(byte[] key, SignatureResult result)
+  {
+    if (result.getError() != null || result.getSignerCertificate() == null)
+    {
+      return;
+    }
+    Entry entry = new Entry();
+    entry.created = System.currentTimeMillis();
+    Date signingTime = result.getCMSSigningTime();
+    entry.signingTime = signingTime == null ? -1 : signingTime.getTime();
+    entry.flags = (result.isDigestMatching() ? FLAG_DIGEST_MATCHING : 0)
+        | (result.isSignatureValid() ? FLAG_SIGNATURE_VALID : 0);
+    Certificate[] chain = result.getCertificateChain();
+    entry.certificates = new byte[chain.length + 1][];
+    try
+    {
+      entry.certificates[0] = result.getSignerCertificate().getEncoded();
+      for (int i = 0; i < chain.length; i++)
+      {
+        entry.certificates[i + 1] = chain[i].getEncoded();
+      }
+    }
+    catch (CertificateEncodingException e)
+    {
+      LOG.warn(e.getMessage());
+      return;
+    }
+    synchronized (this)
+    {
+      entries.put(ByteBuffer.wrap(key.clone()), entry);
+      modified = true;
+    }
+  }
+
+  /**
+   * @return the number of cached signatures
+   */
+  public synchronized int size()
+  {
+    return entries.size();
+  }
+
+  /**
+   * @return the number of lookups, that were answered by the cache
+   */
+  public synchronized long getHits()
+  {
+    return hits;
+  }
+
+  /**
+   * @return the number of lookups, that had to verify the signature
+   */
+  public synchronized long getMisses()
+  {
+    return misses;
+  }
+
+  /**
+   * Writes the cache to its file, if it was modified. The cache is written into a temporary file, that replaces the old
+   * file at once, so a crash while writing leaves the old file intact. Only on platforms, where a rename can't replace
+   * a file, the old file is deleted before the rename.
+   */
+  public synchronized void flush() throws IOException
+  {
+    if (!modified)
+    {
+      return;
+    }
+    File tmp = new File(file.getPath() + ".tmp");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+    try
+    {
+      out.writeInt(MAGIC);
+      out.writeInt(entries.size());
+      // least recently used first, so the order survives loading
+      for (Map.Entry<ByteBuffer, Entry> e : entries.entrySet())
+      {
+        byte[] key = e.getKey().array();
+        Entry entry = e.getValue();
+        out.writeByte(key.length);
+        out.write(key);
+        out.writeLong(entry.created);
+        out.writeLong(entry.signingTime);
+        out.writeByte(entry.flags);
+        out.writeShort(entry.certificates.length);
+        for (byte[] certificate : entry.certificates)
+        {
+          out.writeInt(certificate.length);
+          out.write(certificate);
+        }
+      }
+    }
+    finally
+    {
+      closeStream(out);
+    }
+    // the rename replaces the old file at once, only where it can't replace an existing file (e.g. on Windows) the old
+    // file is deleted first
+    if (!tmp.renameTo(file) && (!file.delete() || !tmp.renameTo(file)))
+    {
+      throw new IOException("The cache can't be written to " + file);
+    }
+    modified = false;
+  }
+
+  /**
+   * Writes the cache to its file.
+   */
+  public void close() throws IOException
+  {
+    flush();
+  }
+
+  private void load() throws IOException
+  {
+    DataInputStream in = new DataInputStream(new PooledInputStream(new FileInputStream(file)));
+    try
+    {
+      if (in.readInt() != MAGIC)
+      {
+        LOG.warn("Ignoring the unknown cache file " + file);
+        return;
+      }
+      long now = System.currentTimeMillis();
+      for (int n = in.readInt(); n > 0; n--)
+      {
+        byte[] key = new byte[checkLength(in.readUnsignedByte(), KEY_LENGTH, KEY_LENGTH)];
+        in.readFully(key);
+        Entry entry = new Entry();
+        entry.created = in.readLong();
+        entry.signingTime = in.readLong();
+        entry.flags = in.readByte();
+        entry.certificates = new byte[in.readUnsignedShort()][];
+        for (int i = 0; i < entry.certificates.length; i++)
+        {
+          entry.certificates[i] = new byte[checkLength(in.readInt(), 1, MAX_CERTIFICATE_LENGTH)];
+          in.readFully(entry.certificates[i]);
+        }
+        if (entry.certificates.length > 0 && now - entry.created <= horizon)
+        {
+          entries.put(ByteBuffer.wrap(key), entry);
+        }
+      }
+    }
+    catch (EOFException e)
+    {
+      LOG.warn("Ignoring the rest of the truncated cache file " + file);
+    }
+    catch (StreamCorruptedException e)
+    {
+      LOG.warn("Ignoring the rest of the damaged cache file " + file + ": " + e.getMessage());
+    }
+    finally
+    {
+      closeStream(in);
+    }
+  }
+
+  private static int checkLength(int length, int min, int max) throws StreamCorruptedException
+  {
+    if (length < min || length > max)
+    {
+      throw new StreamCorruptedException("Invalid length " + length);
+    }
+    return length;
+  }
+
+  /**
+   * A cached outcome. The certificates are kept encoded, signer certificate first, and decoded on a hit.
+   */
+  private static class Entry
+  {
+    long created;
+
+    long signingTime;
+
+    int flags;
+
+    byte[][] certificates;
+  }
+}
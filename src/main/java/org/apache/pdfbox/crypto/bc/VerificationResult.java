@@ -1,6 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
 package org.apache.pdfbox.crypto.bc;
 
+import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.pdfbox.crypto.core.CMSSignature;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+
+/**
+ * The result of the verification of all signatures of a document.
+ */
 public class VerificationResult
 {
+  private final List<SignatureResult> signatures;
+
+  public VerificationResult(List<SignatureResult> signatures)
+  {
+    this.signatures = Collections.unmodifiableList(signatures);
+  }
+
+  /**
+   * @return the results in the order of the signatures in the document
+   */
+  public List<SignatureResult> getSignatures()
+  {
+    return signatures;
+  }
+
+  /**
+   * @return true, if the document is signed and all signatures are valid
+   */
+  public boolean isValid()
+  {
+    for (SignatureResult signature : signatures)
+    {
+      if (!signature.isValid())
+      {
+        return false;
+      }
+    }
+    return !signatures.isEmpty();
+  }
+
+  /**
+   * The result of the verification of a single signature.
+   */
+  public static class SignatureResult
+  {
+    private final PDSignature signature;
+
+    private final boolean digestMatching;
+
+    private final boolean signatureValid;
+
+    private final boolean certificateValid;
+
+    private final Certificate signerCertificate;
+
+    private final Certificate[] certificateChain;
+
+    private final Date signingTime;
+
+    private final Exception error;
+
+    private final int[] byteRange;
+
+    private final byte[] prefixHash;
+
+    private final boolean reused;
+
+    SignatureResult(PDSignature signature, CMSSignature signer)
+    {
+      this(signature, signer.isDigestMatching(), signer.isSignatureValid(), signer.isCertificateValid(), signer
+          .getSignerCertificate(), signer.getCertificateChain(), signer.getCMSSigningTime());
+    }
+
+    SignatureResult(PDSignature signature, boolean digestMatching, boolean signatureValid, boolean certificateValid,
+        Certificate signerCertificate, Certificate[] certificateChain, Date signingTime)
+    {
+      this.signature = signature;
+      this.digestMatching = digestMatching;
+      this.signatureValid = signatureValid;
+      this.certificateValid = certificateValid;
+      this.signerCertificate = signerCertificate;
+      this.certificateChain = certificateChain;
+      this.signingTime = signingTime;
+      this.error = null;
+      this.byteRange = null;
+      this.prefixHash = null;
+      this.reused = false;
+    }
+
+    SignatureResult(PDSignature signature, Exception error)
+    {
+      this.signature = signature;
+      this.digestMatching = false;
+      this.signatureValid = false;
+      this.certificateValid = false;
+      this.signerCertificate = null;
+      this.certificateChain = new Certificate[0];
+      this.signingTime = null;
+      this.error = error;
+      this.byteRange = null;
+      this.prefixHash = null;
+      this.reused = false;
+    }
+
+    private SignatureResult(SignatureResult result, PDSignature signature, int[] byteRange, byte[] prefixHash,
+        boolean reused)
+    {
+      this.signature = signature;
+      this.digestMatching = result.digestMatching;
+      this.signatureValid = result.signatureValid;
+      this.certificateValid = result.certificateValid;
+      this.signerCertificate = result.signerCertificate;
+      this.certificateChain = result.certificateChain;
+      this.signingTime = result.signingTime;
+      this.error = result.error;
+      this.byteRange = byteRange;
+      this.prefixHash = prefixHash;
+      this.reused = reused;
+    }
+
+    /**
+     * @return a copy of this result, that knows the signed prefix of the document
+     */
+    SignatureResult withPrefix(int[] byteRange, byte[] prefixHash)
+    {
+      return new SignatureResult(this, signature, byteRange, prefixHash, reused);
+    }
+
+    /**
+     * @return a copy of this result for the same signature in a newer revision of the document
+     */
+    SignatureResult reuse(PDSignature signature)
+    {
+      return new SignatureResult(this, signature, byteRange, prefixHash, true);
+    }
+
+    public PDSignature getSignature()
+    {
+      return signature;
+    }
+
+    /**
+     * @return true, if the digest of the signed content matches the digest the signer signed
+     */
+    public boolean isDigestMatching()
+    {
+      return digestMatching;
+    }
+
+    /**
+     * @return true, if the cms signature value is valid for the signer certificate
+     */
+    public boolean isSignatureValid()
+    {
+      return signatureValid;
+    }
+
+    /**
+     * @return true, if the signer certificate was valid at the signing time of the cms signature, see
+     *         {@link CMSSignature#isCertificateValid()}
+     */
+    public boolean isCertificateValid()
+    {
+      return certificateValid;
+    }
+
+    /**
+     * @return true, if the digest matches, the signature value is valid and the signer certificate is valid
+     */
+    public boolean isValid()
+    {
+      return digestMatching && signatureValid && certificateValid;
+    }
+
+    /**
+     * @return the signer certificate or null, if the cms signature couldn't be read
+     */
+    public Certificate getSignerCertificate()
+    {
+      return signerCertificate;
+    }
+
+    public Certificate[] getCertificateChain()
+    {
+      return certificateChain.clone();
+    }
+
+    /**
+     * @return the signing time attribute of the cms signature or null, if it has none
+     */
+    public Date getCMSSigningTime()
+    {
+      return signingTime == null ? null : (Date) signingTime.clone();
+    }
+
+    /**
+     * @return the ByteRange of the signature or null, if it is unknown
+     */
+    public int[] getByteRange()
+    {
+      return byteRange == null ? null : byteRange.clone();
+    }
+
+    /**
+     * @return the hash over the document up to the end of the ByteRange or null, if it is unknown. See
+     *         {@link org.apache.pdfbox.crypto.VerificationReportBuilder#getPrefixHash(PDSignature)}
+     */
+    public byte[] getPrefixHash()
+    {
+      return prefixHash == null ? null : prefixHash.clone();
+    }
+
+    /**
+     * @return true, if the result was taken over from a previous verification, because the signed prefix of the
+     *         document is unchanged
+     */
+    public boolean isReused()
+    {
+      return reused;
+    }
 
+    /**
+     * @return the reason the signature couldn't be verified or null, if it was verified
+     */
+    public Exception getError()
+    {
+      return error;
+    }
+  }
 }
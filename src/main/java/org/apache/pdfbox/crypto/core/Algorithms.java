@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.core;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The object identifiers and JCA names of all supported digest and signature algorithms. The registry doesn't depend on
+ * a crypto library, so every crypto engine can use it. It is built when the class is loaded and never changed, so it
+ * can be read by any number of threads without locking.
+ */
+public final class Algorithms
+{
+  /** the object identifier of the Ed25519 key and signature algorithm */
+  public static final String ED25519 = "1.3.101.112";
+
+  /** the digest algorithm of the message digest attribute of Ed25519 signatures, see RFC 8419 */
+  private static final String ED25519_DIGEST = "2.16.840.1.101.3.4.2.3";
+
+  private final static Map<String, String> digestOIDs;
+
+  private final static Map<String, String> signatureOIDs;
+
+  private final static Map<String, String> algorithmNames;
+
+  static
+  {
+    Registry registry = new Registry();
+    registry.digest("1.3.14.3.2.26", "SHA-1", "SHA1");
+    registry.digest("2.16.840.1.101.3.4.2.4", "SHA-224", "SHA224");
+    registry.digest("2.16.840.1.101.3.4.2.1", "SHA-256", "SHA256");
+    registry.digest("2.16.840.1.101.3.4.2.2", "SHA-384", "SHA384");
+    registry.digest("2.16.840.1.101.3.4.2.3", "SHA-512", "SHA512");
+    registry.digest("1.2.840.113549.2.5", "MD5");
+    registry.digest("1.3.36.3.2.1", "RIPEMD160", "RIPEMD-160");
+
+    registry.signature("1.2.840.113549.1.1.1", "RSA");
+    registry.signature("1.2.840.113549.1.1.4", "MD5withRSA");
+    registry.signature("1.2.840.113549.1.1.5", "SHA1withRSA");
+    registry.signature("1.2.840.113549.1.1.14", "SHA224withRSA");
+    registry.signature("1.2.840.113549.1.1.11", "SHA256withRSA");
+    registry.signature("1.2.840.113549.1.1.12", "SHA384withRSA");
+    registry.signature("1.2.840.113549.1.1.13", "SHA512withRSA");
+    registry.signature("1.3.36.3.3.1.2", "RIPEMD160withRSA");
+    registry.signature("1.2.840.10045.2.1", "ECDSA", "EC");
+    registry.signature("1.2.840.10045.4.1", "SHA1withECDSA");
+    registry.signature("1.2.840.10045.4.3.1", "SHA224withECDSA");
+    registry.signature("1.2.840.10045.4.3.2", "SHA256withECDSA");
+    registry.signature("1.2.840.10045.4.3.3", "SHA384withECDSA");
+    registry.signature("1.2.840.10045.4.3.4", "SHA512withECDSA");
+    registry.signature("1.2.840.10040.4.1", "DSA");
+    registry.signature("1.2.840.10040.4.3", "SHA1withDSA");
+    registry.signature(ED25519, "Ed25519");
+
+    digestOIDs = Collections.unmodifiableMap(registry.digests);
+    signatureOIDs = Collections.unmodifiableMap(registry.signatures);
+    algorithmNames = Collections.unmodifiableMap(registry.names);
+  }
+
+  private Algorithms()
+  {}
+
+  /**
+   * @param digestAlgorithm the JCA name of a digest algorithm like "SHA-256", its alias like "SHA256" or its object
+   *          identifier
+   * @return the object identifier of the digest algorithm or null, if the algorithm isn't supported
+   */
+  public static String getDigestOID(String digestAlgorithm)
+  {
+    return lookup(digestOIDs, digestAlgorithm);
+  }
+
+  /**
+   * @param signatureAlgorithm the JCA name of a signature algorithm like "SHA256withRSA" or its object identifier
+   * @return the object identifier of the signature algorithm or null, if the algorithm isn't supported
+   */
+  public static String getSignatureOID(String signatureAlgorithm)
+  {
+    return lookup(signatureOIDs, signatureAlgorithm);
+  }
+
+  /**
+   * @param oid the object identifier of a digest or signature algorithm
+   * @return the JCA name of the algorithm or null, if the algorithm isn't supported
+   */
+  public static String getAlgorithmName(String oid)
+  {
+    return algorithmNames.get(oid);
+  }
+
+  /**
+   * @param signatureAlgorithm the JCA name of a signature algorithm like "SHA384withECDSA" or "Ed25519"
+   * @return the object identifier of the digest algorithm, the signature algorithm is used with, or null if it is
+   *         unknown
+   */
+  public static String getDigestOIDForSignature(String signatureAlgorithm)
+  {
+    if (signatureAlgorithm == null)
+    {
+      return null;
+    }
+    if ("Ed25519".equalsIgnoreCase(signatureAlgorithm))
+    {
+      return ED25519_DIGEST;
+    }
+    int with = signatureAlgorithm.toUpperCase(Locale.ENGLISH).indexOf("WITH");
+    return with < 0 ? null : getDigestOID(signatureAlgorithm.substring(0, with));
+  }
+
+  /**
+   * The key algorithm as it is used to choose the signature algorithm. EC keys are named "EC", EdDSA keys by their
+   * curve, which providers only tell by the object identifier in the encoded key.
+   * 
+   * @param publicKey the public key of the signer
+   * @return the key algorithm like "RSA", "EC" or "Ed25519"
+   */
+  public static String getKeyAlgorithm(PublicKey publicKey)
+  {
+    String algorithm = publicKey.getAlgorithm();
+    if ("ECDSA".equals(algorithm))
+    {
+      return "EC";
+    }
+    if ("EdDSA".equals(algorithm))
+    {
+      // SubjectPublicKeyInfo: SEQUENCE { SEQUENCE { OID 1.3.101.112 } BIT STRING }
+      byte[] encoded = publicKey.getEncoded();
+      if (encoded != null && encoded.length > 8 && encoded[4] == 0x06 && encoded[5] == 0x03 && encoded[6] == 0x2B
+          && encoded[7] == 0x65 && encoded[8] == 0x70)
+      {
+        return "Ed25519";
+      }
+    }
+    return algorithm;
+  }
+
+  /**
+   * @param digestOID the object identifier of the digest algorithm
+   * @param keyAlgorithm the key algorithm, see {@link #getKeyAlgorithm(PublicKey)}
+   * @return the JCA name of the signature algorithm like "SHA256withECDSA" or null, if the combination isn't supported.
+   *         Ed25519 signs the message itself, the digest algorithm doesn't change the signature algorithm.
+   */
+  public static String getSignatureAlgorithm(String digestOID, String keyAlgorithm)
+  {
+    if ("Ed25519".equals(keyAlgorithm))
+    {
+      return keyAlgorithm;
+    }
+    String digest = algorithmNames.get(digestOID);
+    if (digest == null || keyAlgorithm == null)
+    {
+      return null;
+    }
+    String name = digest.replace("-", "") + "with" + ("EC".equals(keyAlgorithm) ? "ECDSA" : keyAlgorithm);
+    return getSignatureOID(name) != null ? name : null;
+  }
+
+  /**
+   * @param digestOID the digest algorithm of a cms signer
+   * @param signatureOID the signature algorithm of a cms signer, either a key algorithm like rsaEncryption or a
+   *          signature algorithm like ecdsa-with-SHA256
+   * @return the JCA name of the signature algorithm over the signed attributes or null, if it isn't supported
+   */
+  public static String getCMSSignatureAlgorithm(String digestOID, String signatureOID)
+  {
+    String name = algorithmNames.get(signatureOID);
+    if (name == null)
+    {
+      return null;
+    }
+    int with = name.indexOf("with");
+    String keyAlgorithm = with < 0 ? name : name.substring(with + 4);
+    return getSignatureAlgorithm(digestOID, "ECDSA".equals(keyAlgorithm) ? "EC" : keyAlgorithm);
+  }
+
+  /**
+   * @return the object identifiers of all supported algorithms
+   */
+  public static Set<String> getOIDs()
+  {
+    return algorithmNames.keySet();
+  }
+
+  /**
+   * Creates a message digest for an object identifier. The digest is requested by its JCA name, so providers that
+   * don't register the object identifiers as aliases work too. It is cloned from the prototype of the
+   * {@link CryptoPool}.
+   * 
+   * @param oid the object identifier of the digest algorithm
+   * @param provider the provider of the digest or null, for the first provider that supports it
+   * @return a new message digest
+   */
+  public static MessageDigest createMessageDigest(String oid, String provider) throws NoSuchAlgorithmException,
+      NoSuchProviderException
+  {
+    String name = algorithmNames.get(oid);
+    return CryptoPool.getMessageDigest(name != null ? name : oid, provider);
+  }
+
+  private static String lookup(Map<String, String> oids, String algorithm)
+  {
+    if (algorithm == null)
+    {
+      return null;
+    }
+    String oid = oids.get(algorithm);
+    return oid != null ? oid : oids.get(algorithm.toUpperCase(Locale.ENGLISH));
+  }
+
+  /**
+   * Collects the algorithms while the registry is built.
+   */
+  private static class Registry
+  {
+    final Map<String, String> digests = new HashMap<String, String>();
+
+    final Map<String, String> signatures = new HashMap<String, String>();
+
+    final Map<String, String> names = new HashMap<String, String>();
+
+    void digest(String oid, String name, String... aliases)
+    {
+      register(digests, oid, name, aliases);
+    }
+
+    void signature(String oid, String name, String... aliases)
+    {
+      register(signatures, oid, name, aliases);
+    }
+
+    private void register(Map<String, String> oids, String oid, String name, String... aliases)
+    {
+      names.put(oid, name);
+      oids.put(oid, oid);
+      oids.put(name, oid);
+      oids.put(name.toUpperCase(Locale.ENGLISH), oid);
+      for (String alias : aliases)
+      {
+        oids.put(alias.toUpperCase(Locale.ENGLISH), oid);
+      }
+    }
+  }
+}
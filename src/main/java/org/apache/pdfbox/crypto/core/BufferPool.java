@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>
+ * Shares the byte arrays of the copy and digest loops, so a signature doesn't allocate a new buffer for every stream it
+ * reads. The buffers are kept in size classes, the powers of two from {@link #MIN_SIZE} to {@link #MAX_SIZE}. Larger
+ * buffers are not pooled.
+ * </p>
+ * <p>
+ * A buffer is owned by the caller until it is released, it must not be used after the release. A buffer that is never
+ * released is simply collected, the pool only keeps a few buffers per size class.
+ * </p>
+ */
+public final class BufferPool
+{
+  public static final int MIN_SIZE = 4 * 1024;
+
+  public static final int MAX_SIZE = 1024 * 1024;
+
+  public static final int DEFAULT_SIZE = 64 * 1024;
+
+  /** the number of idle buffers kept per size class */
+  private static final int MAX_POOLED = 16;
+
+  private static final List<BlockingQueue<byte[]>> pools = new ArrayList<BlockingQueue<byte[]>>();
+
+  private static volatile int bufferSize = DEFAULT_SIZE;
+
+  static
+  {
+    for (int size = MIN_SIZE; size <= MAX_SIZE; size <<= 1)
+    {
+      pools.add(new ArrayBlockingQueue<byte[]>(MAX_POOLED));
+    }
+  }
+
+  private BufferPool()
+  {}
+
+  /**
+   * @return a buffer of the size set by {@link #setBufferSize(int)}
+   */
+  public static byte[] acquire()
+  {
+    return acquire(bufferSize);
+  }
+
+  /**
+   * @param size the minimum size of the buffer
+   * @return a buffer of the smallest size class that holds the given size or a new buffer of exactly that size, if it
+   *         is larger than {@link #MAX_SIZE}
+   */
+  public static byte[] acquire(int size)
+  {
+    int sizeClass = getSizeClass(size);
+    if (sizeClass < 0)
+    {
+      return new byte[size];
+    }
+    byte[] buffer = pools.get(sizeClass).poll();
+    return buffer != null ? buffer : new byte[MIN_SIZE << sizeClass];
+  }
+
+  /**
+   * Returns the buffer to the pool. Buffers that don't match a size class are dropped.
+   * 
+   * @param buffer the buffer that was acquired from the pool or null
+   */
+  public static void release(byte[] buffer)
+  {
+    if (buffer == null)
+    {
+      return;
+    }
+    int sizeClass = getSizeClass(buffer.length);
+    if (sizeClass >= 0 && buffer.length == MIN_SIZE << sizeClass)
+    {
+      pools.get(sizeClass).offer(buffer);
+    }
+  }
+
+  /**
+   * @param size the size of the buffers used to copy and digest streams, it is rounded up to the next size class
+   */
+  public static void setBufferSize(int size)
+  {
+    bufferSize = MIN_SIZE << getSizeClass(Math.max(MIN_SIZE, Math.min(size, MAX_SIZE)));
+  }
+
+  /**
+   * @return the size of the buffers used to copy and digest streams
+   */
+  public static int getBufferSize()
+  {
+    return bufferSize;
+  }
+
+  /**
+   * @return the index of the smallest size class that holds the given size or -1, if the size isn't pooled
+   */
+  private static int getSizeClass(int size)
+  {
+    if (size > MAX_SIZE)
+    {
+      return -1;
+    }
+    int sizeClass = 0;
+    while (MIN_SIZE << sizeClass < size)
+    {
+      sizeClass++;
+    }
+    return sizeClass;
+  }
+}
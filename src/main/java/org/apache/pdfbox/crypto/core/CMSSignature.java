@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.core;
+
+import java.security.cert.Certificate;
+import java.util.Date;
+
+/**
+ * The signer of a cms signature, verified by {@link CryptoEngine#verify(byte[], java.util.Map)}.
+ */
+public interface CMSSignature
+{
+  /**
+   * @return true, if the message digest attribute matches the digest of the signed content
+   */
+  boolean isDigestMatching();
+
+  /**
+   * @return true, if the signature value is valid for the public key of the signer certificate
+   */
+  boolean isSignatureValid();
+
+  /**
+   * @return true, if the signer certificate was valid at the signing time of the cms signature
+   */
+  boolean isCertificateValid();
+
+  Certificate getSignerCertificate();
+
+  Certificate[] getCertificateChain();
+
+  /**
+   * @return the signing time attribute of the cms signature or null, if the signing time is only part of the pdf
+   *         structure
+   */
+  Date getCMSSigningTime();
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.core;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.exceptions.SignatureException;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureInterface;
+
+/**
+ * Creates the cms signatures of one key with the settings of a signature provider, see
+ * {@link CryptoEngine#createSigner(KeyProvider, SignatureProvider)}. A signer is immutable and can be used by several
+ * threads at the same time.
+ */
+public interface CMSSigner extends SignatureInterface
+{
+  /**
+   * Creates the cms signature for content that was already digested, e.g. while it was written. The digest is placed
+   * into the message digest attribute and only the signed attributes are signed.
+   * 
+   * @param contentDigest the digest of the signed content, computed with {@link #createMessageDigest()}
+   * @return the encoded cms signature
+   */
+  byte[] sign(byte[] contentDigest) throws SignatureException, IOException;
+
+  /**
+   * @param contentDigest the digest of the signed content, computed with {@link #createMessageDigest()}
+   * @return the DER encoded set of signed attributes, the signature value is computed over
+   */
+  byte[] getSignedAttributes(byte[] contentDigest) throws SignatureException;
+
+  /**
+   * Assembles the cms signature from signed attributes and a signature value that was computed over them outside of
+   * the signer, e.g. by a remote signing service. The private key is not used.
+   * 
+   * @param signedAttributes the signed attributes created by {@link #getSignedAttributes(byte[])}
+   * @param signatureValue the signature value over the signed attributes
+   * @return the encoded cms signature
+   */
+  byte[] createSignature(byte[] signedAttributes, byte[] signatureValue) throws SignatureException, IOException;
+
+  /**
+   * @return a new message digest for the digest algorithm of the signatures
+   */
+  MessageDigest createMessageDigest() throws SignatureException;
+
+  COSName getFilter() throws SignatureException;
+
+  COSName getSubfilter() throws SignatureException;
+}
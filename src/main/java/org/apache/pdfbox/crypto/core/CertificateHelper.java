@@ -20,7 +20,13 @@ import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
 
 import java.security.Principal;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 /**
  * The helper parse and extract common informations from a certificate and provide them the verification engine.
@@ -29,6 +35,8 @@ import java.security.cert.X509Certificate;
  */
 public class CertificateHelper
 {
+  private final static Log LOG = LogFactory.getLog(CertificateHelper.class);
+
   private final X509Certificate cert;
 
   private Principal subjectDN;
@@ -50,6 +58,33 @@ public class CertificateHelper
     }
   }
 
+  /**
+   * @param certificate the signer certificate
+   * @param signingTime the signing time of the cms signature or null, if the certificate shouldn't be checked
+   * @return true, if the certificate was valid at the signing time
+   */
+  public static boolean isValidAt(X509Certificate certificate, Date signingTime)
+  {
+    if (signingTime == null)
+    {
+      return true;
+    }
+    try
+    {
+      certificate.checkValidity(signingTime);
+      return true;
+    }
+    catch (CertificateExpiredException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    catch (CertificateNotYetValidException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    return false;
+  }
+
   @Override
   public String toString()
   {
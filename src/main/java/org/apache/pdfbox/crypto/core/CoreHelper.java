@@ -20,6 +20,9 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 
 public class CoreHelper
 {
@@ -43,22 +46,101 @@ public class CoreHelper
     requireNonNull(in);
     requireNonNull(out);
 
-    byte[] buffer = new byte[1024];
     try
     {
+      transfer(in, out);
+    }
+    finally
+    {
+      closeStream(in);
+      closeStream(out);
+
+    }
+  }
+
+  /**
+   * Copy all bytes from the input to the output stream. In contrast to {@link #copy(InputStream, OutputStream)} both
+   * streams stay open.
+   * 
+   * @param in the stream to read from
+   * @param out the stream to write to
+   * @return the number of copied bytes
+   * @throws IOException if reading or writing fails
+   */
+  public static long transfer(InputStream in, OutputStream out) throws IOException
+  {
+    requireNonNull(in);
+    requireNonNull(out);
+
+    byte[] buffer = BufferPool.acquire();
+    try
+    {
+      long count = 0;
       int len = in.read(buffer);
       while (len != -1)
       {
         out.write(buffer, 0, len);
+        count += len;
         len = in.read(buffer);
       }
+      return count;
     }
     finally
     {
-      closeStream(in);
-      closeStream(out);
+      BufferPool.release(buffer);
+    }
+  }
 
+  /**
+   * Updates the digest with all bytes of the stream. The stream stays open.
+   * 
+   * @param in the stream to read from
+   * @param digest the digest to update
+   * @return the number of digested bytes
+   * @throws IOException if reading fails
+   */
+  public static long digest(InputStream in, MessageDigest digest) throws IOException
+  {
+    requireNonNull(in);
+    requireNonNull(digest);
+
+    byte[] buffer = BufferPool.acquire();
+    try
+    {
+      long count = 0;
+      int len = in.read(buffer);
+      while (len != -1)
+      {
+        digest.update(buffer, 0, len);
+        count += len;
+        len = in.read(buffer);
+      }
+      return count;
+    }
+    finally
+    {
+      BufferPool.release(buffer);
+    }
+  }
+
+  /**
+   * @param executor the executor, the tasks are run on
+   * @param threads the parallelism assumed for an executor of unknown size
+   * @return the number of tasks the executor runs at the same time, the size of a bounded thread pool or the given
+   *         number of threads
+   */
+  public static int getParallelism(ExecutorService executor, int threads)
+  {
+    if (executor instanceof ThreadPoolExecutor)
+    {
+      int poolSize = ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+      // an unbounded pool, e.g. a cached pool, is limited by the thread setting
+      if (poolSize < Integer.MAX_VALUE)
+      {
+        return poolSize;
+      }
     }
+    return threads;
   }
 
   public static <T> T requireNonNull(T obj)
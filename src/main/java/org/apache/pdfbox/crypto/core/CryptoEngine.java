@@ -16,6 +16,12 @@
  */
 package org.apache.pdfbox.crypto.core;
 
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.pdfbox.exceptions.SignatureException;
+
 /**
  * <p>
  * The interface bundle all needed interfaces and abstract classes so the crypto engine can be replaced at any time. It
@@ -28,10 +34,53 @@ package org.apache.pdfbox.crypto.core;
  * <p>
  * Other crypto libraries can also be provided through this interface but need to be implemented.
  * </p>
+ * <p>
+ * An engine builds the cms signatures, encodes their signed attributes, parses cms signatures and verifies their
+ * signers. Everything else, like digesting the document or the verification of several signatures, is done by the
+ * builders for every engine alike. Engines are shared by all documents and threads.
+ * </p>
  * 
  * @author Thomas Chojecki
  */
 public interface CryptoEngine
 {
-  // TODO
+  /**
+   * @return the name of the engine
+   */
+  String getName();
+
+  /**
+   * @param digestAlgorithm the object identifier of the digest algorithm
+   * @return a new message digest
+   * @throws SignatureException if the digest algorithm isn't supported
+   */
+  MessageDigest createMessageDigest(String digestAlgorithm) throws SignatureException;
+
+  /**
+   * Compiles a signer for the key and the signature settings. The signer can be used for several signatures and
+   * threads, later changes to the providers don't affect it.
+   * 
+   * @param keyProvider the key and certificate chain to sign with
+   * @param signatureProvider the algorithms and attributes of the signatures
+   * @return the signer
+   * @throws SignatureException if the key, the algorithms or the attributes aren't supported
+   */
+  CMSSigner createSigner(KeyProvider keyProvider, SignatureProvider signatureProvider) throws SignatureException;
+
+  /**
+   * @param signature the encoded cms signature
+   * @return the object identifiers of the digest algorithms, that are used by the signers
+   * @throws SignatureException if the signature can't be parsed
+   */
+  Set<String> getDigestAlgorithms(byte[] signature) throws SignatureException;
+
+  /**
+   * Verifies the signer of a detached cms signature against the digest of the signed content.
+   * 
+   * @param signature the encoded cms signature
+   * @param contentDigests the digests of the signed content by object identifier of the digest algorithm
+   * @return the verified signer
+   * @throws SignatureException if the signature can't be parsed or has no signer certificate
+   */
+  CMSSignature verify(byte[] signature, Map<String, byte[]> contentDigests) throws SignatureException;
 }
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.core;
+
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Caches the digest and signature engines of the providers, so signing and verifying don't look up the provider for
+ * every signature. The lookups are synchronized inside the JCA and show up, when many signatures are created in
+ * parallel.
+ * </p>
+ * <p>
+ * Message digests are cloned from a prototype, that is created once per algorithm and provider. The caller owns the
+ * returned digest. Signature engines can't be cloned, so every thread keeps its own engines and uses them only within
+ * {@link #sign(String, String, PrivateKey, byte[])} and {@link #verify(String, String, PublicKey, byte[], byte[])}. An
+ * engine isn't initialized again, if it is used with the same key as before.
+ * </p>
+ * <p>
+ * The engines of a thread keep their last keys until the thread ends or they are released by {@link #clear()} or
+ * {@link #clear(Collection)}.
+ * </p>
+ */
+public final class CryptoPool
+{
+  private static final ConcurrentMap<String, MessageDigest> digestPrototypes = new ConcurrentHashMap<String, MessageDigest>();
+
+  /** the engines of all threads, so they can be released by another thread */
+  private static final Map<Thread, Map<String, PooledSignature>> threadSignatures =
+      new WeakHashMap<Thread, Map<String, PooledSignature>>();
+
+  private static final ThreadLocal<Map<String, PooledSignature>> signatures = new ThreadLocal<Map<String, PooledSignature>>()
+  {
+    @Override
+    protected Map<String, PooledSignature> initialValue()
+    {
+      // engines are only added and removed by the thread, but they may be released by another thread
+      Map<String, PooledSignature> pool = new ConcurrentHashMap<String, PooledSignature>();
+      synchronized (threadSignatures)
+      {
+        threadSignatures.put(Thread.currentThread(), pool);
+      }
+      return pool;
+    }
+  };
+
+  private CryptoPool()
+  {}
+
+  /**
+   * @param algorithm the JCA name of the digest algorithm
+   * @param provider the name of the provider or null, for the first provider that supports the algorithm
+   * @return a new message digest, that is owned by the caller
+   */
+  public static MessageDigest getMessageDigest(String algorithm, String provider) throws NoSuchAlgorithmException,
+      NoSuchProviderException
+  {
+    String key = getKey(algorithm, provider);
+    MessageDigest prototype = digestPrototypes.get(key);
+    if (prototype != null)
+    {
+      try
+      {
+        return (MessageDigest) prototype.clone();
+      }
+      catch (CloneNotSupportedException e)
+      {
+        // only cloneable digests are cached
+      }
+    }
+    MessageDigest digest = provider == null ? MessageDigest.getInstance(algorithm) : MessageDigest.getInstance(
+        algorithm, provider);
+    try
+    {
+      digestPrototypes.putIfAbsent(key, (MessageDigest) digest.clone());
+    }
+    catch (CloneNotSupportedException e)
+    {
+      // the digest is looked up every time
+    }
+    return digest;
+  }
+
+  /**
+   * Signs the data with the engine of the current thread.
+   * 
+   * @param algorithm the JCA name of the signature algorithm
+   * @param provider the name of the provider or null, for the first provider that supports the algorithm
+   * @param privateKey the key to sign with
+   * @param data the data to sign
+   * @return the signature value
+   */
+  public static byte[] sign(String algorithm, String provider, PrivateKey privateKey, byte[] data)
+      throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException, SignatureException
+  {
+    String poolKey = getKey(algorithm, provider, privateKey);
+    // the engine is taken from the pool while it is used, a failed engine is not returned
+    PooledSignature pooled = signatures.get().remove(poolKey);
+    if (pooled != null)
+    {
+      try
+      {
+        byte[] signatureValue = sign(pooled, privateKey, data);
+        signatures.get().put(poolKey, pooled);
+        return signatureValue;
+      }
+      catch (InvalidKeyException e)
+      {
+        // the provider of the engine was selected for another key, a new engine selects it for this key
+      }
+    }
+    pooled = new PooledSignature(createSignature(algorithm, provider));
+    byte[] signatureValue = sign(pooled, privateKey, data);
+    signatures.get().put(poolKey, pooled);
+    return signatureValue;
+  }
+
+  /**
+   * Verifies the signature value with the engine of the current thread.
+   * 
+   * @param algorithm the JCA name of the signature algorithm
+   * @param provider the name of the provider or null, for the first provider that supports the algorithm
+   * @param publicKey the key of the signer
+   * @param data the signed data
+   * @param signatureValue the signature value
+   * @return true, if the signature value is valid
+   */
+  public static boolean verify(String algorithm, String provider, PublicKey publicKey, byte[] data,
+      byte[] signatureValue) throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException,
+      SignatureException
+  {
+    String poolKey = getKey(algorithm, provider, publicKey);
+    PooledSignature pooled = signatures.get().remove(poolKey);
+    if (pooled != null)
+    {
+      try
+      {
+        boolean valid = verify(pooled, publicKey, data, signatureValue);
+        signatures.get().put(poolKey, pooled);
+        return valid;
+      }
+      catch (InvalidKeyException e)
+      {
+        // the provider of the engine was selected for another key, a new engine selects it for this key
+      }
+    }
+    pooled = new PooledSignature(createSignature(algorithm, provider));
+    boolean valid = verify(pooled, publicKey, data, signatureValue);
+    signatures.get().put(poolKey, pooled);
+    return valid;
+  }
+
+  /**
+   * Releases the signature engines of the current thread and the keys they are initialized with.
+   */
+  public static void clear()
+  {
+    signatures.get().clear();
+  }
+
+  /**
+   * Releases the signature engines of the given threads and the keys they are initialized with, e.g. the threads of a
+   * shared executor, that outlive a batch of signatures. Engines, that are in use at the same time, are not released.
+   * 
+   * @param threads the threads whose engines are released
+   */
+  public static void clear(Collection<Thread> threads)
+  {
+    synchronized (threadSignatures)
+    {
+      for (Thread thread : threads)
+      {
+        Map<String, PooledSignature> pool = threadSignatures.get(thread);
+        if (pool != null)
+        {
+          pool.clear();
+        }
+      }
+    }
+  }
+
+  private static byte[] sign(PooledSignature pooled, PrivateKey privateKey, byte[] data) throws InvalidKeyException,
+      SignatureException
+  {
+    if (pooled.key != privateKey)
+    {
+      pooled.signature.initSign(privateKey);
+      pooled.key = privateKey;
+    }
+    pooled.signature.update(data);
+    return pooled.signature.sign();
+  }
+
+  private static boolean verify(PooledSignature pooled, PublicKey publicKey, byte[] data, byte[] signatureValue)
+      throws InvalidKeyException, SignatureException
+  {
+    if (pooled.key != publicKey)
+    {
+      pooled.signature.initVerify(publicKey);
+      pooled.key = publicKey;
+    }
+    pooled.signature.update(data);
+    return pooled.signature.verify(signatureValue);
+  }
+
+  private static Signature createSignature(String algorithm, String provider) throws NoSuchAlgorithmException,
+      NoSuchProviderException
+  {
+    return provider == null ? Signature.getInstance(algorithm) : Signature.getInstance(algorithm, provider);
+  }
+
+  private static String getKey(String algorithm, String provider)
+  {
+    return provider == null ? algorithm : algorithm + '/' + provider;
+  }
+
+  /**
+   * Without a provider the JCA selects it, when the engine is initialized with the first key. So keys of different
+   * classes, e.g. software keys and keys of a token, get engines of their own.
+   */
+  private static String getKey(String algorithm, String provider, Key key)
+  {
+    return getKey(algorithm, provider) + '/' + key.getClass().getName();
+  }
+
+  /**
+   * A signature engine and the key it was initialized with.
+   */
+  private static final class PooledSignature
+  {
+    private final Signature signature;
+
+    private Key key;
+
+    private PooledSignature(Signature signature)
+    {
+      this.signature = signature;
+    }
+  }
+}
@@ -82,6 +82,23 @@ public class KeyProvider
     return kp;
   }
 
+  /**
+   * Creates a provider for a key that isn't accessible, e.g. because it is held by a remote signing service. Such a
+   * provider can only be used for deferred signing, the signature value is computed outside.
+   * 
+   * @param certificateChain the certificate chain of the key, starting with the signer certificate
+   */
+  public static KeyProvider getInstance(Certificate[] certificateChain)
+  {
+    requireNonNull(certificateChain);
+
+    KeyProvider kp = new KeyProvider();
+    kp.setCertificateChain(certificateChain);
+    kp.setKeyCrypoProvider(DEFAULT_KEY_CRYPTO_PROVIDER);
+
+    return kp;
+  }
+
   public PrivateKey getPrivKey()
   {
     return privKey;
@@ -102,6 +119,14 @@ public class KeyProvider
     this.certificateChain = certificateChain;
   }
 
+  /**
+   * @return the algorithm of the signer key like "RSA", "EC" or "Ed25519", taken from the signer certificate
+   */
+  public String getKeyAlgorithm()
+  {
+    return Algorithms.getKeyAlgorithm(certificateChain[0].getPublicKey());
+  }
+
   public String getKeyCrypoProvider()
   {
     return keyCrypoProvider;
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.core;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A BufferedInputStream, that takes its buffer from the {@link BufferPool} and returns it when the stream is closed.
+ */
+public class PooledInputStream extends BufferedInputStream
+{
+  public PooledInputStream(InputStream in)
+  {
+    super(in, 1);
+    buf = BufferPool.acquire();
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    byte[] buffer = buf;
+    super.close();
+    // the buffer is replaced by null on the first close, a second close doesn't release it again
+    if (buffer != null && buf == null)
+    {
+      BufferPool.release(buffer);
+    }
+  }
+}
@@ -16,10 +16,11 @@
  */
 package org.apache.pdfbox.crypto.core;
 
+import java.security.cert.Certificate;
+
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.crypto.bc.AttributeContainer;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
-import org.bouncycastle.cms.CMSSignedGenerator;
 
 /**
  * The provides hold all necessary elements that are needed for signature creation.
@@ -38,16 +39,17 @@ public class SignatureProvider
   protected String digestAlgorithm;
   protected COSName filter;
   protected COSName subfilter;
+  /** created on first access, so engines without BouncyCastle don't load it */
   protected AttributeContainer attributeContainer; // FIXME Remove dependency to BouncyCastle
+  protected Certificate[] signingCertificates;
 
   protected SignatureProvider()
   {
     // Set some default values
-    setDigestAlgorithm(CMSSignedGenerator.DIGEST_SHA256);
+    setDigestAlgorithm("SHA-256");
     setCrypoProvider(DEFAULT_KEY_CRYPTO_PROVIDER);
     setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
     setSubfilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
-    setAttributeContainer(new AttributeContainer(this));
   }
 
   public static SignatureProvider getInstance()
@@ -70,9 +72,19 @@ public class SignatureProvider
     return signatureAlgorithm;
   }
 
+  /**
+   * @param signatureAlgorithm the JCA name of the signature algorithm like "SHA256withRSA", "SHA384withECDSA" or
+   *          "Ed25519". The digest algorithm of a known signature algorithm is set too, the key of the key provider
+   *          decides about the signature itself.
+   */
   public void setSignatureAlgorithm(String signatureAlgorithm)
   {
     this.signatureAlgorithm = signatureAlgorithm;
+    String digestOID = Algorithms.getDigestOIDForSignature(signatureAlgorithm);
+    if (digestOID != null)
+    {
+      this.digestAlgorithm = digestOID;
+    }
   }
 
   public String getDigestAlgorithm()
@@ -80,21 +92,79 @@ public class SignatureProvider
     return digestAlgorithm;
   }
 
+  /**
+   * @param digestAlgorithm the object identifier of the digest algorithm or its JCA name like "SHA-256". Known names
+   *          are stored as object identifier.
+   */
   public void setDigestAlgorithm(String digestAlgorithm)
   {
-    this.digestAlgorithm = digestAlgorithm;
+    String oid = Algorithms.getDigestOID(digestAlgorithm);
+    this.digestAlgorithm = oid != null ? oid : digestAlgorithm;
   }
 
+  /**
+   * @return the attribute container of the BouncyCastle engine. It is created on first access and holds the signing
+   *         certificates.
+   */
   public AttributeContainer getAttributeContainer()
   {
+    if (attributeContainer == null)
+    {
+      attributeContainer = createAttributeContainer();
+    }
     return attributeContainer;
   }
 
+  /**
+   * @return a new attribute container, that holds the signing certificates only
+   */
+  public AttributeContainer createAttributeContainer()
+  {
+    AttributeContainer container = new AttributeContainer(this);
+    if (signingCertificates != null)
+    {
+      container.setSigningCertificate(signingCertificates);
+    }
+    return container;
+  }
+
+  /**
+   * @return true, if the attribute container was set or accessed, so it might hold attributes that only the
+   *         BouncyCastle engine can encode
+   */
+  public boolean hasAttributeContainer()
+  {
+    return attributeContainer != null;
+  }
+
   public void setAttributeContainer(AttributeContainer attributeContainer)
   {
     this.attributeContainer = attributeContainer;
   }
 
+  /**
+   * Set the certificates of the signing certificate attribute, the first one is the signer certificate. Each call will
+   * overwrite the previous certificates.
+   * 
+   * @param certificates the certificates, that should be referenced by their SHA-256 hash
+   */
+  public void setSigningCertificate(Certificate... certificates)
+  {
+    this.signingCertificates = certificates;
+    if (attributeContainer != null)
+    {
+      attributeContainer.setSigningCertificate(certificates);
+    }
+  }
+
+  /**
+   * @return the certificates of the signing certificate attribute or null, if the signatures have none
+   */
+  public Certificate[] getSigningCertificates()
+  {
+    return signingCertificates;
+  }
+
   public COSName getFilter()
   {
     return filter;
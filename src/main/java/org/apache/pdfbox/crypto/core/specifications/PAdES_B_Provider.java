@@ -39,7 +39,7 @@ public class PAdES_B_Provider extends SignatureProvider
   {
     setSubfilter(PDSignature.SUBFILTER_ETSI_CADES_DETACHED);
     Certificate[] certificateChain = keyProvider.getCertificateChain();
-    attributeContainer.setSigningCertificate(certificateChain);
+    setSigningCertificate(certificateChain);
   }
   
   public static PAdES_B_Provider getInstance(KeyProvider keyProvider)
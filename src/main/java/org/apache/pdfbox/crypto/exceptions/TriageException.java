@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.exceptions;
+
+import org.apache.pdfbox.crypto.io.StructuralTriage;
+
+/**
+ * If a document is rejected by the structural triage, before it is parsed or verified.
+ */
+public class TriageException extends Exception
+{
+
+  private static final long serialVersionUID = 4209417324478012254L;
+
+  private final StructuralTriage.Result result;
+
+  public TriageException(StructuralTriage.Result result)
+  {
+    super("Rejected by triage: " + result);
+    this.result = result;
+  }
+
+  /**
+   * @return the triage result, that names the reason of the rejection
+   */
+  public StructuralTriage.Result getResult()
+  {
+    return result;
+  }
+}
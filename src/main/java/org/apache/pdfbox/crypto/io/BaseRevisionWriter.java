@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdfwriter.COSWriterXRefEntry;
+import org.apache.pdfbox.persistence.util.COSObjectKey;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * <p>
+ * Serialize a document that lives in memory, so it can be signed by an incremental update without parsing it again.
+ * </p>
+ * <p>
+ * An incremental update needs to know the object numbers and the startxref of the previous revision. Those are only
+ * known to a parsed document, so after writing the document this writer registers the cross reference of the written
+ * revision in the COSDocument, as if the document was parsed from the written bytes.
+ * </p>
+ */
+public class BaseRevisionWriter extends COSWriter
+{
+
+  private BaseRevisionWriter(OutputStream out)
+  {
+    super(out);
+  }
+
+  /**
+   * Write the whole document to the given stream and prepare the document for an incremental update on top of the
+   * written bytes. The stream will not be closed.
+   * 
+   * @param doc the document that should be written
+   * @param out the stream the document is written to
+   * @throws IOException if writing fails
+   * @throws COSVisitorException if the document can't be serialized
+   */
+  public static void write(PDDocument doc, OutputStream out) throws IOException, COSVisitorException
+  {
+    doc.getDocumentCatalog().getPages().updateCount();
+
+    BaseRevisionWriter writer = new BaseRevisionWriter(out);
+    writer.write(doc);
+    writer.getStandardOutput().flush();
+    writer.registerRevision(doc.getDocument());
+  }
+
+  private void registerRevision(COSDocument cosDoc) throws IOException
+  {
+    // forget the object numbers of a previously parsed revision, the written revision numbers the objects anew
+    Map<COSObjectKey, Long> xrefTable = cosDoc.getXrefTable();
+    for (COSObjectKey key : xrefTable.keySet())
+    {
+      cosDoc.removeObject(key);
+    }
+    xrefTable.clear();
+
+    Map<COSObjectKey, Long> revision = new HashMap<COSObjectKey, Long>();
+    for (COSWriterXRefEntry entry : getXRefEntries())
+    {
+      COSObjectKey key = entry.getKey();
+      COSBase object = entry.getObject();
+      if (entry.isFree() || key == null || object == null)
+      {
+        continue;
+      }
+      if (object instanceof COSObject)
+      {
+        object = ((COSObject) object).getObject();
+      }
+      cosDoc.getObjectFromPool(key).setObject(object);
+      revision.put(key, entry.getOffset());
+    }
+    cosDoc.addXRefTable(revision);
+    cosDoc.setStartXref(getStartxref());
+  }
+}
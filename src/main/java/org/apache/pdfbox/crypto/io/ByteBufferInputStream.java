@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Read the remaining bytes of a ByteBuffer as stream. The buffer can be a heap, direct or mapped buffer. The position
+ * of the given buffer is advanced while reading, so pass a duplicate if the buffer is shared.
+ */
+public class ByteBufferInputStream extends InputStream
+{
+  private final ByteBuffer buffer;
+
+  public ByteBufferInputStream(ByteBuffer buffer)
+  {
+    this.buffer = buffer;
+  }
+
+  @Override
+  public int read()
+  {
+    return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len)
+  {
+    if (len == 0)
+    {
+      return 0;
+    }
+    if (!buffer.hasRemaining())
+    {
+      return -1;
+    }
+    int count = Math.min(len, buffer.remaining());
+    buffer.get(b, off, count);
+    return count;
+  }
+
+  @Override
+  public long skip(long n)
+  {
+    if (n <= 0)
+    {
+      return 0;
+    }
+    int count = (int) Math.min(n, buffer.remaining());
+    buffer.position(buffer.position() + count);
+    return count;
+  }
+
+  @Override
+  public int available()
+  {
+    return buffer.remaining();
+  }
+}
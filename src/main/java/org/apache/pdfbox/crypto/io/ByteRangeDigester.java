@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * Digests the ByteRanges of several signatures in one sequential pass over the document. Every chunk of the document is
+ * read once and handed to all digests whose ByteRange contains it.
+ * </p>
+ * <p>
+ * The signatures of a document cover overlapping prefixes of the same file. For the common ByteRange
+ * <code>[0 a b c]</code> the prefix up to the Contents gap is digested only once per digest algorithm: a shared digest
+ * runs over the document and is cloned at the gap of each signature, that signature continues with its own remainder.
+ * So the document is digested about once, no matter how many signatures it has. Digests that can't be cloned and other
+ * ByteRanges are digested on their own, but still in the same pass. A ByteRange <code>[0 a]</code> is a prefix of the
+ * document, it is a copy of the shared digest at its end.
+ * </p>
+ * 
+ * @param <K> the key the digests are returned for
+ */
+public class ByteRangeDigester<K>
+{
+  private static final int CHUNK_SIZE = 1024 * 1024;
+
+  private final Map<K, int[]> byteRanges = new LinkedHashMap<K, int[]>();
+
+  private final Map<K, MessageDigest> prototypes = new HashMap<K, MessageDigest>();
+
+  /**
+   * Registers a ByteRange that should be digested.
+   * 
+   * @param key the key of the digest in the result
+   * @param byteRange the pairs of offset and length that are signed
+   * @param digest a fresh digest of the wanted algorithm. It serves as prototype and might not be updated itself.
+   * @return false, if the ByteRange can't be digested in one pass, because its parts are not in ascending order
+   */
+  public boolean add(K key, int[] byteRange, MessageDigest digest)
+  {
+    if (!isAscending(byteRange))
+    {
+      return false;
+    }
+    byteRanges.put(key, byteRange);
+    prototypes.put(key, digest);
+    return true;
+  }
+
+  /**
+   * Reads the document once up to the end of the longest ByteRange and computes all registered digests.
+   * 
+   * @param source the signed document
+   * @return the digests by key
+   * @throws IOException if the document can't be read
+   */
+  public Map<K, byte[]> digest(DocumentSource source) throws IOException
+  {
+    List<Job> jobs = new ArrayList<Job>();
+    Map<String, Job> trunks = new HashMap<String, Job>();
+    TreeMap<Long, List<Branch>> branches = new TreeMap<Long, List<Branch>>();
+
+    for (Map.Entry<K, int[]> entry : byteRanges.entrySet())
+    {
+      int[] byteRange = entry.getValue();
+      MessageDigest prototype = prototypes.get(entry.getKey());
+      if ((byteRange.length == 4 || byteRange.length == 2) && byteRange[0] == 0 && byteRange[1] > 0
+          && isCloneable(prototype))
+      {
+        String algorithm = prototype.getAlgorithm() + "@" + prototype.getProvider().getName();
+        Job trunk = trunks.get(algorithm);
+        if (trunk == null)
+        {
+          trunk = new Job(null, copy(prototype), new long[] { 0, 0 });
+          trunks.put(algorithm, trunk);
+          jobs.add(trunk);
+        }
+        trunk.segments[1] = Math.max(trunk.segments[1], byteRange[1]);
+
+        Long position = Long.valueOf(byteRange[1]);
+        List<Branch> branching = branches.get(position);
+        if (branching == null)
+        {
+          branching = new ArrayList<Branch>();
+          branches.put(position, branching);
+        }
+        if (byteRange.length == 4)
+        {
+          branching.add(new Branch(trunk, entry.getKey(), byteRange[2], byteRange[3]));
+        }
+        else
+        {
+          // a prefix of the document is complete at the branch
+          branching.add(new Branch(trunk, entry.getKey(), byteRange[1], 0));
+        }
+      }
+      else
+      {
+        long[] segments = new long[byteRange.length];
+        for (int i = 0; i + 1 < byteRange.length; i += 2)
+        {
+          segments[i] = byteRange[i];
+          segments[i + 1] = (long) byteRange[i] + byteRange[i + 1];
+        }
+        jobs.add(new Job(entry.getKey(), prototype, segments));
+      }
+    }
+
+    long end = 0;
+    for (Job job : jobs)
+    {
+      end = Math.max(end, job.end());
+    }
+    for (List<Branch> branching : branches.values())
+    {
+      for (Branch branch : branching)
+      {
+        end = Math.max(end, branch.offset + branch.length);
+      }
+    }
+
+    long position = 0;
+    while (position < end)
+    {
+      long next = Math.min(position + CHUNK_SIZE, end);
+      Long branchPosition = branches.higherKey(position);
+      if (branchPosition != null && branchPosition < next)
+      {
+        next = branchPosition;
+      }
+
+      ByteBuffer chunk = source.map(position, next - position);
+      for (Job job : jobs)
+      {
+        job.update(chunk, position, next);
+      }
+
+      // the shared prefix reached the Contents gap of these signatures
+      List<Branch> branching = branches.get(next);
+      if (branching != null)
+      {
+        for (Branch branch : branching)
+        {
+          jobs.add(new Job(branch.key, copy(branch.trunk.digest), new long[] { branch.offset, branch.offset + branch.length }));
+        }
+      }
+      position = next;
+    }
+
+    Map<K, byte[]> digests = new LinkedHashMap<K, byte[]>();
+    for (Job job : jobs)
+    {
+      if (job.key != null)
+      {
+        digests.put(job.key, job.digest.digest());
+      }
+    }
+    return digests;
+  }
+
+  private static boolean isAscending(int[] byteRange)
+  {
+    long previousEnd = 0;
+    for (int i = 0; i + 1 < byteRange.length; i += 2)
+    {
+      if (byteRange[i] < previousEnd || byteRange[i + 1] < 0)
+      {
+        return false;
+      }
+      previousEnd = (long) byteRange[i] + byteRange[i + 1];
+    }
+    return true;
+  }
+
+  private static boolean isCloneable(MessageDigest digest)
+  {
+    try
+    {
+      digest.clone();
+      return true;
+    }
+    catch (CloneNotSupportedException e)
+    {
+      return false;
+    }
+  }
+
+  private static MessageDigest copy(MessageDigest digest)
+  {
+    try
+    {
+      return (MessageDigest) digest.clone();
+    }
+    catch (CloneNotSupportedException e)
+    {
+      // checked before with isCloneable
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * A digest that is updated with the parts of the document, that lie in its segments.
+   */
+  private class Job
+  {
+    private final K key;
+
+    private final MessageDigest digest;
+
+    /** pairs of start and end offset */
+    private final long[] segments;
+
+    private Job(K key, MessageDigest digest, long[] segments)
+    {
+      this.key = key;
+      this.digest = digest;
+      this.segments = segments;
+    }
+
+    private long end()
+    {
+      return segments.length == 0 ? 0 : segments[segments.length - 1];
+    }
+
+    private void update(ByteBuffer chunk, long chunkStart, long chunkEnd)
+    {
+      for (int i = 0; i + 1 < segments.length; i += 2)
+      {
+        long from = Math.max(segments[i], chunkStart);
+        long to = Math.min(segments[i + 1], chunkEnd);
+        if (from < to)
+        {
+          ByteBuffer part = chunk.duplicate();
+          part.limit((int) (to - chunkStart));
+          part.position((int) (from - chunkStart));
+          digest.update(part);
+        }
+      }
+    }
+  }
+
+  /**
+   * A signature that continues with a copy of the shared digest at its Contents gap.
+   */
+  private class Branch
+  {
+    private final Job trunk;
+
+    private final K key;
+
+    private final long offset;
+
+    private final long length;
+
+    private Branch(Job trunk, K key, long offset, long length)
+    {
+      this.trunk = trunk;
+      this.key = key;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Updates a message digest with every byte that passes the stream, including skipped bytes. It is used to digest the
+ * original document while the parser reads it, so the document doesn't need to be read a second time for signing.
+ * Marking is not supported, a reset would digest the same bytes twice. Closing the stream doesn't close the underlying
+ * stream, so a reader that closes the stream early doesn't prevent {@link #finish()}.
+ */
+public class DigestingInputStream extends FilterInputStream
+{
+  private final MessageDigest digest;
+
+  private final byte[] skipBuffer = new byte[8 * 1024];
+
+  private long count;
+
+  public DigestingInputStream(InputStream in, MessageDigest digest)
+  {
+    super(in);
+    this.digest = digest;
+  }
+
+  @Override
+  public int read() throws IOException
+  {
+    int b = in.read();
+    if (b != -1)
+    {
+      digest.update((byte) b);
+      count++;
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException
+  {
+    int read = in.read(b, off, len);
+    if (read > 0)
+    {
+      digest.update(b, off, read);
+      count += read;
+    }
+    return read;
+  }
+
+  @Override
+  public long skip(long n) throws IOException
+  {
+    long skipped = 0;
+    while (skipped < n)
+    {
+      int read = read(skipBuffer, 0, (int) Math.min(skipBuffer.length, n - skipped));
+      if (read == -1)
+      {
+        break;
+      }
+      skipped += read;
+    }
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported()
+  {
+    return false;
+  }
+
+  @Override
+  public void mark(int readlimit)
+  {
+    // not supported
+  }
+
+  @Override
+  public void reset() throws IOException
+  {
+    throw new IOException("mark/reset not supported");
+  }
+
+  @Override
+  public void close()
+  {
+    // the underlying stream is closed by its owner
+  }
+
+  /**
+   * Reads the rest of the stream, that the reader didn't consume, e.g. bytes behind the last end of file marker.
+   * 
+   * @return the number of bytes that passed the stream
+   * @throws IOException if the stream can't be read
+   */
+  public long finish() throws IOException
+  {
+    while (skip(Long.MAX_VALUE) > 0)
+    {
+      // digest until the end of the stream
+    }
+    return count;
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Read access to the raw bytes of a pdf document, independent of where the bytes are stored. The sign and verification
+ * builders read the document only through this interface.
+ */
+public interface DocumentSource extends Closeable
+{
+  /**
+   * @return the name of the document or null, if the document has no name (e.g. it was loaded from a stream)
+   */
+  public String getName();
+
+  /**
+   * @return the size of the document in bytes
+   */
+  public long length();
+
+  /**
+   * Creates a new stream that reads the document from the beginning. The caller is responsible for closing it.
+   * 
+   * @return a new stream over the whole document
+   * @throws IOException if the document can't be read
+   */
+  public InputStream createInputStream() throws IOException;
+
+  /**
+   * Writes the whole document to the given stream. The stream will not be closed.
+   * 
+   * @param out the stream the document is written to
+   * @throws IOException if the document can't be read or written
+   */
+  public void writeTo(OutputStream out) throws IOException;
+
+  /**
+   * Writes the whole document to the given channel. File based documents are transferred without copying them through
+   * the java heap. The channel will not be closed.
+   * 
+   * @param target the channel the document is written to
+   * @throws IOException if the document can't be read or written
+   */
+  public void transferTo(WritableByteChannel target) throws IOException;
+
+  /**
+   * Returns a read only view of a part of the document, that can be handed e.g. directly to a MessageDigest. File based
+   * documents are usually mapped into memory once and all views share the mapping, so no file is opened per call. The
+   * views stay valid until the source is closed.
+   * 
+   * @param position the offset of the first byte in the document
+   * @param size the number of bytes
+   * @return a view of the requested part of the document
+   * @throws IOException if the document can't be mapped or the part lies outside of the document
+   */
+  public ByteBuffer map(long position, long size) throws IOException;
+}
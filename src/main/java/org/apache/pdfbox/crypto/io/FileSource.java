@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.io;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.closeStream;
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+import static org.apache.pdfbox.crypto.core.CoreHelper.transfer;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.pdfbox.crypto.core.PooledInputStream;
+
+/**
+ * <p>
+ * A document that is read directly from a file. The file is owned by the caller and will not be deleted.
+ * </p>
+ * <p>
+ * Ranges of the file are served from a single read only mapping of the whole file. A file, that is too large for a
+ * single mapping, is mapped per requested range. Java can't release a mapping explicitly, it stays in the address
+ * space until it and all its views are garbage collected, even after the source is closed. A source, that is one of
+ * many short lived sources, e.g. in a bulk verification, should not map the file and reads the ranges instead.
+ * </p>
+ */
+public class FileSource implements DocumentSource
+{
+  private final File file;
+
+  private final boolean mapped;
+
+  private RandomAccessFile raf;
+
+  private MappedByteBuffer mapping;
+
+  public FileSource(File file)
+  {
+    this(file, true);
+  }
+
+  /**
+   * @param file the file of the document
+   * @param mapped if true, the ranges are served from a mapping of the file, otherwise they are read into the heap
+   */
+  public FileSource(File file, boolean mapped)
+  {
+    this.file = requireNonNull(file);
+    this.mapped = mapped;
+  }
+
+  public File getFile()
+  {
+    return file;
+  }
+
+  public String getName()
+  {
+    return file.getName();
+  }
+
+  public long length()
+  {
+    return file.length();
+  }
+
+  public InputStream createInputStream() throws IOException
+  {
+    return new PooledInputStream(new FileInputStream(file));
+  }
+
+  public void writeTo(OutputStream out) throws IOException
+  {
+    InputStream in = new FileInputStream(file);
+    try
+    {
+      transfer(in, out);
+    }
+    finally
+    {
+      closeStream(in);
+    }
+  }
+
+  public void transferTo(WritableByteChannel target) throws IOException
+  {
+    FileInputStream in = new FileInputStream(file);
+    try
+    {
+      FileChannel channel = in.getChannel();
+      long size = channel.size();
+      long position = 0;
+      while (position < size)
+      {
+        position += channel.transferTo(position, size - position, target);
+      }
+    }
+    finally
+    {
+      closeStream(in);
+    }
+  }
+
+  public synchronized ByteBuffer map(long position, long size) throws IOException
+  {
+    if (raf == null)
+    {
+      raf = new RandomAccessFile(file, "r");
+    }
+    FileChannel channel = raf.getChannel();
+    if (!mapped)
+    {
+      return read(channel, position, size);
+    }
+    if (mapping == null)
+    {
+      if (channel.size() > Integer.MAX_VALUE)
+      {
+        return map(channel, position, size);
+      }
+      mapping = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    }
+    return slice(mapping, position, size);
+  }
+
+  /**
+   * Closes the file. A mapping of the file is released by the garbage collector, once it and its views are no longer
+   * referenced. The file itself belongs to the caller and will not be deleted.
+   */
+  public synchronized void close()
+  {
+    mapping = null;
+    closeStream(raf);
+    raf = null;
+  }
+
+  /**
+   * Maps only the given range of the channel, for files that are too large to be mapped as a whole.
+   */
+  static ByteBuffer map(FileChannel channel, long position, long size) throws IOException
+  {
+    checkRange(channel.size(), position, size);
+    return channel.map(MapMode.READ_ONLY, position, size).asReadOnlyBuffer();
+  }
+
+  /**
+   * Reads the given range of the channel into a new heap buffer.
+   */
+  static ByteBuffer read(FileChannel channel, long position, long size) throws IOException
+  {
+    checkRange(channel.size(), position, size);
+    ByteBuffer buffer = ByteBuffer.allocate((int) size);
+    while (buffer.hasRemaining())
+    {
+      if (channel.read(buffer, position + buffer.position()) < 0)
+      {
+        throw new EOFException("Unexpected end of the document at " + (position + buffer.position()));
+      }
+    }
+    buffer.flip();
+    return buffer.asReadOnlyBuffer();
+  }
+
+  private static void checkRange(long length, long position, long size) throws IOException
+  {
+    if (position < 0 || size < 0 || position + size > length)
+    {
+      throw new IOException("Range " + position + "+" + size + " lies outside of the document");
+    }
+    if (size > Integer.MAX_VALUE)
+    {
+      throw new IOException("Range " + position + "+" + size + " is too large to be mapped");
+    }
+  }
+
+  /**
+   * Creates a view of the buffer for the given range, independent of the position of the buffer.
+   */
+  static ByteBuffer slice(ByteBuffer buffer, long position, long size) throws IOException
+  {
+    checkRange(buffer.limit(), position, size);
+    ByteBuffer view = buffer.duplicate();
+    view.limit((int) (position + size));
+    view.position((int) position);
+    return view.slice().asReadOnlyBuffer();
+  }
+}
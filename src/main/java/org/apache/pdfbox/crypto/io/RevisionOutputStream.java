@@ -0,0 +1,457 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.io;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * <p>
+ * Collects an incremental revision in memory. PDFBox patches the ByteRange and the Contents of a signature through the
+ * FileChannel of a FileOutputStream, so the revision poses as a FileOutputStream that is positioned behind the original
+ * document. Nothing is written to a file descriptor.
+ * </p>
+ * <p>
+ * Positions reported by the channel are absolute positions in the signed document. Writing into the original document
+ * is rejected, the original document can't be changed by an incremental update.
+ * </p>
+ * <p>
+ * COSWriter writes through a COSStandardOutputStream, which relies on these calls only:
+ * </p>
+ * <ul>
+ * <li>the write methods of the stream, which are all overridden and write into memory</li>
+ * <li>{@link FileChannel#position()} and {@link FileChannel#position(long)} of {@link #getChannel()}, to report and
+ * move the write position while the ByteRange and the Contents are patched</li>
+ * <li>{@link #getFD()}, which is only kept and never used for I/O by COSWriter</li>
+ * </ul>
+ * <p>
+ * The file descriptor can't be overridden, it is not valid. Reading from it, e.g. by
+ * COSStandardOutputStream.getFilterInputStream(), fails with "Bad file descriptor", use {@link #createInputStream()}
+ * instead. The channel also writes into memory, but it can't be read, mapped or locked.
+ * </p>
+ */
+public class RevisionOutputStream extends FileOutputStream
+{
+  private static final String BYTE_RANGE = "/ByteRange";
+
+  private final long offset;
+
+  private final RevisionChannel channel = new RevisionChannel();
+
+  private byte[] buffer = new byte[16 * 1024];
+
+  private int count;
+
+  private int position;
+
+  /** true, if the position was moved in front of the revision */
+  private boolean outside;
+
+  /**
+   * @param offset is the length of the original document, the revision will be appended to
+   */
+  public RevisionOutputStream(long offset)
+  {
+    // a descriptor that isn't opened, nothing is written to or read from it
+    super(new FileDescriptor());
+    this.offset = offset;
+  }
+
+  @Override
+  public void write(int b) throws IOException
+  {
+    checkPosition();
+    ensureCapacity(position + 1);
+    buffer[position++] = (byte) b;
+    count = Math.max(count, position);
+  }
+
+  @Override
+  public void write(byte[] b) throws IOException
+  {
+    write(b, 0, b.length);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    checkPosition();
+    ensureCapacity(position + len);
+    System.arraycopy(b, off, buffer, position, len);
+    position += len;
+    count = Math.max(count, position);
+  }
+
+  @Override
+  public FileChannel getChannel()
+  {
+    return channel;
+  }
+
+  @Override
+  public void flush()
+  {
+    // nothing to flush
+  }
+
+  @Override
+  public void close()
+  {
+    // the revision stays readable after the writer closed the stream
+  }
+
+  /**
+   * @return the length of the original document
+   */
+  public long getOffset()
+  {
+    return offset;
+  }
+
+  /**
+   * @return the number of bytes in the revision
+   */
+  public int size()
+  {
+    return count;
+  }
+
+  /**
+   * Write the revision to the given stream. The stream will not be closed.
+   * 
+   * @param out the stream the revision is appended to
+   * @throws IOException if writing fails
+   */
+  public void writeTo(OutputStream out) throws IOException
+  {
+    out.write(buffer, 0, count);
+  }
+
+  /**
+   * Write the revision to the given channel. The channel will not be closed.
+   * 
+   * @param out the channel the revision is appended to
+   * @throws IOException if writing fails
+   */
+  public void writeTo(WritableByteChannel out) throws IOException
+  {
+    ByteBuffer src = ByteBuffer.wrap(buffer, 0, count);
+    while (src.hasRemaining())
+    {
+      out.write(src);
+    }
+  }
+
+  /**
+   * Updates the digest with the part of the signed content that lies in the revision, that is everything except the
+   * signature contents. Together with a digest over the original document this is the digest over the ByteRange,
+   * without reading the document again. It shall be called after PDFBox patched the ByteRange of the signature.
+   * 
+   * @param digest the digest that already contains the original document
+   * @throws IOException if the revision contains no ByteRange that covers the signed document
+   */
+  public void updateDigest(MessageDigest digest) throws IOException
+  {
+    long[] byteRange = getByteRange();
+    int first = (int) (byteRange[1] - offset);
+    int second = (int) (byteRange[2] - offset);
+    digest.update(buffer, 0, first);
+    digest.update(buffer, second, (int) byteRange[3]);
+  }
+
+  /**
+   * Creates a stream over the revision. The stream doesn't take a snapshot, it reads what has been written at the time
+   * of reading. This allows to hand out the stream before the revision is written.
+   * 
+   * @return a stream over the revision
+   */
+  public InputStream createInputStream()
+  {
+    return new InputStream()
+    {
+      private int pos;
+
+      @Override
+      public int read()
+      {
+        return pos < count ? buffer[pos++] & 0xFF : -1;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len)
+      {
+        if (len == 0)
+        {
+          return 0;
+        }
+        if (pos >= count)
+        {
+          return -1;
+        }
+        int read = Math.min(len, count - pos);
+        System.arraycopy(buffer, pos, b, off, read);
+        pos += read;
+        return read;
+      }
+
+      @Override
+      public int available()
+      {
+        return Math.max(0, count - pos);
+      }
+    };
+  }
+
+  /**
+   * Searches the ByteRange of the new signature. It is the one that starts in the revision and reaches to the end of
+   * the signed document. The gap of the ByteRange is the Contents of the signature, including the angle brackets.
+   * 
+   * @return the ByteRange with absolute positions in the signed document
+   * @throws IOException if the revision contains no ByteRange that covers the signed document
+   */
+  public long[] getByteRange() throws IOException
+  {
+    byte[] key = BYTE_RANGE.getBytes("ISO-8859-1");
+    for (int i = indexOf(key, 0); i != -1; i = indexOf(key, i + key.length))
+    {
+      long[] range = new long[4];
+      int pos = i + key.length;
+      int n = 0;
+      while (n < range.length && pos < count)
+      {
+        byte b = buffer[pos];
+        if (b >= '0' && b <= '9')
+        {
+          long value = 0;
+          while (pos < count && buffer[pos] >= '0' && buffer[pos] <= '9')
+          {
+            value = value * 10 + (buffer[pos++] - '0');
+          }
+          range[n++] = value;
+        }
+        else if (b == ' ' || b == '[' || b == '\r' || b == '\n')
+        {
+          pos++;
+        }
+        else
+        {
+          break;
+        }
+      }
+      if (n == range.length && range[0] == 0 && range[1] >= offset && range[2] >= range[1]
+          && range[2] + range[3] == offset + count)
+      {
+        return range;
+      }
+    }
+    throw new IOException("No ByteRange found in the revision");
+  }
+
+  private int indexOf(byte[] key, int from)
+  {
+    for (int i = from; i <= count - key.length; i++)
+    {
+      if (regionMatches(key, i))
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private boolean regionMatches(byte[] key, int pos)
+  {
+    for (int j = 0; j < key.length; j++)
+    {
+      if (buffer[pos + j] != key[j])
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void checkPosition() throws IOException
+  {
+    if (outside)
+    {
+      throw new IOException("Can't write into the original document");
+    }
+  }
+
+  private void ensureCapacity(int required)
+  {
+    if (required > buffer.length)
+    {
+      byte[] grown = new byte[Math.max(buffer.length << 1, required)];
+      System.arraycopy(buffer, 0, grown, 0, count);
+      buffer = grown;
+    }
+  }
+
+  /**
+   * The write only channel view on the revision, that is used by PDFBox to move the write position.
+   */
+  private class RevisionChannel extends FileChannel
+  {
+    @Override
+    public long position()
+    {
+      return outside ? position : offset + position;
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException
+    {
+      outside = newPosition < offset;
+      long relative = outside ? newPosition : newPosition - offset;
+      if (relative > Integer.MAX_VALUE)
+      {
+        throw new IOException("Revision too large");
+      }
+      position = (int) relative;
+      return this;
+    }
+
+    @Override
+    public long size()
+    {
+      return offset + count;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException
+    {
+      checkPosition();
+      int len = src.remaining();
+      ensureCapacity(position + len);
+      src.get(buffer, position, len);
+      position += len;
+      count = Math.max(count, position);
+      return len;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int off, int len) throws IOException
+    {
+      long written = 0;
+      for (int i = off; i < off + len; i++)
+      {
+        written += write(srcs[i]);
+      }
+      return written;
+    }
+
+    @Override
+    public int write(ByteBuffer src, long pos) throws IOException
+    {
+      long current = position();
+      position(pos);
+      try
+      {
+        return write(src);
+      }
+      finally
+      {
+        position(current);
+      }
+    }
+
+    @Override
+    public FileChannel truncate(long size)
+    {
+      int relative = (int) Math.max(0, Math.min(count, size - offset));
+      count = relative;
+      if (!outside)
+      {
+        position = Math.min(position, relative);
+      }
+      return this;
+    }
+
+    @Override
+    public void force(boolean metaData)
+    {
+      // nothing to force, the revision lives in memory
+    }
+
+    @Override
+    public int read(ByteBuffer dst)
+    {
+      throw new NonReadableChannelException();
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int off, int len)
+    {
+      throw new NonReadableChannelException();
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long pos)
+    {
+      throw new NonReadableChannelException();
+    }
+
+    @Override
+    public long transferTo(long pos, long len, WritableByteChannel target)
+    {
+      throw new NonReadableChannelException();
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long pos, long len) throws IOException
+    {
+      throw new IOException("The revision channel doesn't support transferFrom");
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long pos, long size) throws IOException
+    {
+      throw new IOException("The revision channel doesn't support map, the revision lives in memory");
+    }
+
+    @Override
+    public FileLock lock(long pos, long size, boolean shared) throws IOException
+    {
+      throw new IOException("The revision channel doesn't support lock, the revision lives in memory");
+    }
+
+    @Override
+    public FileLock tryLock(long pos, long size, boolean shared) throws IOException
+    {
+      throw new IOException("The revision channel doesn't support tryLock, the revision lives in memory");
+    }
+
+    @Override
+    protected void implCloseChannel()
+    {
+      // nothing to release
+    }
+  }
+}
@@ -0,0 +1,527 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.io;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.closeStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.RandomAccessBuffer;
+import org.apache.pdfbox.pdfparser.BaseParser;
+import org.apache.pdfbox.pdfparser.PDFObjectStreamParser;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+
+/**
+ * <p>
+ * Finds the signatures of a document without parsing the whole document. The cross reference chain is read from the end
+ * of the file, then only the catalog, the AcroForm, the form fields and the signature dictionaries are resolved. Pages,
+ * fonts and images are never touched, so time and memory don't depend on the content of the document.
+ * </p>
+ * <p>
+ * The returned signatures are backed by detached dictionaries, whose direct entries are resolved. Encrypted documents
+ * and documents with a damaged cross reference are not supported, the caller has to fall back to a full parse.
+ * </p>
+ */
+public class SignatureLocator
+{
+  private static final int TAIL_LENGTH = 1024;
+
+  private static final int MAX_FIELD_DEPTH = 32;
+
+  private final DocumentSource source;
+
+  /** keeps the data of the parsed streams in memory, it is released with the document */
+  private final RandomAccessBuffer scratchBuffer = new RandomAccessBuffer();
+
+  private final COSDocument cosDocument = new COSDocument(scratchBuffer);
+
+  /** offset of the object in the file, or -1 for free objects */
+  private final Map<Long, Long> offsets = new HashMap<Long, Long>();
+
+  /** number of the object stream and the index in the stream of compressed objects */
+  private final Map<Long, long[]> compressed = new HashMap<Long, long[]>();
+
+  private final Map<Long, Map<Long, COSBase>> objectStreams = new HashMap<Long, Map<Long, COSBase>>();
+
+  private COSDictionary trailer;
+
+  private SignatureLocator(DocumentSource source)
+  {
+    this.source = source;
+  }
+
+  /**
+   * Locates the signature dictionaries of all signed signature fields.
+   * 
+   * @param source the document
+   * @return the signatures in the order of the form fields
+   * @throws IOException if the cross reference can't be read or the document is encrypted
+   */
+  public static List<PDSignature> locate(DocumentSource source) throws IOException
+  {
+    SignatureLocator locator = new SignatureLocator(source);
+    try
+    {
+      return locator.locateSignatures();
+    }
+    catch (RuntimeException e)
+    {
+      // the parser doesn't check everything on damaged documents
+      throw new IOException("Signatures can't be located", e);
+    }
+    finally
+    {
+      locator.cosDocument.close();
+    }
+  }
+
+  private List<PDSignature> locateSignatures() throws IOException
+  {
+    readCrossReferences(findStartXref());
+    if (trailer.getItem(COSName.ENCRYPT) != null)
+    {
+      throw new IOException("Encrypted documents are not supported");
+    }
+
+    List<PDSignature> signatures = new ArrayList<PDSignature>();
+    COSDictionary catalog = resolveDictionary(trailer.getItem(COSName.ROOT));
+    COSDictionary acroForm = catalog == null ? null : resolveDictionary(catalog.getItem(COSName.ACRO_FORM));
+    COSArray fields = acroForm == null ? null : resolveArray(acroForm.getItem(COSName.FIELDS));
+    if (fields != null)
+    {
+      collectSignatures(fields, null, signatures, new HashSet<Long>(), 0);
+    }
+    return signatures;
+  }
+
+  private void collectSignatures(COSArray fields, COSName inheritedType, List<PDSignature> signatures, Set<Long> visited,
+      int depth) throws IOException
+  {
+    if (depth > MAX_FIELD_DEPTH)
+    {
+      throw new IOException("Form fields are nested too deep");
+    }
+    for (int i = 0; i < fields.size(); i++)
+    {
+      COSBase item = fields.get(i);
+      if (item instanceof COSObject && !visited.add(objectNumber((COSObject) item)))
+      {
+        continue;
+      }
+      COSDictionary field = resolveDictionary(item);
+      if (field == null)
+      {
+        continue;
+      }
+
+      COSBase type = resolve(field.getItem(COSName.FT));
+      COSName fieldType = type instanceof COSName ? (COSName) type : inheritedType;
+      COSArray kids = resolveArray(field.getItem(COSName.KIDS));
+      if (kids != null && hasFieldKids(kids))
+      {
+        collectSignatures(kids, fieldType, signatures, visited, depth + 1);
+      }
+      else if (COSName.SIG.equals(fieldType))
+      {
+        COSDictionary value = resolveDictionary(field.getItem(COSName.V));
+        if (value != null)
+        {
+          signatures.add(new PDSignature(detach(value)));
+        }
+      }
+    }
+  }
+
+  /**
+   * A field is terminal, if its kids are only its widget annotations. Field kids carry a partial name, widgets don't.
+   */
+  private boolean hasFieldKids(COSArray kids) throws IOException
+  {
+    for (int i = 0; i < kids.size(); i++)
+    {
+      COSDictionary kid = resolveDictionary(kids.get(i));
+      if (kid != null && kid.containsKey(COSName.T))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Resolves the direct entries of the signature dictionary, so it can be used without the document.
+   */
+  private COSDictionary detach(COSDictionary dictionary) throws IOException
+  {
+    COSDictionary detached = new COSDictionary();
+    for (COSName key : dictionary.keySet())
+    {
+      COSBase value = resolve(dictionary.getItem(key));
+      if (value != null)
+      {
+        detached.setItem(key, value);
+      }
+    }
+    return detached;
+  }
+
+  /*
+   * Cross reference
+   */
+
+  private long findStartXref() throws IOException
+  {
+    long length = source.length();
+    int tailLength = (int) Math.min(TAIL_LENGTH, length);
+    String tail = readAscii(length - tailLength, tailLength);
+    int index = tail.lastIndexOf("startxref");
+    if (index == -1)
+    {
+      throw new IOException("startxref not found");
+    }
+    int pos = index + "startxref".length();
+    while (pos < tail.length() && !Character.isDigit(tail.charAt(pos)))
+    {
+      pos++;
+    }
+    int end = pos;
+    while (end < tail.length() && Character.isDigit(tail.charAt(end)))
+    {
+      end++;
+    }
+    if (pos == end)
+    {
+      throw new IOException("startxref without offset");
+    }
+    return Long.parseLong(tail.substring(pos, end));
+  }
+
+  private void readCrossReferences(long startXref) throws IOException
+  {
+    Set<Long> visited = new HashSet<Long>();
+    Long position = Long.valueOf(startXref);
+    while (position != null)
+    {
+      if (!visited.add(position) || position.longValue() < 0 || position.longValue() >= source.length())
+      {
+        throw new IOException("Invalid cross reference offset " + position);
+      }
+
+      COSDictionary sectionTrailer;
+      if (readAscii(position.longValue(), 4).equals("xref"))
+      {
+        List<long[]> entries = new ArrayList<long[]>();
+        sectionTrailer = readXrefTable(position.longValue(), entries);
+        COSBase xrefStream = sectionTrailer.getItem(COSName.getPDFName("XRefStm"));
+        if (xrefStream instanceof COSNumber)
+        {
+          // hybrid file, the compressed objects are only in the stream and take precedence over free table entries
+          readXrefStream(((COSNumber) xrefStream).longValue());
+        }
+        for (long[] entry : entries)
+        {
+          addEntry(entry[0], entry[1], entry[2], 0);
+        }
+      }
+      else
+      {
+        sectionTrailer = readXrefStream(position.longValue());
+      }
+
+      if (trailer == null)
+      {
+        trailer = sectionTrailer;
+      }
+      COSBase prev = sectionTrailer.getItem(COSName.PREV);
+      position = prev instanceof COSNumber ? Long.valueOf(((COSNumber) prev).longValue()) : null;
+    }
+  }
+
+  private COSDictionary readXrefTable(long position, List<long[]> entries) throws IOException
+  {
+    ObjectParser parser = new ObjectParser(position);
+    try
+    {
+      return parser.readXrefTable(entries);
+    }
+    finally
+    {
+      parser.close();
+    }
+  }
+
+  private COSDictionary readXrefStream(long position) throws IOException
+  {
+    COSBase object = readObject(position);
+    if (!(object instanceof COSStream))
+    {
+      throw new IOException("No cross reference stream at offset " + position);
+    }
+    COSStream stream = (COSStream) object;
+    COSArray w = (COSArray) stream.getDictionaryObject(COSName.W);
+    int[] widths = new int[] { w.getInt(0), w.getInt(1), w.getInt(2) };
+    COSArray index = (COSArray) stream.getDictionaryObject(COSName.INDEX);
+    if (index == null)
+    {
+      index = new COSArray();
+      index.add(COSNumber.get("0"));
+      index.add(stream.getItem(COSName.SIZE));
+    }
+
+    byte[] entry = new byte[widths[0] + widths[1] + widths[2]];
+    InputStream in = stream.getUnfilteredStream();
+    try
+    {
+      for (int i = 0; i + 1 < index.size(); i += 2)
+      {
+        long first = ((COSNumber) index.getObject(i)).longValue();
+        long count = ((COSNumber) index.getObject(i + 1)).longValue();
+        for (long number = first; number < first + count; number++)
+        {
+          readFully(in, entry);
+          long type = widths[0] == 0 ? 1 : readField(entry, 0, widths[0]);
+          long field2 = readField(entry, widths[0], widths[1]);
+          long field3 = readField(entry, widths[0] + widths[1], widths[2]);
+          addEntry(number, type, field2, field3);
+        }
+      }
+    }
+    finally
+    {
+      closeStream(in);
+    }
+    return stream;
+  }
+
+  private void addEntry(long number, long type, long field2, long field3)
+  {
+    Long key = Long.valueOf(number);
+    if (offsets.containsKey(key) || compressed.containsKey(key))
+    {
+      // a newer revision already defined the object
+      return;
+    }
+    if (type == 1)
+    {
+      offsets.put(key, Long.valueOf(field2));
+    }
+    else if (type == 2)
+    {
+      compressed.put(key, new long[] { field2, field3 });
+    }
+    else
+    {
+      offsets.put(key, Long.valueOf(-1));
+    }
+  }
+
+  private static long readField(byte[] entry, int offset, int width)
+  {
+    long value = 0;
+    for (int i = offset; i < offset + width; i++)
+    {
+      value = (value << 8) | (entry[i] & 0xFF);
+    }
+    return value;
+  }
+
+  private static void readFully(InputStream in, byte[] buffer) throws IOException
+  {
+    int pos = 0;
+    while (pos < buffer.length)
+    {
+      int read = in.read(buffer, pos, buffer.length - pos);
+      if (read == -1)
+      {
+        throw new IOException("Cross reference stream is truncated");
+      }
+      pos += read;
+    }
+  }
+
+  /*
+   * Objects
+   */
+
+  private COSDictionary resolveDictionary(COSBase base) throws IOException
+  {
+    COSBase resolved = resolve(base);
+    return resolved instanceof COSDictionary ? (COSDictionary) resolved : null;
+  }
+
+  private COSArray resolveArray(COSBase base) throws IOException
+  {
+    COSBase resolved = resolve(base);
+    return resolved instanceof COSArray ? (COSArray) resolved : null;
+  }
+
+  private COSBase resolve(COSBase base) throws IOException
+  {
+    if (!(base instanceof COSObject))
+    {
+      return base;
+    }
+    Long number = Long.valueOf(objectNumber((COSObject) base));
+
+    long[] location = compressed.get(number);
+    if (location != null)
+    {
+      return readCompressedObject(number, location[0]);
+    }
+    Long offset = offsets.get(number);
+    return offset == null || offset.longValue() < 0 ? null : readObject(offset.longValue());
+  }
+
+  private static long objectNumber(COSObject object)
+  {
+    return object.getObjectNumber().longValue();
+  }
+
+  private COSBase readObject(long position) throws IOException
+  {
+    ObjectParser parser = new ObjectParser(position);
+    try
+    {
+      return parser.readIndirectObject();
+    }
+    finally
+    {
+      parser.close();
+    }
+  }
+
+  private COSBase readCompressedObject(Long number, long streamNumber) throws IOException
+  {
+    Map<Long, COSBase> objects = objectStreams.get(Long.valueOf(streamNumber));
+    if (objects == null)
+    {
+      Long offset = offsets.get(Long.valueOf(streamNumber));
+      COSBase stream = offset == null || offset.longValue() < 0 ? null : readObject(offset.longValue());
+      if (!(stream instanceof COSStream))
+      {
+        throw new IOException("Object stream " + streamNumber + " not found");
+      }
+      PDFObjectStreamParser parser = new PDFObjectStreamParser((COSStream) stream, cosDocument);
+      try
+      {
+        parser.parse();
+      }
+      finally
+      {
+        parser.clearResources();
+      }
+      objects = new HashMap<Long, COSBase>();
+      for (COSObject object : parser.getObjects())
+      {
+        objects.put(Long.valueOf(objectNumber(object)), object.getObject());
+      }
+      objectStreams.put(Long.valueOf(streamNumber), objects);
+    }
+    return objects.get(number);
+  }
+
+  private String readAscii(long position, int length) throws IOException
+  {
+    int available = (int) Math.min(length, source.length() - position);
+    byte[] bytes = new byte[available];
+    source.map(position, available).get(bytes);
+    return new String(bytes, "ISO-8859-1");
+  }
+
+  /**
+   * Parses a single object or cross reference table at a position of the document.
+   */
+  private class ObjectParser extends BaseParser
+  {
+    private ObjectParser(long position) throws IOException
+    {
+      super(new ByteBufferInputStream(source.map(position, source.length() - position)));
+      setDocument(cosDocument);
+    }
+
+    private COSBase readIndirectObject() throws IOException
+    {
+      readObjectNumber();
+      readGenerationNumber();
+      readExpectedString("obj");
+      skipSpaces();
+
+      COSBase object = parseDirObject();
+      skipSpaces();
+      if (object instanceof COSDictionary && pdfSource.peek() == 's')
+      {
+        COSDictionary dictionary = (COSDictionary) object;
+        COSBase length = dictionary.getItem(COSName.LENGTH);
+        if (length instanceof COSObject)
+        {
+          dictionary.setItem(COSName.LENGTH, resolve(length));
+        }
+        return parseCOSStream(dictionary, scratchBuffer);
+      }
+      return object;
+    }
+
+    /**
+     * Reads the entries of the table as number, type and offset and returns the trailer.
+     */
+    private COSDictionary readXrefTable(List<long[]> entries) throws IOException
+    {
+      readExpectedString("xref");
+      while (true)
+      {
+        skipSpaces();
+        if (pdfSource.peek() == 't')
+        {
+          readExpectedString("trailer");
+          skipSpaces();
+          return parseCOSDictionary();
+        }
+
+        long first = readLong();
+        long count = readLong();
+        for (long number = first; number < first + count; number++)
+        {
+          long offset = readLong();
+          readInt();
+          skipSpaces();
+          entries.add(new long[] { number, pdfSource.read() == 'n' ? 1 : 0, offset });
+        }
+      }
+    }
+
+    private void close()
+    {
+      clearResources();
+      closeStream(pdfSource);
+    }
+  }
+}
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.io;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.closeStream;
+import static org.apache.pdfbox.crypto.core.CoreHelper.transfer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.pdfbox.crypto.core.BufferPool;
+import org.apache.pdfbox.crypto.core.PooledInputStream;
+
+/**
+ * <p>
+ * A write once, read many buffer for documents that don't come from a file. The document is kept in memory as long as
+ * it is not bigger than the configured threshold. The memory can be taken from the heap or allocated off-heap as
+ * direct buffer. Bigger documents are spooled into a temporary file.
+ * </p>
+ * <p>
+ * Closing the buffer releases the memory and deletes the temporary file.
+ * </p>
+ */
+public class SpoolBuffer implements DocumentSource
+{
+  private static final int INITIAL_CAPACITY = 64 * 1024;
+
+  private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+  private final long threshold;
+
+  private final File tempFolder;
+
+  private final boolean direct;
+
+  private ByteBuffer memory;
+
+  private File file;
+
+  private RandomAccessFile raf;
+
+  private FileChannel channel;
+
+  /** read only mapping of the temporary file, created on first access */
+  private MappedByteBuffer mapping;
+
+  private long length;
+
+  /**
+   * @param threshold is the maximum number of bytes that will be kept in memory
+   * @param tempFolder is the folder for the temporary file, if the threshold is exceeded
+   * @param direct if true, the memory is allocated off-heap
+   */
+  public SpoolBuffer(long threshold, File tempFolder, boolean direct)
+  {
+    this.threshold = Math.min(threshold, MAX_CAPACITY);
+    this.tempFolder = tempFolder;
+    this.direct = direct;
+  }
+
+  /**
+   * Reads the whole stream into the buffer. The stream will not be closed.
+   * 
+   * @param in the stream that should be buffered
+   * @return the SpoolBuffer for method chaining
+   * @throws IOException if the stream can't be read or the temporary file can't be written
+   */
+  public SpoolBuffer readFrom(InputStream in) throws IOException
+  {
+    byte[] buffer = BufferPool.acquire();
+    try
+    {
+      int read;
+      while ((read = in.read(buffer)) != -1)
+      {
+        write(buffer, 0, read);
+      }
+    }
+    finally
+    {
+      BufferPool.release(buffer);
+    }
+    return this;
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    if (channel == null && length + len > threshold)
+    {
+      spill();
+    }
+
+    if (channel == null)
+    {
+      ensureCapacity((int) length + len);
+      memory.put(b, off, len);
+    }
+    else
+    {
+      ByteBuffer src = ByteBuffer.wrap(b, off, len);
+      while (src.hasRemaining())
+      {
+        channel.write(src);
+      }
+    }
+    length += len;
+  }
+
+  /**
+   * @return a stream that appends all written bytes to this buffer. Closing the stream has no effect on the buffer.
+   */
+  public OutputStream getOutputStream()
+  {
+    return new OutputStream()
+    {
+      @Override
+      public void write(int b) throws IOException
+      {
+        SpoolBuffer.this.write(new byte[] { (byte) b }, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+        SpoolBuffer.this.write(b, off, len);
+      }
+    };
+  }
+
+  /**
+   * @return true, if the buffer exceeded the threshold and the content was spooled into a temporary file
+   */
+  public boolean isSpooled()
+  {
+    return channel != null;
+  }
+
+  public String getName()
+  {
+    return null;
+  }
+
+  public long length()
+  {
+    return length;
+  }
+
+  public InputStream createInputStream() throws IOException
+  {
+    if (channel == null)
+    {
+      return new ByteBufferInputStream(readView());
+    }
+    return new PooledInputStream(new FileInputStream(file));
+  }
+
+  public void writeTo(OutputStream out) throws IOException
+  {
+    if (channel == null)
+    {
+      ByteBuffer view = readView();
+      if (view.hasArray())
+      {
+        out.write(view.array(), view.arrayOffset(), view.remaining());
+      }
+      else
+      {
+        transfer(new ByteBufferInputStream(view), out);
+      }
+    }
+    else
+    {
+      InputStream in = new FileInputStream(file);
+      try
+      {
+        transfer(in, out);
+      }
+      finally
+      {
+        closeStream(in);
+      }
+    }
+  }
+
+  public void transferTo(WritableByteChannel target) throws IOException
+  {
+    if (channel == null)
+    {
+      ByteBuffer view = readView();
+      while (view.hasRemaining())
+      {
+        target.write(view);
+      }
+    }
+    else
+    {
+      long position = 0;
+      while (position < length)
+      {
+        position += channel.transferTo(position, length - position, target);
+      }
+    }
+  }
+
+  public synchronized ByteBuffer map(long position, long size) throws IOException
+  {
+    if (channel == null)
+    {
+      return FileSource.slice(readView(), position, size);
+    }
+    if (mapping == null)
+    {
+      if (length > Integer.MAX_VALUE)
+      {
+        return FileSource.map(channel, position, size);
+      }
+      mapping = channel.map(MapMode.READ_ONLY, 0, length);
+    }
+    return FileSource.slice(mapping, position, size);
+  }
+
+  public synchronized void close()
+  {
+    memory = null;
+    mapping = null;
+    closeStream(raf);
+    channel = null;
+    raf = null;
+    if (file != null && file.exists() && !file.delete())
+    {
+      file.deleteOnExit();
+    }
+    file = null;
+  }
+
+  private ByteBuffer readView()
+  {
+    if (memory == null)
+    {
+      return ByteBuffer.allocate(0);
+    }
+    ByteBuffer view = memory.duplicate();
+    view.flip();
+    return view;
+  }
+
+  private void ensureCapacity(int required)
+  {
+    if (memory != null && memory.capacity() >= required)
+    {
+      return;
+    }
+
+    long capacity = memory == null ? INITIAL_CAPACITY : memory.capacity();
+    while (capacity < required)
+    {
+      capacity <<= 1;
+    }
+    ByteBuffer grown = allocate((int) Math.min(capacity, threshold));
+    if (memory != null)
+    {
+      memory.flip();
+      grown.put(memory);
+    }
+    memory = grown;
+  }
+
+  private ByteBuffer allocate(int capacity)
+  {
+    return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+
+  private void spill() throws IOException
+  {
+    file = File.createTempFile("PDF", ".pdf", tempFolder);
+    raf = new RandomAccessFile(file, "rw");
+    channel = raf.getChannel();
+
+    ByteBuffer content = readView();
+    while (content.hasRemaining())
+    {
+      channel.write(content);
+    }
+    memory = null;
+  }
+}
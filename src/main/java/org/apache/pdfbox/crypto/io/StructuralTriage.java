@@ -0,0 +1,442 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Checks the byte structure of the signatures of a document before the document is parsed and before any cryptography
+ * is done. Garbage and truncated uploads are rejected in the time it takes to read a few bytes of the file, documents
+ * that pass still have to be verified.
+ * </p>
+ * <p>
+ * The signature dictionaries are found by scanning the file for <code>/ByteRange</code>, they are never stored in
+ * compressed object streams. Every ByteRange has to consist of four numbers, start at the beginning of the file, lie
+ * inside the file and leave out exactly the <code>/Contents</code> hex string. The hex string has to hold a DER or BER
+ * encoded sequence, that fits into the string and is only followed by padding. The last signature has to cover the
+ * whole file.
+ * </p>
+ */
+public class StructuralTriage
+{
+  /**
+   * The reason a document was rejected.
+   */
+  public enum Reason
+  {
+    /** the document passed the triage */
+    ACCEPTED,
+    /** no pdf header at the start of the file */
+    NO_PDF_HEADER,
+    /** no end of file marker at the end of the file, the file is probably truncated */
+    NO_EOF_MARKER,
+    /** the document contains no ByteRange */
+    NOT_SIGNED,
+    /** the ByteRange isn't an array of four ascending numbers, that starts at the beginning of the file */
+    MALFORMED_BYTE_RANGE,
+    /** the ByteRange reaches beyond the end of the file */
+    BYTE_RANGE_OUTSIDE_FILE,
+    /** the gap of the ByteRange isn't a hex string */
+    GAP_NOT_CONTENTS,
+    /** the last signature doesn't cover the whole file */
+    FILE_NOT_COVERED,
+    /** the Contents contain characters that aren't hex digits */
+    CONTENTS_NOT_HEX,
+    /** the Contents are only padding, the signature was never injected */
+    CONTENTS_EMPTY,
+    /** the Contents don't hold an encoded sequence, that fits into the hex string */
+    CONTENTS_NOT_CMS
+  }
+
+  /**
+   * The outcome of the triage of a document.
+   */
+  public static class Result
+  {
+    private final Reason reason;
+
+    private final long position;
+
+    private final int signatures;
+
+    Result(Reason reason, long position, int signatures)
+    {
+      this.reason = reason;
+      this.position = position;
+      this.signatures = signatures;
+    }
+
+    /**
+     * @return true, if the document passed the triage
+     */
+    public boolean isAccepted()
+    {
+      return reason == Reason.ACCEPTED;
+    }
+
+    public Reason getReason()
+    {
+      return reason;
+    }
+
+    /**
+     * @return the offset in the file, where the problem was found, or -1 if it isn't bound to a position
+     */
+    public long getPosition()
+    {
+      return position;
+    }
+
+    /**
+     * @return the number of signatures, that passed the triage
+     */
+    public int getSignatureCount()
+    {
+      return signatures;
+    }
+
+    @Override
+    public String toString()
+    {
+      return position < 0 ? reason.toString() : reason + " at offset " + position;
+    }
+  }
+
+  private static final byte[] HEADER = ascii("%PDF-");
+
+  private static final byte[] EOF_MARKER = ascii("%%EOF");
+
+  private static final byte[] BYTE_RANGE = ascii("/ByteRange");
+
+  /** the header may be preceded by garbage and the end of file marker followed by some bytes */
+  private static final int MARKER_WINDOW = 1024;
+
+  /** the longest ByteRange array, that is accepted */
+  private static final int MAX_BYTE_RANGE_LENGTH = 128;
+
+  private static final int CHUNK_SIZE = 1024 * 1024;
+
+  private static final long INDEFINITE_LENGTH = Long.MAX_VALUE;
+
+  private final DocumentSource source;
+
+  private final long length;
+
+  private StructuralTriage(DocumentSource source)
+  {
+    this.source = source;
+    this.length = source.length();
+  }
+
+  /**
+   * Checks the structure of the signatures of a document.
+   * 
+   * @param source the document
+   * @return the result, that names the first problem found
+   * @throws IOException if the document can't be read
+   */
+  public static Result check(DocumentSource source) throws IOException
+  {
+    return new StructuralTriage(source).check();
+  }
+
+  private Result check() throws IOException
+  {
+    if (indexOf(HEADER, 0, Math.min(length, MARKER_WINDOW)) < 0)
+    {
+      return new Result(Reason.NO_PDF_HEADER, 0, 0);
+    }
+    if (indexOf(EOF_MARKER, Math.max(0, length - MARKER_WINDOW), length) < 0)
+    {
+      return new Result(Reason.NO_EOF_MARKER, length, 0);
+    }
+
+    int signatures = 0;
+    long end = 0;
+    for (long i = indexOf(BYTE_RANGE, 0, length); i >= 0; i = indexOf(BYTE_RANGE, i + BYTE_RANGE.length, length))
+    {
+      long[] byteRange = readByteRange(i + BYTE_RANGE.length);
+      Reason reason = checkByteRange(byteRange);
+      if (reason != Reason.ACCEPTED)
+      {
+        return new Result(reason, i, signatures);
+      }
+      reason = checkContents(byteRange[1], byteRange[2]);
+      if (reason != Reason.ACCEPTED)
+      {
+        return new Result(reason, byteRange[1], signatures);
+      }
+      signatures++;
+      end = Math.max(end, byteRange[2] + byteRange[3]);
+    }
+
+    if (signatures == 0)
+    {
+      return new Result(Reason.NOT_SIGNED, -1, 0);
+    }
+    if (end != length)
+    {
+      return new Result(Reason.FILE_NOT_COVERED, end, signatures);
+    }
+    return new Result(Reason.ACCEPTED, -1, signatures);
+  }
+
+  /**
+   * @return the four numbers of the ByteRange array or null, if it isn't an array of four numbers
+   */
+  private long[] readByteRange(long position) throws IOException
+  {
+    ByteBuffer buffer = source.map(position, Math.min(MAX_BYTE_RANGE_LENGTH, length - position));
+    skipWhitespace(buffer);
+    if (!buffer.hasRemaining() || buffer.get() != '[')
+    {
+      return null;
+    }
+    long[] byteRange = new long[4];
+    for (int n = 0; n < byteRange.length; n++)
+    {
+      skipWhitespace(buffer);
+      int digits = 0;
+      while (buffer.hasRemaining() && isDigit(buffer.get(buffer.position())) && digits++ < 18)
+      {
+        byteRange[n] = byteRange[n] * 10 + buffer.get() - '0';
+      }
+      if (digits == 0 || digits > 18)
+      {
+        return null;
+      }
+    }
+    skipWhitespace(buffer);
+    return buffer.hasRemaining() && buffer.get() == ']' ? byteRange : null;
+  }
+
+  private Reason checkByteRange(long[] byteRange)
+  {
+    if (byteRange == null || byteRange[0] != 0 || byteRange[1] < 1 || byteRange[2] < byteRange[1] + 2)
+    {
+      return Reason.MALFORMED_BYTE_RANGE;
+    }
+    if (byteRange[2] + byteRange[3] > length)
+    {
+      return Reason.BYTE_RANGE_OUTSIDE_FILE;
+    }
+    return Reason.ACCEPTED;
+  }
+
+  /**
+   * Checks the hex string between the two parts of a ByteRange.
+   */
+  private Reason checkContents(long start, long end) throws IOException
+  {
+    if (end - start > Integer.MAX_VALUE)
+    {
+      return Reason.GAP_NOT_CONTENTS;
+    }
+    ByteBuffer gap = source.map(start, end - start);
+    if (gap.get(gap.position()) != '<' || gap.get(gap.limit() - 1) != '>')
+    {
+      return Reason.GAP_NOT_CONTENTS;
+    }
+    gap.position(gap.position() + 1);
+    gap.limit(gap.limit() - 1);
+    if ((gap.remaining() & 1) != 0)
+    {
+      return Reason.CONTENTS_NOT_HEX;
+    }
+
+    // the DER header of the cms signature, a sequence with its length
+    byte[] header = new byte[Math.min(6, gap.remaining() / 2)];
+    int padding = gap.position();
+    for (int i = 0; i < header.length; i++)
+    {
+      int high = hexValue(gap.get());
+      int low = hexValue(gap.get());
+      if (high < 0 || low < 0)
+      {
+        return Reason.CONTENTS_NOT_HEX;
+      }
+      header[i] = (byte) (high << 4 | low);
+    }
+    gap.position(padding);
+
+    int capacity = gap.remaining() / 2;
+    long encodedLength = derLength(header);
+    if (encodedLength == 0)
+    {
+      return isPadding(gap) ? Reason.CONTENTS_EMPTY : Reason.CONTENTS_NOT_CMS;
+    }
+    if (encodedLength < 0 || encodedLength > capacity && encodedLength != INDEFINITE_LENGTH)
+    {
+      return Reason.CONTENTS_NOT_CMS;
+    }
+
+    // everything behind the cms signature is padding, the end of an indefinite length can't be told from padding
+    long hexDigits = encodedLength == INDEFINITE_LENGTH ? gap.remaining() : encodedLength * 2;
+    for (long i = 0; i < hexDigits; i++)
+    {
+      if (hexValue(gap.get()) < 0)
+      {
+        return Reason.CONTENTS_NOT_HEX;
+      }
+    }
+    if (!isPadding(gap))
+    {
+      return Reason.CONTENTS_NOT_CMS;
+    }
+    return Reason.ACCEPTED;
+  }
+
+  /**
+   * @return the length of the DER encoded sequence including its header, 0 if the header is padding, -1 if it isn't a
+   *         sequence and {@link #INDEFINITE_LENGTH} for a BER encoded sequence of indefinite length
+   */
+  private static long derLength(byte[] header)
+  {
+    if (header.length < 2)
+    {
+      return -1;
+    }
+    if (header[0] == 0 && header[1] == 0)
+    {
+      return 0;
+    }
+    if (header[0] != 0x30)
+    {
+      return -1;
+    }
+    int first = header[1] & 0xFF;
+    if (first < 0x80)
+    {
+      return 2 + first;
+    }
+    if (first == 0x80)
+    {
+      return INDEFINITE_LENGTH;
+    }
+    int bytes = first & 0x7F;
+    if (bytes > 4 || 2 + bytes > header.length)
+    {
+      return -1;
+    }
+    long contentLength = 0;
+    for (int i = 0; i < bytes; i++)
+    {
+      contentLength = contentLength << 8 | header[2 + i] & 0xFF;
+    }
+    return 2 + bytes + contentLength;
+  }
+
+  private static boolean isPadding(ByteBuffer hex)
+  {
+    while (hex.hasRemaining())
+    {
+      if (hex.get() != '0')
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the position of the first occurrence of the key in the given part of the document or -1
+   */
+  private long indexOf(byte[] key, long from, long to) throws IOException
+  {
+    long position = from;
+    while (to - position >= key.length)
+    {
+      // consecutive chunks overlap, so a key on the border is found
+      long size = Math.min(CHUNK_SIZE, to - position);
+      ByteBuffer chunk = source.map(position, size);
+      int base = chunk.position();
+      int last = chunk.limit() - key.length;
+      for (int i = base; i <= last; i++)
+      {
+        if (chunk.get(i) == key[0] && regionMatches(chunk, i, key))
+        {
+          return position + i - base;
+        }
+      }
+      if (position + size >= to)
+      {
+        break;
+      }
+      position += size - key.length + 1;
+    }
+    return -1;
+  }
+
+  private static boolean regionMatches(ByteBuffer buffer, int position, byte[] key)
+  {
+    for (int j = 1; j < key.length; j++)
+    {
+      if (buffer.get(position + j) != key[j])
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void skipWhitespace(ByteBuffer buffer)
+  {
+    while (buffer.hasRemaining())
+    {
+      byte b = buffer.get(buffer.position());
+      if (b != ' ' && b != '\r' && b != '\n' && b != '\t' && b != '\f' && b != 0)
+      {
+        return;
+      }
+      buffer.get();
+    }
+  }
+
+  private static boolean isDigit(byte b)
+  {
+    return b >= '0' && b <= '9';
+  }
+
+  private static int hexValue(byte b)
+  {
+    if (b >= '0' && b <= '9')
+    {
+      return b - '0';
+    }
+    if (b >= 'A' && b <= 'F')
+    {
+      return b - 'A' + 10;
+    }
+    if (b >= 'a' && b <= 'f')
+    {
+      return b - 'a' + 10;
+    }
+    return -1;
+  }
+
+  private static byte[] ascii(String s)
+  {
+    byte[] bytes = new byte[s.length()];
+    for (int i = 0; i < bytes.length; i++)
+    {
+      bytes[i] = (byte) s.charAt(i);
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.jca;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A read only view on one BER or DER encoded element. The element doesn't copy the encoding, children are parsed on
+ * demand. Only single byte tags and lengths up to four bytes are supported, which is all a cms signature needs.
+ */
+final class DERElement
+{
+  private static final int UTC_TIME = 0x17;
+
+  private static final int GENERALIZED_TIME = 0x18;
+
+  private final byte[] data;
+
+  private final int tag;
+
+  private final int offset;
+
+  private final int contentOffset;
+
+  private final int contentEnd;
+
+  private final int end;
+
+  private List<DERElement> children;
+
+  private DERElement(byte[] data, int tag, int offset, int contentOffset, int contentEnd, int end,
+      List<DERElement> children)
+  {
+    this.data = data;
+    this.tag = tag;
+    this.offset = offset;
+    this.contentOffset = contentOffset;
+    this.contentEnd = contentEnd;
+    this.end = end;
+    this.children = children;
+  }
+
+  /**
+   * Parses the first element of the given encoding. Trailing bytes, like the zero padding of a signature contents, are
+   * ignored.
+   * 
+   * @param data the encoding
+   * @return the element
+   * @throws IOException if the encoding is malformed
+   */
+  static DERElement parse(byte[] data) throws IOException
+  {
+    return parse(data, 0, data.length);
+  }
+
+  private static DERElement parse(byte[] data, int offset, int limit) throws IOException
+  {
+    int pos = offset;
+    if (pos >= limit)
+    {
+      throw new IOException("Unexpected end of encoding at " + pos);
+    }
+    int tag = data[pos++] & 0xFF;
+    if ((tag & 0x1F) == 0x1F)
+    {
+      throw new IOException("Unsupported high tag number at " + offset);
+    }
+    if (pos >= limit)
+    {
+      throw new IOException("Unexpected end of encoding at " + pos);
+    }
+    int length = data[pos++] & 0xFF;
+    if (length == 0x80)
+    {
+      if ((tag & 0x20) == 0)
+      {
+        throw new IOException("Indefinite length of a primitive element at " + offset);
+      }
+      // indefinite length, the children are parsed up to the end-of-contents octets
+      List<DERElement> children = new ArrayList<DERElement>();
+      int contentOffset = pos;
+      while (true)
+      {
+        if (pos + 1 >= limit)
+        {
+          throw new IOException("Missing end-of-contents of the element at " + offset);
+        }
+        if (data[pos] == 0 && data[pos + 1] == 0)
+        {
+          return new DERElement(data, tag, offset, contentOffset, pos, pos + 2, children);
+        }
+        DERElement child = parse(data, pos, limit);
+        children.add(child);
+        pos = child.end;
+      }
+    }
+    if (length > 0x80)
+    {
+      int bytes = length & 0x7F;
+      if (bytes > 4 || pos + bytes > limit)
+      {
+        throw new IOException("Invalid length at " + offset);
+      }
+      length = 0;
+      for (int i = 0; i < bytes; i++)
+      {
+        length = (length << 8) | (data[pos++] & 0xFF);
+      }
+    }
+    if (length < 0 || length > limit - pos)
+    {
+      throw new IOException("Length exceeds the encoding at " + offset);
+    }
+    return new DERElement(data, tag, offset, pos, pos + length, pos + length, null);
+  }
+
+  int getTag()
+  {
+    return tag;
+  }
+
+  boolean isConstructed()
+  {
+    return (tag & 0x20) != 0;
+  }
+
+  /**
+   * @return the children of a constructed element or an empty list
+   * @throws IOException if the encoding is malformed
+   */
+  List<DERElement> getChildren() throws IOException
+  {
+    if (children == null)
+    {
+      if (!isConstructed())
+      {
+        return Collections.emptyList();
+      }
+      List<DERElement> list = new ArrayList<DERElement>();
+      for (int pos = contentOffset; pos < contentEnd;)
+      {
+        DERElement child = parse(data, pos, contentEnd);
+        list.add(child);
+        pos = child.end;
+      }
+      children = list;
+    }
+    return children;
+  }
+
+  /**
+   * @param index the index of the child
+   * @return the child
+   * @throws IOException if the element has no such child
+   */
+  DERElement getChild(int index) throws IOException
+  {
+    List<DERElement> list = getChildren();
+    if (index >= list.size())
+    {
+      throw new IOException("Missing element " + index + " of the element at " + offset);
+    }
+    return list.get(index);
+  }
+
+  /**
+   * @return the content octets, the segments of a constructed string are joined
+   * @throws IOException if the encoding is malformed
+   */
+  byte[] getContent() throws IOException
+  {
+    if (!isConstructed())
+    {
+      return Arrays.copyOfRange(data, contentOffset, contentEnd);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream(contentEnd - contentOffset);
+    for (DERElement child : getChildren())
+    {
+      out.write(child.getContent());
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * @return the encoding of the element as it was read
+   */
+  byte[] getEncoded()
+  {
+    return Arrays.copyOfRange(data, offset, end);
+  }
+
+  /**
+   * Encodes the element with definite lengths under the given tag. Used for the signed attributes, that are signed in
+   * DER with the universal SET tag instead of the implicit tag they are stored with.
+   * 
+   * @param newTag the tag of the encoding
+   * @return the DER encoding
+   * @throws IOException if the encoding is malformed
+   */
+  byte[] toDER(int newTag) throws IOException
+  {
+    if (!isConstructed())
+    {
+      return DERWriter.encode(newTag, getContent());
+    }
+    if (isConstructedString())
+    {
+      // DER encodes strings primitive
+      return DERWriter.encode(newTag & ~0x20, getContent());
+    }
+    List<DERElement> list = getChildren();
+    byte[][] encodings = new byte[list.size()][];
+    for (int i = 0; i < encodings.length; i++)
+    {
+      DERElement child = list.get(i);
+      encodings[i] = child.toDER(child.tag);
+    }
+    return DERWriter.encode(newTag, DERWriter.concat(encodings));
+  }
+
+  String getObjectIdentifier() throws IOException
+  {
+    byte[] content = getContent();
+    StringBuilder oid = new StringBuilder();
+    long value = 0;
+    boolean first = true;
+    for (byte b : content)
+    {
+      value = (value << 7) | (b & 0x7F);
+      if ((b & 0x80) == 0)
+      {
+        if (first)
+        {
+          int root = (int) Math.min(2, value / 40);
+          oid.append(root).append('.').append(value - root * 40);
+          first = false;
+        }
+        else
+        {
+          oid.append('.').append(value);
+        }
+        value = 0;
+      }
+    }
+    if (first)
+    {
+      throw new IOException("Invalid object identifier at " + offset);
+    }
+    return oid.toString();
+  }
+
+  BigInteger getInteger() throws IOException
+  {
+    byte[] content = getContent();
+    if (content.length == 0)
+    {
+      throw new IOException("Invalid integer at " + offset);
+    }
+    return new BigInteger(content);
+  }
+
+  /**
+   * @return the value of an UTCTime or GeneralizedTime
+   * @throws IOException if the element is no time or malformed
+   */
+  Date getTime() throws IOException
+  {
+    String value = new String(getContent(), "US-ASCII");
+    if (tag == UTC_TIME)
+    {
+      if (!value.matches("\\d{10}.*"))
+      {
+        throw new IOException("Invalid time " + value + " at " + offset);
+      }
+      // two digit years from 50 on are in the 20th century
+      value = (Integer.parseInt(value.substring(0, 2)) < 50 ? "20" : "19") + value;
+    }
+    else if (tag != GENERALIZED_TIME)
+    {
+      throw new IOException("No time at " + offset);
+    }
+    if (!value.matches("\\d{12}.*"))
+    {
+      throw new IOException("Invalid time " + value + " at " + offset);
+    }
+    StringBuilder pattern = new StringBuilder("yyyyMMddHHmm");
+    int pos = 12;
+    if (value.length() > pos + 1 && Character.isDigit(value.charAt(pos)))
+    {
+      pattern.append("ss");
+      pos += 2;
+    }
+    if (value.length() > pos && (value.charAt(pos) == '.' || value.charAt(pos) == ','))
+    {
+      // the fraction of seconds is truncated to milliseconds
+      int fraction = pos + 1;
+      while (fraction < value.length() && Character.isDigit(value.charAt(fraction)))
+      {
+        fraction++;
+      }
+      String millis = (value.substring(pos + 1, fraction) + "000").substring(0, 3);
+      value = value.substring(0, pos) + millis + value.substring(fraction);
+      pattern.append("SSS");
+      pos += 3;
+    }
+    String zone = value.substring(pos);
+    value = value.substring(0, pos);
+    SimpleDateFormat format = new SimpleDateFormat(pattern.toString(), Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone(zone.length() == 0 || "Z".equals(zone) ? "UTC" : "GMT" + zone));
+    try
+    {
+      return format.parse(value);
+    }
+    catch (ParseException e)
+    {
+      throw new IOException("Invalid time " + value + " at " + offset);
+    }
+  }
+
+  private boolean isConstructedString()
+  {
+    int number = tag & 0x1F;
+    return (tag & 0xE0) == 0x20 && number != 0x10 && number != 0x11;
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.jca;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A minimal DER encoder for the structures of a cms signature. Every method returns the complete encoding of one
+ * element, constructed elements are built from the encodings of their children.
+ */
+final class DERWriter
+{
+  static final int INTEGER = 0x02;
+
+  static final int OCTET_STRING = 0x04;
+
+  static final int NULL = 0x05;
+
+  static final int OBJECT_IDENTIFIER = 0x06;
+
+  static final int SEQUENCE = 0x30;
+
+  static final int SET = 0x31;
+
+  /** the context specific constructed tag [0] */
+  static final int TAGGED_0 = 0xA0;
+
+  /** orders the elements of a SET OF by their encoding, as DER requires */
+  private static final Comparator<byte[]> ENCODING_ORDER = new Comparator<byte[]>()
+  {
+    public int compare(byte[] a, byte[] b)
+    {
+      for (int i = 0; i < a.length && i < b.length; i++)
+      {
+        if (a[i] != b[i])
+        {
+          return (a[i] & 0xFF) - (b[i] & 0xFF);
+        }
+      }
+      return a.length - b.length;
+    }
+  };
+
+  private DERWriter()
+  {}
+
+  static byte[] encode(int tag, byte[] content)
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(content.length + 6);
+    out.write(tag);
+    writeLength(out, content.length);
+    out.write(content, 0, content.length);
+    return out.toByteArray();
+  }
+
+  static byte[] sequence(byte[]... elements)
+  {
+    return encode(SEQUENCE, concat(elements));
+  }
+
+  static byte[] set(byte[]... elements)
+  {
+    return setOf(SET, elements);
+  }
+
+  /**
+   * Encodes a SET OF with the given tag, e.g. an implicitly tagged set. The elements are sorted.
+   */
+  static byte[] setOf(int tag, byte[]... elements)
+  {
+    byte[][] sorted = elements.clone();
+    Arrays.sort(sorted, ENCODING_ORDER);
+    return encode(tag, concat(sorted));
+  }
+
+  /**
+   * Encodes an explicitly tagged element or an implicitly tagged sequence.
+   */
+  static byte[] tagged(int tag, byte[]... elements)
+  {
+    return encode(tag, concat(elements));
+  }
+
+  static byte[] integer(BigInteger value)
+  {
+    return encode(INTEGER, value.toByteArray());
+  }
+
+  static byte[] integer(int value)
+  {
+    return integer(BigInteger.valueOf(value));
+  }
+
+  static byte[] octetString(byte[] value)
+  {
+    return encode(OCTET_STRING, value);
+  }
+
+  static byte[] nul()
+  {
+    return new byte[] { NULL, 0 };
+  }
+
+  static byte[] objectIdentifier(String oid)
+  {
+    String[] arcs = oid.split("\\.");
+    if (arcs.length < 2)
+    {
+      throw new IllegalArgumentException("Invalid object identifier " + oid);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeArc(out, Long.parseLong(arcs[0]) * 40 + Long.parseLong(arcs[1]));
+    for (int i = 2; i < arcs.length; i++)
+    {
+      writeArc(out, Long.parseLong(arcs[i]));
+    }
+    return encode(OBJECT_IDENTIFIER, out.toByteArray());
+  }
+
+  /**
+   * @param oid the object identifier of the algorithm
+   * @param nullParameters true, if the parameters are NULL instead of absent
+   * @return the AlgorithmIdentifier
+   */
+  static byte[] algorithm(String oid, boolean nullParameters)
+  {
+    return nullParameters ? sequence(objectIdentifier(oid), nul()) : sequence(objectIdentifier(oid));
+  }
+
+  static byte[] concat(byte[]... elements)
+  {
+    int length = 0;
+    for (byte[] element : elements)
+    {
+      length += element.length;
+    }
+    byte[] result = new byte[length];
+    int pos = 0;
+    for (byte[] element : elements)
+    {
+      System.arraycopy(element, 0, result, pos, element.length);
+      pos += element.length;
+    }
+    return result;
+  }
+
+  private static void writeLength(ByteArrayOutputStream out, int length)
+  {
+    if (length < 0x80)
+    {
+      out.write(length);
+      return;
+    }
+    int bytes = 1;
+    while (length >>> (8 * bytes) != 0)
+    {
+      bytes++;
+    }
+    out.write(0x80 | bytes);
+    for (int i = bytes - 1; i >= 0; i--)
+    {
+      out.write(length >>> (8 * i));
+    }
+  }
+
+  private static void writeArc(ByteArrayOutputStream out, long arc)
+  {
+    int groups = 1;
+    while (arc >>> (7 * groups) != 0)
+    {
+      groups++;
+    }
+    for (int i = groups - 1; i > 0; i--)
+    {
+      out.write((int) (arc >>> (7 * i)) & 0x7F | 0x80);
+    }
+    out.write((int) arc & 0x7F);
+  }
+}
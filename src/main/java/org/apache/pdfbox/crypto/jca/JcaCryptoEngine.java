@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.jca;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.cert.CertificateException;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.pdfbox.crypto.core.Algorithms;
+import org.apache.pdfbox.crypto.core.CMSSignature;
+import org.apache.pdfbox.crypto.core.CMSSigner;
+import org.apache.pdfbox.crypto.core.CryptoEngine;
+import org.apache.pdfbox.crypto.core.KeyProvider;
+import org.apache.pdfbox.crypto.core.SignatureProvider;
+import org.apache.pdfbox.exceptions.SignatureException;
+
+/**
+ * A crypto engine, that only uses the providers of the java runtime. BouncyCastle is neither loaded nor required, the
+ * cms structures are encoded and parsed by the engine. Providers named by the key or signature provider are used if
+ * they are installed, otherwise the first provider, that supports the algorithm.
+ */
+public class JcaCryptoEngine implements CryptoEngine
+{
+  /** the provider of all operations or null, to choose the provider by the algorithm */
+  private final String provider;
+
+  public JcaCryptoEngine()
+  {
+    this(null);
+  }
+
+  /**
+   * @param provider the name of the provider, that computes all digests and signatures of the engine
+   */
+  protected JcaCryptoEngine(String provider)
+  {
+    this.provider = provider;
+  }
+
+  public String getName()
+  {
+    return "JCA";
+  }
+
+  /**
+   * @return the name of the provider of all operations or null, if the provider is chosen by the algorithm
+   */
+  public String getProvider()
+  {
+    return provider;
+  }
+
+  public MessageDigest createMessageDigest(String digestAlgorithm) throws SignatureException
+  {
+    try
+    {
+      String oid = Algorithms.getDigestOID(digestAlgorithm);
+      return Algorithms.createMessageDigest(oid != null ? oid : digestAlgorithm, provider);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, e);
+    }
+    catch (NoSuchProviderException e)
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, e);
+    }
+  }
+
+  public CMSSigner createSigner(KeyProvider keyProvider, SignatureProvider signatureProvider) throws SignatureException
+  {
+    return new JcaSigner(keyProvider, signatureProvider, provider);
+  }
+
+  public Set<String> getDigestAlgorithms(byte[] signature) throws SignatureException
+  {
+    try
+    {
+      return JcaSignature.getDigestAlgorithms(signature);
+    }
+    catch (IOException e)
+    {
+      throw new SignatureException(e);
+    }
+  }
+
+  public CMSSignature verify(byte[] signature, Map<String, byte[]> contentDigests) throws SignatureException
+  {
+    try
+    {
+      return new JcaSignature(signature, contentDigests, provider);
+    }
+    catch (IOException e)
+    {
+      throw new SignatureException(e);
+    }
+    catch (CertificateException e)
+    {
+      throw new SignatureException(e);
+    }
+  }
+}
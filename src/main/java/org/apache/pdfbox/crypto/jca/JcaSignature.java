@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.jca;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.crypto.core.Algorithms;
+import org.apache.pdfbox.crypto.core.CMSSignature;
+import org.apache.pdfbox.crypto.core.CertificateHelper;
+import org.apache.pdfbox.crypto.core.CryptoPool;
+
+/**
+ * A detached cms signature, parsed and verified with the providers of the java runtime. The signature is checked when
+ * it is created, the results are held by the instance.
+ */
+public class JcaSignature implements CMSSignature
+{
+  private final static Log LOG = LogFactory.getLog(JcaSignature.class);
+
+  private static final String SUBJECT_KEY_IDENTIFIER = "2.5.29.14";
+
+  private final X509Certificate signerCertificate;
+
+  private final List<Certificate> certificateChain = new ArrayList<Certificate>();
+
+  private final Date signingTime;
+
+  private final boolean digestMatching;
+
+  private final boolean signatureValid;
+
+  /** the provider of the signatures or null, for the first provider that supports the algorithm */
+  private final String provider;
+
+  /**
+   * @param signatureBytes the encoded cms signature, BER or DER
+   * @param contentDigests the digests of the signed content by the object identifiers of their algorithms
+   * @param provider the name of the provider of the signatures or null, for the first provider that supports them
+   * @throws IOException if the signature is malformed or has no signer certificate
+   * @throws CertificateException if the certificates can't be parsed
+   */
+  JcaSignature(byte[] signatureBytes, Map<String, byte[]> contentDigests, String provider) throws IOException,
+      CertificateException
+  {
+    this.provider = provider;
+    DERElement signedData = getSignedData(signatureBytes);
+    DERElement signerInfo = getSignerInfos(signedData).getChild(0);
+    List<DERElement> fields = signerInfo.getChildren();
+    DERElement signerIdentifier = signerInfo.getChild(1);
+    String digestOID = signerInfo.getChild(2).getChild(0).getObjectIdentifier();
+    int index = 3;
+    DERElement signedAttributes = null;
+    if (fields.size() > index && fields.get(index).getTag() == DERWriter.TAGGED_0)
+    {
+      signedAttributes = fields.get(index++);
+    }
+    String signatureOID = signerInfo.getChild(index++).getChild(0).getObjectIdentifier();
+    byte[] signatureValue = signerInfo.getChild(index).getContent();
+
+    X509Certificate signer = null;
+    for (X509Certificate certificate : getCertificates(signedData))
+    {
+      if (isSigner(certificate, signerIdentifier))
+      {
+        if (signer == null)
+        {
+          signer = certificate;
+        }
+        else
+        {
+          certificateChain.add(certificate);
+        }
+      }
+    }
+    if (signer == null)
+    {
+      throw new IOException("The signer certificate is missing");
+    }
+    signerCertificate = signer;
+
+    byte[] contentDigest = contentDigests == null ? null : contentDigests.get(digestOID);
+    if (signedAttributes != null)
+    {
+      byte[] messageDigest = getAttribute(signedAttributes, JcaSigner.MESSAGE_DIGEST);
+      DERElement time = getAttributeValue(signedAttributes, JcaSigner.SIGNING_TIME);
+      signingTime = time == null ? null : time.getTime();
+      digestMatching = contentDigest != null && messageDigest != null && Arrays.equals(messageDigest, contentDigest);
+      signatureValid = digestMatching
+          && verify(getSignatureAlgorithm(digestOID, signatureOID, false), signedAttributes.toDER(DERWriter.SET),
+              signatureValue);
+    }
+    else
+    {
+      signingTime = null;
+      boolean rsa = "RSA".equals(signerCertificate.getPublicKey().getAlgorithm());
+      // without signed attributes the content digest is signed directly, RSA signs it wrapped into a DigestInfo
+      byte[] signed = contentDigest == null ? null : rsa ? DERWriter.sequence(DERWriter.algorithm(digestOID, true),
+          DERWriter.octetString(contentDigest)) : contentDigest;
+      signatureValid = signed != null && verify(getSignatureAlgorithm(digestOID, signatureOID, true), signed,
+          signatureValue);
+      digestMatching = signatureValid;
+    }
+  }
+
+  /**
+   * @param signatureBytes the encoded cms signature
+   * @return the object identifiers of the digest algorithms of all signers
+   * @throws IOException if the signature is malformed
+   */
+  static Set<String> getDigestAlgorithms(byte[] signatureBytes) throws IOException
+  {
+    Set<String> digestAlgorithms = new LinkedHashSet<String>();
+    for (DERElement signerInfo : getSignerInfos(getSignedData(signatureBytes)).getChildren())
+    {
+      digestAlgorithms.add(signerInfo.getChild(2).getChild(0).getObjectIdentifier());
+    }
+    return digestAlgorithms;
+  }
+
+  private static DERElement getSignedData(byte[] signatureBytes) throws IOException
+  {
+    DERElement contentInfo = DERElement.parse(signatureBytes);
+    if (!JcaSigner.SIGNED_DATA.equals(contentInfo.getChild(0).getObjectIdentifier()))
+    {
+      throw new IOException("No cms signed data");
+    }
+    return contentInfo.getChild(1).getChild(0);
+  }
+
+  private static DERElement getSignerInfos(DERElement signedData) throws IOException
+  {
+    List<DERElement> fields = signedData.getChildren();
+    return signedData.getChild(fields.size() - 1);
+  }
+
+  private static List<X509Certificate> getCertificates(DERElement signedData) throws IOException,
+      CertificateException
+  {
+    List<X509Certificate> certificates = new ArrayList<X509Certificate>();
+    List<DERElement> fields = signedData.getChildren();
+    for (int i = 3; i < fields.size() - 1; i++)
+    {
+      if (fields.get(i).getTag() == DERWriter.TAGGED_0)
+      {
+        CertificateFactory factory = CertificateFactory.getInstance("X.509");
+        for (DERElement certificate : fields.get(i).getChildren())
+        {
+          // attribute and other certificates are skipped
+          if (certificate.getTag() == DERWriter.SEQUENCE)
+          {
+            certificates.add((X509Certificate) factory.generateCertificate(new ByteArrayInputStream(certificate
+                .getEncoded())));
+          }
+        }
+      }
+    }
+    return certificates;
+  }
+
+  private static boolean isSigner(X509Certificate certificate, DERElement signerIdentifier) throws IOException
+  {
+    if (signerIdentifier.getTag() == DERWriter.SEQUENCE)
+    {
+      X500Principal issuer = new X500Principal(signerIdentifier.getChild(0).getEncoded());
+      BigInteger serialNumber = signerIdentifier.getChild(1).getInteger();
+      return issuer.equals(certificate.getIssuerX500Principal()) && serialNumber.equals(certificate.getSerialNumber());
+    }
+    // the subject key identifier [0], the extension value is an octet string holding the encoded identifier
+    byte[] extension = certificate.getExtensionValue(SUBJECT_KEY_IDENTIFIER);
+    return extension != null
+        && Arrays.equals(DERElement.parse(DERElement.parse(extension).getContent()).getContent(),
+            signerIdentifier.getContent());
+  }
+
+  private static DERElement getAttributeValue(DERElement signedAttributes, String type) throws IOException
+  {
+    for (DERElement attribute : signedAttributes.getChildren())
+    {
+      if (type.equals(attribute.getChild(0).getObjectIdentifier()))
+      {
+        return attribute.getChild(1).getChild(0);
+      }
+    }
+    return null;
+  }
+
+  private static byte[] getAttribute(DERElement signedAttributes, String type) throws IOException
+  {
+    DERElement value = getAttributeValue(signedAttributes, type);
+    return value == null ? null : value.getContent();
+  }
+
+  /**
+   * The JCA name of the signature algorithm. A key algorithm like rsaEncryption is combined with the digest algorithm,
+   * a raw signature over a prepared digest uses "NONE" as digest. EdDSA signs the message itself, so it can't verify a
+   * raw signature.
+   */
+  private String getSignatureAlgorithm(String digestOID, String signatureOID, boolean raw)
+  {
+    String name = Algorithms.getAlgorithmName(signatureOID);
+    if (name == null)
+    {
+      return null;
+    }
+    if (raw)
+    {
+      int with = name.indexOf("with");
+      return Algorithms.ED25519.equals(signatureOID) ? null : "NONEwith" + (with < 0 ? name : name.substring(with + 4));
+    }
+    return Algorithms.getCMSSignatureAlgorithm(digestOID, signatureOID);
+  }
+
+  private boolean verify(String algorithm, byte[] signed, byte[] signatureValue)
+  {
+    if (algorithm == null)
+    {
+      LOG.warn("Unsupported signature algorithm");
+      return false;
+    }
+    try
+    {
+      return CryptoPool.verify(algorithm, provider, signerCertificate.getPublicKey(), signed, signatureValue);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    catch (NoSuchProviderException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    catch (InvalidKeyException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    catch (java.security.SignatureException e)
+    {
+      LOG.warn(e.getMessage());
+    }
+    return false;
+  }
+
+  public boolean isDigestMatching()
+  {
+    return digestMatching;
+  }
+
+  public boolean isSignatureValid()
+  {
+    return signatureValid;
+  }
+
+  /**
+   * @return true, if the signer certificate was valid at the signing time of the cms signature. Signatures without a
+   *         signing time attribute carry their signing time in the pdf structure, for them the certificate isn't
+   *         checked.
+   */
+  public boolean isCertificateValid()
+  {
+    return CertificateHelper.isValidAt(signerCertificate, signingTime);
+  }
+
+  public Certificate getSignerCertificate()
+  {
+    return signerCertificate;
+  }
+
+  public Certificate[] getCertificateChain()
+  {
+    return certificateChain.toArray(new Certificate[certificateChain.size()]);
+  }
+
+  public Date getCMSSigningTime()
+  {
+    return signingTime == null ? null : (Date) signingTime.clone();
+  }
+}
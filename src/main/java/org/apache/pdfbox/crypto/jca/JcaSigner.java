@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.jca;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.digest;
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.crypto.core.Algorithms;
+import org.apache.pdfbox.crypto.core.CMSSigner;
+import org.apache.pdfbox.crypto.core.CryptoPool;
+import org.apache.pdfbox.crypto.core.KeyProvider;
+import org.apache.pdfbox.crypto.core.SignatureProvider;
+import org.apache.pdfbox.exceptions.SignatureException;
+
+/**
+ * <p>
+ * Creates detached cms signatures with the providers of the java runtime. The signed data is encoded like the
+ * BouncyCastle engine encodes it: the certificate chain, an issuer and serial number signer identifier and the signed
+ * attributes content type, message digest and, if signing certificates are set, the signing certificate v2.
+ * </p>
+ * <p>
+ * Everything, that is the same for every signature, is encoded when the signer is created. The signer is immutable and
+ * can be used by several threads at the same time. Attributes of an attribute container are not supported.
+ * </p>
+ */
+public class JcaSigner implements CMSSigner
+{
+  static final String DATA = "1.2.840.113549.1.7.1";
+
+  static final String SIGNED_DATA = "1.2.840.113549.1.7.2";
+
+  static final String CONTENT_TYPE = "1.2.840.113549.1.9.3";
+
+  static final String MESSAGE_DIGEST = "1.2.840.113549.1.9.4";
+
+  static final String SIGNING_TIME = "1.2.840.113549.1.9.5";
+
+  static final String SIGNING_CERTIFICATE_V2 = "1.2.840.113549.1.9.16.2.47";
+
+  static final String RSA_ENCRYPTION = "1.2.840.113549.1.1.1";
+
+  private final PrivateKey privateKey;
+
+  /** the name of the provider of the key or null, for the first provider that supports the signature algorithm */
+  private final String keyProvider;
+
+  private final String digestOID;
+
+  /** the provider of the digest or null, for the first provider that supports the digest algorithm */
+  private final String digestProvider;
+
+  private final String signatureAlgorithm;
+
+  private final byte[] digestAlgorithm;
+
+  private final byte[] encryptionAlgorithm;
+
+  private final byte[] certificates;
+
+  private final byte[] signerIdentifier;
+
+  /** the encoded signed attributes, that are the same for every signature */
+  private final List<byte[]> staticAttributes = new ArrayList<byte[]>();
+
+  private final COSName filter;
+
+  private final COSName subfilter;
+
+  /**
+   * @param keyProvider the key and certificate chain to sign with
+   * @param signatureProvider the algorithms of the signatures
+   * @throws SignatureException if the algorithms are not supported or the signature provider holds an attribute
+   *           container
+   */
+  public JcaSigner(KeyProvider keyProvider, SignatureProvider signatureProvider) throws SignatureException
+  {
+    this(keyProvider, signatureProvider, null);
+  }
+
+  /**
+   * @param keyProvider the key and certificate chain to sign with
+   * @param signatureProvider the algorithms of the signatures
+   * @param provider the name of the provider of all digests and signatures or null, to use the providers named by the
+   *          key and signature provider if they are installed
+   * @throws SignatureException if the algorithms are not supported, the provider isn't installed or the signature
+   *           provider holds an attribute container
+   */
+  public JcaSigner(KeyProvider keyProvider, SignatureProvider signatureProvider, String provider)
+      throws SignatureException
+  {
+    requireNonNull(keyProvider);
+    requireNonNull(signatureProvider);
+    if (signatureProvider.hasAttributeContainer())
+    {
+      throw new SignatureException(SignatureException.UNSUPPORTED_OPERATION,
+          "The attribute container is only supported by the BouncyCastle engine");
+    }
+    privateKey = keyProvider.getPrivKey();
+    digestOID = signatureProvider.getDigestAlgorithm();
+    filter = signatureProvider.getFilter();
+    subfilter = signatureProvider.getSubfilter();
+
+    Certificate[] chain = keyProvider.getCertificateChain();
+    X509Certificate signerCertificate = (X509Certificate) chain[0];
+    String keyAlgorithm = keyProvider.getKeyAlgorithm();
+    signatureAlgorithm = Algorithms.getSignatureAlgorithm(digestOID, keyAlgorithm);
+    if (signatureAlgorithm == null)
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, "Unsupported key " + keyAlgorithm
+          + " for digest " + digestOID);
+    }
+
+    if (provider != null)
+    {
+      if (Security.getProvider(provider) == null)
+      {
+        throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, "The provider " + provider
+            + " is not installed");
+      }
+      this.keyProvider = provider;
+      digestProvider = provider;
+    }
+    else
+    {
+      // a named provider, that doesn't know the algorithm, e.g. Ed25519 in older providers, isn't used
+      Provider installed = getInstalledProvider(keyProvider.getKeyCrypoProvider());
+      this.keyProvider = installed != null && installed.getService("Signature", signatureAlgorithm) != null ? installed
+          .getName() : null;
+      installed = getInstalledProvider(signatureProvider.getCrypoProvider());
+      digestProvider = installed == null ? null : installed.getName();
+    }
+    // RSA is identified by the key algorithm, ECDSA and Ed25519 by the signature algorithm without parameters
+    encryptionAlgorithm = "RSA".equals(keyAlgorithm) ? DERWriter.algorithm(RSA_ENCRYPTION, true) : DERWriter
+        .algorithm(Algorithms.getSignatureOID(signatureAlgorithm), false);
+    digestAlgorithm = DERWriter.algorithm(digestOID, true);
+
+    try
+    {
+      byte[][] encoded = new byte[chain.length][];
+      for (int i = 0; i < chain.length; i++)
+      {
+        encoded[i] = chain[i].getEncoded();
+      }
+      certificates = DERWriter.setOf(DERWriter.TAGGED_0, encoded);
+      signerIdentifier = DERWriter.sequence(signerCertificate.getIssuerX500Principal().getEncoded(),
+          DERWriter.integer(signerCertificate.getSerialNumber()));
+
+      staticAttributes.add(attribute(CONTENT_TYPE, DERWriter.objectIdentifier(DATA)));
+      Certificate[] signingCertificates = signatureProvider.getSigningCertificates();
+      if (signingCertificates != null)
+      {
+        staticAttributes.add(createSigningCertificate(signingCertificates));
+      }
+    }
+    catch (CertificateEncodingException e)
+    {
+      throw new SignatureException(e);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, e);
+    }
+    catch (NoSuchProviderException e)
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, e);
+    }
+  }
+
+  /**
+   * The signing certificate v2 attribute with the SHA-256 hashes of the X509 certificates. The hash algorithm is
+   * omitted, SHA-256 is the default.
+   */
+  private static byte[] createSigningCertificate(Certificate[] signingCertificates)
+      throws CertificateEncodingException, NoSuchAlgorithmException, NoSuchProviderException
+  {
+    MessageDigest md = CryptoPool.getMessageDigest("SHA-256", null);
+    List<byte[]> certIds = new ArrayList<byte[]>();
+    for (Certificate certificate : signingCertificates)
+    {
+      if (certificate instanceof X509Certificate)
+      {
+        certIds.add(DERWriter.sequence(DERWriter.octetString(md.digest(certificate.getEncoded()))));
+      }
+    }
+    return attribute(SIGNING_CERTIFICATE_V2,
+        DERWriter.sequence(DERWriter.sequence(certIds.toArray(new byte[certIds.size()][]))));
+  }
+
+  private static byte[] attribute(String type, byte[] value)
+  {
+    return DERWriter.sequence(DERWriter.objectIdentifier(type), DERWriter.set(value));
+  }
+
+  private static Provider getInstalledProvider(String name)
+  {
+    return name == null ? null : Security.getProvider(name);
+  }
+
+  public byte[] sign(InputStream content) throws SignatureException, IOException
+  {
+    MessageDigest md = createMessageDigest();
+    digest(content, md);
+    return sign(md.digest());
+  }
+
+  public byte[] sign(byte[] contentDigest) throws SignatureException, IOException
+  {
+    if (privateKey == null)
+    {
+      throw new SignatureException(SignatureException.UNSUPPORTED_OPERATION,
+          "The key is not accessible, the signature has to be created deferred");
+    }
+    byte[] signedAttributes = getSignedAttributes(contentDigest);
+    try
+    {
+      return createSignature(signedAttributes, CryptoPool.sign(signatureAlgorithm, keyProvider, privateKey,
+          signedAttributes));
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, e);
+    }
+    catch (NoSuchProviderException e)
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, e);
+    }
+    catch (InvalidKeyException e)
+    {
+      throw new SignatureException(e);
+    }
+    catch (java.security.SignatureException e)
+    {
+      throw new SignatureException(e);
+    }
+  }
+
+  public byte[] getSignedAttributes(byte[] contentDigest) throws SignatureException
+  {
+    List<byte[]> attributes = new ArrayList<byte[]>(staticAttributes);
+    attributes.add(attribute(MESSAGE_DIGEST, DERWriter.octetString(contentDigest)));
+    return DERWriter.set(attributes.toArray(new byte[attributes.size()][]));
+  }
+
+  public byte[] createSignature(byte[] signedAttributes, byte[] signatureValue) throws SignatureException, IOException
+  {
+    if (signedAttributes.length == 0 || (signedAttributes[0] & 0xFF) != DERWriter.SET)
+    {
+      throw new SignatureException("The signed attributes are no DER encoded set");
+    }
+    // the signed attributes are stored implicitly tagged with [0]
+    byte[] taggedAttributes = signedAttributes.clone();
+    taggedAttributes[0] = (byte) DERWriter.TAGGED_0;
+
+    byte[] signerInfo = DERWriter.sequence(DERWriter.integer(1), signerIdentifier, digestAlgorithm, taggedAttributes,
+        encryptionAlgorithm, DERWriter.octetString(signatureValue));
+    byte[] signedData = DERWriter.sequence(DERWriter.integer(1), DERWriter.set(digestAlgorithm),
+        DERWriter.sequence(DERWriter.objectIdentifier(DATA)), certificates, DERWriter.set(signerInfo));
+    return DERWriter.sequence(DERWriter.objectIdentifier(SIGNED_DATA), DERWriter.tagged(DERWriter.TAGGED_0,
+        signedData));
+  }
+
+  public MessageDigest createMessageDigest() throws SignatureException
+  {
+    try
+    {
+      return Algorithms.createMessageDigest(digestOID, digestProvider);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, e);
+    }
+    catch (NoSuchProviderException e)
+    {
+      throw new SignatureException(SignatureException.NO_SUCH_ALGORITHM, e);
+    }
+  }
+
+  public COSName getFilter()
+  {
+    return filter;
+  }
+
+  public COSName getSubfilter()
+  {
+    return subfilter;
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.vr;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.pdfbox.crypto.bc.VerificationResult.SignatureResult;
+import org.apache.pdfbox.crypto.core.CertificateHelper;
+import org.apache.pdfbox.crypto.core.CryptoPool;
+import org.bouncycastle.util.encoders.Base64;
+
+/**
+ * Collects the distinct certificates of all signatures of a document by their SHA-256 fingerprint, so a report can
+ * write every certificate once and refer to it by its fingerprint. Also encodes certificates for the reports.
+ */
+class CertificateIndex
+{
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final Map<String, Certificate> certificates = new LinkedHashMap<String, Certificate>();
+
+  /**
+   * Adds the signer certificate and the chain of every verified signature.
+   */
+  CertificateIndex(List<SignatureResult> signatures) throws IOException
+  {
+    for (SignatureResult signature : signatures)
+    {
+      if (signature.getError() == null)
+      {
+        add(signature.getSignerCertificate());
+        for (Certificate certificate : signature.getCertificateChain())
+        {
+          add(certificate);
+        }
+      }
+    }
+  }
+
+  private void add(Certificate certificate) throws IOException
+  {
+    String fingerprint = fingerprint(certificate);
+    if (!certificates.containsKey(fingerprint))
+    {
+      certificates.put(fingerprint, certificate);
+    }
+  }
+
+  /**
+   * @return the certificates by fingerprint, in the order they first appear in the signatures
+   */
+  Map<String, Certificate> getCertificates()
+  {
+    return certificates;
+  }
+
+  /**
+   * @return the lower case hex SHA-256 fingerprint of the DER encoded certificate
+   */
+  static String fingerprint(Certificate certificate) throws IOException
+  {
+    try
+    {
+      byte[] digest = CryptoPool.getMessageDigest("SHA-256", null).digest(certificate.getEncoded());
+      char[] hex = new char[digest.length * 2];
+      for (int i = 0; i < digest.length; i++)
+      {
+        hex[2 * i] = HEX[digest[i] >> 4 & 0xF];
+        hex[2 * i + 1] = HEX[digest[i] & 0xF];
+      }
+      return new String(hex);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new IllegalStateException(e);
+    }
+    catch (NoSuchProviderException e)
+    {
+      throw new IllegalStateException(e);
+    }
+    catch (CertificateEncodingException e)
+    {
+      throw new IOException("Certificate can't be encoded", e);
+    }
+  }
+
+  static String text(Certificate certificate)
+  {
+    return new CertificateHelper(certificate).toString();
+  }
+
+  static String der(Certificate certificate) throws IOException
+  {
+    try
+    {
+      return new String(Base64.encode(certificate.getEncoded()), "US-ASCII");
+    }
+    catch (CertificateEncodingException e)
+    {
+      throw new IOException("Certificate can't be encoded", e);
+    }
+  }
+
+  static String subject(Certificate certificate)
+  {
+    return x509(certificate).getSubjectX500Principal().getName();
+  }
+
+  static String issuer(Certificate certificate)
+  {
+    return x509(certificate).getIssuerX500Principal().getName();
+  }
+
+  /**
+   * @return the serial number in hex
+   */
+  static String serialNumber(Certificate certificate)
+  {
+    return x509(certificate).getSerialNumber().toString(16);
+  }
+
+  static String notBefore(Certificate certificate)
+  {
+    return formatDate(x509(certificate).getNotBefore());
+  }
+
+  static String notAfter(Certificate certificate)
+  {
+    return formatDate(x509(certificate).getNotAfter());
+  }
+
+  private static String formatDate(Date date)
+  {
+    GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+    calendar.setTime(date);
+    return SimpleReportWriter.formatDateTime(calendar);
+  }
+
+  private static X509Certificate x509(Certificate certificate)
+  {
+    if (!(certificate instanceof X509Certificate))
+    {
+      throw new IllegalArgumentException(certificate.getType() + " certificates are not supported");
+    }
+    return (X509Certificate) certificate;
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.vr;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.security.cert.Certificate;
+import java.util.Map;
+
+import org.apache.pdfbox.crypto.VerificationReportBuilder;
+import org.apache.pdfbox.crypto.bc.VerificationResult;
+import org.apache.pdfbox.crypto.bc.VerificationResult.SignatureResult;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+
+/**
+ * Writes the verification result of a document as one compact JSON object in UTF-8. By default the certificates are
+ * written as base64 encoded DER into every signature, signer certificate first.
+ * 
+ * <pre>
+ * {"fileName":"a.pdf","fileSize":28247,"valid":true,"signatures":[{"signingTime":"2015-04-17T23:25:50.000+02:00",
+ * "signerName":"...","valid":true,"digestMatching":true,"signatureValid":true,"certificateValid":true,
+ * "certificates":["MIIB..."]}]}
+ * </pre>
+ * <p>
+ * With a certificate table the document holds a "certificates" object, that maps the SHA-256 fingerprint of each
+ * distinct certificate to the certificate, and every signature lists the fingerprints in "certificateRefs".
+ * </p>
+ */
+public class JsonReportWriter implements ReportFormat
+{
+  private final boolean certificateTable;
+
+  private final CertificateEncoding encoding;
+
+  /**
+   * Creates a writer, that writes the certificates as base64 encoded DER into every signature.
+   */
+  public JsonReportWriter()
+  {
+    this(false, CertificateEncoding.DER);
+  }
+
+  /**
+   * @param certificateTable true, to write each distinct certificate once into a table, that the signatures refer to
+   * @param encoding the encoding of the certificates
+   */
+  public JsonReportWriter(boolean certificateTable, CertificateEncoding encoding)
+  {
+    requireNonNull(encoding);
+    this.certificateTable = certificateTable;
+    this.encoding = encoding;
+  }
+
+  public String getName()
+  {
+    return "json";
+  }
+
+  public String getContentType()
+  {
+    return "application/json";
+  }
+
+  public void write(VerificationReportBuilder builder, OutputStream out) throws IOException
+  {
+    VerificationResult result = builder.getVerificationResult();
+    JsonWriter json = createWriter(out);
+    json.beginObject();
+    writeDocument(json, builder);
+    json.name("valid").value(result.isValid());
+    if (certificateTable)
+    {
+      json.name("certificates").beginObject();
+      for (Map.Entry<String, Certificate> entry : new CertificateIndex(result.getSignatures()).getCertificates()
+          .entrySet())
+      {
+        json.name(entry.getKey());
+        writeCertificate(json, entry.getValue(), encoding);
+      }
+      json.endObject();
+    }
+    json.name("signatures").beginArray();
+    for (SignatureResult signature : result.getSignatures())
+    {
+      json.beginObject();
+      writeSignature(json, signature);
+      json.endObject();
+    }
+    json.endArray();
+    json.endObject();
+    json.flush();
+  }
+
+  private void writeSignature(JsonWriter json, SignatureResult result) throws IOException
+  {
+    if (!writeSignatureResult(json, result))
+    {
+      return;
+    }
+    if (certificateTable)
+    {
+      json.name("certificateRefs").beginArray();
+      json.value(CertificateIndex.fingerprint(result.getSignerCertificate()));
+      for (Certificate certificate : result.getCertificateChain())
+      {
+        json.value(CertificateIndex.fingerprint(certificate));
+      }
+      json.endArray();
+    }
+    else
+    {
+      writeCertificates(json, result, encoding);
+    }
+  }
+
+  static JsonWriter createWriter(OutputStream out) throws IOException
+  {
+    return new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+  }
+
+  static void writeDocument(JsonWriter json, VerificationReportBuilder builder) throws IOException
+  {
+    json.property("fileName", builder.getFilename());
+    json.name("fileSize").value(builder.getFileSize());
+  }
+
+  /**
+   * Writes the properties of a signature into the current object, without the certificates.
+   * 
+   * @return true, if the signature was verified, false if it holds an error
+   */
+  static boolean writeSignatureResult(JsonWriter json, SignatureResult result) throws IOException
+  {
+    PDSignature signature = result.getSignature();
+    json.property("signingTime", SimpleReportWriter.formatDateTime(signature.getSignDate()));
+    json.property("signerName", signature.getName());
+    json.property("signerLocation", signature.getLocation());
+    json.property("signerReason", signature.getReason());
+    json.name("valid").value(result.isValid());
+    if (result.getError() != null)
+    {
+      json.name("error").value(String.valueOf(result.getError().getMessage()));
+      return false;
+    }
+    json.name("digestMatching").value(result.isDigestMatching());
+    json.name("signatureValid").value(result.isSignatureValid());
+    json.name("certificateValid").value(result.isCertificateValid());
+    return true;
+  }
+
+  /**
+   * Writes the certificates of a signature as array, signer certificate first.
+   */
+  static void writeCertificates(JsonWriter json, SignatureResult result, CertificateEncoding encoding)
+      throws IOException
+  {
+    json.name("certificates").beginArray();
+    writeCertificate(json, result.getSignerCertificate(), encoding);
+    for (Certificate certificate : result.getCertificateChain())
+    {
+      writeCertificate(json, certificate, encoding);
+    }
+    json.endArray();
+  }
+
+  private static void writeCertificate(JsonWriter json, Certificate certificate, CertificateEncoding encoding)
+      throws IOException
+  {
+    switch (encoding)
+    {
+    case SUMMARY:
+      json.beginObject();
+      json.name("subject").value(CertificateIndex.subject(certificate));
+      json.name("issuer").value(CertificateIndex.issuer(certificate));
+      json.name("serialNumber").value(CertificateIndex.serialNumber(certificate));
+      json.name("notBefore").value(CertificateIndex.notBefore(certificate));
+      json.name("notAfter").value(CertificateIndex.notAfter(certificate));
+      json.endObject();
+      break;
+    case TEXT:
+      json.value(CertificateIndex.text(certificate));
+      break;
+    default:
+      json.value(CertificateIndex.der(certificate));
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.vr;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A minimal streaming writer for compact JSON. It inserts the separators and escapes strings, so no line break is
+ * written inside a value and each document can be kept on a line of its own.
+ */
+class JsonWriter
+{
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final Writer out;
+
+  /** true, if the next value of the current object or array is its first */
+  private boolean first = true;
+
+  /** true, if a name was written and its value is pending */
+  private boolean named;
+
+  JsonWriter(Writer out)
+  {
+    this.out = out;
+  }
+
+  JsonWriter beginObject() throws IOException
+  {
+    separate();
+    out.write('{');
+    first = true;
+    return this;
+  }
+
+  JsonWriter endObject() throws IOException
+  {
+    out.write('}');
+    first = false;
+    return this;
+  }
+
+  JsonWriter beginArray() throws IOException
+  {
+    separate();
+    out.write('[');
+    first = true;
+    return this;
+  }
+
+  JsonWriter endArray() throws IOException
+  {
+    out.write(']');
+    first = false;
+    return this;
+  }
+
+  JsonWriter name(String name) throws IOException
+  {
+    separate();
+    string(name);
+    out.write(':');
+    named = true;
+    return this;
+  }
+
+  /**
+   * Writes a string value, null is written as JSON null.
+   */
+  JsonWriter value(String value) throws IOException
+  {
+    separate();
+    if (value == null)
+    {
+      out.write("null");
+    }
+    else
+    {
+      string(value);
+    }
+    return this;
+  }
+
+  JsonWriter value(long value) throws IOException
+  {
+    separate();
+    out.write(Long.toString(value));
+    return this;
+  }
+
+  JsonWriter value(boolean value) throws IOException
+  {
+    separate();
+    out.write(value ? "true" : "false");
+    return this;
+  }
+
+  /**
+   * Writes a name and a string value. Like in the xml report, null values are left out.
+   */
+  JsonWriter property(String name, String value) throws IOException
+  {
+    return value == null ? this : name(name).value(value);
+  }
+
+  /**
+   * Starts the next document on the same stream, for line delimited output.
+   */
+  JsonWriter newLine() throws IOException
+  {
+    out.write('\n');
+    first = true;
+    return this;
+  }
+
+  void flush() throws IOException
+  {
+    out.flush();
+  }
+
+  private void separate() throws IOException
+  {
+    if (named)
+    {
+      named = false;
+      return;
+    }
+    if (!first)
+    {
+      out.write(',');
+    }
+    first = false;
+  }
+
+  private void string(String value) throws IOException
+  {
+    out.write('"');
+    for (int i = 0; i < value.length(); i++)
+    {
+      char c = value.charAt(i);
+      switch (c)
+      {
+      case '"':
+        out.write("\\\"");
+        break;
+      case '\\':
+        out.write("\\\\");
+        break;
+      case '\n':
+        out.write("\\n");
+        break;
+      case '\r':
+        out.write("\\r");
+        break;
+      case '\t':
+        out.write("\\t");
+        break;
+      default:
+        // control characters and the line separators of JavaScript
+        if (c < 0x20 || c == '\u2028' || c == '\u2029')
+        {
+          out.write("\\u");
+          out.write(HEX[c >> 12 & 0xF]);
+          out.write(HEX[c >> 8 & 0xF]);
+          out.write(HEX[c >> 4 & 0xF]);
+          out.write(HEX[c & 0xF]);
+        }
+        else
+        {
+          out.write(c);
+        }
+      }
+    }
+    out.write('"');
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.vr;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.pdfbox.crypto.VerificationReportBuilder;
+import org.apache.pdfbox.crypto.bc.VerificationResult.SignatureResult;
+
+/**
+ * Writes the verification result of a document as newline delimited JSON, one line per signature. Every line holds
+ * the file name, the file size, the number of signatures and the index of the signature besides the properties of
+ * {@link JsonReportWriter}, so the lines can be split and processed independently. A document without signatures is
+ * written as a single line without signature properties. The reports of several documents can be appended to the same
+ * stream. As every line stands alone, the certificates are written into each line and not into a table, the summary
+ * encoding keeps the lines short.
+ */
+public class NdjsonReportWriter implements ReportFormat
+{
+  private final CertificateEncoding encoding;
+
+  /**
+   * Creates a writer, that writes the certificates as base64 encoded DER.
+   */
+  public NdjsonReportWriter()
+  {
+    this(CertificateEncoding.DER);
+  }
+
+  /**
+   * @param encoding the encoding of the certificates
+   */
+  public NdjsonReportWriter(CertificateEncoding encoding)
+  {
+    requireNonNull(encoding);
+    this.encoding = encoding;
+  }
+
+  public String getName()
+  {
+    return "ndjson";
+  }
+
+  public String getContentType()
+  {
+    return "application/x-ndjson";
+  }
+
+  public void write(VerificationReportBuilder builder, OutputStream out) throws IOException
+  {
+    List<SignatureResult> signatures = builder.getVerificationResult().getSignatures();
+    JsonWriter json = JsonReportWriter.createWriter(out);
+    int index = 0;
+    do
+    {
+      json.beginObject();
+      JsonReportWriter.writeDocument(json, builder);
+      json.name("signatureCount").value(signatures.size());
+      if (index < signatures.size())
+      {
+        json.name("index").value(index);
+        if (JsonReportWriter.writeSignatureResult(json, signatures.get(index)))
+        {
+          JsonReportWriter.writeCertificates(json, signatures.get(index), encoding);
+        }
+      }
+      json.endObject();
+      json.newLine();
+    }
+    while (++index < signatures.size());
+    json.flush();
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.vr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.pdfbox.crypto.VerificationReportBuilder;
+import org.apache.pdfbox.crypto.exceptions.ReportInitializationException;
+
+/**
+ * The OASIS DSS-X verification report of a single document. The report is kept as text, for reports over many
+ * documents the {@link OasisReportWriter} streams them without keeping anything.
+ */
+public class OasisReport implements VerificationReport
+{
+  private VerificationReportBuilder builder;
+
+  private String report;
+
+  public void initReport() throws ReportInitializationException
+  {
+    // nothing to prepare, the writer is created for each report
+  }
+
+  public VerificationReport generateVerificationReport()
+  {
+    try
+    {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      OasisReportWriter writer = new OasisReportWriter(out);
+      writer.write(builder);
+      writer.close();
+      report = out.toString("UTF-8");
+    }
+    catch (IOException e)
+    {
+      throw new IllegalStateException(e);
+    }
+    return this;
+  }
+
+  public void setVerificationReportBuilder(VerificationReportBuilder builder)
+  {
+    this.builder = builder;
+  }
+
+  @Override
+  public String toString()
+  {
+    return report == null ? super.toString() : report;
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.vr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.pdfbox.crypto.VerificationReportBuilder;
+
+/**
+ * Writes the OASIS DSS-X verification report of a single document, see {@link OasisReportWriter}. It is registered as
+ * the "oasis" format.
+ */
+public class OasisReportFormat implements ReportFormat
+{
+  public String getName()
+  {
+    return "oasis";
+  }
+
+  public String getContentType()
+  {
+    return "application/xml";
+  }
+
+  public void write(VerificationReportBuilder builder, OutputStream out) throws IOException
+  {
+    OasisReportWriter writer = new OasisReportWriter(out);
+    writer.write(builder);
+    writer.close();
+  }
+}
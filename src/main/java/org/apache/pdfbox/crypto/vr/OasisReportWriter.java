@@ -0,0 +1,401 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.vr;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Calendar;
+import java.util.List;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.pdfbox.crypto.BulkResult.FileResult;
+import org.apache.pdfbox.crypto.BulkVerifier;
+import org.apache.pdfbox.crypto.VerificationReportBuilder;
+import org.apache.pdfbox.crypto.bc.VerificationResult;
+import org.apache.pdfbox.crypto.bc.VerificationResult.SignatureResult;
+import org.bouncycastle.util.encoders.Base64;
+
+/**
+ * <p>
+ * Streams an OASIS DSS-X verification report. Every signature is written as an IndividualReport as soon as the result
+ * of its document is handed to the writer and nothing of it is kept afterwards, so the memory used doesn't depend on
+ * the number of documents or signatures in the report.
+ * </p>
+ * <p>
+ * The writer is a {@link BulkVerifier.Sink}, a bulk verification writes the report of a whole directory or archive into
+ * one stream. Documents that are unsigned or couldn't be verified get an IndividualReport with a RequesterError.
+ * </p>
+ * <p>
+ * The signature math and the validity period of the signer certificate are reported as verified. The certificate path,
+ * the extensions and the revocation status aren't checked, they are reported as indetermined.
+ * </p>
+ */
+public class OasisReportWriter implements BulkVerifier.Sink, Closeable
+{
+  public static final String VR_NAMESPACE = "urn:oasis:names:tc:dss-x:1.0:profiles:verificationreport:schema#";
+
+  public static final String DSS_NAMESPACE = "urn:oasis:names:tc:dss:1.0:core:schema";
+
+  public static final String DS_NAMESPACE = "http://www.w3.org/2000/09/xmldsig#";
+
+  public static final String XADES_NAMESPACE = "http://uri.etsi.org/01903/v1.3.2#";
+
+  private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+
+  private static final String SUCCESS = "urn:oasis:names:tc:dss:1.0:resultmajor:Success";
+
+  private static final String REQUESTER_ERROR = "urn:oasis:names:tc:dss:1.0:resultmajor:RequesterError";
+
+  private static final String VALID_SIGNATURE = "urn:oasis:names:tc:dss:1.0:resultminor:valid:signature:OnAllDocuments";
+
+  private static final String INCORRECT_SIGNATURE = "urn:oasis:names:tc:dss:1.0:resultminor:invalid:IncorrectSignature";
+
+  private static final String VALID = "urn:oasis:names:tc:dss:1.0:detail:valid";
+
+  private static final String INVALID = "urn:oasis:names:tc:dss:1.0:detail:invalid";
+
+  private static final String INDETERMINED = "urn:oasis:names:tc:dss:1.0:detail:indetermined";
+
+  private static final String SHA256 = "http://www.w3.org/2001/04/xmlenc#sha256";
+
+  private static final String INDENT = "  ";
+
+  private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+  private final XMLStreamWriter writer;
+
+  private long reports;
+
+  private boolean closed;
+
+  /** the first failure of the sink, it is thrown by close */
+  private IOException failure;
+
+  /**
+   * Starts the report, the VerificationTime is the current time. The stream will not be closed.
+   * 
+   * @param out the stream the report is written to, encoded in UTF-8
+   * @throws IOException if the report can't be written
+   */
+  public OasisReportWriter(OutputStream out) throws IOException
+  {
+    requireNonNull(out);
+    try
+    {
+      writer = OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+      writer.writeStartDocument("UTF-8", "1.0");
+      writer.setPrefix("vr", VR_NAMESPACE);
+      writer.setPrefix("dss", DSS_NAMESPACE);
+      writer.setPrefix("ds", DS_NAMESPACE);
+      writer.setPrefix("xades", XADES_NAMESPACE);
+      writer.writeCharacters("\n");
+      writer.writeStartElement(VR_NAMESPACE, "VerificationReport");
+      writer.writeNamespace("vr", VR_NAMESPACE);
+      writer.writeNamespace("dss", DSS_NAMESPACE);
+      writer.writeNamespace("ds", DS_NAMESPACE);
+      writer.writeNamespace("xades", XADES_NAMESPACE);
+      startElement(1, DSS_NAMESPACE, "VerificationTimeInfo");
+      writeElement(2, DSS_NAMESPACE, "VerificationTime", SimpleReportWriter.formatDateTime(Calendar.getInstance()));
+      endElement(1);
+      writer.flush();
+    }
+    catch (XMLStreamException e)
+    {
+      throw new IOException("The report can't be written", e);
+    }
+  }
+
+  /**
+   * Verifies the document, if not done before, and writes its signatures into the report.
+   * 
+   * @param builder the builder of the verified document
+   * @throws IOException if the document can't be verified or the report can't be written
+   */
+  public void write(VerificationReportBuilder builder) throws IOException
+  {
+    write(builder.getFilename(), builder.getVerificationResult());
+  }
+
+  /**
+   * Writes the signatures of a verified document into the report and flushes them to the stream.
+   * 
+   * @param name the name of the document, it is written into the ResultMessage of each signature
+   * @param result the verification result of the document
+   * @throws IOException if the report can't be written
+   */
+  public synchronized void write(String name, VerificationResult result) throws IOException
+  {
+    checkOpen();
+    try
+    {
+      List<SignatureResult> signatures = result.getSignatures();
+      if (signatures.isEmpty())
+      {
+        writeError(name, "Document is not signed");
+      }
+      for (int i = 0; i < signatures.size(); i++)
+      {
+        writeSignature(signatures.get(i), name + ", signature " + (i + 1) + " of " + signatures.size());
+      }
+      writer.flush();
+    }
+    catch (XMLStreamException e)
+    {
+      throw new IOException("The report can't be written", e);
+    }
+  }
+
+  /**
+   * Writes the result of a bulk verification. Failures can't be thrown by a sink, the first one is thrown by
+   * {@link #close()} and the following results are ignored.
+   */
+  public synchronized void accept(FileResult file)
+  {
+    if (failure != null)
+    {
+      return;
+    }
+    try
+    {
+      if (file.getResult() != null)
+      {
+        write(file.getName(), file.getResult());
+      }
+      else
+      {
+        checkOpen();
+        writeError(file.getName(), String.valueOf(file.getError()));
+        writer.flush();
+      }
+    }
+    catch (XMLStreamException e)
+    {
+      failure = new IOException("The report can't be written", e);
+    }
+    catch (IOException e)
+    {
+      failure = e;
+    }
+  }
+
+  /**
+   * @return the number of IndividualReports written so far
+   */
+  public synchronized long getReportCount()
+  {
+    return reports;
+  }
+
+  /**
+   * Ends the report. The stream will not be closed.
+   * 
+   * @throws IOException if the report can't be written or a result of the bulk verification couldn't be written
+   */
+  public synchronized void close() throws IOException
+  {
+    if (closed)
+    {
+      return;
+    }
+    closed = true;
+    try
+    {
+      endElement(0);
+      writer.writeCharacters("\n");
+      writer.writeEndDocument();
+      writer.flush();
+      writer.close();
+    }
+    catch (XMLStreamException e)
+    {
+      throw new IOException("The report can't be written", e);
+    }
+    if (failure != null)
+    {
+      throw failure;
+    }
+  }
+
+  private void checkOpen()
+  {
+    if (closed)
+    {
+      throw new IllegalStateException("The report is closed");
+    }
+  }
+
+  private void writeSignature(SignatureResult result, String message) throws XMLStreamException, IOException
+  {
+    if (result.getError() != null)
+    {
+      writeError(message, "Signature can't be verified: " + result.getError());
+      return;
+    }
+    startElement(1, VR_NAMESPACE, "IndividualReport");
+    startElement(2, VR_NAMESPACE, "SignedObjectIdentifier");
+    if (result.getPrefixHash() != null)
+    {
+      // the signed revision of the document, including the signature
+      startElement(3, VR_NAMESPACE, "DigestAlgAndValue");
+      indent(4);
+      writer.writeEmptyElement(DS_NAMESPACE, "DigestMethod");
+      writer.writeAttribute("Algorithm", SHA256);
+      writeElement(4, DS_NAMESPACE, "DigestValue", base64(result.getPrefixHash()));
+      endElement(3);
+    }
+    String signingTime = SimpleReportWriter.formatDateTime(result.getSignature().getSignDate());
+    if (signingTime != null)
+    {
+      startElement(3, VR_NAMESPACE, "SignedProperties");
+      startElement(4, VR_NAMESPACE, "SignedSignatureProperties");
+      writeElement(5, XADES_NAMESPACE, "SigningTime", signingTime);
+      endElement(4);
+      endElement(3);
+    }
+    endElement(2);
+    writeResult(2, SUCCESS, result.isValid() ? VALID_SIGNATURE : INCORRECT_SIGNATURE, message);
+
+    startElement(2, VR_NAMESPACE, "Details");
+    startElement(3, VR_NAMESPACE, "DetailedSignatureReport");
+    writeVerificationResult(4, "FormatOK", VALID);
+    startElement(4, VR_NAMESPACE, "SignatureOK");
+    writeVerificationResult(5, "SigMathOK", result.isDigestMatching() && result.isSignatureValid() ? VALID : INVALID);
+    endElement(4);
+
+    X509Certificate signer = (X509Certificate) result.getSignerCertificate();
+    startElement(4, VR_NAMESPACE, "CertificatePathValidity");
+    writeVerificationResult(5, "PathValiditySummary", result.isCertificateValid() ? INDETERMINED : INVALID);
+    writeCertificateIdentifier(5, signer);
+    startElement(5, VR_NAMESPACE, "PathValidityDetail");
+    writeCertificateValidity(6, signer, result.isCertificateValid() ? VALID : INVALID);
+    for (Certificate certificate : result.getCertificateChain())
+    {
+      if (certificate instanceof X509Certificate && !certificate.equals(signer))
+      {
+        writeCertificateValidity(6, (X509Certificate) certificate, INDETERMINED);
+      }
+    }
+    endElement(5);
+    endElement(4);
+    endElement(3);
+    endElement(2);
+    endElement(1);
+    reports++;
+  }
+
+  private void writeError(String name, String message) throws XMLStreamException
+  {
+    startElement(1, VR_NAMESPACE, "IndividualReport");
+    indent(2);
+    writer.writeEmptyElement(VR_NAMESPACE, "SignedObjectIdentifier");
+    writeResult(2, REQUESTER_ERROR, null, name + ": " + message);
+    endElement(1);
+    reports++;
+  }
+
+  private void writeResult(int depth, String major, String minor, String message) throws XMLStreamException
+  {
+    startElement(depth, DSS_NAMESPACE, "Result");
+    writeElement(depth + 1, DSS_NAMESPACE, "ResultMajor", major);
+    if (minor != null)
+    {
+      writeElement(depth + 1, DSS_NAMESPACE, "ResultMinor", minor);
+    }
+    indent(depth + 1);
+    writer.writeStartElement(DSS_NAMESPACE, "ResultMessage");
+    writer.writeAttribute("xml", XML_NAMESPACE, "lang", "en");
+    writer.writeCharacters(message);
+    writer.writeEndElement();
+    endElement(depth);
+  }
+
+  private void writeCertificateValidity(int depth, X509Certificate certificate, String validityPeriod)
+      throws XMLStreamException
+  {
+    startElement(depth, VR_NAMESPACE, "CertificateValidity");
+    writeCertificateIdentifier(depth + 1, certificate);
+    writeElement(depth + 1, VR_NAMESPACE, "Subject", certificate.getSubjectX500Principal().getName());
+    writeVerificationResult(depth + 1, "ChainingOK", INDETERMINED);
+    writeVerificationResult(depth + 1, "ValidityPeriodOK", validityPeriod);
+    writeVerificationResult(depth + 1, "ExtensionsOK", INDETERMINED);
+    startElement(depth + 1, VR_NAMESPACE, "SignatureOK");
+    writeVerificationResult(depth + 2, "SigMathOK", INDETERMINED);
+    endElement(depth + 1);
+    startElement(depth + 1, VR_NAMESPACE, "CertificateStatus");
+    writeVerificationResult(depth + 2, "CertStatusOK", INDETERMINED);
+    endElement(depth + 1);
+    endElement(depth);
+  }
+
+  private void writeCertificateIdentifier(int depth, X509Certificate certificate) throws XMLStreamException
+  {
+    startElement(depth, VR_NAMESPACE, "CertificateIdentifier");
+    writeElement(depth + 1, DS_NAMESPACE, "X509IssuerName", certificate.getIssuerX500Principal().getName());
+    writeElement(depth + 1, DS_NAMESPACE, "X509SerialNumber", certificate.getSerialNumber().toString());
+    endElement(depth);
+  }
+
+  private void writeVerificationResult(int depth, String name, String major) throws XMLStreamException
+  {
+    startElement(depth, VR_NAMESPACE, name);
+    writeElement(depth + 1, VR_NAMESPACE, "ResultMajor", major);
+    endElement(depth);
+  }
+
+  private void writeElement(int depth, String namespace, String name, String value) throws XMLStreamException
+  {
+    indent(depth);
+    writer.writeStartElement(namespace, name);
+    writer.writeCharacters(value);
+    writer.writeEndElement();
+  }
+
+  private void startElement(int depth, String namespace, String name) throws XMLStreamException
+  {
+    indent(depth);
+    writer.writeStartElement(namespace, name);
+  }
+
+  private void endElement(int depth) throws XMLStreamException
+  {
+    indent(depth);
+    writer.writeEndElement();
+  }
+
+  private void indent(int depth) throws XMLStreamException
+  {
+    writer.writeCharacters("\n");
+    for (int i = 0; i < depth; i++)
+    {
+      writer.writeCharacters(INDENT);
+    }
+  }
+
+  private static String base64(byte[] data) throws UnsupportedEncodingException
+  {
+    return new String(Base64.encode(data), "US-ASCII");
+  }
+}
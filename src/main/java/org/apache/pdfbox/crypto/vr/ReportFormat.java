@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.vr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.pdfbox.crypto.VerificationReportBuilder;
+
+/**
+ * A format the verification result of a document can be written in. Formats stream the report to an output stream
+ * and are shared by all threads, so they have to be stateless.
+ * <p>
+ * Additional formats are found with {@link java.util.ServiceLoader}, they are listed in
+ * <code>META-INF/services/org.apache.pdfbox.crypto.vr.ReportFormat</code>, see {@link ReportFormatRegistry}.
+ * </p>
+ */
+public interface ReportFormat
+{
+  /**
+   * @return the name the format is registered with, like "xml" or "json"
+   */
+  public String getName();
+
+  /**
+   * @return the media type of the written report
+   */
+  public String getContentType();
+
+  /**
+   * Verifies the document, if not done before, and writes the report. The stream will not be closed.
+   * 
+   * @param builder the builder of the verified document
+   * @param out the stream the report is written to
+   * @throws IOException if the document can't be verified or the report can't be written
+   */
+  public void write(VerificationReportBuilder builder, OutputStream out) throws IOException;
+}
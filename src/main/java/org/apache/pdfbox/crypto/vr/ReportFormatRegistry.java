@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.vr;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The registry of the report formats by name. The built-in formats "xml", "json", "ndjson" and "oasis" are always
+ * registered, formats found by the {@link ServiceLoader} are registered once when the registry is loaded and replace
+ * built-in formats of the same name. Names are case insensitive.
+ */
+public class ReportFormatRegistry
+{
+  private static final Log LOG = LogFactory.getLog(ReportFormatRegistry.class);
+
+  private static final Map<String, ReportFormat> formats = new ConcurrentHashMap<String, ReportFormat>();
+
+  static
+  {
+    register(new SimpleReportWriter());
+    register(new JsonReportWriter());
+    register(new NdjsonReportWriter());
+    register(new OasisReportFormat());
+
+    Iterator<ReportFormat> discovered = ServiceLoader.load(ReportFormat.class).iterator();
+    while (true)
+    {
+      try
+      {
+        if (!discovered.hasNext())
+        {
+          break;
+        }
+        register(discovered.next());
+      }
+      catch (ServiceConfigurationError e)
+      {
+        // a broken provider doesn't hide the others
+        LOG.warn("Report format can't be loaded", e);
+      }
+    }
+  }
+
+  private ReportFormatRegistry()
+  {}
+
+  /**
+   * Registers a format under its name, a format of the same name is replaced.
+   * 
+   * @param format the format
+   */
+  public static void register(ReportFormat format)
+  {
+    requireNonNull(format);
+    formats.put(key(format.getName()), format);
+  }
+
+  /**
+   * @param name the name of the format
+   * @return the format or null, if no format of that name is registered
+   */
+  public static ReportFormat get(String name)
+  {
+    return name == null ? null : formats.get(key(name));
+  }
+
+  /**
+   * @return the names of all registered formats
+   */
+  public static Set<String> getNames()
+  {
+    return Collections.unmodifiableSet(new TreeSet<String>(formats.keySet()));
+  }
+
+  private static String key(String name)
+  {
+    return name.toLowerCase(Locale.ENGLISH);
+  }
+}
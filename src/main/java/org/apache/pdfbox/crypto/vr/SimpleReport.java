@@ -18,10 +18,8 @@ package org.apache.pdfbox.crypto.vr;
 
 import java.io.IOException;
 import java.io.StringWriter;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
-import java.security.cert.CertStoreException;
 import java.security.cert.Certificate;
+import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
 
@@ -31,8 +29,10 @@ import javax.xml.bind.Marshaller;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.pdfbox.crypto.VerificationReportBuilder;
-import org.apache.pdfbox.crypto.bc.SignatureHelper;
+import org.apache.pdfbox.crypto.bc.VerificationResult.SignatureResult;
 import org.apache.pdfbox.crypto.core.CertificateHelper;
 import org.apache.pdfbox.crypto.exceptions.ReportInitializationException;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
@@ -41,7 +41,6 @@ import org.apache.pdfbox.schema.vr.simple_report.Document;
 import org.apache.pdfbox.schema.vr.simple_report.ObjectFactory;
 import org.apache.pdfbox.schema.vr.simple_report.SignatureType;
 import org.apache.pdfbox.schema.vr.simple_report.Signatures;
-import org.bouncycastle.cms.CMSException;
 
 /**
  * This verification report shows some essentials verification results. It act as a demo report and is not suitable for
@@ -51,6 +50,10 @@ import org.bouncycastle.cms.CMSException;
  */
 public class SimpleReport implements VerificationReport
 {
+  private static final Log LOG = LogFactory.getLog(SimpleReport.class);
+
+  private static JAXBContext context;
+
   private ObjectFactory factory;
   private Marshaller marshaller;
 
@@ -64,8 +67,7 @@ public class SimpleReport implements VerificationReport
   {
     try
     {
-      JAXBContext context = JAXBContext.newInstance(Document.class);
-      marshaller = context.createMarshaller();
+      marshaller = getContext().createMarshaller();
       marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
       factory = new ObjectFactory();
     }
@@ -75,6 +77,22 @@ public class SimpleReport implements VerificationReport
     }
   }
 
+  /**
+   * Returns the JAXB context of the report document. Creating a context is expensive, so it is created once and shared
+   * by all reports. The context is thread safe, its marshallers and unmarshallers are not.
+   * 
+   * @return the context for {@link Document}
+   * @throws JAXBException if the context can't be created
+   */
+  public static synchronized JAXBContext getContext() throws JAXBException
+  {
+    if (context == null)
+    {
+      context = JAXBContext.newInstance(Document.class);
+    }
+    return context;
+  }
+
   public Document getDocument()
   {
     return document;
@@ -95,45 +113,38 @@ public class SimpleReport implements VerificationReport
 
       List<SignatureType> signatureList = signatures.getSignature();
 
-      for (PDSignature pdSignature : builder.getSignatures())
+      for (SignatureResult result : builder.getVerificationResult().getSignatures())
       {
-        try
+        if (result.getError() != null)
         {
-          SignatureHelper signatureHelper = new SignatureHelper(pdSignature,builder.getContentForSignature(pdSignature));
-          SignatureType signature = factory.createSignatureType();
-          signature.setSignerName(pdSignature.getName());
-          signature.setSignerLocation(pdSignature.getLocation());
-          signature.setSignerReason(pdSignature.getReason());
-          signature.setSigningTime(dtf.newXMLGregorianCalendar((GregorianCalendar) pdSignature.getSignDate()));
-          signature.setMathematicalyValid(signatureHelper.isMathematicalyValid());
-
-          Certificates certificates = factory.createCertificates();
-          signature.setCertificates(certificates);
-          List<String> certificateList = certificates.getCertificate();
-          certificateList.add(new CertificateHelper(signatureHelper.getSignerCertificate()).toString());
-          Certificate[] certificateChain = signatureHelper.getCertificateChain();
-          for (Certificate certificate : certificateChain)
-          {
-            certificateList.add(new CertificateHelper(certificate).toString());
-          }
-          signatureList.add(signature);
+          // the signature is still reported, it is not valid
+          LOG.warn("Signature can't be verified", result.getError());
         }
-        catch (CMSException e)
+        PDSignature pdSignature = result.getSignature();
+        SignatureType signature = factory.createSignatureType();
+        signature.setSignerName(pdSignature.getName());
+        signature.setSignerLocation(pdSignature.getLocation());
+        signature.setSignerReason(pdSignature.getReason());
+        Calendar signDate = pdSignature.getSignDate();
+        if (signDate != null)
         {
-          e.printStackTrace();
+          signature.setSigningTime(dtf.newXMLGregorianCalendar((GregorianCalendar) signDate));
         }
-        catch (NoSuchAlgorithmException e)
-        {
-          e.printStackTrace();
-        }
-        catch (NoSuchProviderException e)
+        signature.setMathematicalyValid(result.isValid());
+
+        Certificates certificates = factory.createCertificates();
+        signature.setCertificates(certificates);
+        List<String> certificateList = certificates.getCertificate();
+        if (result.getSignerCertificate() != null)
         {
-          e.printStackTrace();
+          certificateList.add(new CertificateHelper(result.getSignerCertificate()).toString());
         }
-        catch (CertStoreException e)
+        Certificate[] certificateChain = result.getCertificateChain();
+        for (Certificate certificate : certificateChain)
         {
-          e.printStackTrace();
+          certificateList.add(new CertificateHelper(certificate).toString());
         }
+        signatureList.add(signature);
       }
 
       StringWriter writer = new StringWriter();
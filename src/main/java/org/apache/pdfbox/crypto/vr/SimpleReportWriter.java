@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.vr;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.cert.Certificate;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.crypto.VerificationReportBuilder;
+import org.apache.pdfbox.crypto.bc.VerificationResult.SignatureResult;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+
+/**
+ * <p>
+ * Streams the {@link SimpleReport} of a document to an output stream, one signature at a time. The report follows
+ * SimpleReport.xsd like the JAXB document, but neither a JAXB context nor a document tree is built.
+ * </p>
+ * <p>
+ * The writer is stateless and can be used by several threads. It is registered as the "xml" format.
+ * </p>
+ * <p>
+ * By default every signature lists the text dump of its certificates, as the simple report does. With a certificate
+ * table each distinct certificate is written once into the CertificateTable of the document, keyed by its SHA-256
+ * fingerprint, and the signatures refer to it with CertificateRef elements.
+ * </p>
+ */
+public class SimpleReportWriter implements ReportFormat
+{
+  private static final Log LOG = LogFactory.getLog(SimpleReportWriter.class);
+
+  /** the target namespace of SimpleReport.xsd */
+  public static final String NAMESPACE = "http://pdfbox.apache.org/schema/vr/simple_report";
+
+  private static final String INDENT = "    ";
+
+  private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+  private static DatatypeFactory datatypeFactory;
+
+  private final boolean certificateTable;
+
+  private final CertificateEncoding encoding;
+
+  /**
+   * Creates a writer, that writes the certificates as text into every signature.
+   */
+  public SimpleReportWriter()
+  {
+    this(false, CertificateEncoding.TEXT);
+  }
+
+  /**
+   * @param certificateTable true, to write each distinct certificate once into a table, that the signatures refer to
+   * @param encoding the encoding of the certificates. The summary is only supported in the table.
+   */
+  public SimpleReportWriter(boolean certificateTable, CertificateEncoding encoding)
+  {
+    requireNonNull(encoding);
+    if (!certificateTable && encoding == CertificateEncoding.SUMMARY)
+    {
+      throw new IllegalArgumentException("The summary of a certificate can only be written into the table");
+    }
+    this.certificateTable = certificateTable;
+    this.encoding = encoding;
+  }
+
+  public String getName()
+  {
+    return "xml";
+  }
+
+  public String getContentType()
+  {
+    return "application/xml";
+  }
+
+  /**
+   * Verifies the document, if not done before, and writes the report. The stream will not be closed.
+   * 
+   * @param builder the builder of the verified document
+   * @param out the stream the report is written to, encoded in UTF-8
+   * @throws IOException if the document can't be verified or the report can't be written
+   */
+  public void write(VerificationReportBuilder builder, OutputStream out) throws IOException
+  {
+    try
+    {
+      XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+      writer.writeStartDocument("UTF-8", "1.0");
+      writer.setDefaultNamespace(NAMESPACE);
+      writer.writeCharacters("\n");
+      writer.writeStartElement(NAMESPACE, "Document");
+      writer.writeDefaultNamespace(NAMESPACE);
+      writeElement(writer, 1, "FileName", builder.getFilename());
+      writeElement(writer, 1, "FileSize", Long.toString(builder.getFileSize()));
+      List<SignatureResult> signatures = builder.getVerificationResult().getSignatures();
+      if (certificateTable)
+      {
+        writeCertificateTable(writer, new CertificateIndex(signatures));
+      }
+      startElement(writer, 1, "Signatures");
+      for (SignatureResult result : signatures)
+      {
+        if (result.getError() != null)
+        {
+          // the signature is still reported, it is not valid
+          LOG.warn("Signature can't be verified", result.getError());
+        }
+        writeSignature(writer, result);
+      }
+      endElement(writer, 1);
+      endElement(writer, 0);
+      writer.writeCharacters("\n");
+      writer.writeEndDocument();
+      writer.flush();
+      writer.close();
+    }
+    catch (XMLStreamException e)
+    {
+      throw new IOException("The report can't be written", e);
+    }
+  }
+
+  private void writeSignature(XMLStreamWriter writer, SignatureResult result) throws XMLStreamException, IOException
+  {
+    PDSignature signature = result.getSignature();
+    startElement(writer, 2, "Signature");
+    writeElement(writer, 3, "SigningTime", formatDateTime(signature.getSignDate()));
+    writeElement(writer, 3, "SignerName", signature.getName());
+    writeElement(writer, 3, "SignerLocation", signature.getLocation());
+    writeElement(writer, 3, "SignerReason", signature.getReason());
+    writeElement(writer, 3, "MathematicalyValid", Boolean.toString(result.isValid()));
+    startElement(writer, 3, "Certificates");
+    if (result.getSignerCertificate() != null)
+    {
+      writeCertificate(writer, result.getSignerCertificate());
+    }
+    for (Certificate certificate : result.getCertificateChain())
+    {
+      writeCertificate(writer, certificate);
+    }
+    endElement(writer, 3);
+    endElement(writer, 2);
+  }
+
+  private void writeCertificate(XMLStreamWriter writer, Certificate certificate) throws XMLStreamException,
+      IOException
+  {
+    if (certificateTable)
+    {
+      writeElement(writer, 4, "CertificateRef", CertificateIndex.fingerprint(certificate));
+    }
+    else
+    {
+      writeElement(writer, 4, "Certificate", encoding == CertificateEncoding.DER ? CertificateIndex.der(certificate)
+          : CertificateIndex.text(certificate));
+    }
+  }
+
+  private void writeCertificateTable(XMLStreamWriter writer, CertificateIndex index) throws XMLStreamException,
+      IOException
+  {
+    startElement(writer, 1, "CertificateTable");
+    for (Map.Entry<String, Certificate> entry : index.getCertificates().entrySet())
+    {
+      Certificate certificate = entry.getValue();
+      startElement(writer, 2, "CertificateEntry");
+      writer.writeAttribute("Id", entry.getKey());
+      switch (encoding)
+      {
+      case SUMMARY:
+        writeElement(writer, 3, "Subject", CertificateIndex.subject(certificate));
+        writeElement(writer, 3, "Issuer", CertificateIndex.issuer(certificate));
+        writeElement(writer, 3, "SerialNumber", CertificateIndex.serialNumber(certificate));
+        writeElement(writer, 3, "NotBefore", CertificateIndex.notBefore(certificate));
+        writeElement(writer, 3, "NotAfter", CertificateIndex.notAfter(certificate));
+        break;
+      case DER:
+        writeElement(writer, 3, "Encoded", CertificateIndex.der(certificate));
+        break;
+      default:
+        writeElement(writer, 3, "Text", CertificateIndex.text(certificate));
+      }
+      endElement(writer, 2);
+    }
+    endElement(writer, 1);
+  }
+
+  /**
+   * Writes an element with text content. Like JAXB, elements without a value are left out.
+   */
+  private static void writeElement(XMLStreamWriter writer, int depth, String name, String value)
+      throws XMLStreamException
+  {
+    if (value != null)
+    {
+      indent(writer, depth);
+      writer.writeStartElement(NAMESPACE, name);
+      writer.writeCharacters(value);
+      writer.writeEndElement();
+    }
+  }
+
+  private static void startElement(XMLStreamWriter writer, int depth, String name) throws XMLStreamException
+  {
+    indent(writer, depth);
+    writer.writeStartElement(NAMESPACE, name);
+  }
+
+  private static void endElement(XMLStreamWriter writer, int depth) throws XMLStreamException
+  {
+    indent(writer, depth);
+    writer.writeEndElement();
+  }
+
+  private static void indent(XMLStreamWriter writer, int depth) throws XMLStreamException
+  {
+    writer.writeCharacters("\n");
+    for (int i = 0; i < depth; i++)
+    {
+      writer.writeCharacters(INDENT);
+    }
+  }
+
+  static String formatDateTime(Calendar calendar)
+  {
+    if (calendar == null)
+    {
+      return null;
+    }
+    return getDatatypeFactory().newXMLGregorianCalendar((GregorianCalendar) calendar).toXMLFormat();
+  }
+
+  private static synchronized DatatypeFactory getDatatypeFactory()
+  {
+    if (datatypeFactory == null)
+    {
+      try
+      {
+        datatypeFactory = DatatypeFactory.newInstance();
+      }
+      catch (DatatypeConfigurationException e)
+      {
+        throw new IllegalStateException(e);
+      }
+    }
+    return datatypeFactory;
+  }
+}
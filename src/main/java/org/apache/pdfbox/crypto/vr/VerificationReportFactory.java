@@ -16,42 +16,89 @@
  */
 package org.apache.pdfbox.crypto.vr;
 
+import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNull;
+
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.pdfbox.crypto.VerificationReportBuilder;
 import org.apache.pdfbox.crypto.exceptions.ReportInitializationException;
 
 /**
+ * Creates verification reports through an explicit registry of factories. Report classes without a registered factory
+ * are instantiated through their public default constructor, which is looked up once and registered as factory.
+ * 
  * @author Thomas Chojecki
  */
 public class VerificationReportFactory
 {
 
-  public static VerificationReport createReportForClass(Class<? extends VerificationReport> reportClass, VerificationReportBuilder verificationBuilder)
-      throws ReportInitializationException
+  /**
+   * Creates new, uninitialized reports of one class.
+   */
+  public interface ReportFactory<T extends VerificationReport>
   {
-    try
+    T newReport() throws ReportInitializationException;
+  }
+
+  private static final Map<Class<?>, ReportFactory<?>> factories = new ConcurrentHashMap<Class<?>, ReportFactory<?>>();
+
+  static
+  {
+    register(SimpleReport.class, new ReportFactory<SimpleReport>()
     {
-      VerificationReport verificationReport = reportClass.getConstructor().newInstance();
-      verificationReport.setVerificationReportBuilder(verificationBuilder);
-      verificationReport.initReport();
-      return verificationReport.generateVerificationReport();
-    }
-    catch (InstantiationException e)
+      public SimpleReport newReport()
+      {
+        return new SimpleReport();
+      }
+    });
+    register(OasisReport.class, new ReportFactory<OasisReport>()
     {
-      throw new ReportInitializationException(e);
-    }
-    catch (IllegalAccessException e)
+      public OasisReport newReport()
+      {
+        return new OasisReport();
+      }
+    });
+  }
+
+  /**
+   * Registers the factory for a report class, a factory registered before for the class is replaced.
+   */
+  public static <T extends VerificationReport> void register(Class<T> reportClass, ReportFactory<? extends T> factory)
+  {
+    requireNonNull(reportClass);
+    requireNonNull(factory);
+    factories.put(reportClass, factory);
+  }
+
+  public static VerificationReport createReportForClass(Class<? extends VerificationReport> reportClass, VerificationReportBuilder verificationBuilder)
+      throws ReportInitializationException
+  {
+    if (reportClass == null)
     {
-      throw new ReportInitializationException(e);
+      throw new ReportInitializationException("No report type set");
     }
-    catch (IllegalArgumentException e)
+    ReportFactory<?> factory = factories.get(reportClass);
+    if (factory == null)
     {
-      throw new ReportInitializationException(e);
+      factory = createReflectiveFactory(reportClass);
+      factories.put(reportClass, factory);
     }
-    catch (InvocationTargetException e)
+    VerificationReport verificationReport = factory.newReport();
+    verificationReport.setVerificationReportBuilder(verificationBuilder);
+    verificationReport.initReport();
+    return verificationReport.generateVerificationReport();
+  }
+
+  private static <T extends VerificationReport> ReportFactory<T> createReflectiveFactory(Class<T> reportClass)
+      throws ReportInitializationException
+  {
+    final Constructor<T> constructor;
+    try
     {
-      throw new ReportInitializationException(e);
+      constructor = reportClass.getConstructor();
     }
     catch (NoSuchMethodException e)
     {
@@ -61,6 +108,32 @@ public class VerificationReportFactory
     {
       throw new ReportInitializationException(e);
     }
+    return new ReportFactory<T>()
+    {
+      public T newReport() throws ReportInitializationException
+      {
+        try
+        {
+          return constructor.newInstance();
+        }
+        catch (InstantiationException e)
+        {
+          throw new ReportInitializationException(e);
+        }
+        catch (IllegalAccessException e)
+        {
+          throw new ReportInitializationException(e);
+        }
+        catch (IllegalArgumentException e)
+        {
+          throw new ReportInitializationException(e);
+        }
+        catch (InvocationTargetException e)
+        {
+          throw new ReportInitializationException(e);
+        }
+      }
+    };
   }
 
 }
@@ -17,19 +17,53 @@
 package org.apache.pdfbox.crypto.core;
 
 import static org.apache.pdfbox.crypto.core.CoreHelper.requireNonNullOrEmpty;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
 import java.security.Security;
+import java.security.SignatureSpi;
 import java.security.UnrecoverableKeyException;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.apache.pdfbox.crypto.bc.CryptoHelper;
+import org.apache.pdfbox.crypto.io.ByteRangeDigester;
+import org.apache.pdfbox.crypto.io.FileSource;
+import org.apache.pdfbox.crypto.io.RevisionOutputStream;
+import org.apache.pdfbox.crypto.io.SpoolBuffer;
 import org.apache.pdfbox.crypto.sign.KeyStoreHelper;
 import org.apache.pdfbox.pdfwriter.COSFilterInputStream;
+import org.bouncycastle.asn1.DERObjectIdentifier;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -90,4 +124,422 @@ public class CoreTest
     System.out.println(certHelper);
   }
 
+  @Test
+  public void testSpoolBuffer() throws IOException
+  {
+    byte[] content = new byte[200 * 1024];
+    new Random().nextBytes(content);
+    File tempFolder = new File(System.getProperty("java.io.tmpdir"));
+
+    SpoolBuffer memory = new SpoolBuffer(1024 * 1024, tempFolder, false).readFrom(new ByteArrayInputStream(content));
+    assertFalse("Content below the threshold should stay in memory", memory.isSpooled());
+    assertSpoolBufferContent(content, memory);
+
+    SpoolBuffer direct = new SpoolBuffer(1024 * 1024, tempFolder, true).readFrom(new ByteArrayInputStream(content));
+    assertFalse("Content below the threshold should stay in memory", direct.isSpooled());
+    assertSpoolBufferContent(content, direct);
+
+    SpoolBuffer spooled = new SpoolBuffer(100 * 1024, tempFolder, false).readFrom(new ByteArrayInputStream(content));
+    assertTrue("Content above the threshold should be spooled", spooled.isSpooled());
+    assertSpoolBufferContent(content, spooled);
+  }
+
+  @Test
+  public void testFileSource() throws IOException
+  {
+    byte[] content = new byte[200 * 1024];
+    new Random().nextBytes(content);
+    File file = File.createTempFile("FileSource", ".pdf");
+    try
+    {
+      FileOutputStream out = new FileOutputStream(file);
+      try
+      {
+        out.write(content);
+      }
+      finally
+      {
+        out.close();
+      }
+
+      // the ranges are the same, whether the file is mapped or read
+      for (boolean mapped : new boolean[] { true, false })
+      {
+        FileSource source = new FileSource(file, mapped);
+        try
+        {
+          ByteBuffer range = source.map(1000, 5000);
+          byte[] bytes = new byte[range.remaining()];
+          range.get(bytes);
+          assertArrayEquals(Arrays.copyOfRange(content, 1000, 6000), bytes);
+          assertEquals(0, source.map(content.length, 0).remaining());
+          try
+          {
+            source.map(content.length - 10, 11);
+            fail("A range beyond the end of the document can't be served");
+          }
+          catch (IOException e)
+          {
+            // expected
+          }
+        }
+        finally
+        {
+          source.close();
+        }
+      }
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testRevisionOutputStream() throws IOException
+  {
+    RevisionOutputStream revision = new RevisionOutputStream(100);
+    revision.write("revision".getBytes("US-ASCII"));
+
+    // COSWriter moves the position through the channel to patch the revision
+    FileChannel channel = revision.getChannel();
+    assertEquals(108, channel.position());
+    channel.position(100);
+    revision.write('R');
+    channel.position(108);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    revision.writeTo(out);
+    assertEquals("Revision", out.toString("US-ASCII"));
+
+    channel.position(99);
+    try
+    {
+      revision.write(0);
+      fail("The original document can't be changed");
+    }
+    catch (IOException e)
+    {
+      // expected
+    }
+    try
+    {
+      channel.map(MapMode.READ_ONLY, 100, 8);
+      fail("The revision can't be mapped");
+    }
+    catch (IOException e)
+    {
+      assertTrue(e.getMessage(), e.getMessage().contains("map"));
+    }
+  }
+
+  @Test
+  public void testByteRangeDigester() throws Exception
+  {
+    byte[] content = new byte[3 * 1024 * 1024];
+    new Random().nextBytes(content);
+    SpoolBuffer document = new SpoolBuffer(content.length, new File(System.getProperty("java.io.tmpdir")), false)
+        .readFrom(new ByteArrayInputStream(content));
+
+    int[][] byteRanges = new int[][] { { 0, 1000, 2000, 500 }, { 0, 1500000, 1600000, 5000 }, { 0, 2500000, 2600000, 500000 },
+        { 100, 200, 1200000, 1000000 }, { 0, 2000 }, { 0, 3100000 } };
+    ByteRangeDigester<Integer> digester = new ByteRangeDigester<Integer>();
+    for (int i = 0; i < byteRanges.length; i++)
+    {
+      assertTrue(digester.add(i, byteRanges[i], MessageDigest.getInstance("SHA-256")));
+    }
+    assertFalse("Descending ranges can't be digested in one pass",
+        digester.add(byteRanges.length, new int[] { 2000, 10, 0, 10 }, MessageDigest.getInstance("SHA-256")));
+
+    try
+    {
+      Map<Integer, byte[]> digests = digester.digest(document);
+      assertEquals(byteRanges.length, digests.size());
+      for (int i = 0; i < byteRanges.length; i++)
+      {
+        MessageDigest expected = MessageDigest.getInstance("SHA-256");
+        for (int j = 0; j < byteRanges[i].length; j += 2)
+        {
+          expected.update(content, byteRanges[i][j], byteRanges[i][j + 1]);
+        }
+        assertArrayEquals(expected.digest(), digests.get(i));
+      }
+    }
+    finally
+    {
+      document.close();
+    }
+  }
+
+  @Test
+  public void testAlgorithmRegistry() throws Exception
+  {
+    String sha256 = NISTObjectIdentifiers.id_sha256.getId();
+    assertEquals(sha256, CryptoHelper.getDigestOID("SHA-256"));
+    assertEquals(sha256, CryptoHelper.getDigestOID("sha256"));
+    assertEquals(sha256, CryptoHelper.getDigestOID(sha256));
+    assertNull(CryptoHelper.getDigestOID("SHA256withRSA"));
+    assertEquals("SHA-256", CryptoHelper.getAlgorithmName(sha256));
+    assertEquals("SHA-256", CryptoHelper.createMessageDigest(sha256, "BC").getAlgorithm());
+
+    String sha256WithRSA = PKCSObjectIdentifiers.sha256WithRSAEncryption.getId();
+    assertEquals(sha256WithRSA, CryptoHelper.getSignatureOID("SHA256withRSA"));
+    assertEquals("SHA256withRSA", CryptoHelper.getAlgorithmName(sha256WithRSA));
+
+    // preloaded identifiers are shared, unknown ones don't change the registry
+    assertSame(CryptoHelper.getAlgorithmIdentifierForOID(NISTObjectIdentifiers.id_sha256),
+        CryptoHelper.getAlgorithmIdentifierForOID(NISTObjectIdentifiers.id_sha256));
+    int registered = CryptoHelper.algorithms.size();
+    CryptoHelper.getAlgorithmIdentifierForOID(new DERObjectIdentifier("1.2.3.4"));
+    assertEquals(registered, CryptoHelper.algorithms.size());
+    try
+    {
+      CryptoHelper.algorithms.put(new DERObjectIdentifier("1.2.3.4"), new AlgorithmIdentifier("1.2.3.4"));
+      fail("The registry should be immutable");
+    }
+    catch (UnsupportedOperationException e)
+    {
+      // expected
+    }
+
+    SignatureProvider signatureProvider = SignatureProvider.getInstance();
+    signatureProvider.setDigestAlgorithm("SHA-512");
+    assertEquals(NISTObjectIdentifiers.id_sha512.getId(), signatureProvider.getDigestAlgorithm());
+  }
+
+  @Test
+  public void testCryptoPool() throws Exception
+  {
+    byte[] data = "pooled".getBytes("US-ASCII");
+    MessageDigest first = CryptoPool.getMessageDigest("SHA-256", "BC");
+    MessageDigest second = CryptoPool.getMessageDigest("SHA-256", "BC");
+    assertNotSame(first, second);
+    first.update(data);
+    assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(data), first.digest());
+    assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(new byte[0]), second.digest());
+
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(1024);
+    KeyPair keyPair = generator.generateKeyPair();
+    KeyPair otherKeyPair = generator.generateKeyPair();
+
+    // the engine of the thread is reused for the same key and initialized again for another key
+    byte[] signature = CryptoPool.sign("SHA256withRSA", "BC", keyPair.getPrivate(), data);
+    assertArrayEquals(signature, CryptoPool.sign("SHA256withRSA", "BC", keyPair.getPrivate(), data));
+    assertTrue(CryptoPool.verify("SHA256withRSA", "BC", keyPair.getPublic(), data, signature));
+    assertTrue(CryptoPool.verify("SHA256withRSA", "BC", keyPair.getPublic(), data, signature));
+    assertFalse(CryptoPool.verify("SHA256withRSA", "BC", otherKeyPair.getPublic(), data, signature));
+    assertFalse(CryptoPool.verify("SHA256withRSA", "BC", keyPair.getPublic(), new byte[1], signature));
+    assertTrue(CryptoPool.verify("SHA256withRSA", null, keyPair.getPublic(), data, signature));
+
+    byte[] otherSignature = CryptoPool.sign("SHA256withRSA", "BC", otherKeyPair.getPrivate(), data);
+    assertFalse(Arrays.equals(signature, otherSignature));
+    assertTrue(CryptoPool.verify("SHA256withRSA", "BC", otherKeyPair.getPublic(), data, otherSignature));
+  }
+
+  @Test
+  public void testCryptoPoolWithKeysOfDifferentProviders() throws Exception
+  {
+    byte[] data = "pooled".getBytes("US-ASCII");
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(1024);
+    KeyPair keyPair = generator.generateKeyPair();
+
+    // like a key of a token, only its provider can sign with it
+    Provider tokenProvider = new Provider("PoolTest", 1.0, "Signs with token keys")
+    {
+      private static final long serialVersionUID = 1L;
+      {
+        put("Signature.SHA256withRSA", TokenSignature.class.getName());
+        put("Signature.SHA256withRSA SupportedKeyClasses", TokenKey.class.getName());
+      }
+    };
+    Security.addProvider(tokenProvider);
+    try
+    {
+      // the provider of an engine is selected by the first key, a token key must not reuse the engine of a software key
+      byte[] signature = CryptoPool.sign("SHA256withRSA", null, keyPair.getPrivate(), data);
+      assertArrayEquals(TokenSignature.VALUE, CryptoPool.sign("SHA256withRSA", null, new TokenKey(), data));
+      assertArrayEquals(signature, CryptoPool.sign("SHA256withRSA", null, keyPair.getPrivate(), data));
+
+      CryptoPool.clear();
+      assertArrayEquals(signature, CryptoPool.sign("SHA256withRSA", null, keyPair.getPrivate(), data));
+    }
+    finally
+    {
+      CryptoPool.clear();
+      Security.removeProvider(tokenProvider.getName());
+    }
+  }
+
+  @Test
+  public void testParallelism() throws Exception
+  {
+    ExecutorService fixed = Executors.newFixedThreadPool(3);
+    ExecutorService cached = Executors.newCachedThreadPool();
+    try
+    {
+      assertEquals(3, CoreHelper.getParallelism(fixed, 8));
+      // the size of an unbounded pool is unknown
+      assertEquals(8, CoreHelper.getParallelism(cached, 8));
+    }
+    finally
+    {
+      fixed.shutdown();
+      cached.shutdown();
+    }
+  }
+
+  @Test
+  public void testBufferPool() throws Exception
+  {
+    assertEquals(BufferPool.MIN_SIZE, BufferPool.acquire(1).length);
+    assertEquals(8 * 1024, BufferPool.acquire(5000).length);
+    assertEquals(BufferPool.MAX_SIZE, BufferPool.acquire(BufferPool.MAX_SIZE).length);
+    assertEquals(BufferPool.MAX_SIZE + 1, BufferPool.acquire(BufferPool.MAX_SIZE + 1).length);
+
+    try
+    {
+      BufferPool.setBufferSize(10000);
+      assertEquals(16 * 1024, BufferPool.getBufferSize());
+      assertEquals(16 * 1024, BufferPool.acquire().length);
+      BufferPool.setBufferSize(1);
+      assertEquals(BufferPool.MIN_SIZE, BufferPool.getBufferSize());
+      BufferPool.setBufferSize(Integer.MAX_VALUE);
+      assertEquals(BufferPool.MAX_SIZE, BufferPool.getBufferSize());
+    }
+    finally
+    {
+      BufferPool.setBufferSize(BufferPool.DEFAULT_SIZE);
+    }
+
+    // buffers that don't match a size class are dropped
+    BufferPool.release(new byte[5000]);
+    BufferPool.release(null);
+    assertEquals(8 * 1024, BufferPool.acquire(5000).length);
+
+    byte[] content = new byte[200000];
+    new Random(42).nextBytes(content);
+    ByteArrayOutputStream copied = new ByteArrayOutputStream();
+    assertEquals(content.length, CoreHelper.transfer(new ByteArrayInputStream(content), copied));
+    assertArrayEquals(content, copied.toByteArray());
+
+    MessageDigest digest = CryptoPool.getMessageDigest("SHA-256", null);
+    assertEquals(content.length, CoreHelper.digest(new ByteArrayInputStream(content), digest));
+    assertArrayEquals(CryptoPool.getMessageDigest("SHA-256", null).digest(content), digest.digest());
+
+    PooledInputStream in = new PooledInputStream(new ByteArrayInputStream(content));
+    ByteArrayOutputStream read = new ByteArrayOutputStream();
+    assertEquals(content[0] & 0xFF, in.read());
+    read.write(content[0]);
+    CoreHelper.transfer(in, read);
+    assertArrayEquals(content, read.toByteArray());
+    in.close();
+    in.close();
+    try
+    {
+      in.read();
+      fail("A closed stream shouldn't be readable");
+    }
+    catch (IOException e)
+    {
+      // expected
+    }
+  }
+
+  private static void assertSpoolBufferContent(byte[] expected, SpoolBuffer buffer) throws IOException
+  {
+    try
+    {
+      assertEquals(expected.length, buffer.length());
+
+      ByteArrayOutputStream written = new ByteArrayOutputStream();
+      buffer.writeTo(written);
+      assertArrayEquals(expected, written.toByteArray());
+
+      ByteArrayOutputStream read = new ByteArrayOutputStream();
+      CoreHelper.copy(buffer.createInputStream(), read);
+      assertArrayEquals(expected, read.toByteArray());
+
+      ByteBuffer range = buffer.map(1000, 5000);
+      byte[] mapped = new byte[range.remaining()];
+      range.get(mapped);
+      assertArrayEquals(Arrays.copyOfRange(expected, 1000, 6000), mapped);
+    }
+    finally
+    {
+      buffer.close();
+    }
+  }
+
+  public static final class TokenKey implements PrivateKey
+  {
+    private static final long serialVersionUID = 1L;
+
+    public String getAlgorithm()
+    {
+      return "RSA";
+    }
+
+    public String getFormat()
+    {
+      return null;
+    }
+
+    public byte[] getEncoded()
+    {
+      return null;
+    }
+  }
+
+  public static final class TokenSignature extends SignatureSpi
+  {
+    private static final byte[] VALUE = { 1, 2, 3 };
+
+    @Override
+    protected void engineInitVerify(PublicKey publicKey) throws InvalidKeyException
+    {
+      throw new InvalidKeyException("Only token keys are supported");
+    }
+
+    @Override
+    protected void engineInitSign(PrivateKey privateKey) throws InvalidKeyException
+    {
+      if (!(privateKey instanceof TokenKey))
+      {
+        throw new InvalidKeyException("Only token keys are supported");
+      }
+    }
+
+    @Override
+    protected void engineUpdate(byte b)
+    {}
+
+    @Override
+    protected void engineUpdate(byte[] b, int off, int len)
+    {}
+
+    @Override
+    protected byte[] engineSign()
+    {
+      return VALUE.clone();
+    }
+
+    @Override
+    protected boolean engineVerify(byte[] sigBytes)
+    {
+      return false;
+    }
+
+    @Override
+    @Deprecated
+    protected void engineSetParameter(String param, Object value)
+    {}
+
+    @Override
+    @Deprecated
+    protected Object engineGetParameter(String param)
+    {
+      return null;
+    }
+  }
 }
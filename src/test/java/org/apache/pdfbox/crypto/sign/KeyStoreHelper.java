@@ -19,6 +19,7 @@ package org.apache.pdfbox.crypto.sign;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.io.ByteArrayInputStream;
 import java.math.BigInteger;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
@@ -30,6 +31,7 @@ import java.security.PublicKey;
 import java.security.Security;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Calendar;
 import java.util.Enumeration;
@@ -61,15 +63,52 @@ public class KeyStoreHelper
    */
   public static KeyStore generateKeyStore() throws Exception
   {
-    KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
-    keyPairGenerator.initialize(1024);
+    return generateKeyStore("RSA", 1024);
+  }
+
+  /**
+   * @param keyAlgorithm the algorithm of the key like "RSA", "EC" or "Ed25519"
+   * @param keySize the size of the key, the curve size for EC keys, 0 for algorithms with a fixed size
+   */
+  public static KeyStore generateKeyStore(String keyAlgorithm, int keySize) throws Exception
+  {
+    // BouncyCastle 1.4x only signs with EC keys of its own provider
+    KeyPairGenerator keyPairGenerator = "EC".equals(keyAlgorithm) ? KeyPairGenerator.getInstance("ECDSA",
+        BouncyCastleProvider.PROVIDER_NAME) : KeyPairGenerator.getInstance(keyAlgorithm);
+    if (keySize > 0)
+    {
+      keyPairGenerator.initialize(keySize);
+    }
     KeyPair keyPair = keyPairGenerator.generateKeyPair();
     PublicKey publicKey = keyPair.getPublic();
     PrivateKey privateKey = keyPair.getPrivate();
-    Certificate trustCert = createCertificate("CN=CA", "CN=CA", publicKey, privateKey);
-    Certificate[] outChain = { createCertificate("CN=Client", "CN=CA", publicKey, privateKey), trustCert };
 
-    KeyStore keystore = KeyStore.getInstance("PKCS12","BC");
+    // keys, that can't sign certificates with BouncyCastle, are certified by a RSA key
+    KeyPair issuerKeyPair = keyPair;
+    if (!"RSA".equals(keyAlgorithm) && !"EC".equals(keyAlgorithm))
+    {
+      keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+      keyPairGenerator.initialize(1024);
+      issuerKeyPair = keyPairGenerator.generateKeyPair();
+    }
+    Certificate trustCert = createCertificate("CN=CA", "CN=CA", issuerKeyPair.getPublic(), issuerKeyPair.getPrivate());
+    Certificate[] outChain = { createCertificate("CN=Client", "CN=CA", publicKey, issuerKeyPair.getPrivate()), trustCert };
+
+    KeyStore keystore;
+    if (issuerKeyPair == keyPair)
+    {
+      keystore = KeyStore.getInstance("PKCS12","BC");
+    }
+    else
+    {
+      // BouncyCastle doesn't know the key, the runtime holds it with certificates it has parsed
+      keystore = KeyStore.getInstance("PKCS12");
+      CertificateFactory factory = CertificateFactory.getInstance("X.509");
+      for (int i = 0; i < outChain.length; i++)
+      {
+        outChain[i] = factory.generateCertificate(new ByteArrayInputStream(outChain[i].getEncoded()));
+      }
+    }
     keystore.load(null, "secret".toCharArray());
     keystore.setKeyEntry(ALIAS, privateKey, "".toCharArray(), outChain);
     return keystore;
@@ -85,7 +124,7 @@ public class KeyStoreHelper
     certGenerator.setNotBefore(Calendar.getInstance().getTime());
     certGenerator.setNotAfter(Calendar.getInstance().getTime());
     certGenerator.setPublicKey(publicKey);
-    certGenerator.setSignatureAlgorithm("SHA1withRSA");
+    certGenerator.setSignatureAlgorithm("RSA".equals(privateKey.getAlgorithm()) ? "SHA1withRSA" : "SHA256withECDSA");
     X509Certificate certificate = certGenerator.generate(privateKey, BouncyCastleProvider.PROVIDER_NAME);
     return certificate;
   }
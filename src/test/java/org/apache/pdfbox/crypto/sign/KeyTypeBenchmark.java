@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.sign;
+
+import java.security.KeyFactory;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.pdfbox.crypto.bc.BC14x_CryptoEngine;
+import org.apache.pdfbox.crypto.core.CMSSigner;
+import org.apache.pdfbox.crypto.core.CryptoEngine;
+import org.apache.pdfbox.crypto.core.KeyProvider;
+import org.apache.pdfbox.crypto.core.SignatureProvider;
+import org.apache.pdfbox.crypto.jca.JcaCryptoEngine;
+import org.apache.pdfbox.exceptions.SignatureException;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * <p>
+ * Compares the signatures per second and core of the key types. Every signature is a complete cms signature over a
+ * content digest, created by {@link CMSSigner#sign(byte[])}, so the private key operation dominates. It is not part
+ * of the unit tests, run it from the test classpath with the seconds per measurement as optional argument.
+ * </p>
+ * <p>
+ * The BouncyCastle 1.4x engine signs with the BouncyCastle provider, the JCA engine with the provider of the java
+ * runtime. Ed25519 is only measured, if the java runtime provides it.
+ * </p>
+ */
+public class KeyTypeBenchmark
+{
+  private enum KeyType
+  {
+    RSA_2048("RSA", 2048, "SHA256withRSA"),
+    RSA_3072("RSA", 3072, "SHA256withRSA"),
+    EC_P256("EC", 256, "SHA256withECDSA"),
+    EC_P384("EC", 384, "SHA384withECDSA"),
+    ED25519("Ed25519", 0, "Ed25519");
+
+    private final String keyAlgorithm;
+
+    private final int keySize;
+
+    private final String signatureAlgorithm;
+
+    private KeyType(String keyAlgorithm, int keySize, String signatureAlgorithm)
+    {
+      this.keyAlgorithm = keyAlgorithm;
+      this.keySize = keySize;
+      this.signatureAlgorithm = signatureAlgorithm;
+    }
+  }
+
+  public static void main(String[] args) throws Exception
+  {
+    int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    Security.addProvider(new BouncyCastleProvider());
+    System.out.println("Cores: " + threads + ", seconds per measurement: " + seconds);
+    System.out.println(String.format("%-10s %-20s %14s %20s", "key", "engine", "sig/s 1 thread", "sig/s/core " + threads
+        + " threads"));
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try
+    {
+      for (KeyType keyType : KeyType.values())
+      {
+        if (Security.getProviders("KeyPairGenerator." + keyType.keyAlgorithm) == null)
+        {
+          System.out.println(String.format("%-10s not provided by the java runtime", keyType));
+          continue;
+        }
+        KeyStore keystore = KeyStoreHelper.generateKeyStore(keyType.keyAlgorithm, keyType.keySize);
+        String alias = keystore.aliases().nextElement();
+        PrivateKey privateKey = (PrivateKey) keystore.getKey(alias, new char[0]);
+        SignatureProvider signatureProvider = SignatureProvider.getInstance();
+        signatureProvider.setSignatureAlgorithm(keyType.signatureAlgorithm);
+
+        // the provider of the java runtime is the first one, BouncyCastle was added last
+        String runtimeProvider = Signature.getInstance(keyType.signatureAlgorithm).getProvider().getName();
+        measure(keyType, "BC14x", new BC14x_CryptoEngine(), KeyProvider.getInstance(privateKey,
+            keystore.getCertificateChain(alias), BouncyCastleProvider.PROVIDER_NAME), signatureProvider, seconds,
+            threads, executor);
+        // keys of BouncyCastle are imported into the provider of the java runtime
+        PrivateKey runtimeKey = KeyFactory.getInstance(keyType.keyAlgorithm).generatePrivate(
+            new PKCS8EncodedKeySpec(privateKey.getEncoded()));
+        measure(keyType, "JCA (" + runtimeProvider + ")", new JcaCryptoEngine(), KeyProvider.getInstance(runtimeKey,
+            keystore.getCertificateChain(alias), runtimeProvider), signatureProvider, seconds, threads, executor);
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+
+  private static void measure(KeyType keyType, String engineName, CryptoEngine engine, KeyProvider keyProvider,
+      SignatureProvider signatureProvider, int seconds, int threads, ExecutorService executor) throws Exception
+  {
+    CMSSigner signer;
+    try
+    {
+      signer = engine.createSigner(keyProvider, signatureProvider);
+    }
+    catch (SignatureException e)
+    {
+      System.out.println(String.format("%-10s %-20s %s", keyType, engineName, e.getMessage()));
+      return;
+    }
+    byte[] digest = signer.createMessageDigest().digest(new byte[1024]);
+
+    // warm up
+    signaturesPerSecond(signer, digest, threads, 1, executor);
+
+    double single = signaturesPerSecond(signer, digest, 1, seconds, executor);
+    double parallel = signaturesPerSecond(signer, digest, threads, seconds, executor);
+    System.out.println(String.format("%-10s %-20s %14.1f %20.1f", keyType, engineName, single, parallel / threads));
+  }
+
+  /**
+   * @return the signatures per second of all threads together
+   */
+  private static double signaturesPerSecond(final CMSSigner signer, final byte[] digest, int threads, int seconds,
+      ExecutorService executor) throws Exception
+  {
+    final long start = System.nanoTime();
+    final long end = start + seconds * 1000000000L;
+    List<Future<Long>> futures = new ArrayList<Future<Long>>(threads);
+    for (int i = 0; i < threads; i++)
+    {
+      futures.add(executor.submit(new Callable<Long>()
+      {
+        public Long call() throws Exception
+        {
+          long count = 0;
+          while (System.nanoTime() < end)
+          {
+            signer.sign(digest);
+            count++;
+          }
+          return count;
+        }
+      }));
+    }
+    long count = 0;
+    for (Future<Long> future : futures)
+    {
+      count += future.get();
+    }
+    return count / ((System.nanoTime() - start) / 1e9);
+  }
+}
@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.sign;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.closeStream;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Calendar;
+
+import org.apache.pdfbox.crypto.PDCrypto;
+import org.apache.pdfbox.crypto.bc.BC14x_SignatureInterface;
+import org.apache.pdfbox.crypto.core.CoreHelper;
+import org.apache.pdfbox.crypto.core.KeyProvider;
+import org.apache.pdfbox.crypto.core.SignatureProvider;
+import org.apache.pdfbox.crypto.core.specifications.PAdES_B_Provider;
+import org.apache.pdfbox.io.RandomAccessFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * <p>
+ * Measures time and I/O of a single signature on a big document. It is not part of the unit tests, run it from the
+ * test classpath with the document size in MB and the number of iterations as optional arguments.
+ * </p>
+ * <p>
+ * The bytes read and written are taken from /proc/self/io (rchar / wchar). They include every read and write call of
+ * the process, so they are only available on linux.
+ * </p>
+ */
+public class SignBenchmark
+{
+  private static final File FOLDER = new File("target/benchmark");
+
+  private static KeyProvider keyProvider;
+
+  private static SignatureProvider signatureProvider;
+
+  public static void main(String[] args) throws Exception
+  {
+    int sizeInMB = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    Security.addProvider(new BouncyCastleProvider());
+    KeyStore keystore = KeyStoreHelper.generateKeyStore();
+    keyProvider = KeyProvider.getInstance(keystore);
+    signatureProvider = PAdES_B_Provider.getInstance(keyProvider);
+    signatureProvider.setSignatureAlgorithm("SHA256withRSA");
+
+    FOLDER.mkdirs();
+    File document = createDocument(new File(FOLDER, "unsigned.pdf"), sizeInMB);
+    System.out.println("Document size: " + toMB(document.length()) + " MB, iterations: " + iterations);
+    System.out.println(String.format("%-24s %12s %12s %12s", "mode", "ms/sig", "MB read", "MB written"));
+
+    for (Mode mode : Mode.values())
+    {
+      // warm up
+      mode.sign(mode.prepare(document));
+
+      long time = 0;
+      long read = 0;
+      long written = 0;
+      for (int i = 0; i < iterations; i++)
+      {
+        File prepared = mode.prepare(document);
+        long[] before = readIoCounters();
+        long start = System.nanoTime();
+        mode.sign(prepared);
+        time += System.nanoTime() - start;
+        long[] after = readIoCounters();
+        read += after[0] - before[0];
+        written += after[1] - before[1];
+      }
+      System.out.println(String.format("%-24s %12.1f %12s %12s", mode.description, time / 1e6 / iterations, toMB(read / iterations),
+          toMB(written / iterations)));
+    }
+  }
+
+  private enum Mode
+  {
+    LEGACY("copy and reread")
+    {
+      @Override
+      void sign(File document) throws Exception
+      {
+        legacySign(document, new File(FOLDER, "signed_legacy.pdf"));
+      }
+    },
+    FILE("sign(File)")
+    {
+      @Override
+      void sign(File document) throws Exception
+      {
+        PDCrypto crypto = PDCrypto.load(document);
+        try
+        {
+          builder(crypto).sign(new File(FOLDER, "signed_file.pdf"));
+        }
+        finally
+        {
+          closeStream(crypto);
+        }
+      }
+    },
+    IN_PLACE("signInPlace()")
+    {
+      @Override
+      File prepare(File document) throws IOException
+      {
+        File copy = new File(FOLDER, "signed_in_place.pdf");
+        CoreHelper.copy(new FileInputStream(document), new FileOutputStream(copy));
+        return copy;
+      }
+
+      @Override
+      void sign(File document) throws Exception
+      {
+        PDCrypto crypto = PDCrypto.load(document);
+        try
+        {
+          builder(crypto).signInPlace();
+        }
+        finally
+        {
+          closeStream(crypto);
+        }
+      }
+    },
+    STREAM("sign(OutputStream)")
+    {
+      @Override
+      void sign(File document) throws Exception
+      {
+        PDCrypto crypto = PDCrypto.load(document);
+        try
+        {
+          builder(crypto).sign(new NullOutputStream());
+        }
+        finally
+        {
+          closeStream(crypto);
+        }
+      }
+    },
+    DIGEST_WHILE_WRITING("digest while writing")
+    {
+      @Override
+      void sign(File document) throws Exception
+      {
+        PDCrypto crypto = PDCrypto.load(document);
+        try
+        {
+          builder(crypto).setDigestWhileWriting(true).sign(new NullOutputStream());
+        }
+        finally
+        {
+          closeStream(crypto);
+        }
+      }
+    };
+
+    private final String description;
+
+    private Mode(String description)
+    {
+      this.description = description;
+    }
+
+    File prepare(File document) throws IOException
+    {
+      return document;
+    }
+
+    abstract void sign(File document) throws Exception;
+  }
+
+  private static org.apache.pdfbox.crypto.SignatureBuilder builder(PDCrypto crypto)
+  {
+    return crypto.createSignatureBuilder().setKeyProvider(keyProvider).setSignatureProvider(signatureProvider).setSigernName("Benchmark");
+  }
+
+  /**
+   * The signing algorithm before the append only mode: copy the document, reopen the copy and let PDFBox read it again.
+   */
+  private static void legacySign(File document, File output) throws Exception
+  {
+    byte[] buffer = new byte[8 * 1024];
+    FileInputStream fis = new FileInputStream(document);
+    FileOutputStream fos = new FileOutputStream(output);
+    int c;
+    while ((c = fis.read(buffer)) != -1)
+    {
+      fos.write(buffer, 0, c);
+    }
+    fis.close();
+    fis = new FileInputStream(output);
+
+    File scratchFile = File.createTempFile("pdfbox_scratch", ".bin", FOLDER);
+    RandomAccessFile randomAccessFile = new RandomAccessFile(scratchFile, "rw");
+    try
+    {
+      PDDocument doc = PDDocument.load(document, randomAccessFile);
+      PDSignature signature = new PDSignature();
+      signature.setFilter(signatureProvider.getFilter());
+      signature.setSubFilter(signatureProvider.getSubfilter());
+      signature.setName("Benchmark");
+      signature.setSignDate(Calendar.getInstance());
+      doc.addSignature(signature, new BC14x_SignatureInterface(keyProvider, signatureProvider));
+      doc.saveIncremental(fis, fos);
+      doc.close();
+    }
+    finally
+    {
+      closeStream(fis);
+      closeStream(fos);
+      randomAccessFile.close();
+      scratchFile.delete();
+    }
+  }
+
+  static File createDocument(File file, int sizeInMB) throws Exception
+  {
+    byte[] line = new byte[1024];
+    Arrays.fill(line, (byte) 'x');
+    line[0] = '%';
+    line[line.length - 1] = '\n';
+
+    PDDocument doc = new PDDocument();
+    try
+    {
+      for (int i = 0; i < sizeInMB; i++)
+      {
+        PDPage page = new PDPage();
+        PDStream content = new PDStream(doc);
+        OutputStream out = content.createOutputStream();
+        for (int j = 0; j < 1024; j++)
+        {
+          out.write(line);
+        }
+        out.close();
+        page.setContents(content);
+        doc.addPage(page);
+      }
+      doc.save(file);
+    }
+    finally
+    {
+      doc.close();
+    }
+    return file;
+  }
+
+  /**
+   * @return the bytes read and written by the process so far, or -1 if not available
+   */
+  private static long[] readIoCounters()
+  {
+    long[] counters = new long[] { -1, -1 };
+    BufferedReader reader = null;
+    try
+    {
+      reader = new BufferedReader(new FileReader("/proc/self/io"));
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        if (line.startsWith("rchar:"))
+        {
+          counters[0] = Long.parseLong(line.substring(6).trim());
+        }
+        else if (line.startsWith("wchar:"))
+        {
+          counters[1] = Long.parseLong(line.substring(6).trim());
+        }
+      }
+    }
+    catch (IOException e)
+    {
+      // not available on this platform
+    }
+    finally
+    {
+      closeStream(reader);
+    }
+    return counters;
+  }
+
+  private static String toMB(long bytes)
+  {
+    return bytes < 0 ? "n/a" : String.format("%.2f", bytes / (1024.0 * 1024.0));
+  }
+
+  private static class NullOutputStream extends OutputStream
+  {
+    @Override
+    public void write(int b)
+    {
+      // discard
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+    {
+      // discard
+    }
+  }
+}
@@ -17,23 +17,65 @@
 package org.apache.pdfbox.crypto.sign;
 
 import static org.apache.pdfbox.crypto.core.CoreHelper.closeStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Provider;
 import java.security.Security;
+import java.security.Signature;
 import java.security.UnrecoverableKeyException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.pdfbox.crypto.BatchResult;
+import org.apache.pdfbox.crypto.BatchResult.DocumentResult;
+import org.apache.pdfbox.crypto.BatchSigner;
 import org.apache.pdfbox.crypto.PDCrypto;
+import org.apache.pdfbox.crypto.PreparedSignature;
+import org.apache.pdfbox.crypto.SignatureBuilder;
+import org.apache.pdfbox.crypto.VerificationReportBuilder;
+import org.apache.pdfbox.crypto.bc.BC14x_CryptoEngine;
+import org.apache.pdfbox.crypto.bc.BC15x_CryptoEngine;
+import org.apache.pdfbox.crypto.bc.SigningProfile;
+import org.apache.pdfbox.crypto.core.Algorithms;
+import org.apache.pdfbox.crypto.core.CMSSigner;
+import org.apache.pdfbox.crypto.core.CoreHelper;
+import org.apache.pdfbox.crypto.core.CryptoEngine;
 import org.apache.pdfbox.crypto.core.KeyProvider;
 import org.apache.pdfbox.crypto.core.SignatureProvider;
 import org.apache.pdfbox.crypto.core.specifications.PAdES_B_Provider;
+import org.apache.pdfbox.crypto.exceptions.ReportInitializationException;
+import org.apache.pdfbox.crypto.jca.JcaCryptoEngine;
+import org.apache.pdfbox.crypto.vr.SimpleReport;
 import org.apache.pdfbox.exceptions.COSVisitorException;
 import org.apache.pdfbox.exceptions.SignatureException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.apache.pdfbox.pdmodel.interactive.form.PDSignatureField;
+import org.apache.pdfbox.schema.vr.simple_report.Document;
+import org.apache.pdfbox.schema.vr.simple_report.SignatureType;
+import org.bouncycastle.cms.CMSSignedGenerator;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -114,4 +156,549 @@ public class SignTest
     }
 
   }
+
+  @Test
+  public void testSignLoadedDocument() throws Exception
+  {
+    InputStream stream = SignTest.class.getResourceAsStream("/unsignedPDF/LibreOffice_4_3_Sample.pdf");
+    PDDocument doc = null;
+    try
+    {
+      doc = PDDocument.load(stream);
+      assertValidSignatures(signInMemory(doc), 1);
+    }
+    finally
+    {
+      closeStream(stream);
+      closeStream(doc);
+    }
+  }
+
+  @Test
+  public void testSignLoadedDocumentTwice() throws Exception
+  {
+    InputStream stream = SignTest.class.getResourceAsStream("/unsignedPDF/LibreOffice_4_3_Sample.pdf");
+    PDDocument doc = null;
+    PDCrypto cryptoEngine = null;
+    try
+    {
+      doc = PDDocument.load(stream);
+      cryptoEngine = PDCrypto.load(doc);
+      ByteArrayOutputStream signed = new ByteArrayOutputStream();
+      createSignatureBuilder(cryptoEngine).sign(signed);
+      assertValidSignatures(signed.toByteArray(), 1);
+
+      // the document was changed by the first signature and doesn't match the loaded bytes anymore
+      try
+      {
+        createSignatureBuilder(cryptoEngine).sign(new ByteArrayOutputStream());
+        fail("A provided document can only be signed once");
+      }
+      catch (IllegalStateException e)
+      {
+        // expected
+      }
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+      closeStream(stream);
+      closeStream(doc);
+    }
+  }
+
+  @Test
+  public void testUseDocumentAfterSigning() throws Exception
+  {
+    PDDocument doc = new PDDocument();
+    try
+    {
+      doc.addPage(new PDPage());
+      signInMemory(doc);
+
+      // the signature field was added to the document of the caller, which can still be changed and saved
+      List<?> fields = doc.getDocumentCatalog().getAcroForm().getFields();
+      assertEquals(1, fields.size());
+      assertTrue(fields.get(0) instanceof PDSignatureField);
+      doc.addPage(new PDPage());
+      ByteArrayOutputStream saved = new ByteArrayOutputStream();
+      doc.save(saved);
+      PDDocument reloaded = PDDocument.load(new ByteArrayInputStream(saved.toByteArray()));
+      try
+      {
+        assertEquals(2, reloaded.getNumberOfPages());
+        assertEquals(1, reloaded.getSignatureDictionaries().size());
+      }
+      finally
+      {
+        closeStream(reloaded);
+      }
+    }
+    finally
+    {
+      closeStream(doc);
+    }
+  }
+
+  @Test
+  public void testSignCreatedDocument() throws Exception
+  {
+    PDDocument doc = new PDDocument();
+    try
+    {
+      doc.addPage(new PDPage());
+      assertValidSignatures(signInMemory(doc), 1);
+    }
+    finally
+    {
+      closeStream(doc);
+    }
+  }
+
+  @Test
+  public void testSignToStream() throws Exception
+  {
+    InputStream stream = SignTest.class.getResourceAsStream("/unsignedPDF/LibreOffice_4_3_Sample.pdf");
+    PDCrypto cryptoEngine = PDCrypto.load(stream);
+    ByteArrayOutputStream signed = new ByteArrayOutputStream();
+    try
+    {
+      createSignatureBuilder(cryptoEngine).sign(signed);
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+    assertValidSignatures(signed.toByteArray(), 1);
+  }
+
+  @Test
+  public void testSignInPlace() throws Exception
+  {
+    File document = new File(OUTPUT_FOLDER, "Sample_signed_in_place.pdf");
+    CoreHelper.copy(SignTest.class.getResourceAsStream("/unsignedPDF/LibreOffice_4_3_Sample.pdf"), new FileOutputStream(document));
+    long unsignedLength = document.length();
+
+    PDCrypto cryptoEngine = PDCrypto.load(document);
+    try
+    {
+      createSignatureBuilder(cryptoEngine).signInPlace();
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+    assertTrue("Signature should be appended", document.length() > unsignedLength);
+
+    ByteArrayOutputStream signed = new ByteArrayOutputStream();
+    CoreHelper.copy(new FileInputStream(document), signed);
+    assertValidSignatures(signed.toByteArray(), 1);
+  }
+
+  @Test
+  public void testSignDigestWhileWriting() throws Exception
+  {
+    File document = new File(OUTPUT_FOLDER, "Sample_digest_while_writing.pdf");
+    CoreHelper.copy(SignTest.class.getResourceAsStream("/unsignedPDF/LibreOffice_4_3_Sample.pdf"), new FileOutputStream(document));
+
+    PDCrypto cryptoEngine = PDCrypto.load(document);
+    ByteArrayOutputStream signed = new ByteArrayOutputStream();
+    try
+    {
+      createSignatureBuilder(cryptoEngine).setDigestWhileWriting(true).sign(signed);
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+    assertValidSignatures(signed.toByteArray(), 1);
+
+    PDDocument doc = new PDDocument();
+    signed.reset();
+    try
+    {
+      doc.addPage(new PDPage());
+      cryptoEngine = PDCrypto.load(doc);
+      createSignatureBuilder(cryptoEngine).setDigestWhileWriting(true).sign(signed);
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+      closeStream(doc);
+    }
+    assertValidSignatures(signed.toByteArray(), 1);
+  }
+
+  @Test
+  public void testMultipleSignatures() throws Exception
+  {
+    byte[] pdf = signRepeatedly(3);
+    assertValidSignatures(pdf, 3);
+
+    // all signatures are digested in one pass, the result has to match the digest of each single signature
+    PDCrypto cryptoEngine = PDCrypto.load(new ByteArrayInputStream(pdf));
+    try
+    {
+      VerificationReportBuilder builder = VerificationReportBuilder.getInstance(cryptoEngine);
+      for (PDSignature signature : builder.getSignatures())
+      {
+        MessageDigest digest = MessageDigest.getInstance(CMSSignedGenerator.DIGEST_SHA256, "BC");
+        builder.digestContent(signature, digest);
+        assertArrayEquals(digest.digest(), builder.getContentDigests(signature).get(CMSSignedGenerator.DIGEST_SHA256));
+      }
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+  }
+
+  @Test
+  public void testBatchSigning() throws Exception
+  {
+    File unsigned = new File(OUTPUT_FOLDER, "Sample_batch.pdf");
+    CoreHelper.copy(SignTest.class.getResourceAsStream("/unsignedPDF/LibreOffice_4_3_Sample.pdf"), new FileOutputStream(unsigned));
+
+    Map<File, File> documents = new LinkedHashMap<File, File>();
+    for (int i = 0; i < 6; i++)
+    {
+      documents.put(i == 0 ? unsigned : copy(unsigned, "Sample_batch_" + i + ".pdf"), new File(OUTPUT_FOLDER, "Sample_batch_" + i
+          + "_signed.pdf"));
+    }
+    File missing = new File(OUTPUT_FOLDER, "Sample_batch_missing.pdf");
+    documents.put(missing, new File(OUTPUT_FOLDER, "Sample_batch_missing_signed.pdf"));
+
+    KeyProvider keyProvider = KeyProvider.getInstance(keystore);
+    SignatureProvider signatureProvider = PAdES_B_Provider.getInstance(keyProvider);
+    signatureProvider.setSignatureAlgorithm(SIGNATURE_ALGORITHM);
+    final List<DocumentResult> results = new ArrayList<DocumentResult>();
+    BatchResult result = BatchSigner.getInstance(keyProvider, signatureProvider).setSignerName("SignerName").setThreads(2)
+        .sign(documents, new BatchSigner.Sink()
+        {
+          public void accept(DocumentResult document)
+          {
+            results.add(document);
+          }
+        });
+
+    assertEquals(7, result.getDocumentCount());
+    assertEquals("Only the missing document should fail", 1, result.getFailureCount());
+    assertEquals(7, results.size());
+    for (DocumentResult document : results)
+    {
+      if (document.getInput().equals(missing))
+      {
+        assertFalse(document.isSuccess());
+        continue;
+      }
+      assertTrue("Document should be signed: " + document.getError(), document.isSuccess());
+      ByteArrayOutputStream signed = new ByteArrayOutputStream();
+      CoreHelper.copy(new FileInputStream(document.getOutput()), signed);
+      assertValidSignatures(signed.toByteArray(), 1);
+    }
+  }
+
+  @Test
+  public void testSigningProfile() throws Exception
+  {
+    KeyProvider keyProvider = KeyProvider.getInstance(keystore);
+    SignatureProvider signatureProvider = PAdES_B_Provider.getInstance(keyProvider);
+    signatureProvider.setSignatureAlgorithm(SIGNATURE_ALGORITHM);
+    SigningProfile profile = SigningProfile.compile(keyProvider, signatureProvider);
+
+    // the compiled profile doesn't follow the providers
+    signatureProvider.setSubfilter(PDSignature.SUBFILTER_ADBE_PKCS7_SHA1);
+    assertEquals(PDSignature.SUBFILTER_ETSI_CADES_DETACHED, profile.getSubfilter());
+
+    for (boolean digestWhileWriting : new boolean[] { false, true })
+    {
+      PDCrypto cryptoEngine = PDCrypto.load(SignTest.class.getResourceAsStream("/unsignedPDF/LibreOffice_4_3_Sample.pdf"));
+      ByteArrayOutputStream signed = new ByteArrayOutputStream();
+      try
+      {
+        cryptoEngine.createSignatureBuilder().setSigningProfile(profile).setSigernName("SignerName")
+            .setDigestWhileWriting(digestWhileWriting).sign(signed);
+      }
+      finally
+      {
+        closeStream(cryptoEngine);
+      }
+      assertValidSignatures(signed.toByteArray(), 1);
+    }
+
+    // the profile holds BouncyCastle 1.4x structures, other engines reject it
+    PDCrypto.setCryptoEngine(new JcaCryptoEngine());
+    PDCrypto cryptoEngine = PDCrypto.load(SignTest.class.getResourceAsStream("/unsignedPDF/LibreOffice_4_3_Sample.pdf"));
+    try
+    {
+      cryptoEngine.createSignatureBuilder().setSigningProfile(profile).setSigernName("SignerName").sign(
+          new ByteArrayOutputStream());
+      fail("The JCA engine should reject the profile");
+    }
+    catch (SignatureException e)
+    {
+      assertEquals(SignatureException.UNSUPPORTED_OPERATION, e.getErrNo());
+    }
+    finally
+    {
+      PDCrypto.setCryptoEngine(null);
+      closeStream(cryptoEngine);
+    }
+  }
+
+  @Test
+  public void testDeferredSignature() throws Exception
+  {
+    String alias = keystore.aliases().nextElement();
+    PrivateKey privateKey = (PrivateKey) keystore.getKey(alias, new char[0]);
+    for (boolean digestWhileWriting : new boolean[] { false, true })
+    {
+      File document = new File(OUTPUT_FOLDER, "Sample_deferred_" + digestWhileWriting + ".pdf");
+
+      // the key isn't available while the document is prepared
+      KeyProvider keyProvider = KeyProvider.getInstance(keystore.getCertificateChain(alias));
+      SignatureProvider signatureProvider = PAdES_B_Provider.getInstance(keyProvider);
+      signatureProvider.setSignatureAlgorithm(SIGNATURE_ALGORITHM);
+      PDCrypto cryptoEngine = PDCrypto.load(SignTest.class.getResourceAsStream("/unsignedPDF/LibreOffice_4_3_Sample.pdf"));
+      PreparedSignature prepared;
+      try
+      {
+        prepared = cryptoEngine.createSignatureBuilder().setKeyProvider(keyProvider).setSignatureProvider(signatureProvider)
+            .setSigernName("SignerName").setDigestWhileWriting(digestWhileWriting).prepare(document);
+      }
+      finally
+      {
+        closeStream(cryptoEngine);
+      }
+      assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(prepared.getSignedAttributes()),
+          prepared.getSignedAttributesDigest());
+
+      // the signature value is computed outside and injected into the prepared document
+      Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+      signature.initSign(privateKey);
+      signature.update(prepared.getSignedAttributes());
+      prepared.inject(document, prepared.createSignature(signature.sign()));
+
+      ByteArrayOutputStream signed = new ByteArrayOutputStream();
+      CoreHelper.copy(new FileInputStream(document), signed);
+      assertValidSignatures(signed.toByteArray(), 1);
+    }
+  }
+
+  @Test
+  public void testJcaCryptoEngine() throws Exception
+  {
+    KeyProvider keyProvider = KeyProvider.getInstance(keystore);
+    SignatureProvider signatureProvider = PAdES_B_Provider.getInstance(keyProvider);
+    signatureProvider.setSignatureAlgorithm(SIGNATURE_ALGORITHM);
+    byte[] digest = MessageDigest.getInstance("SHA-256").digest("content".getBytes("US-ASCII"));
+    byte[] otherDigest = MessageDigest.getInstance("SHA-256").digest("other".getBytes("US-ASCII"));
+
+    // both engines encode the same signed data
+    CryptoEngine engine = new JcaCryptoEngine();
+    CMSSigner jca = engine.createSigner(keyProvider, signatureProvider);
+    CMSSigner bc = new BC14x_CryptoEngine().createSigner(keyProvider, signatureProvider);
+    byte[] signedAttributes = jca.getSignedAttributes(digest);
+    assertArrayEquals(bc.getSignedAttributes(digest), signedAttributes);
+    assertArrayEquals(bc.createSignature(signedAttributes, digest), jca.createSignature(signedAttributes, digest));
+
+    byte[] cms = jca.sign(digest);
+    String digestOID = signatureProvider.getDigestAlgorithm();
+    assertEquals(Collections.singleton(digestOID), engine.getDigestAlgorithms(cms));
+    assertTrue(engine.verify(cms, Collections.singletonMap(digestOID, digest)).isSignatureValid());
+    assertFalse(engine.verify(cms, Collections.singletonMap(digestOID, otherDigest)).isDigestMatching());
+
+    byte[] signedByBC = signRepeatedly(1);
+    byte[] signedByJCA;
+    PDCrypto.setCryptoEngine(engine);
+    try
+    {
+      signedByJCA = signRepeatedly(2);
+      assertValidSignatures(signedByJCA, 2);
+      assertValidSignatures(signedByBC, 1);
+    }
+    finally
+    {
+      PDCrypto.setCryptoEngine(null);
+    }
+    assertValidSignatures(signedByJCA, 2);
+  }
+
+  @Test
+  public void testBC15xCryptoEngine() throws Exception
+  {
+    // the engine is chosen by the BouncyCastle version on the class path
+    PDCrypto cryptoEngine = PDCrypto.load(new ByteArrayInputStream(signRepeatedly(1)));
+    try
+    {
+      assertEquals("BC14x", cryptoEngine.getCryptoEngine().getName());
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+    assertEquals("BC14x", PDCrypto.createEngine(new BouncyCastleProvider()).getName());
+    assertEquals("BC14x", PDCrypto.createEngine(new Provider("BC", 1.46, "BouncyCastle 1.46")
+    {}).getName());
+    assertEquals("BC15x", PDCrypto.createEngine(new Provider("BC", 1.5, "BouncyCastle 1.50")
+    {}).getName());
+
+    // the 1.5x engine only needs the provider, that is compatible with the 1.4x versions
+    byte[] signed;
+    PDCrypto.setCryptoEngine(new BC15x_CryptoEngine());
+    try
+    {
+      signed = signRepeatedly(2);
+      assertValidSignatures(signed, 2);
+    }
+    finally
+    {
+      PDCrypto.setCryptoEngine(null);
+    }
+    assertValidSignatures(signed, 2);
+  }
+
+  @Test
+  public void testECDSASignature() throws Exception
+  {
+    String[][] keys = { { "256", "SHA256withECDSA" }, { "384", "SHA384withECDSA" } };
+    for (String[] key : keys)
+    {
+      KeyProvider keyProvider = KeyProvider.getInstance(KeyStoreHelper.generateKeyStore("EC", Integer.parseInt(key[0])));
+      assertEquals("EC", keyProvider.getKeyAlgorithm());
+      SignatureProvider signatureProvider = PAdES_B_Provider.getInstance(keyProvider);
+      signatureProvider.setSignatureAlgorithm(key[1]);
+      assertEquals(Algorithms.getDigestOIDForSignature(key[1]), signatureProvider.getDigestAlgorithm());
+
+      // signed by each engine and verified by both
+      for (CryptoEngine engine : new CryptoEngine[] { new BC14x_CryptoEngine(), new JcaCryptoEngine() })
+      {
+        byte[] signed;
+        PDCrypto.setCryptoEngine(engine);
+        try
+        {
+          signed = sign(keyProvider, signatureProvider);
+          assertValidSignatures(signed, 1);
+        }
+        finally
+        {
+          PDCrypto.setCryptoEngine(null);
+        }
+        assertValidSignatures(signed, 1);
+      }
+    }
+  }
+
+  @Test
+  public void testEd25519Signature() throws Exception
+  {
+    // Ed25519 is provided by java 15 and later
+    Assume.assumeTrue(Security.getProviders("KeyPairGenerator.Ed25519") != null);
+    KeyProvider keyProvider = KeyProvider.getInstance(KeyStoreHelper.generateKeyStore("Ed25519", 0));
+    assertEquals("Ed25519", keyProvider.getKeyAlgorithm());
+    SignatureProvider signatureProvider = PAdES_B_Provider.getInstance(keyProvider);
+    signatureProvider.setSignatureAlgorithm("Ed25519");
+    assertEquals(Algorithms.getDigestOID("SHA-512"), signatureProvider.getDigestAlgorithm());
+
+    byte[] signed;
+    PDCrypto.setCryptoEngine(new JcaCryptoEngine());
+    try
+    {
+      signed = sign(keyProvider, signatureProvider);
+      assertValidSignatures(signed, 1);
+    }
+    finally
+    {
+      PDCrypto.setCryptoEngine(null);
+    }
+    // BouncyCastle 1.4x only verifies Ed25519 signatures
+    assertValidSignatures(signed, 1);
+  }
+
+  private static File copy(File file, String name) throws IOException
+  {
+    File copy = new File(OUTPUT_FOLDER, name);
+    CoreHelper.copy(new FileInputStream(file), new FileOutputStream(copy));
+    return copy;
+  }
+
+  private static byte[] signRepeatedly(int signatures) throws Exception
+  {
+    byte[] pdf = null;
+    for (int i = 0; i < signatures; i++)
+    {
+      InputStream stream = pdf == null ? SignTest.class.getResourceAsStream("/unsignedPDF/LibreOffice_4_3_Sample.pdf")
+          : new ByteArrayInputStream(pdf);
+      PDCrypto cryptoEngine = PDCrypto.load(stream);
+      ByteArrayOutputStream signed = new ByteArrayOutputStream();
+      try
+      {
+        createSignatureBuilder(cryptoEngine).sign(signed);
+      }
+      finally
+      {
+        closeStream(cryptoEngine);
+      }
+      pdf = signed.toByteArray();
+    }
+    return pdf;
+  }
+
+  private static byte[] sign(KeyProvider keyProvider, SignatureProvider signatureProvider) throws Exception
+  {
+    PDCrypto cryptoEngine = PDCrypto.load(SignTest.class.getResourceAsStream("/unsignedPDF/LibreOffice_4_3_Sample.pdf"));
+    ByteArrayOutputStream signed = new ByteArrayOutputStream();
+    try
+    {
+      cryptoEngine.createSignatureBuilder().setKeyProvider(keyProvider).setSignatureProvider(signatureProvider)
+          .setSigernName("SignerName").sign(signed);
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+    return signed.toByteArray();
+  }
+
+  private static byte[] signInMemory(PDDocument doc) throws Exception
+  {
+    PDCrypto cryptoEngine = PDCrypto.load(doc);
+    ByteArrayOutputStream signed = new ByteArrayOutputStream();
+    try
+    {
+      createSignatureBuilder(cryptoEngine).sign(signed);
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+    return signed.toByteArray();
+  }
+
+  protected static SignatureBuilder createSignatureBuilder(PDCrypto cryptoEngine) throws Exception
+  {
+    KeyProvider keyProvider = KeyProvider.getInstance(keystore);
+    SignatureProvider signatureProvider = PAdES_B_Provider.getInstance(keyProvider);
+    signatureProvider.setSignatureAlgorithm(SIGNATURE_ALGORITHM);
+    return cryptoEngine.createSignatureBuilder().setKeyProvider(keyProvider).setSignatureProvider(signatureProvider).setSigernName("SignerName");
+  }
+
+  protected static void assertValidSignatures(byte[] pdf, int expectedSignatures) throws IOException, ReportInitializationException
+  {
+    PDCrypto cryptoEngine = PDCrypto.load(new ByteArrayInputStream(pdf));
+    try
+    {
+      SimpleReport vr = (SimpleReport) cryptoEngine.createVerificationBuilder().setReportType(SimpleReport.class).createVerificationReport();
+      List<SignatureType> signatures = vr.getDocument().getSignatures().getSignature();
+      assertEquals("Unexpected number of signatures", expectedSignatures, signatures.size());
+      for (SignatureType signature : signatures)
+      {
+        assertTrue("Signatures should be valid", signature.isMathematicalyValid());
+      }
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+  }
 }
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.crypto.sign;
+
+import static org.apache.pdfbox.crypto.core.CoreHelper.closeStream;
+
+import java.io.File;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.util.List;
+
+import org.apache.pdfbox.crypto.PDCrypto;
+import org.apache.pdfbox.crypto.VerificationReportBuilder;
+import org.apache.pdfbox.crypto.core.KeyProvider;
+import org.apache.pdfbox.crypto.core.SignatureProvider;
+import org.apache.pdfbox.crypto.core.specifications.PAdES_B_Provider;
+import org.apache.pdfbox.crypto.io.SignatureLocator;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.bouncycastle.cms.CMSSignedGenerator;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * Measures how long finding the signatures of a document takes, by parsing and by locating them, and how long digesting
+ * the signed content of many signatures takes, once signature by signature and once in a single pass. It is not part of the unit tests, run it from the test classpath with the document size
+ * in MB, the number of signatures and the number of iterations as optional arguments.
+ */
+public class VerifyBenchmark
+{
+  private static final File FOLDER = new File("target/benchmark");
+
+  public static void main(String[] args) throws Exception
+  {
+    int sizeInMB = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+    int signatureCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+    Security.addProvider(new BouncyCastleProvider());
+    KeyStore keystore = KeyStoreHelper.generateKeyStore();
+    KeyProvider keyProvider = KeyProvider.getInstance(keystore);
+    SignatureProvider signatureProvider = PAdES_B_Provider.getInstance(keyProvider);
+    signatureProvider.setSignatureAlgorithm("SHA256withRSA");
+
+    FOLDER.mkdirs();
+    File document = SignBenchmark.createDocument(new File(FOLDER, "multi_signed.pdf"), sizeInMB);
+    for (int i = 0; i < signatureCount; i++)
+    {
+      PDCrypto crypto = PDCrypto.load(document);
+      try
+      {
+        crypto.createSignatureBuilder().setKeyProvider(keyProvider).setSignatureProvider(signatureProvider)
+            .setSigernName("Signer " + i).setDigestWhileWriting(true).signInPlace();
+      }
+      finally
+      {
+        closeStream(crypto);
+      }
+    }
+    System.out.println(String.format("Document size: %.2f MB, signatures: %d, iterations: %d", document.length() / (1024.0 * 1024.0),
+        signatureCount, iterations));
+
+    // warm up
+    parse(document);
+    locate(document);
+    digestEach(document);
+    digestSinglePass(document);
+
+    long parse = 0;
+    long locate = 0;
+    long each = 0;
+    long singlePass = 0;
+    for (int i = 0; i < iterations; i++)
+    {
+      long start = System.nanoTime();
+      parse(document);
+      parse += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      locate(document);
+      locate += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      digestEach(document);
+      each += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      digestSinglePass(document);
+      singlePass += System.nanoTime() - start;
+    }
+    System.out.println(String.format("%-24s %12s", "mode", "ms"));
+    System.out.println(String.format("%-24s %12.1f", "parse document", parse / 1e6 / iterations));
+    System.out.println(String.format("%-24s %12.1f", "locate signatures", locate / 1e6 / iterations));
+    System.out.println(String.format("%-24s %12.1f", "signature by signature", each / 1e6 / iterations));
+    System.out.println(String.format("%-24s %12.1f", "single pass", singlePass / 1e6 / iterations));
+  }
+
+  private static void parse(File document) throws Exception
+  {
+    PDCrypto crypto = PDCrypto.load(document);
+    try
+    {
+      crypto.getDoc().getSignatureDictionaries();
+    }
+    finally
+    {
+      closeStream(crypto);
+    }
+  }
+
+  private static void locate(File document) throws Exception
+  {
+    PDCrypto crypto = PDCrypto.load(document);
+    try
+    {
+      SignatureLocator.locate(crypto.getSource());
+    }
+    finally
+    {
+      closeStream(crypto);
+    }
+  }
+
+  private static void digestEach(File document) throws Exception
+  {
+    PDCrypto crypto = PDCrypto.load(document);
+    try
+    {
+      VerificationReportBuilder builder = VerificationReportBuilder.getInstance(crypto);
+      List<PDSignature> signatures = builder.getSignatures();
+      for (PDSignature signature : signatures)
+      {
+        MessageDigest digest = MessageDigest.getInstance(CMSSignedGenerator.DIGEST_SHA256, "BC");
+        builder.digestContent(signature, digest);
+        digest.digest();
+      }
+    }
+    finally
+    {
+      closeStream(crypto);
+    }
+  }
+
+  private static void digestSinglePass(File document) throws Exception
+  {
+    PDCrypto crypto = PDCrypto.load(document);
+    try
+    {
+      VerificationReportBuilder builder = VerificationReportBuilder.getInstance(crypto);
+      List<PDSignature> signatures = builder.getSignatures();
+      for (PDSignature signature : signatures)
+      {
+        builder.getContentDigests(signature);
+      }
+    }
+    finally
+    {
+      closeStream(crypto);
+    }
+  }
+}
@@ -17,34 +17,96 @@
 package org.apache.pdfbox.crypto.verify;
 
 import static org.apache.pdfbox.crypto.core.CoreHelper.closeStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.Security;
 import java.security.UnrecoverableKeyException;
+import java.security.cert.CertStore;
+import java.security.cert.CollectionCertStoreParameters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.crypto.BulkResult;
+import org.apache.pdfbox.crypto.BulkVerifier;
 import org.apache.pdfbox.crypto.PDCrypto;
+import org.apache.pdfbox.crypto.VerificationBuilder;
+import org.apache.pdfbox.crypto.VerificationReportBuilder;
+import org.apache.pdfbox.crypto.bc.VerificationCache;
+import org.apache.pdfbox.crypto.bc.VerificationResult;
+import org.apache.pdfbox.crypto.core.CoreHelper;
+import org.apache.pdfbox.crypto.core.KeyProvider;
+import org.apache.pdfbox.crypto.core.SignatureProvider;
+import org.apache.pdfbox.crypto.core.specifications.PAdES_B_Provider;
 import org.apache.pdfbox.crypto.exceptions.ReportInitializationException;
+import org.apache.pdfbox.crypto.io.SignatureLocator;
+import org.apache.pdfbox.crypto.io.StructuralTriage;
+import org.apache.pdfbox.crypto.io.StructuralTriage.Reason;
+import org.apache.pdfbox.crypto.sign.KeyStoreHelper;
 import org.apache.pdfbox.crypto.sign.SignTest;
+import org.apache.pdfbox.crypto.vr.CertificateEncoding;
+import org.apache.pdfbox.crypto.vr.JsonReportWriter;
+import org.apache.pdfbox.crypto.vr.OasisReportFormat;
+import org.apache.pdfbox.crypto.vr.OasisReportWriter;
+import org.apache.pdfbox.crypto.vr.ReportFormat;
+import org.apache.pdfbox.crypto.vr.ReportFormatRegistry;
 import org.apache.pdfbox.crypto.vr.SimpleReport;
+import org.apache.pdfbox.crypto.vr.SimpleReportWriter;
 import org.apache.pdfbox.exceptions.COSVisitorException;
 import org.apache.pdfbox.exceptions.SignatureException;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.apache.pdfbox.schema.vr.simple_report.CertificateEntryType;
+import org.apache.pdfbox.schema.vr.simple_report.Document;
 import org.apache.pdfbox.schema.vr.simple_report.SignatureType;
 import org.apache.pdfbox.schema.vr.simple_report.Signatures;
+import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.encoders.Hex;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.w3c.dom.NodeList;
 
 public class VerifyTest
 {
 
+  private static KeyStore keystore;
+
+  private final static File OUTPUT_FOLDER = new File("target/test-output/");
+
+  /** the signed sample documents, the document at index i has i + 1 signatures */
+  private static final List<byte[]> signedDocuments = new ArrayList<byte[]>();
+
   @BeforeClass
   public static void prepareTestClass() throws Exception
   {
+    OUTPUT_FOLDER.mkdirs();
     Security.addProvider(new BouncyCastleProvider());
+    keystore = KeyStoreHelper.generateKeyStore();
   }
 
   @Test
@@ -69,7 +131,843 @@ public class VerifyTest
     finally
     {
       closeStream(stream);
+      closeStream(cryptoEngine);
+    }
+
+  }
+
+  @Test
+  public void testMappedByteRange() throws Exception
+  {
+    File document = new File(VerifyTest.class.getResource("/signedPDF/LibreOffice_4_3_Sample_PAdES_B_signed.pdf").toURI());
+    PDCrypto cryptoEngine = PDCrypto.load(document);
+    try
+    {
+      VerificationReportBuilder builder = VerificationReportBuilder.getInstance(cryptoEngine);
+      for (PDSignature signature : builder.getSignatures())
+      {
+        InputStream in = new FileInputStream(document);
+        try
+        {
+          ByteArrayOutputStream content = new ByteArrayOutputStream();
+          CoreHelper.copy(builder.getContentForSignature(signature), content);
+          assertArrayEquals(signature.getSignedContent(in), content.toByteArray());
+        }
+        finally
+        {
+          closeStream(in);
+        }
+
+        COSString contents = (COSString) signature.getDictionary().getDictionaryObject(COSName.CONTENTS);
+        assertArrayEquals(contents.getBytes(), builder.getCMSSignature(signature));
+      }
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+  }
+
+  @Test
+  public void testSignatureLocator() throws Exception
+  {
+    for (String name : new String[] { "LibreOffice_4_3_Sample_PAdES_B_signed.pdf", "LibreOffice_4_3_Sample_ISO32000-1_2008_signed.pdf" })
+    {
+      File document = new File(VerifyTest.class.getResource("/signedPDF/" + name).toURI());
+      PDCrypto cryptoEngine = PDCrypto.load(document);
+      try
+      {
+        List<PDSignature> expected = cryptoEngine.getDoc().getSignatureDictionaries();
+        List<PDSignature> located = SignatureLocator.locate(cryptoEngine.getSource());
+        assertEquals(expected.size(), located.size());
+        for (int i = 0; i < expected.size(); i++)
+        {
+          assertArrayEquals(expected.get(i).getByteRange(), located.get(i).getByteRange());
+          assertEquals(expected.get(i).getName(), located.get(i).getName());
+          assertEquals(expected.get(i).getSignDate(), located.get(i).getSignDate());
+          assertEquals(expected.get(i).getDictionary().getDictionaryObject(COSName.CONTENTS), located.get(i).getDictionary()
+              .getDictionaryObject(COSName.CONTENTS));
+        }
+      }
+      finally
+      {
+        closeStream(cryptoEngine);
+      }
+    }
+  }
+
+  @Test
+  public void testSignatureLocatorWithObjectStreams() throws Exception
+  {
+    PDCrypto cryptoEngine = PDCrypto.load(new ByteArrayInputStream(createCompressedDocument()));
+    try
+    {
+      List<PDSignature> located = SignatureLocator.locate(cryptoEngine.getSource());
+      assertEquals(1, located.size());
+      assertEquals("Locator", located.get(0).getName());
+      assertArrayEquals(new int[] { 0, 10, 20, 30 }, located.get(0).getByteRange());
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+  }
+
+  @Test
+  public void testSignatureLocatorWithWidgetKids() throws Exception
+  {
+    PDCrypto cryptoEngine = PDCrypto.load(new ByteArrayInputStream(createWidgetKidsDocument()));
+    try
+    {
+      List<PDSignature> located = SignatureLocator.locate(cryptoEngine.getSource());
+      assertEquals(2, located.size());
+      assertEquals("Widgets", located.get(0).getName());
+      assertEquals("Inherited", located.get(1).getName());
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+  }
+
+  @Test
+  public void testStreamingReport() throws Exception
+  {
+    File document = new File(VerifyTest.class.getResource("/signedPDF/LibreOffice_4_3_Sample_PAdES_B_signed.pdf").toURI());
+    PDCrypto cryptoEngine = PDCrypto.load(document);
+    try
+    {
+      VerificationBuilder verificationBuilder = cryptoEngine.createVerificationBuilder();
+      ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+      verificationBuilder.writeReport(streamed);
+      SimpleReport report = (SimpleReport) verificationBuilder.setReportType(SimpleReport.class)
+          .createVerificationReport();
+
+      Document expected = report.getDocument();
+      Document actual = (Document) SimpleReport.getContext().createUnmarshaller().unmarshal(
+          new ByteArrayInputStream(streamed.toByteArray()));
+      assertEquals(expected.getFileName(), actual.getFileName());
+      assertEquals(expected.getFileSize(), actual.getFileSize());
+      List<SignatureType> expectedSignatures = expected.getSignatures().getSignature();
+      List<SignatureType> actualSignatures = actual.getSignatures().getSignature();
+      assertEquals(1, actualSignatures.size());
+      assertEquals(expectedSignatures.size(), actualSignatures.size());
+      for (int i = 0; i < expectedSignatures.size(); i++)
+      {
+        SignatureType signature = actualSignatures.get(i);
+        assertEquals(expectedSignatures.get(i).getSigningTime(), signature.getSigningTime());
+        assertEquals(expectedSignatures.get(i).getSignerName(), signature.getSignerName());
+        assertEquals(expectedSignatures.get(i).getSignerReason(), signature.getSignerReason());
+        assertEquals(expectedSignatures.get(i).isMathematicalyValid(), signature.isMathematicalyValid());
+        assertEquals(expectedSignatures.get(i).getCertificates().getCertificate(), signature.getCertificates()
+            .getCertificate());
+      }
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+  }
+
+  @Test
+  public void testReportFormats() throws Exception
+  {
+    assertTrue(ReportFormatRegistry.getNames().containsAll(Arrays.asList("xml", "json", "ndjson", "count")));
+    assertTrue(ReportFormatRegistry.get("JSON") instanceof JsonReportWriter);
+
+    byte[] pdf = read("/signedPDF/LibreOffice_4_3_Sample_PAdES_B_signed.pdf");
+    String json = writeReport(pdf, "json");
+    assertTrue(json, json.startsWith("{\"fileSize\":28247,\"valid\":true,\"signatures\":[{\"signingTime\":"));
+    assertTrue(json, json.contains("\"digestMatching\":true,\"signatureValid\":true,\"certificateValid\":true"));
+    assertTrue(json, json.endsWith("\"]}]}"));
+    assertFalse("Compact JSON has no line breaks", json.contains("\n"));
+
+    String ndjson = writeReport(pdf, "ndjson");
+    assertTrue(ndjson, ndjson.startsWith("{\"fileSize\":28247,\"signatureCount\":1,\"index\":0,"));
+    assertEquals(ndjson.length() - 1, ndjson.indexOf('\n'));
+    ndjson = writeReport(read("/unsignedPDF/LibreOffice_4_3_Sample.pdf"), "ndjson");
+    assertTrue(ndjson, ndjson.matches("\\{\"fileSize\":\\d+,\"signatureCount\":0\\}\n"));
+
+    // discovered through the ServiceLoader
+    assertEquals("1", writeReport(pdf, "count"));
+  }
+
+  private static String writeReport(byte[] pdf, String format) throws IOException
+  {
+    PDCrypto cryptoEngine = PDCrypto.load(new ByteArrayInputStream(pdf));
+    try
+    {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      cryptoEngine.createVerificationBuilder().writeReport(format, out);
+      return out.toString("UTF-8");
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+  }
+
+  /**
+   * A report format, that is registered in META-INF/services of the tests.
+   */
+  public static class CountingFormat implements ReportFormat
+  {
+    public String getName()
+    {
+      return "count";
+    }
+
+    public String getContentType()
+    {
+      return "text/plain";
+    }
+
+    public void write(VerificationReportBuilder builder, OutputStream out) throws IOException
+    {
+      out.write(Integer.toString(builder.getVerificationResult().getSignatures().size()).getBytes("US-ASCII"));
+    }
+  }
+
+  @Test
+  public void testStructuralTriage() throws Exception
+  {
+    for (String name : new String[] { "LibreOffice_4_3_Sample_PAdES_B_signed.pdf", "LibreOffice_4_3_Sample_ISO32000-1_2008_signed.pdf" })
+    {
+      StructuralTriage.Result result = triage(read("/signedPDF/" + name));
+      assertTrue(name + " should pass: " + result, result.isAccepted());
+      assertEquals(1, result.getSignatureCount());
+    }
+    assertEquals(Reason.NOT_SIGNED, triage(read("/unsignedPDF/LibreOffice_4_3_Sample.pdf")).getReason());
+    assertEquals(Reason.NO_PDF_HEADER, triage("no pdf".getBytes("ISO-8859-1")).getReason());
+
+    byte[] signed = read("/signedPDF/LibreOffice_4_3_Sample_PAdES_B_signed.pdf");
+    byte[] truncated = new byte[signed.length / 2];
+    System.arraycopy(signed, 0, truncated, 0, truncated.length);
+    assertEquals(Reason.NO_EOF_MARKER, triage(truncated).getReason());
+
+    ByteArrayOutputStream appended = new ByteArrayOutputStream();
+    appended.write(signed);
+    write(appended, "\n%%EOF\n");
+    assertEquals(Reason.FILE_NOT_COVERED, triage(appended.toByteArray()).getReason());
+
+    String text = new String(signed, "ISO-8859-1");
+    int contents = text.indexOf("/Contents <") + 11;
+    if (contents == 10)
+    {
+      contents = text.indexOf("/Contents<") + 10;
+    }
+    byte[] broken = signed.clone();
+    broken[contents] = 'X';
+    assertEquals(Reason.CONTENTS_NOT_HEX, triage(broken).getReason());
+    broken = signed.clone();
+    broken[contents + 1] = '1';
+    assertEquals(Reason.CONTENTS_NOT_CMS, triage(broken).getReason());
+
+    int byteRange = text.indexOf("/ByteRange") + 10;
+    broken = signed.clone();
+    broken[text.indexOf('[', byteRange) + 1] = '1';
+    assertEquals(Reason.MALFORMED_BYTE_RANGE, triage(broken).getReason());
+  }
+
+  @Test
+  public void testSignatureWithoutCertificate() throws Exception
+  {
+    byte[] pdf = read("/signedPDF/LibreOffice_4_3_Sample_PAdES_B_signed.pdf");
+    PDCrypto cryptoEngine = PDCrypto.load(new ByteArrayInputStream(pdf));
+    byte[] cms;
+    try
+    {
+      cms = VerificationReportBuilder.getInstance(cryptoEngine).getCMSSignature(
+          cryptoEngine.getDoc().getSignatureDictionaries().get(0));
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+    CMSSignedData signedData = CMSSignedData.replaceCertificatesAndCRLs(new CMSSignedData(cms), CertStore.getInstance(
+        "Collection", new CollectionCertStoreParameters(), "BC"));
+
+    // the cms without certificate fails the signature, not the verification of the document
+    byte[] damaged = replaceContents(pdf, signedData.getEncoded());
+    VerificationResult result = verify(damaged, null);
+    assertEquals(1, result.getSignatures().size());
+    assertFalse("Document should be invalid", result.isValid());
+    assertTrue(result.getSignatures().get(0).getError() != null);
+
+    // the failed signature is still part of the report
+    cryptoEngine = PDCrypto.load(new ByteArrayInputStream(damaged));
+    try
+    {
+      SimpleReport report = (SimpleReport) cryptoEngine.createVerificationBuilder().setReportType(SimpleReport.class)
+          .createVerificationReport();
+      List<SignatureType> signatures = report.getDocument().getSignatures().getSignature();
+      assertEquals(1, signatures.size());
+      assertFalse(signatures.get(0).isMathematicalyValid());
+      assertTrue(signatures.get(0).getCertificates().getCertificate().isEmpty());
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+    Document streamed = (Document) SimpleReport.getContext().createUnmarshaller().unmarshal(
+        new ByteArrayInputStream(writeReport(damaged, new SimpleReportWriter()).getBytes("UTF-8")));
+    assertEquals(1, streamed.getSignatures().getSignature().size());
+    assertFalse(streamed.getSignatures().getSignature().get(0).isMathematicalyValid());
+  }
+
+  /**
+   * Writes the cms signature hex encoded into the Contents of the first signature, the rest is padded with zeros.
+   */
+  private static byte[] replaceContents(byte[] pdf, byte[] cms) throws IOException
+  {
+    String text = new String(pdf, "ISO-8859-1");
+    int start = text.indexOf("/Contents <") + 11;
+    if (start == 10)
+    {
+      start = text.indexOf("/Contents<") + 10;
+    }
+    int end = text.indexOf('>', start);
+    String hex = new String(Hex.encode(cms), "ISO-8859-1");
+    StringBuilder contents = new StringBuilder(hex);
+    while (contents.length() < end - start)
+    {
+      contents.append('0');
+    }
+    byte[] replaced = pdf.clone();
+    System.arraycopy(contents.toString().getBytes("ISO-8859-1"), 0, replaced, start, end - start);
+    return replaced;
+  }
+
+  @Test
+  public void testInvalidByteRange() throws Exception
+  {
+    // the ByteRange of the second signature lies outside of the document or has too few entries
+    for (String invalid : new String[] { "[0 1 9999999 1]", "[0 1 2]" })
+    {
+      byte[] pdf = getSignedDocument(2);
+      String text = new String(pdf, "ISO-8859-1");
+      int start = text.indexOf('[', text.lastIndexOf("/ByteRange"));
+      int end = text.indexOf(']', start) + 1;
+      StringBuilder byteRange = new StringBuilder(invalid);
+      while (byteRange.length() < end - start)
+      {
+        byteRange.append(' ');
+      }
+      System.arraycopy(byteRange.toString().getBytes("ISO-8859-1"), 0, pdf, start, end - start);
+
+      VerificationResult result = verify(pdf, null);
+      assertEquals(2, result.getSignatures().size());
+      assertFalse("Document should be invalid", result.isValid());
+      assertTrue("The first signature should be valid", result.getSignatures().get(0).isValid());
+      assertTrue(result.getSignatures().get(1).getError() != null);
+    }
+  }
+
+  @Test
+  public void testBulkVerification() throws Exception
+  {
+    File folder = new File(OUTPUT_FOLDER, "bulk");
+    File nested = new File(folder, "nested");
+    nested.mkdirs();
+    byte[] signed = getSignedDocument(1);
+    write(new File(folder, "signed_1.pdf"), signed);
+    write(new File(nested, "signed_2.pdf"), signed);
+    write(new File(nested, "signed_3.PDF"), signed);
+    CoreHelper.copy(VerifyTest.class.getResourceAsStream("/unsignedPDF/LibreOffice_4_3_Sample.pdf"), new FileOutputStream(
+        new File(folder, "unsigned.pdf")));
+    write(new File(folder, "broken.pdf"), "no pdf".getBytes("ISO-8859-1"));
+    write(new File(folder, "ignored.txt"), signed);
+
+    File archive = new File(OUTPUT_FOLDER, "bulk.zip");
+    ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+    try
+    {
+      for (String name : new String[] { "signed_1.pdf", "nested/signed_2.pdf", "nested/signed_3.PDF", "unsigned.pdf",
+          "broken.pdf", "ignored.txt" })
+      {
+        zip.putNextEntry(new ZipEntry(name));
+        InputStream in = new FileInputStream(new File(folder, name));
+        try
+        {
+          CoreHelper.transfer(in, zip);
+        }
+        finally
+        {
+          closeStream(in);
+        }
+        zip.closeEntry();
+      }
+    }
+    finally
+    {
+      closeStream(zip);
+    }
+
+    for (File file : new File[] { folder, archive })
+    {
+      final List<String> valid = Collections.synchronizedList(new ArrayList<String>());
+      BulkResult result = BulkVerifier.getInstance().setThreads(2).setMaxBytesInFlight(64 * 1024).verify(file,
+          new BulkVerifier.Sink()
+          {
+            public void accept(BulkResult.FileResult result)
+            {
+              if (result.isValid())
+              {
+                valid.add(result.getName());
+              }
+            }
+          });
+      assertEquals(5, result.getFileCount());
+      assertEquals("Unsigned and broken documents aren't valid", 2, result.getInvalidCount() + result.getFailureCount());
+      Collections.sort(valid);
+      assertEquals(Arrays.asList("nested/signed_2.pdf", "nested/signed_3.PDF", "signed_1.pdf"), valid);
     }
+  }
+
+  @Test
+  public void testOasisReport() throws Exception
+  {
+    File folder = new File(OUTPUT_FOLDER, "oasis");
+    folder.mkdirs();
+    byte[] signed = getSignedDocument(2);
+    write(new File(folder, "signed.pdf"), signed);
+    write(new File(folder, "broken.pdf"), "no pdf".getBytes("ISO-8859-1"));
+    CoreHelper.copy(VerifyTest.class.getResourceAsStream("/unsignedPDF/LibreOffice_4_3_Sample.pdf"), new FileOutputStream(
+        new File(folder, "unsigned.pdf")));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    OasisReportWriter writer = new OasisReportWriter(out);
+    BulkVerifier.getInstance().setThreads(2).verify(folder, writer);
+    writer.close();
+    assertEquals("One report per signature and per unsigned or broken document", 4, writer.getReportCount());
+
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    org.w3c.dom.Document report = factory.newDocumentBuilder().parse(new ByteArrayInputStream(out.toByteArray()));
+    assertEquals("VerificationReport", report.getDocumentElement().getLocalName());
+    assertEquals(OasisReportWriter.VR_NAMESPACE, report.getDocumentElement().getNamespaceURI());
+    assertEquals(4, report.getElementsByTagNameNS(OasisReportWriter.VR_NAMESPACE, "IndividualReport").getLength());
+    NodeList minors = report.getElementsByTagNameNS(OasisReportWriter.DSS_NAMESPACE, "ResultMinor");
+    assertEquals(2, minors.getLength());
+    for (int i = 0; i < minors.getLength(); i++)
+    {
+      assertTrue(minors.item(i).getTextContent().endsWith(":valid:signature:OnAllDocuments"));
+    }
+    assertEquals(2, report.getElementsByTagNameNS(OasisReportWriter.DS_NAMESPACE, "DigestValue").getLength());
+
+    String single = writeReport(signed, new OasisReportFormat());
+    assertEquals(2, single.split("<vr:IndividualReport>", -1).length - 1);
+  }
 
+  @Test
+  public void testParallelVerification() throws Exception
+  {
+    byte[] pdf = getSignedDocument(3);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try
+    {
+      VerificationResult result = verify(pdf, executor);
+      assertEquals(3, result.getSignatures().size());
+      assertTrue("Document should be valid", result.isValid());
+      for (VerificationResult.SignatureResult signature : result.getSignatures())
+      {
+        assertTrue(signature.isDigestMatching());
+        assertTrue(signature.isSignatureValid());
+        assertTrue(signature.getSignerCertificate() != null);
+      }
+
+      // a modified producer is covered by all signatures
+      int producer = new String(pdf, "ISO-8859-1").indexOf("/Producer<FEFF004C") + 17;
+      pdf[producer] = 'D';
+      result = verify(pdf, executor);
+      assertEquals(3, result.getSignatures().size());
+      assertFalse("Document should be invalid", result.isValid());
+      for (VerificationResult.SignatureResult signature : result.getSignatures())
+      {
+        assertFalse(signature.isDigestMatching());
+        assertFalse(signature.isValid());
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testVerificationCache() throws Exception
+  {
+    byte[] pdf = getSignedDocument(2);
+    File file = new File(OUTPUT_FOLDER, "verification.cache");
+    file.delete();
+
+    VerificationCache cache = VerificationCache.open(file, 10, VerificationCache.DEFAULT_HORIZON);
+    try
+    {
+      assertTrue(verify(pdf, null, cache).isValid());
+      assertEquals(0, cache.getHits());
+      assertEquals(2, cache.getMisses());
+      assertEquals(2, cache.size());
+
+      VerificationResult result = verify(pdf, null, cache);
+      assertEquals(2, cache.getHits());
+      assertTrue("Cached document should be valid", result.isValid());
+      assertTrue(result.getSignatures().get(0).getSignerCertificate() != null);
+    }
+    finally
+    {
+      cache.close();
+    }
+    assertTrue(file.exists());
+
+    // the cache survives reopening
+    cache = VerificationCache.open(file, 10, VerificationCache.DEFAULT_HORIZON);
+    try
+    {
+      assertEquals(2, cache.size());
+      assertTrue(verify(pdf, null, cache).isValid());
+      assertEquals(2, cache.getHits());
+
+      // a modified document doesn't hit the cache
+      int producer = new String(pdf, "ISO-8859-1").indexOf("/Producer<FEFF004C") + 17;
+      pdf[producer] = 'D';
+      assertFalse("Document should be invalid", verify(pdf, null, cache).isValid());
+      assertEquals(2, cache.getHits());
+      assertEquals(4, cache.size());
+    }
+    finally
+    {
+      cache.close();
+    }
+
+    // the least recently used signatures are evicted
+    cache = VerificationCache.open(file, 1, VerificationCache.DEFAULT_HORIZON);
+    try
+    {
+      assertEquals(1, cache.size());
+    }
+    finally
+    {
+      cache.close();
+    }
+
+    // a damaged file is ignored like a truncated one
+    for (int[] lengths : new int[][] { { 200, 10 }, { 32, -1 }, { 32, Integer.MAX_VALUE } })
+    {
+      ByteArrayOutputStream damaged = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(damaged);
+      out.writeInt(0x50564331);
+      out.writeInt(1);
+      out.writeByte(lengths[0]);
+      out.write(new byte[lengths[0]]);
+      out.writeLong(System.currentTimeMillis());
+      out.writeLong(System.currentTimeMillis());
+      out.writeByte(3);
+      out.writeShort(1);
+      out.writeInt(lengths[1]);
+      out.write(new byte[10]);
+      out.close();
+      write(file, damaged.toByteArray());
+
+      cache = VerificationCache.open(file, 10, VerificationCache.DEFAULT_HORIZON);
+      try
+      {
+        assertEquals(0, cache.size());
+      }
+      finally
+      {
+        cache.close();
+      }
+    }
+  }
+
+  @Test
+  public void testCertificateTable() throws Exception
+  {
+    byte[] pdf = getSignedDocument(3);
+    String inline = writeReport(pdf, new SimpleReportWriter());
+    String table = writeReport(pdf, new SimpleReportWriter(true, CertificateEncoding.SUMMARY));
+    assertTrue("The table should be smaller than the inline certificates", table.length() < inline.length() / 2);
+
+    Document document = (Document) SimpleReport.getContext().createUnmarshaller().unmarshal(
+        new ByteArrayInputStream(table.getBytes("UTF-8")));
+    List<CertificateEntryType> entries = document.getCertificateTable().getCertificateEntry();
+    assertEquals("The signer certificate should be written once", 1, entries.size());
+    assertTrue(entries.get(0).getSubject() != null);
+    assertTrue(entries.get(0).getNotAfter() != null);
+    assertEquals(64, entries.get(0).getId().length());
+    assertEquals(3, document.getSignatures().getSignature().size());
+    for (SignatureType signature : document.getSignatures().getSignature())
+    {
+      assertTrue(signature.getCertificates().getCertificate().isEmpty());
+      assertEquals(Arrays.asList(entries.get(0).getId()), signature.getCertificates().getCertificateRef());
+    }
+
+    String json = writeReport(pdf, new JsonReportWriter(true, CertificateEncoding.DER));
+    String fingerprint = entries.get(0).getId();
+    assertTrue(json, json.contains("\"certificates\":{\"" + fingerprint + "\":\"MII"));
+    assertEquals("Once in the table and once per signature", 4, json.split(fingerprint, -1).length - 1);
+  }
+
+  @Test
+  public void testIncrementalVerification() throws Exception
+  {
+    byte[] pdf = getSignedDocument(2);
+    VerificationResult previous = verify(pdf, null);
+    assertEquals(2, previous.getSignatures().size());
+    assertTrue(previous.getSignatures().get(0).getPrefixHash() != null);
+
+    // append a third signature
+    byte[] appended = sign(pdf);
+
+    VerificationResult result = verifyIncremental(appended, previous);
+    assertEquals(3, result.getSignatures().size());
+    assertTrue("Document should be valid", result.isValid());
+    assertTrue(result.getSignatures().get(0).isReused());
+    assertTrue(result.getSignatures().get(1).isReused());
+    assertFalse(result.getSignatures().get(2).isReused());
+
+    // the reused results serve as previous results again
+    result = verifyIncremental(appended, result);
+    assertTrue(result.getSignatures().get(2).isReused());
+
+    // a modified revision isn't reused
+    int producer = new String(appended, "ISO-8859-1").indexOf("/Producer<FEFF004C") + 17;
+    appended[producer] = 'D';
+    result = verifyIncremental(appended, previous);
+    assertFalse("Document should be invalid", result.isValid());
+    for (VerificationResult.SignatureResult signature : result.getSignatures())
+    {
+      assertFalse(signature.isReused());
+      assertFalse(signature.isDigestMatching());
+    }
+  }
+
+  @Test
+  public void testIncrementalVerificationBaseline() throws Exception
+  {
+    byte[] pdf = getSignedDocument(2);
+    VerificationResult previous = verify(pdf, null);
+    byte[] appended = sign(pdf);
+
+    PDCrypto cryptoEngine = PDCrypto.load(new ByteArrayInputStream(appended));
+    try
+    {
+      VerificationBuilder builder = cryptoEngine.createVerificationBuilder();
+      VerificationResult full = builder.verify();
+      assertFalse(full.getSignatures().get(0).isReused());
+
+      // another baseline verifies again instead of returning the cached result
+      VerificationResult result = builder.verify(previous);
+      assertTrue(result != full);
+      assertTrue(result.getSignatures().get(0).isReused());
+      assertTrue(result.getSignatures().get(1).isReused());
+      assertFalse(result.getSignatures().get(2).isReused());
+
+      // the same baseline and no baseline return the latest result
+      assertTrue(builder.verify(previous) == result);
+      assertTrue(builder.verify() == result);
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+  }
+
+  private static void write(File file, byte[] content) throws IOException
+  {
+    CoreHelper.copy(new ByteArrayInputStream(content), new FileOutputStream(file));
+  }
+
+  private static String writeReport(byte[] pdf, ReportFormat format) throws IOException
+  {
+    PDCrypto cryptoEngine = PDCrypto.load(new ByteArrayInputStream(pdf));
+    try
+    {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      cryptoEngine.createVerificationBuilder().writeReport(format, out);
+      return out.toString("UTF-8");
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+  }
+
+  private static VerificationResult verifyIncremental(byte[] pdf, VerificationResult previous) throws IOException
+  {
+    PDCrypto cryptoEngine = PDCrypto.load(new ByteArrayInputStream(pdf));
+    try
+    {
+      return cryptoEngine.createVerificationBuilder().verify(previous);
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+  }
+
+  private static VerificationResult verify(byte[] pdf, ExecutorService executor) throws IOException
+  {
+    return verify(pdf, executor, null);
+  }
+
+  private static VerificationResult verify(byte[] pdf, ExecutorService executor, VerificationCache cache)
+      throws IOException
+  {
+    PDCrypto cryptoEngine = PDCrypto.load(new ByteArrayInputStream(pdf));
+    try
+    {
+      return cryptoEngine.createVerificationBuilder().setExecutor(executor).setCache(cache).verify();
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+  }
+  /**
+   * The sample document is signed once per test class, the tests share the signed documents.
+   * 
+   * @param signatures the number of signatures
+   * @return a copy of the sample document with the given number of signatures
+   */
+  private static byte[] getSignedDocument(int signatures) throws Exception
+  {
+    while (signedDocuments.size() < signatures)
+    {
+      signedDocuments.add(sign(signedDocuments.isEmpty() ? read("/unsignedPDF/LibreOffice_4_3_Sample.pdf")
+          : signedDocuments.get(signedDocuments.size() - 1)));
+    }
+    return signedDocuments.get(signatures - 1).clone();
+  }
+
+  private static byte[] sign(byte[] pdf) throws Exception
+  {
+    KeyProvider keyProvider = KeyProvider.getInstance(keystore);
+    SignatureProvider signatureProvider = PAdES_B_Provider.getInstance(keyProvider);
+    signatureProvider.setSignatureAlgorithm("SHA256withRSA");
+    PDCrypto cryptoEngine = PDCrypto.load(new ByteArrayInputStream(pdf));
+    ByteArrayOutputStream signed = new ByteArrayOutputStream();
+    try
+    {
+      cryptoEngine.createSignatureBuilder().setKeyProvider(keyProvider).setSignatureProvider(signatureProvider)
+          .setSigernName("SignerName").sign(signed);
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+    return signed.toByteArray();
+  }
+
+  private static StructuralTriage.Result triage(byte[] pdf) throws IOException
+  {
+    PDCrypto cryptoEngine = PDCrypto.load(new ByteArrayInputStream(pdf));
+    try
+    {
+      return cryptoEngine.createVerificationBuilder().triage();
+    }
+    finally
+    {
+      closeStream(cryptoEngine);
+    }
+  }
+
+  private static byte[] read(String resource) throws IOException
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CoreHelper.copy(VerifyTest.class.getResourceAsStream(resource), out);
+    return out.toByteArray();
+  }
+
+  /**
+   * Creates a document with a cross reference stream, whose catalog and form fields are stored in an object stream.
+   */
+  private static byte[] createCompressedDocument() throws IOException
+  {
+    ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+    long[] offsets = new long[7];
+    write(pdf, "%PDF-1.5\n");
+    offsets[1] = pdf.size();
+    write(pdf, "1 0 obj\n<</Type/Sig/Filter/Adobe.PPKLite/SubFilter/adbe.pkcs7.detached/ByteRange[0 10 20 30]"
+        + "/Contents<0102>/Name(Locator)/M(D:20150101000000Z)>>\nendobj\n");
+
+    String[] objects = new String[] { "<</Type/Catalog/AcroForm 3 0 R>>", "<</Fields[4 0 R]>>", "<</FT/Sig/T(Signature1)/V 1 0 R>>" };
+    StringBuilder header = new StringBuilder();
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < objects.length; i++)
+    {
+      header.append(i + 2).append(' ').append(body.length()).append(' ');
+      body.append(objects[i]).append('\n');
+    }
+    byte[] objectStream = deflate((header.toString() + body).getBytes("ISO-8859-1"));
+    offsets[5] = pdf.size();
+    write(pdf, "5 0 obj\n<</Type/ObjStm/N 3/First " + header.length() + "/Filter/FlateDecode/Length " + objectStream.length
+        + ">>\nstream\n");
+    pdf.write(objectStream);
+    write(pdf, "\nendstream\nendobj\n");
+
+    offsets[6] = pdf.size();
+    ByteArrayOutputStream xref = new ByteArrayOutputStream();
+    for (int number = 0; number < offsets.length; number++)
+    {
+      boolean compressed = number >= 2 && number <= 4;
+      xref.write(number == 0 ? 0 : compressed ? 2 : 1);
+      long field2 = compressed ? 5 : offsets[number];
+      xref.write(new byte[] { (byte) (field2 >> 24), (byte) (field2 >> 16), (byte) (field2 >> 8), (byte) field2 });
+      int field3 = compressed ? number - 2 : 0;
+      xref.write(new byte[] { (byte) (field3 >> 8), (byte) field3 });
+    }
+    byte[] xrefStream = deflate(xref.toByteArray());
+    write(pdf, "6 0 obj\n<</Type/XRef/Size 7/W[1 4 2]/Root 2 0 R/Filter/FlateDecode/Length " + xrefStream.length + ">>\nstream\n");
+    pdf.write(xrefStream);
+    write(pdf, "\nendstream\nendobj\nstartxref\n" + offsets[6] + "\n%%EOF\n");
+    return pdf.toByteArray();
+  }
+
+  /**
+   * Creates a document with two signature fields, whose kids are only widget annotations. The first field has two
+   * widgets, the second one inherits its field type from a parent field.
+   */
+  private static byte[] createWidgetKidsDocument() throws IOException
+  {
+    String signature = "<</Type/Sig/Filter/Adobe.PPKLite/SubFilter/adbe.pkcs7.detached/ByteRange[0 10 20 30]"
+        + "/Contents<0102>/Name(%s)/M(D:20150101000000Z)>>";
+    String[] objects = new String[] { String.format(signature, "Widgets"), "<</Type/Catalog/AcroForm 3 0 R>>",
+        "<</Fields[4 0 R 7 0 R]>>", "<</FT/Sig/T(Signature1)/V 1 0 R/Kids[5 0 R 6 0 R]>>",
+        "<</Type/Annot/Subtype/Widget/Rect[0 0 0 0]/Parent 4 0 R>>",
+        "<</Type/Annot/Subtype/Widget/Rect[0 0 0 0]/Parent 4 0 R>>", "<</FT/Sig/T(Group)/Kids[8 0 R]>>",
+        "<</T(Signature2)/Parent 7 0 R/V 9 0 R/Kids[10 0 R]>>", String.format(signature, "Inherited"),
+        "<</Type/Annot/Subtype/Widget/Rect[0 0 0 0]/Parent 8 0 R>>" };
+    ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+    write(pdf, "%PDF-1.4\n");
+    long[] offsets = new long[objects.length];
+    for (int i = 0; i < objects.length; i++)
+    {
+      offsets[i] = pdf.size();
+      write(pdf, (i + 1) + " 0 obj\n" + objects[i] + "\nendobj\n");
+    }
+    long startxref = pdf.size();
+    write(pdf, "xref\n0 " + (objects.length + 1) + "\n0000000000 65535 f\r\n");
+    for (long offset : offsets)
+    {
+      write(pdf, String.format("%010d 00000 n\r\n", offset));
+    }
+    write(pdf, "trailer\n<</Size " + (objects.length + 1) + "/Root 2 0 R>>\nstartxref\n" + startxref + "\n%%EOF\n");
+    return pdf.toByteArray();
+  }
+
+  private static void write(ByteArrayOutputStream out, String text) throws IOException
+  {
+    out.write(text.getBytes("ISO-8859-1"));
+  }
+
+  private static byte[] deflate(byte[] data) throws IOException
+  {
+    ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+    DeflaterOutputStream out = new DeflaterOutputStream(deflated);
+    out.write(data);
+    out.close();
+    return deflated.toByteArray();
   }
 }